@@ -15,12 +15,20 @@
  */
 package org.fudgemsg;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.fudgemsg.mapping.FudgeDeserializer;
 import org.fudgemsg.mapping.FudgeObjectDictionary;
@@ -30,6 +38,7 @@ import org.fudgemsg.mapping.FudgeSerializer;
 import org.fudgemsg.taxonomy.FudgeTaxonomy;
 import org.fudgemsg.taxonomy.ImmutableMapTaxonomyResolver;
 import org.fudgemsg.taxonomy.TaxonomyResolver;
+import org.fudgemsg.types.ClasspathUtilities;
 import org.fudgemsg.wire.FudgeDataInputStreamReader;
 import org.fudgemsg.wire.FudgeDataOutputStreamWriter;
 import org.fudgemsg.wire.FudgeMsgReader;
@@ -88,6 +97,10 @@ public class FudgeContext implements FudgeMsgFactory {
    * The object dictionary.
    */
   private FudgeObjectDictionary _objectDictionary;
+  /**
+   * The metrics, null if disabled.
+   */
+  private volatile FudgeMetrics _metrics;
 
   /**
    * Constructs a new context with default empty dictionaries.
@@ -201,6 +214,43 @@ public class FudgeContext implements FudgeMsgFactory {
     }
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the metrics being gathered by this context.
+   * <p>
+   * Readers, writers and dictionaries check this on each message, recording only if enabled.
+   * 
+   * @return the metrics, null if disabled
+   */
+  public FudgeMetrics getMetrics() {
+    return _metrics;
+  }
+
+  /**
+   * Enables the gathering of metrics by this context.
+   * <p>
+   * The metrics can be published over JMX with {@link FudgeMetrics#registerMBean}.
+   * 
+   * @return the metrics, the existing instance if already enabled, not null
+   */
+  public synchronized FudgeMetrics enableMetrics() {
+    if (_metrics == null) {
+      _metrics = new FudgeMetrics(this);
+    }
+    return _metrics;
+  }
+
+  /**
+   * Disables the gathering of metrics by this context, removing any JMX registration.
+   */
+  public synchronized void disableMetrics() {
+    final FudgeMetrics metrics = _metrics;
+    if (metrics != null) {
+      _metrics = null;
+      metrics.unregisterMBean();
+    }
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public MutableFudgeMsg newMessage() {
@@ -512,4 +562,120 @@ public class FudgeContext implements FudgeMsgFactory {
     return getTypeDictionary().getFieldValue(clazz, field);
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Creates and caches the builders and type conversions for classes ahead of first use.
+   * <p>
+   * The first serialization of a class otherwise pays for finding or creating its builders,
+   * for example by introspection of a Java bean, and for resolving its type information.
+   * Calling this at startup moves that cost out of the first message.
+   * 
+   * @param classes  the classes to prepare, not null
+   */
+  public void prewarm(final Class<?>... classes) {
+    for (Class<?> clazz : classes) {
+      getObjectDictionary().prewarm(clazz);
+      getTypeDictionary().prewarm(clazz);
+    }
+  }
+
+  /**
+   * Creates and caches the builders and type conversions for the classes in a package and its
+   * sub-packages found on the classpath.
+   * <p>
+   * Classes are loaded without being initialized. Classes that cannot be loaded, and those for
+   * which builders cannot be created, are skipped.
+   * 
+   * @param packageName  the package name, not null
+   * @return the number of classes with a builder, not negative
+   */
+  public int prewarmPackage(final String packageName) {
+    if (packageName == null) {
+      throw new NullPointerException("packageName must not be null");
+    }
+    int count = 0;
+    for (String className : ClasspathUtilities.getClassNamesInPackage(packageName)) {
+      if (prewarmClass(className)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Writes a snapshot of the classes that currently have a builder.
+   * <p>
+   * The snapshot lists the class names, one per line in UTF-8. Reading it with
+   * {@link #readPrewarmSnapshot} on the next start prepares the same classes.
+   * 
+   * @param outputStream  the stream to write to, not closed, not null
+   */
+  public void writePrewarmSnapshot(final OutputStream outputStream) {
+    final Set<String> classNames = new TreeSet<String>();
+    for (Class<?> clazz : getObjectDictionary().getBuilderClasses()) {
+      classNames.add(clazz.getName());
+    }
+    try {
+      final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+      for (String className : classNames) {
+        writer.write(className);
+        writer.write('\n');
+      }
+      writer.flush();
+    } catch (IOException ex) {
+      throw new FudgeRuntimeException("Unable to write prewarm snapshot", ex);
+    }
+  }
+
+  /**
+   * Reads a snapshot written by {@link #writePrewarmSnapshot} and prepares the classes listed.
+   * <p>
+   * Classes that no longer exist, or for which builders cannot be created, are skipped.
+   * 
+   * @param inputStream  the stream to read from, not closed, not null
+   * @return the number of classes with a builder, not negative
+   */
+  public int readPrewarmSnapshot(final InputStream inputStream) {
+    int count = 0;
+    try {
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() > 0 && !line.startsWith("#") && prewarmClass(line)) {
+          count++;
+        }
+      }
+    } catch (IOException ex) {
+      throw new FudgeRuntimeException("Unable to read prewarm snapshot", ex);
+    }
+    return count;
+  }
+
+  /**
+   * Prepares a class by name, skipping any that cannot be loaded or built.
+   * 
+   * @param className  the class name, not null
+   * @return true if the class has a builder
+   */
+  private boolean prewarmClass(final String className) {
+    final Class<?> clazz;
+    try {
+      clazz = getTypeDictionary().findClass(className);
+    } catch (LinkageError ex) {
+      return false;
+    }
+    if (clazz == null || clazz.isAnnotation() || clazz.isAnonymousClass() || clazz.isLocalClass() || clazz.isSynthetic()) {
+      return false;
+    }
+    try {
+      getTypeDictionary().prewarm(clazz);
+      return getObjectDictionary().prewarm(clazz);
+    } catch (RuntimeException ex) {
+      return false;
+    } catch (LinkageError ex) {
+      return false;
+    }
+  }
+
 }
@@ -0,0 +1,351 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.fudgemsg.mapping.MappingStatistics;
+
+/**
+ * Metrics gathered by a {@link FudgeContext} about the messages it encodes and decodes.
+ * <p>
+ * Metrics are disabled by default. They are enabled with {@link FudgeContext#enableMetrics},
+ * after which the readers, writers and dictionaries of the context record into this instance.
+ * When disabled the only cost is a null check per message.
+ * The metrics can be published to the platform MBean server with {@link #registerMBean}.
+ * <p>
+ * This class is thread-safe.
+ */
+public class FudgeMetrics implements FudgeMetricsMXBean {
+
+  /**
+   * The domain and type of the JMX object names.
+   */
+  public static final String OBJECT_NAME_PREFIX = "org.fudgemsg:type=FudgeMetrics,name=";
+  /**
+   * The number of buckets in the envelope size histograms.
+   */
+  private static final int SIZE_BUCKETS = 32;
+
+  /**
+   * The context being measured.
+   */
+  private final FudgeContext _context;
+  /**
+   * The read counters, keyed by stream reader class.
+   */
+  private final ConcurrentMap<Class<?>, CodecCounters> _reads = new ConcurrentHashMap<Class<?>, CodecCounters>();
+  /**
+   * The write counters, keyed by stream writer class.
+   */
+  private final ConcurrentMap<Class<?>, CodecCounters> _writes = new ConcurrentHashMap<Class<?>, CodecCounters>();
+  /**
+   * The histogram of read envelope sizes.
+   */
+  private final AtomicLongArray _readEnvelopeSizes = new AtomicLongArray(SIZE_BUCKETS);
+  /**
+   * The histogram of written envelope sizes.
+   */
+  private final AtomicLongArray _writtenEnvelopeSizes = new AtomicLongArray(SIZE_BUCKETS);
+  /**
+   * The number of lazily read sub-messages.
+   */
+  private final AtomicLong _lazySubMessages = new AtomicLong();
+  /**
+   * The number of eagerly decoded sub-messages.
+   */
+  private final AtomicLong _eagerSubMessages = new AtomicLong();
+  /**
+   * The number of taxonomy resolution hits.
+   */
+  private final AtomicLong _taxonomyHits = new AtomicLong();
+  /**
+   * The number of taxonomy resolution misses.
+   */
+  private final AtomicLong _taxonomyMisses = new AtomicLong();
+  /**
+   * The object dictionary builder cache miss count when last reset.
+   */
+  private volatile long _builderCacheMissesAtReset;
+  /**
+   * The object mapping statistics.
+   */
+  private final MappingStatistics _mappingStatistics = new MappingStatistics();
+  /**
+   * The registered JMX name, null if not registered.
+   */
+  private ObjectName _objectName;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param context  the context being measured, not null
+   */
+  /* package */FudgeMetrics(final FudgeContext context) {
+    _context = context;
+    _builderCacheMissesAtReset = context.getObjectDictionary().getBuilderCacheMisses();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Records a message read.
+   * 
+   * @param streamReaderClass  the class of the stream reader, not null
+   * @param envelopeSize  the size of the encoded envelope in bytes, negative if not known
+   */
+  public void messageRead(final Class<?> streamReaderClass, final int envelopeSize) {
+    record(_reads, streamReaderClass, envelopeSize, _readEnvelopeSizes);
+  }
+
+  /**
+   * Records a message written.
+   * 
+   * @param streamWriterClass  the class of the stream writer, not null
+   * @param envelopeSize  the size of the encoded envelope in bytes, negative if not known
+   */
+  public void messageWritten(final Class<?> streamWriterClass, final int envelopeSize) {
+    record(_writes, streamWriterClass, envelopeSize, _writtenEnvelopeSizes);
+  }
+
+  /**
+   * Records the sub-messages of a message read.
+   * 
+   * @param lazy  the number of sub-messages read lazily
+   * @param eager  the number of sub-messages decoded as they were read
+   */
+  public void subMessagesRead(final int lazy, final int eager) {
+    if (lazy > 0) {
+      _lazySubMessages.addAndGet(lazy);
+    }
+    if (eager > 0) {
+      _eagerSubMessages.addAndGet(eager);
+    }
+  }
+
+  /**
+   * Records the resolution of a taxonomy identifier.
+   * <p>
+   * The identifier zero means no taxonomy and is not recorded.
+   * 
+   * @param taxonomyId  the taxonomy identifier
+   * @param found  whether the identifier resolved to a taxonomy
+   */
+  public void taxonomyResolved(final int taxonomyId, final boolean found) {
+    if (taxonomyId == 0) {
+      return;
+    }
+    if (found) {
+      _taxonomyHits.incrementAndGet();
+    } else {
+      _taxonomyMisses.incrementAndGet();
+    }
+  }
+
+  private static void record(final ConcurrentMap<Class<?>, CodecCounters> counters, final Class<?> codec, final int envelopeSize, final AtomicLongArray sizes) {
+    CodecCounters codecCounters = counters.get(codec);
+    if (codecCounters == null) {
+      // not read back from the map, which a concurrent reset may clear
+      final CodecCounters created = new CodecCounters();
+      final CodecCounters existing = counters.putIfAbsent(codec, created);
+      codecCounters = (existing != null) ? existing : created;
+    }
+    codecCounters._messages.incrementAndGet();
+    if (envelopeSize >= 0) {
+      codecCounters._bytes.addAndGet(envelopeSize);
+      sizes.incrementAndGet(31 - Integer.numberOfLeadingZeros(envelopeSize | 1));
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public Map<String, Long> getMessagesRead() {
+    return toMap(_reads, false);
+  }
+
+  @Override
+  public Map<String, Long> getMessagesWritten() {
+    return toMap(_writes, false);
+  }
+
+  @Override
+  public Map<String, Long> getBytesRead() {
+    return toMap(_reads, true);
+  }
+
+  @Override
+  public Map<String, Long> getBytesWritten() {
+    return toMap(_writes, true);
+  }
+
+  private static Map<String, Long> toMap(final ConcurrentMap<Class<?>, CodecCounters> counters, final boolean bytes) {
+    final Map<String, Long> map = new TreeMap<String, Long>();
+    for (Map.Entry<Class<?>, CodecCounters> entry : counters.entrySet()) {
+      String name = entry.getKey().getSimpleName();
+      if (name.length() == 0) {
+        name = entry.getKey().getName();
+      }
+      final long value = bytes ? entry.getValue()._bytes.get() : entry.getValue()._messages.get();
+      final Long previous = map.get(name);
+      map.put(name, (previous != null) ? previous + value : value);
+    }
+    return map;
+  }
+
+  @Override
+  public long[] getReadEnvelopeSizes() {
+    return toArray(_readEnvelopeSizes);
+  }
+
+  @Override
+  public long[] getWrittenEnvelopeSizes() {
+    return toArray(_writtenEnvelopeSizes);
+  }
+
+  private static long[] toArray(final AtomicLongArray sizes) {
+    final long[] array = new long[sizes.length()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = sizes.get(i);
+    }
+    return array;
+  }
+
+  @Override
+  public long getLazySubMessages() {
+    return _lazySubMessages.get();
+  }
+
+  @Override
+  public long getEagerSubMessages() {
+    return _eagerSubMessages.get();
+  }
+
+  @Override
+  public double getLazyDecodeRatio() {
+    final long lazy = getLazySubMessages();
+    final long total = lazy + getEagerSubMessages();
+    return (total > 0) ? (double) lazy / (double) total : 0d;
+  }
+
+  @Override
+  public long getTaxonomyHits() {
+    return _taxonomyHits.get();
+  }
+
+  @Override
+  public long getTaxonomyMisses() {
+    return _taxonomyMisses.get();
+  }
+
+  @Override
+  public long getBuilderCacheMisses() {
+    // the dictionary may have been replaced since the last reset
+    return Math.max(0, _context.getObjectDictionary().getBuilderCacheMisses() - _builderCacheMissesAtReset);
+  }
+
+  /**
+   * Gets the object mapping statistics, recorded per Java class and builder.
+   * 
+   * @return the statistics, not null
+   */
+  public MappingStatistics getMappingStatistics() {
+    return _mappingStatistics;
+  }
+
+  @Override
+  public String getMappingReport() {
+    return _mappingStatistics.getReport();
+  }
+
+  @Override
+  public void reset() {
+    _reads.clear();
+    _writes.clear();
+    for (int i = 0; i < SIZE_BUCKETS; i++) {
+      _readEnvelopeSizes.set(i, 0);
+      _writtenEnvelopeSizes.set(i, 0);
+    }
+    _lazySubMessages.set(0);
+    _eagerSubMessages.set(0);
+    _taxonomyHits.set(0);
+    _taxonomyMisses.set(0);
+    _builderCacheMissesAtReset = _context.getObjectDictionary().getBuilderCacheMisses();
+    _mappingStatistics.reset();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Registers these metrics with the platform MBean server.
+   * <p>
+   * Any previous registration of this instance is removed first.
+   * 
+   * @param name  the value of the {@code name} key of the object name, not null
+   * @return the object name registered, not null
+   */
+  public synchronized ObjectName registerMBean(final String name) {
+    if (name == null) {
+      throw new NullPointerException("name must not be null");
+    }
+    unregisterMBean();
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      final ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+      server.registerMBean(this, objectName);
+      _objectName = objectName;
+      return objectName;
+    } catch (JMException ex) {
+      throw new FudgeRuntimeException("Unable to register Fudge metrics as " + name, ex);
+    }
+  }
+
+  /**
+   * Removes the registration of these metrics from the platform MBean server, if registered.
+   */
+  public synchronized void unregisterMBean() {
+    if (_objectName == null) {
+      return;
+    }
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(_objectName)) {
+        server.unregisterMBean(_objectName);
+      }
+    } catch (JMException ex) {
+      throw new FudgeRuntimeException("Unable to unregister Fudge metrics " + _objectName, ex);
+    } finally {
+      _objectName = null;
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The counters of a single codec.
+   */
+  private static final class CodecCounters {
+    private final AtomicLong _messages = new AtomicLong();
+    private final AtomicLong _bytes = new AtomicLong();
+  }
+
+}
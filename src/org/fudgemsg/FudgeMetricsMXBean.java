@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.util.Map;
+
+/**
+ * Management interface of the metrics gathered by a {@link FudgeContext}.
+ * <p>
+ * Codecs are identified by the simple name of their stream reader or writer class,
+ * for example {@code FudgeDataInputStreamReader} for the binary encoding.
+ */
+public interface FudgeMetricsMXBean {
+
+  /**
+   * Gets the number of messages read, keyed by codec.
+   * 
+   * @return the message counts, not null
+   */
+  Map<String, Long> getMessagesRead();
+
+  /**
+   * Gets the number of messages written, keyed by codec.
+   * 
+   * @return the message counts, not null
+   */
+  Map<String, Long> getMessagesWritten();
+
+  /**
+   * Gets the number of encoded bytes read, keyed by codec.
+   * <p>
+   * Only codecs that know the envelope size, such as the binary encoding, count bytes.
+   * 
+   * @return the byte counts, not null
+   */
+  Map<String, Long> getBytesRead();
+
+  /**
+   * Gets the number of encoded bytes written, keyed by codec.
+   * <p>
+   * Only codecs that know the envelope size, such as the binary encoding, count bytes.
+   * 
+   * @return the byte counts, not null
+   */
+  Map<String, Long> getBytesWritten();
+
+  /**
+   * Gets the histogram of the sizes of the envelopes read.
+   * <p>
+   * Element {@code i} counts the envelopes of at least {@code 2^i} and less than {@code 2^(i+1)} bytes.
+   * 
+   * @return the counts, not null
+   */
+  long[] getReadEnvelopeSizes();
+
+  /**
+   * Gets the histogram of the sizes of the envelopes written.
+   * <p>
+   * Element {@code i} counts the envelopes of at least {@code 2^i} and less than {@code 2^(i+1)} bytes.
+   * 
+   * @return the counts, not null
+   */
+  long[] getWrittenEnvelopeSizes();
+
+  /**
+   * Gets the number of sub-messages read lazily, with decoding deferred until first access.
+   * 
+   * @return the count
+   */
+  long getLazySubMessages();
+
+  /**
+   * Gets the number of sub-messages decoded as they were read.
+   * 
+   * @return the count
+   */
+  long getEagerSubMessages();
+
+  /**
+   * Gets the fraction of sub-messages read lazily.
+   * 
+   * @return the ratio, from 0 to 1, zero if no sub-messages have been read
+   */
+  double getLazyDecodeRatio();
+
+  /**
+   * Gets the number of taxonomy identifiers resolved to a taxonomy.
+   * 
+   * @return the count
+   */
+  long getTaxonomyHits();
+
+  /**
+   * Gets the number of non-zero taxonomy identifiers that did not resolve to a taxonomy.
+   * 
+   * @return the count
+   */
+  long getTaxonomyMisses();
+
+  /**
+   * Gets the number of builder lookups that were not cached by the object dictionary.
+   * 
+   * @return the count
+   */
+  long getBuilderCacheMisses();
+
+  /**
+   * Gets the object mapping statistics as a text table, per Java class and builder.
+   * 
+   * @return the report, not null
+   */
+  String getMappingReport();
+
+  /**
+   * Resets all the metrics to zero.
+   */
+  void reset();
+
+}
@@ -17,7 +17,6 @@ package org.fudgemsg;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -47,6 +46,15 @@ import org.fudgemsg.wire.types.FudgeWireType;
  */
 public class FudgeTypeDictionary {
 
+  /**
+   * The maximum number of class names to cache the resolution of.
+   */
+  private static final int MAX_CACHED_CLASS_NAMES = 4096;
+  /**
+   * Marker for a class name that could not be loaded.
+   */
+  private static final Object CLASS_NOT_FOUND = new Object();
+
   /**
    * The types indexed in an array.
    */
@@ -67,6 +75,10 @@ public class FudgeTypeDictionary {
    * A flag to indicate if the classpath is scanned.
    */
   private final AtomicBoolean _haveScannedClasspath = new AtomicBoolean(false);
+  /**
+   * The compiled field conversions indexed by target Java type.
+   */
+  private final ConcurrentMap<Class<?>, ConversionTable> _conversionsByJavaType = new ConcurrentHashMap<Class<?>, ConversionTable>();
 
   /**
    * Creates a new dictionary configured with the default types from the Fudge specification.
@@ -171,6 +183,7 @@ public class FudgeTypeDictionary {
       _typesByJavaType.put(alternativeType, type);
     }
     _fftByJavaTypeCache.clear(); //results could have changed now
+    _conversionsByJavaType.clear();
   }
 
   /**
@@ -212,6 +225,7 @@ public class FudgeTypeDictionary {
         type = type.getSuperclass();
       }
     }
+    _conversionsByJavaType.clear();
   }
 
   private final static FudgeFieldType s_noFftMarker = new FudgeFieldType(0, FudgeTypeDictionary.class, false, 0);
@@ -290,6 +304,11 @@ public class FudgeTypeDictionary {
       return (T) value;
     }
     final FudgeFieldType type = field.getType();
+    final FieldConversion conversion = getFieldConversion(clazz, type, value.getClass());
+    if (conversion.isConvertible()) {
+      return (T) conversion.convert(value);
+    }
+    // not convertible, so resolve again to produce the null, enum or exception
     if (type instanceof SecondaryFieldType) {
       final SecondaryFieldType sourceType = (SecondaryFieldType) type;
       if (clazz.isAssignableFrom(sourceType.getPrimaryType().getJavaType())) {
@@ -346,7 +365,6 @@ public class FudgeTypeDictionary {
    * @return {@code true} if a conversion is possible, {@code false} otherwise
    *  (when {@link #getFieldValue} might return {@code null} or throw an exception)
    */
-  @SuppressWarnings("rawtypes")
   public <T> boolean canConvertField (final Class<T> clazz, final FudgeField field) {
     if (field == null) {
       return false;
@@ -358,34 +376,201 @@ public class FudgeTypeDictionary {
     if (clazz.isAssignableFrom(value.getClass())) {
       return true;
     }
-    final FudgeFieldType type = field.getType();
+    return getFieldConversion(clazz, field.getType(), value.getClass()).isConvertible();
+  }
+
+  /**
+   * Resolves and caches the field type, class name and conversions of a Java type ahead of first use.
+   * <p>
+   * Conversions to the type are compiled from each wire type that its converter accepts.
+   * 
+   * @param javaType  the Java type, not null
+   */
+  public void prewarm(final Class<?> javaType) {
+    getByJavaType(javaType);
+    findClass(javaType.getName());
+    final FudgeTypeConverter<Object, ?> converter = getTypeConverter(javaType);
+    if (converter != null) {
+      for (int typeId = 0; typeId < 256; typeId++) {
+        final FudgeWireType type = getByTypeId(typeId);
+        if (!type.isTypeUnknown() && !javaType.isAssignableFrom(type.getJavaType()) && converter.canConvertPrimary(type.getJavaType())) {
+          getFieldConversion(javaType, type, type.getJavaType());
+        }
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the compiled conversion of a field value to a target type.
+   * <p>
+   * Conversions are compiled on first use and cached per target type, indexed by the
+   * type identifier of wire types or the Java type of secondary types. Subsequent
+   * conversions of the same field type to the same target need no further lookups.
+   * 
+   * @param clazz  the target class, not null
+   * @param type  the field type, not null
+   * @param valueClass  the class of the field value, not null
+   * @return the conversion, not null
+   */
+  private FieldConversion getFieldConversion(final Class<?> clazz, final FudgeFieldType type, final Class<?> valueClass) {
+    ConversionTable table = _conversionsByJavaType.get(clazz);
+    if (table == null) {
+      table = new ConversionTable();
+      final ConversionTable existing = _conversionsByJavaType.putIfAbsent(clazz, table);
+      if (existing != null) {
+        table = existing;
+      }
+    }
+    FieldConversion conversion = table.get(type, valueClass);
+    if (conversion == null) {
+      conversion = compileFieldConversion(clazz, type, valueClass);
+      table.put(conversion);
+    }
+    return conversion;
+  }
+
+  /**
+   * Compiles the conversion of a field value to a target type.
+   * <p>
+   * This must match the rules applied by {@link #getFieldValue}.
+   * 
+   * @param clazz  the target class, not null
+   * @param type  the field type, not null
+   * @param valueClass  the class of the field value, not null
+   * @return the conversion, not null
+   */
+  @SuppressWarnings({"unchecked", "rawtypes" })
+  private FieldConversion compileFieldConversion(final Class<?> clazz, final FudgeFieldType type, final Class<?> valueClass) {
     if (type instanceof SecondaryFieldType) {
       final SecondaryFieldType sourceType = (SecondaryFieldType) type;
       if (clazz.isAssignableFrom(sourceType.getPrimaryType().getJavaType())) {
         // been asked for the primary type
-        return true;
-      } else {
-        final FudgeTypeConverter<Object, T> converter = getTypeConverter(clazz);
-        if (converter == null) {
-          // don't recognize the requested type
-          return false;
-        } else {
-          // check common base
-          return converter.canConvertPrimary(sourceType.getPrimaryType().getJavaType());
-        }
+        return FieldConversion.secondaryToPrimary(sourceType);
+      }
+      final FudgeTypeConverter<Object, ?> converter = getTypeConverter(clazz);
+      if (converter != null && converter.canConvertPrimary(sourceType.getPrimaryType().getJavaType())) {
+        // primary and requested have a common base
+        return FieldConversion.secondaryViaPrimary(sourceType, converter);
       }
+      return FieldConversion.notConvertible(type, null);
     } else if (type == FudgeWireType.INDICATOR) {
       // indicators can't be converted to instances
-      return false;
+      return FieldConversion.notConvertible(type, valueClass);
     } else {
-      final FudgeTypeConverter<Object, T> converter = getTypeConverter(clazz);
-      if (converter == null) {
-        // don't recognize the requested type
-        return false;
+      final FudgeTypeConverter<Object, ?> converter = getTypeConverter(clazz);
+      if (converter != null && converter.canConvertPrimary(valueClass)) {
+        // secondary type extends our current type
+        return FieldConversion.primaryToSecondary(type, valueClass, converter);
+      }
+      return FieldConversion.notConvertible(type, valueClass);
+    }
+  }
+
+  /**
+   * The compiled conversions to a single target type.
+   */
+  private static final class ConversionTable {
+    /**
+     * The conversions from wire types, indexed by type identifier.
+     */
+    private final AtomicReferenceArray<FieldConversion> _byTypeId = new AtomicReferenceArray<FieldConversion>(256);
+    /**
+     * The conversions from secondary types, indexed by the secondary Java type.
+     */
+    private final ConcurrentMap<Class<?>, FieldConversion> _bySecondaryType = new ConcurrentHashMap<Class<?>, FieldConversion>();
+
+    FieldConversion get(final FudgeFieldType type, final Class<?> valueClass) {
+      final FieldConversion conversion;
+      if (type instanceof FudgeWireType) {
+        conversion = _byTypeId.get(type.getTypeId());
       } else {
-        // does secondary type extend current type
-        return converter.canConvertPrimary(value.getClass());
+        conversion = _bySecondaryType.get(type.getJavaType());
       }
+      if (conversion != null && conversion.matches(type, valueClass)) {
+        return conversion;
+      }
+      return null;
+    }
+
+    void put(final FieldConversion conversion) {
+      final FudgeFieldType type = conversion._type;
+      if (type instanceof FudgeWireType) {
+        _byTypeId.set(type.getTypeId(), conversion);
+      } else {
+        _bySecondaryType.put(type.getJavaType(), conversion);
+      }
+    }
+  }
+
+  /**
+   * A compiled conversion of a field value to a target type.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes" })
+  private abstract static class FieldConversion {
+    /**
+     * The field type the conversion was compiled for.
+     */
+    private final FudgeFieldType _type;
+    /**
+     * The value class the conversion was compiled for, null if it applies to any value of the type.
+     */
+    private final Class<?> _valueClass;
+
+    FieldConversion(final FudgeFieldType type, final Class<?> valueClass) {
+      _type = type;
+      _valueClass = valueClass;
+    }
+
+    boolean matches(final FudgeFieldType type, final Class<?> valueClass) {
+      return (_type == type) && (_valueClass == null || _valueClass == valueClass);
+    }
+
+    boolean isConvertible() {
+      return true;
+    }
+
+    abstract Object convert(Object value);
+
+    static FieldConversion notConvertible(final FudgeFieldType type, final Class<?> valueClass) {
+      return new FieldConversion(type, valueClass) {
+        @Override
+        boolean isConvertible() {
+          return false;
+        }
+
+        @Override
+        Object convert(final Object value) {
+          throw new IllegalStateException();
+        }
+      };
+    }
+
+    static FieldConversion secondaryToPrimary(final SecondaryFieldType sourceType) {
+      return new FieldConversion(sourceType, null) {
+        @Override
+        Object convert(final Object value) {
+          return sourceType.secondaryToPrimary(value);
+        }
+      };
+    }
+
+    static FieldConversion secondaryViaPrimary(final SecondaryFieldType sourceType, final FudgeTypeConverter<Object, ?> converter) {
+      return new FieldConversion(sourceType, null) {
+        @Override
+        Object convert(final Object value) {
+          return converter.primaryToSecondary(sourceType.secondaryToPrimary(value));
+        }
+      };
+    }
+
+    static FieldConversion primaryToSecondary(final FudgeFieldType type, final Class<?> valueClass, final FudgeTypeConverter<Object, ?> converter) {
+      return new FieldConversion(type, valueClass) {
+        @Override
+        Object convert(final Object value) {
+          return converter.primaryToSecondary(value);
+        }
+      };
     }
   }
 
@@ -464,11 +649,19 @@ public class FudgeTypeDictionary {
     if (registered != null && ! newClass.equals(registered)) {
       throw new IllegalArgumentException("Class name already registered: " + oldClassName + " already mapped to " + registered);
     }
+    _loadedClasses.remove(oldClassName);
   }
 
-  final ClassLoader s_classLoader = FudgeTypeDictionary.class.getClassLoader(); //NOTE: for a given instance this is constant
-  final Map<String, Class<?>> s_loadedClasses = new ConcurrentHashMap<String, Class<?>>(); //TODO: This should be expired at some point, but it's an insignificant leak at the moment
-  
+  /**
+   * The class loader used to resolve class names, constant for a given instance.
+   */
+  private final ClassLoader _classLoader = FudgeTypeDictionary.class.getClassLoader();
+  /**
+   * The classes loaded from {@link #_classLoader} by name, with a marker for names that could not be loaded.
+   * This is cleared when it reaches {@link #MAX_CACHED_CLASS_NAMES}.
+   */
+  private final ConcurrentMap<String, Object> _loadedClasses = new ConcurrentHashMap<String, Object>();
+
   /**
    * Loads a class from a class name, handling previously registered renames.
    * 
@@ -477,19 +670,40 @@ public class FudgeTypeDictionary {
    * @throws ClassNotFoundException if unable to load
    */
   public Class<?> loadClass(String className) throws ClassNotFoundException {
+    final Class<?> loaded = findClass(className);
+    if (loaded == null) {
+      throw new ClassNotFoundException(className);
+    }
+    return loaded;
+  }
+
+  /**
+   * Finds a class from a class name, handling previously registered renames.
+   * <p>
+   * Both successful and failed resolutions are cached, so this is cheap to call
+   * repeatedly for names that cannot be loaded.
+   * 
+   * @param className  the fully qualified class name, not null
+   * @return the loaded class, null if unable to load
+   */
+  public Class<?> findClass(String className) {
     Class<?> rename = _renames.get(className);
     if (rename != null) {
       return rename;
     }
-    
-    Class<?> loaded = s_loadedClasses.get(className);
-    if (loaded != null)
-    {
-      return loaded;
+    Object loaded = _loadedClasses.get(className);
+    if (loaded == null) {
+      try {
+        loaded = _classLoader.loadClass(className);
+      } catch (ClassNotFoundException ex) {
+        loaded = CLASS_NOT_FOUND;
+      }
+      if (_loadedClasses.size() >= MAX_CACHED_CLASS_NAMES) {
+        _loadedClasses.clear();
+      }
+      _loadedClasses.put(className, loaded);
     }
-    loaded = s_classLoader.loadClass(className); //Must always return the same key, so can be cached happily
-    s_loadedClasses.put(className, loaded);
-    return s_classLoader.loadClass(className);
+    return (loaded != CLASS_NOT_FOUND) ? (Class<?>) loaded : null;
   }
 
 }
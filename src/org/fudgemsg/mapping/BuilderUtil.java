@@ -19,9 +19,18 @@ package org.fudgemsg.mapping;
 import org.apache.commons.lang.ClassUtils;
 import org.fudgemsg.FudgeField;
 import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.UnmodifiableFudgeField;
 import org.fudgemsg.types.FudgeTypeConverter;
+import org.fudgemsg.types.IndicatorType;
+import org.fudgemsg.wire.FudgeMsgEncoder;
+import org.fudgemsg.wire.FudgeStreamReader;
+import org.fudgemsg.wire.FudgeStreamReader.FudgeStreamElement;
+import org.fudgemsg.wire.types.FudgeWireType;
 
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -31,7 +40,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.WeakHashMap;
 
 import static org.fudgemsg.util.TopologicalSort.reverse;
 import static org.fudgemsg.util.TopologicalSort.topologicalSort;
@@ -66,39 +75,213 @@ import static org.fudgemsg.util.TopologicalSort.topologicalSort;
    */
   public final static int VALUE_ORDINAL = 2;
 
+  /**
+   * Oridinal for storing the entries of a List or Set of primitive wrappers as a single array,
+   * only written if enabled by {@link FudgeSerializer#setPrimitiveArrays(boolean)}
+   */
+  public final static int PRIMITIVE_ARRAY_ORDINAL = -3;
 
-  static List<Class> getTopTypes(Collection<?> objects) {
-    // number of non null objects
-    int size = 0;
+  /**
+   * Adds the entries of a collection to a message as a single primitive array field
+   * if they are all {@code Double}, all {@code Long} or all {@code Integer}
+   * and the serializer has primitive array encoding enabled.
+   * The element class is added as a type hint.
+   *
+   * @param serializer  the serializer, not null
+   * @param msg  the message to add to, not null
+   * @param hintOrdinal  the ordinal for the type hint
+   * @param objects  the collection entries, not empty
+   * @return true if the entries were added, false if disabled or the collection is not suitable
+   */
+  static boolean addPrimitiveArray(FudgeSerializer serializer, MutableFudgeMsg msg, int hintOrdinal, Collection<?> objects) {
+    if (!serializer.isPrimitiveArrays()) {
+      return false;
+    }
+    final Object array = toPrimitiveArray(objects);
+    if (array == null) {
+      return false;
+    }
+    msg.add(null, hintOrdinal, FudgeWireType.STRING, objects.iterator().next().getClass().getName());
+    msg.add(null, PRIMITIVE_ARRAY_ORDINAL, getPrimitiveArrayType(array), array);
+    return true;
+  }
+
+  /**
+   * Writes the entries of a collection to an encoder as a single primitive array field
+   * if they are all {@code Double}, all {@code Long} or all {@code Integer}
+   * and the serializer has primitive array encoding enabled.
+   * The fields written are the same as {@link #addPrimitiveArray(FudgeSerializer, MutableFudgeMsg, int, Collection)}.
+   *
+   * @param serializer  the serializer, not null
+   * @param encoder  the encoder to write to, not null
+   * @param hintOrdinal  the ordinal for the type hint
+   * @param objects  the collection entries, not empty
+   * @return true if the entries were written, false if disabled or the collection is not suitable
+   */
+  static boolean addPrimitiveArray(FudgeSerializer serializer, FudgeMsgEncoder encoder, int hintOrdinal, Collection<?> objects) {
+    if (!serializer.isPrimitiveArrays()) {
+      return false;
+    }
+    final Object array = toPrimitiveArray(objects);
+    if (array == null) {
+      return false;
+    }
+    encoder.writeField(null, hintOrdinal, FudgeWireType.STRING, objects.iterator().next().getClass().getName());
+    encoder.writeField(null, PRIMITIVE_ARRAY_ORDINAL, getPrimitiveArrayType(array), array);
+    return true;
+  }
+
+  /**
+   * Converts the entries of a collection to a primitive array.
+   *
+   * @param objects  the collection entries, not empty
+   * @return the array, null if the entries are not all {@code Double}, all {@code Long} or all {@code Integer}
+   */
+  private static Object toPrimitiveArray(Collection<?> objects) {
+    final Object first = objects.iterator().next();
+    if (first == null) {
+      return null;
+    }
+    final Class<?> elementClass = first.getClass();
+    if (elementClass != Double.class && elementClass != Long.class && elementClass != Integer.class) {
+      return null;
+    }
     for (Object o : objects) {
-      if (o != null) {
-        size += 1;
+      if (o == null || o.getClass() != elementClass) {
+        return null;
       }
     }
-    Set<Class> topTypes = new HashSet<Class>();
-    Map<Class, AtomicInteger> allTypes = new HashMap<Class, AtomicInteger>();
+    int i = 0;
+    if (elementClass == Double.class) {
+      final double[] array = new double[objects.size()];
+      for (Object o : objects) {
+        array[i++] = (Double) o;
+      }
+      return array;
+    } else if (elementClass == Long.class) {
+      final long[] array = new long[objects.size()];
+      for (Object o : objects) {
+        array[i++] = (Long) o;
+      }
+      return array;
+    } else {
+      final int[] array = new int[objects.size()];
+      for (Object o : objects) {
+        array[i++] = (Integer) o;
+      }
+      return array;
+    }
+  }
+
+  private static FudgeFieldType getPrimitiveArrayType(Object array) {
+    if (array instanceof double[]) {
+      return FudgeWireType.DOUBLE_ARRAY;
+    } else if (array instanceof long[]) {
+      return FudgeWireType.LONG_ARRAY;
+    } else {
+      return FudgeWireType.INT_ARRAY;
+    }
+  }
+
+  /**
+   * Adds the elements of a primitive array field written by {@link #addPrimitiveArray}
+   * to a collection.
+   *
+   * @param field  the array field, not null
+   * @param objects  the collection to add to, not null
+   */
+  static void addPrimitiveArrayElements(FudgeField field, Collection<Object> objects) {
+    final Object value = field.getValue();
+    if (value instanceof double[]) {
+      for (double d : (double[]) value) {
+        objects.add(d);
+      }
+    } else if (value instanceof long[]) {
+      for (long l : (long[]) value) {
+        objects.add(l);
+      }
+    } else if (value instanceof int[]) {
+      for (int i : (int[]) value) {
+        objects.add(i);
+      }
+    } else {
+      throw new IllegalArgumentException("Expected a primitive array but found " + field);
+    }
+  }
+
+
+  /**
+   * The cached superclasses and interfaces of each class, including the class itself.
+   * The classes are weakly keyed and the types softly held so the cache does not keep
+   * class loaders alive. Access is synchronized on the map.
+   */
+  private static final Map<Class<?>, SoftReference<Set<Class<?>>>> s_allTypesCache = new WeakHashMap<Class<?>, SoftReference<Set<Class<?>>>>();
+  /**
+   * The cached top types of collections whose entries all have the same class, keyed and
+   * held as {@link #s_allTypesCache}. Access is synchronized on the map.
+   */
+  private static final Map<Class<?>, SoftReference<List<Class<?>>>> s_topTypesCache = new WeakHashMap<Class<?>, SoftReference<List<Class<?>>>>();
+
+  /**
+   * Gets the common types of the non-null entries of a collection, most specific first,
+   * for use as type hints.
+   * <p>
+   * The result depends only on the distinct classes of the entries. It is cached when
+   * every entry has the same class, otherwise it is resolved from the cached types of each class.
+   *
+   * @param objects  the collection entries, not null
+   * @return the top types, not null, not to be modified
+   */
+  static List<Class<?>> getTopTypes(Collection<?> objects) {
+    // usually every entry has the same class
+    Class<?> first = null;
+    Set<Class<?>> classes = null;
     for (Object o : objects) {
       if (o != null) {
-        allTypes.put(o.getClass(), new AtomicInteger());
-        for (Class clazz : (List<Class>) ClassUtils.getAllSuperclasses(o.getClass())) {
-          allTypes.put(clazz, new AtomicInteger());
+        final Class<?> clazz = o.getClass();
+        if (first == null) {
+          first = clazz;
+        } else if (clazz != first) {
+          if (classes == null) {
+            classes = new HashSet<Class<?>>();
+            classes.add(first);
+          }
+          classes.add(clazz);
         }
-        for (Class clazz : (List<Class>) ClassUtils.getAllInterfaces(o.getClass())) {
-          allTypes.put(clazz, new AtomicInteger());
+      }
+    }
+    if (first == null) {
+      return Collections.emptyList();
+    }
+    if (classes != null) {
+      return Collections.unmodifiableList(resolveTopTypes(classes));
+    }
+    synchronized (s_topTypesCache) {
+      final SoftReference<List<Class<?>>> cached = s_topTypesCache.get(first);
+      if (cached != null) {
+        final List<Class<?>> topTypes = cached.get();
+        if (topTypes != null) {
+          return topTypes;
         }
       }
     }
+    final List<Class<?>> topTypes = Collections.unmodifiableList(resolveTopTypes(Collections.<Class<?>>singleton(first)));
+    synchronized (s_topTypesCache) {
+      s_topTypesCache.put(first, new SoftReference<List<Class<?>>>(topTypes));
+    }
+    return topTypes;
+  }
 
-    for (Class allType : allTypes.keySet()) {
-      for (Object o : objects) {
-        if (o != null && allType.isAssignableFrom(o.getClass())) {
-          if (allTypes.get(allType).incrementAndGet() == size) {
-            topTypes.add(allType);
-          }
-        }
+  private static List<Class<?>> resolveTopTypes(Set<Class<?>> classes) {
+    Set<Class<?>> topTypes = null;
+    for (Class<?> clazz : classes) {
+      if (topTypes == null) {
+        topTypes = new HashSet<Class<?>>(getAllTypes(clazz));
+      } else {
+        topTypes.retainAll(getAllTypes(clazz));
       }
     }
-    Map<Class, Set<Class>> typeHierarchy = resolveTypeHierarchy(topTypes);
+    Map<Class<?>, Set<Class<?>>> typeHierarchy = resolveTypeHierarchy(topTypes);
     typeHierarchy.remove(Object.class);
     typeHierarchy.remove(Serializable.class);
     typeHierarchy.remove(Comparable.class);
@@ -106,21 +289,43 @@ import static org.fudgemsg.util.TopologicalSort.topologicalSort;
     return reverse(topologicalSort(typeHierarchy));
   }
 
-  private static Map<Class, Set<Class>> resolveTypeHierarchy(Collection<Class> classes) {
-    Map<Class, Set<Class>> hierarchy = new HashMap<Class, Set<Class>>();
-    Set<Class> addedTypes = resolveTypeHierarchy(classes, hierarchy);
+  @SuppressWarnings("unchecked")
+  private static Set<Class<?>> getAllTypes(Class<?> clazz) {
+    synchronized (s_allTypesCache) {
+      final SoftReference<Set<Class<?>>> cached = s_allTypesCache.get(clazz);
+      if (cached != null) {
+        final Set<Class<?>> allTypes = cached.get();
+        if (allTypes != null) {
+          return allTypes;
+        }
+      }
+    }
+    Set<Class<?>> allTypes = new HashSet<Class<?>>();
+    allTypes.add(clazz);
+    allTypes.addAll((List<Class<?>>) ClassUtils.getAllSuperclasses(clazz));
+    allTypes.addAll((List<Class<?>>) ClassUtils.getAllInterfaces(clazz));
+    allTypes = Collections.unmodifiableSet(allTypes);
+    synchronized (s_allTypesCache) {
+      s_allTypesCache.put(clazz, new SoftReference<Set<Class<?>>>(allTypes));
+    }
+    return allTypes;
+  }
+
+  private static Map<Class<?>, Set<Class<?>>> resolveTypeHierarchy(Collection<Class<?>> classes) {
+    Map<Class<?>, Set<Class<?>>> hierarchy = new HashMap<Class<?>, Set<Class<?>>>();
+    Set<Class<?>> addedTypes = resolveTypeHierarchy(classes, hierarchy);
     while (addedTypes.size() > 0) {
       addedTypes = resolveTypeHierarchy(addedTypes, hierarchy);
     }
     return hierarchy;
   }
 
-  private static Set<Class> resolveTypeHierarchy(Collection<Class> classes, Map<Class, Set<Class>> hierarchy) {
-    Set<Class> addedTypes = new HashSet<Class>();
-    for (Class cls : classes) {
-      Set<Class> types = hierarchy.get(cls);
+  private static Set<Class<?>> resolveTypeHierarchy(Collection<Class<?>> classes, Map<Class<?>, Set<Class<?>>> hierarchy) {
+    Set<Class<?>> addedTypes = new HashSet<Class<?>>();
+    for (Class<?> cls : classes) {
+      Set<Class<?>> types = hierarchy.get(cls);
       if (types == null) {
-        types = new HashSet<Class>();
+        types = new HashSet<Class<?>>();
         hierarchy.put(cls, types);
       }
       Collections.addAll(types, cls.getInterfaces());
@@ -175,4 +380,97 @@ import static org.fudgemsg.util.TopologicalSort.topologicalSort;
     return null;
   }
 
+  /**
+   * Reads the entries of a list or set from a stream.
+   * <p>
+   * This is the streaming equivalent of the list and set builders. Type hints are sent
+   * before the entries, so sub-message entries are streamed to the builder for the hinted type.
+   *
+   * @param deserializer  the deserializer, not null
+   * @param reader  the reader positioned at the start of the message, not null
+   * @param collection  the collection to add to, not null
+   * @param hintOrdinal  the ordinal of the type hints
+   * @param entryOrdinal  the ordinal of the entries, null for none
+   * @return the collection, or the object referenced if the message is a reference
+   */
+  static Object streamCollection(FudgeDeserializer deserializer, FudgeStreamReader reader, Collection<Object> collection, int hintOrdinal, Integer entryOrdinal) {
+    final List<FudgeField> typeHints = new ArrayList<FudgeField>();
+    boolean resolved = false;
+    FudgeObjectBuilder<?> entryBuilder = null;
+    FudgeTypeConverter typeConverter = null;
+    Object reference = null;
+    while (reader.hasNext()) {
+      final FudgeStreamElement element = reader.next();
+      if (element == FudgeStreamElement.SUBMESSAGE_FIELD_END) {
+        break;
+      }
+      final Integer ordinal = reader.getFieldOrdinal();
+      if (element == FudgeStreamElement.SIMPLE_FIELD && ordinal != null) {
+        final Object value = reader.getFieldValue();
+        if (ordinal == hintOrdinal) {
+          typeHints.add(UnmodifiableFudgeField.of(reader.getFieldType(), value, reader.getFieldName(), ordinal));
+          continue;
+        } else if (ordinal == PRIMITIVE_ARRAY_ORDINAL) {
+          addPrimitiveArrayElements(UnmodifiableFudgeField.of(reader.getFieldType(), value, reader.getFieldName(), ordinal), collection);
+          continue;
+        } else if (ordinal == FudgeSerializer.OBJECT_ID_ORDINAL) {
+          deserializer.registerObject((Number) value, collection);
+          continue;
+        } else if (ordinal == FudgeSerializer.TYPES_HEADER_ORDINAL && value instanceof Number) {
+          reference = deserializer.getReferencedObject((Number) value);
+          continue;
+        }
+      }
+      if ((ordinal == null) ? (entryOrdinal != null) : !ordinal.equals(entryOrdinal)) {
+        throw new IllegalArgumentException("Sub-message interpretted as a collection but found invalid ordinal " + ordinal);
+      }
+      if (!resolved) {
+        entryBuilder = findObjectBuilder(deserializer, typeHints);
+        typeConverter = findTypeConverter(deserializer, typeHints);
+        resolved = true;
+      }
+      collection.add(streamEntry(deserializer, reader, element, entryBuilder, typeConverter));
+    }
+    return (reference != null) ? reference : collection;
+  }
+
+  /**
+   * Reads the current entry of a collection or map from a stream.
+   *
+   * @param deserializer  the deserializer, not null
+   * @param reader  the reader positioned at the entry, not null
+   * @param element  the current stream element, not null
+   * @param entryBuilder  the builder from the type hints, null if none
+   * @param typeConverter  the type converter from the type hints, null if none
+   * @return the entry, null for an indicator
+   */
+  static Object streamEntry(FudgeDeserializer deserializer, FudgeStreamReader reader, FudgeStreamElement element,
+      FudgeObjectBuilder<?> entryBuilder, FudgeTypeConverter typeConverter) {
+    final Object obj;
+    if (element == FudgeStreamElement.SUBMESSAGE_FIELD_START) {
+      if (entryBuilder != null) {
+        obj = deserializer.fudgeStreamToObject(entryBuilder, reader);
+      } else {
+        final String name = reader.getFieldName();
+        final Integer ordinal = reader.getFieldOrdinal();
+        final FudgeMsg message = deserializer.fudgeStreamToMessage(reader);
+        if (typeConverter != null) {
+          obj = typeConverter.primaryToSecondary(message);
+        } else {
+          obj = deserializer.fieldValueToObject(UnmodifiableFudgeField.of(FudgeWireType.SUB_MESSAGE, message, name, ordinal));
+        }
+      }
+    } else {
+      final Object value = reader.getFieldValue();
+      if (value instanceof IndicatorType) {
+        obj = null;
+      } else if (typeConverter != null) {
+        obj = typeConverter.primaryToSecondary(value);
+      } else {
+        obj = deserializer.fieldValueToObject(UnmodifiableFudgeField.of(reader.getFieldType(), value, reader.getFieldName(), reader.getFieldOrdinal()));
+      }
+    }
+    return (obj instanceof IndicatorType) ? null : obj;
+  }
+
 }
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgFactory;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.UnmodifiableFudgeField;
+import org.fudgemsg.wire.types.FudgeWireType;
+
+/**
+ * Dictionary of the class names sent on a stream of serialized objects.
+ * <p>
+ * The first time a class name appears in a type header it is sent in full and assigned
+ * the next index. Later headers with the same name are replaced by a field at
+ * {@link FudgeSerializer#CLASS_NAME_INDEX_ORDINAL} holding just the index. The writer and
+ * reader each hold a dictionary and visit the fields of every message on the stream in
+ * the same order, so the indices are never sent explicitly.
+ * <p>
+ * A message read without a dictionary still carries the full name of every class that
+ * had not been seen before on the stream; index fields are ignored by the deserializer
+ * so objects may still be built if the receiving type is known.
+ * <p>
+ * This class is not thread-safe.
+ */
+/* package */final class ClassNameDictionary {
+
+  /**
+   * The index of each class name seen.
+   */
+  private final Map<String, Integer> _indexByName = new HashMap<String, Integer>();
+  /**
+   * The class names seen, in index order.
+   */
+  private final List<String> _names = new ArrayList<String>();
+
+  /**
+   * Replaces type headers that have already been sent with their indices.
+   *
+   * @param message  the message to compress, not null
+   * @param factory  the factory for any replacement messages, not null
+   * @return the compressed message, the original message if unchanged
+   */
+  /* package */FudgeMsg compress(final FudgeMsg message, final FudgeMsgFactory factory) {
+    MutableFudgeMsg copy = null;
+    int index = 0;
+    for (FudgeField field : message) {
+      FudgeField replacement = null;
+      final Object value = field.getValue();
+      if (isTypeHeader(field)) {
+        final Integer nameIndex = _indexByName.get(value);
+        if (nameIndex != null) {
+          replacement = UnmodifiableFudgeField.of(FudgeWireType.INT, nameIndex, null, FudgeSerializer.CLASS_NAME_INDEX_ORDINAL);
+        } else {
+          define((String) value);
+        }
+      } else if (value instanceof FudgeMsg) {
+        final FudgeMsg submsg = compress((FudgeMsg) value, factory);
+        if (submsg != value) {
+          replacement = UnmodifiableFudgeField.of(FudgeWireType.SUB_MESSAGE, submsg, field.getName(), field.getOrdinal());
+        }
+      }
+      copy = copyField(copy, message, index++, (replacement != null) ? replacement : field, replacement != null, factory);
+    }
+    return (copy != null) ? copy : message;
+  }
+
+  /**
+   * Replaces class name indices with the type headers they represent.
+   * Indices that are not in the dictionary are dropped.
+   *
+   * @param message  the message to expand, not null
+   * @param factory  the factory for any replacement messages, not null
+   * @return the expanded message, the original message if unchanged
+   */
+  /* package */FudgeMsg expand(final FudgeMsg message, final FudgeMsgFactory factory) {
+    MutableFudgeMsg copy = null;
+    int index = 0;
+    for (FudgeField field : message) {
+      FudgeField output = field;
+      final Object value = field.getValue();
+      if (isTypeHeader(field)) {
+        if (!_indexByName.containsKey(value)) {
+          define((String) value);
+        }
+      } else if (isIndex(field)) {
+        final int nameIndex = ((Number) value).intValue();
+        if ((nameIndex >= 0) && (nameIndex < _names.size())) {
+          output = UnmodifiableFudgeField.of(FudgeWireType.STRING, _names.get(nameIndex), null, FudgeSerializer.TYPES_HEADER_ORDINAL);
+        } else {
+          // index defined by a message not seen by this dictionary
+          output = null;
+        }
+      } else if (value instanceof FudgeMsg) {
+        final FudgeMsg submsg = expand((FudgeMsg) value, factory);
+        if (submsg != value) {
+          output = UnmodifiableFudgeField.of(FudgeWireType.SUB_MESSAGE, submsg, field.getName(), field.getOrdinal());
+        }
+      }
+      copy = copyField(copy, message, index++, output, output != field, factory);
+    }
+    return (copy != null) ? copy : message;
+  }
+
+  /**
+   * Clears the dictionary, for example when starting a new stream.
+   */
+  /* package */void clear() {
+    _indexByName.clear();
+    _names.clear();
+  }
+
+  //-------------------------------------------------------------------------
+  private void define(final String name) {
+    _indexByName.put(name, _names.size());
+    _names.add(name);
+  }
+
+  private static boolean isTypeHeader(final FudgeField field) {
+    final Integer ordinal = field.getOrdinal();
+    return (ordinal != null) && (ordinal.intValue() == FudgeSerializer.TYPES_HEADER_ORDINAL) && (field.getValue() instanceof String);
+  }
+
+  private static boolean isIndex(final FudgeField field) {
+    final Integer ordinal = field.getOrdinal();
+    return (ordinal != null) && (ordinal.intValue() == FudgeSerializer.CLASS_NAME_INDEX_ORDINAL) && (field.getValue() instanceof Number);
+  }
+
+  /**
+   * Appends a field to the copy of a message, creating the copy the first time a field changes.
+   */
+  private static MutableFudgeMsg copyField(MutableFudgeMsg copy, final FudgeMsg message, final int index, final FudgeField output, final boolean changed, final FudgeMsgFactory factory) {
+    if ((copy == null) && changed) {
+      copy = factory.newMessage();
+      int i = 0;
+      for (FudgeField previous : message) {
+        if (i++ == index) {
+          break;
+        }
+        copy.add(previous);
+      }
+    }
+    if ((copy != null) && (output != null)) {
+      copy.add(output);
+    }
+    return copy;
+  }
+
+}
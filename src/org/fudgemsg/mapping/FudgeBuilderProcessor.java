@@ -0,0 +1,504 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import java.beans.Introspector;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor generating Fudge builders for beans annotated with {@link GenerateFudgeBuilder}.
+ * <p>
+ * The properties of the bean are found from its public getter and setter methods as by
+ * {@link java.beans.Introspector}, and are written and read in the same order and with the same
+ * field names and ordinals as the reflection based builder, so the two are interchangeable.
+ * The generated builder implements {@link FudgeBuilder} and {@link FudgeStreamMessageBuilder}.
+ * <p>
+ * The names of the builders generated are listed in the resource {@link #REGISTRY_RESOURCE},
+ * which is read by {@link FudgeObjectDictionary#addAllGeneratedBuilders()}.
+ * <p>
+ * The processor is registered as a service so that it is run by the compiler whenever this
+ * library is on the processor path.
+ */
+@SupportedAnnotationTypes("org.fudgemsg.mapping.GenerateFudgeBuilder")
+public class FudgeBuilderProcessor extends AbstractProcessor {
+
+  /**
+   * The resource listing the generated builders, one class name per line.
+   */
+  public static final String REGISTRY_RESOURCE = "META-INF/fudgemsg/generated-builders";
+  /**
+   * The suffix added to the bean name to name the generated builder.
+   */
+  private static final String BUILDER_SUFFIX = "FudgeBuilder";
+
+  /**
+   * The names of the builders generated, in order.
+   */
+  private final Set<String> _generated = new LinkedHashSet<String>();
+
+  /**
+   * Gets the name of the builder generated for a bean.
+   * <p>
+   * The builder is in the package of the bean. Nested class names are joined by underscores.
+   *
+   * @param beanClassName  the binary name of the bean class, not null
+   * @return the binary name of the builder class, not null
+   */
+  public static String getBuilderClassName(final String beanClassName) {
+    final int dot = beanClassName.lastIndexOf('.');
+    return beanClassName.substring(0, dot + 1) + beanClassName.substring(dot + 1).replace('$', '_') + BUILDER_SUFFIX;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(GenerateFudgeBuilder.class)) {
+      if (element.getKind() != ElementKind.CLASS) {
+        error(element, "@GenerateFudgeBuilder can only be used on a class");
+        continue;
+      }
+      final TypeElement bean = (TypeElement) element;
+      if (checkBean(bean)) {
+        generate(bean, findProperties(bean));
+      }
+    }
+    if (roundEnv.processingOver() && !_generated.isEmpty()) {
+      writeRegistry();
+    }
+    return true;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Checks that generated code can create the bean.
+   */
+  private boolean checkBean(final TypeElement bean) {
+    if (!isPublic(bean)) {
+      error(bean, "Class must be public, and nested classes static, to generate a Fudge builder");
+      return false;
+    }
+    if (bean.getModifiers().contains(Modifier.ABSTRACT)) {
+      error(bean, "Class must not be abstract to generate a Fudge builder");
+      return false;
+    }
+    if (!bean.getTypeParameters().isEmpty()) {
+      error(bean, "Class must not be generic to generate a Fudge builder");
+      return false;
+    }
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(bean.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)
+          && constructor.getThrownTypes().isEmpty()) {
+        return true;
+      }
+    }
+    error(bean, "Class must have a public no-arg constructor to generate a Fudge builder");
+    return false;
+  }
+
+  /**
+   * Finds the properties of the bean, sorted by name as by the introspector.
+   */
+  private List<Property> findProperties(final TypeElement bean) {
+    final Map<String, Property> properties = new TreeMap<String, Property>();
+    final List<ExecutableElement> setters = new ArrayList<ExecutableElement>();
+    for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(bean))) {
+      final Set<Modifier> modifiers = method.getModifiers();
+      if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC) || !method.getThrownTypes().isEmpty()) {
+        continue;
+      }
+      final String methodName = method.getSimpleName().toString();
+      final TypeMirror returnType = method.getReturnType();
+      if (method.getParameters().isEmpty()) {
+        String name = null;
+        if (methodName.startsWith("get") && methodName.length() > 3 && returnType.getKind() != TypeKind.VOID) {
+          name = Introspector.decapitalize(methodName.substring(3));
+        } else if (methodName.startsWith("is") && methodName.length() > 2 && returnType.getKind() == TypeKind.BOOLEAN) {
+          name = Introspector.decapitalize(methodName.substring(2));
+        }
+        if (name != null && !name.equals("class")) {
+          final Property existing = properties.get(name);
+          // the introspector prefers "is" to "get" for a boolean
+          if (existing == null || methodName.startsWith("is")) {
+            properties.put(name, new Property(name, method, returnType));
+          }
+        }
+      } else if (method.getParameters().size() == 1 && methodName.startsWith("set") && methodName.length() > 3
+          && returnType.getKind() == TypeKind.VOID) {
+        setters.add(method);
+      }
+    }
+    for (ExecutableElement setter : setters) {
+      final String name = Introspector.decapitalize(setter.getSimpleName().toString().substring(3));
+      final TypeMirror type = setter.getParameters().get(0).asType();
+      final Property property = properties.get(name);
+      if (property == null) {
+        properties.put(name, new Property(name, null, type));
+        properties.get(name)._write = setter;
+      } else if (property._write == null && processingEnv.getTypeUtils().isSameType(property._type, type)) {
+        property._write = setter;
+      }
+    }
+    final List<Property> result = new ArrayList<Property>();
+    for (Property property : properties.values()) {
+      if (property.resolveAnnotations() && isAccessible(property._type)) {
+        result.add(property);
+      }
+    }
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes the source of the builder for a bean.
+   */
+  private void generate(final TypeElement bean, final List<Property> properties) {
+    final String beanType = processingEnv.getElementUtils().getBinaryName(bean).toString();
+    final String builderName = getBuilderClassName(beanType);
+    final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(bean);
+    final String beanName = bean.getQualifiedName().toString();
+    try {
+      final Writer out = processingEnv.getFiler().createSourceFile(builderName, bean).openWriter();
+      try {
+        final PrintWriter pw = new PrintWriter(out);
+        if (!pkg.isUnnamed()) {
+          pw.println("package " + pkg.getQualifiedName() + ";");
+          pw.println();
+        }
+        pw.println("/**");
+        pw.println(" * Fudge builder for {@link " + beanName + "}, generated by {@link " + getClass().getName() + "}.");
+        pw.println(" */");
+        pw.println("@org.fudgemsg.mapping.FudgeBuilderFor(" + beanName + ".class)");
+        pw.println("public final class " + builderName.substring(builderName.lastIndexOf('.') + 1)
+            + " implements org.fudgemsg.mapping.FudgeBuilder<" + beanName + ">, org.fudgemsg.mapping.FudgeStreamMessageBuilder<" + beanName + "> {");
+        pw.println();
+        generateBuildMessage(pw, beanName, properties, false);
+        generateBuildMessage(pw, beanName, properties, true);
+        generateBuildObject(pw, beanName, properties);
+        pw.println("}");
+        pw.flush();
+      } finally {
+        out.close();
+      }
+      _generated.add(builderName);
+    } catch (IOException ex) {
+      error(bean, "Unable to write Fudge builder: " + ex.getMessage());
+    }
+  }
+
+  private void generateBuildMessage(final PrintWriter pw, final String beanName, final List<Property> properties, final boolean stream) {
+    pw.println("  @Override");
+    if (stream) {
+      pw.println("  public void buildMessage(final org.fudgemsg.mapping.FudgeSerializer serializer, final " + beanName
+          + " object, final org.fudgemsg.wire.FudgeMsgEncoder encoder) {");
+    } else {
+      pw.println("  public org.fudgemsg.MutableFudgeMsg buildMessage(final org.fudgemsg.mapping.FudgeSerializer serializer, final " + beanName + " object) {");
+      pw.println("    final org.fudgemsg.MutableFudgeMsg message = serializer.newMessage();");
+    }
+    for (Property property : properties) {
+      if (property._read == null) {
+        continue;
+      }
+      pw.println("    serializer." + (stream ? "addToStreamWithClassHeaders(encoder, " : "addToMessageWithClassHeaders(message, ")
+          + property.nameLiteral() + ", " + property.ordinalLiteral() + ", object." + property._read.getSimpleName() + "(), "
+          + property.typeLiteral() + ".class);");
+    }
+    if (!stream) {
+      pw.println("    return message;");
+    }
+    pw.println("  }");
+    pw.println();
+  }
+
+  private void generateBuildObject(final PrintWriter pw, final String beanName, final List<Property> properties) {
+    pw.println("  @Override");
+    pw.println("  @SuppressWarnings(\"unchecked\")");
+    pw.println("  public " + beanName + " buildObject(final org.fudgemsg.mapping.FudgeDeserializer deserializer, final org.fudgemsg.FudgeMsg message) {");
+    pw.println("    final " + beanName + " object = new " + beanName + "();");
+    pw.println("    deserializer.registerObject(message, object);");
+    pw.println("    final boolean[] written = new boolean[" + properties.size() + "];");
+    pw.println("    try {");
+    pw.println("      for (org.fudgemsg.FudgeField field : message) {");
+    // as JavaBeanBuilder, a field sets the property with its ordinal and then the property with its name
+    pw.println("        final Integer ordinal = field.getOrdinal();");
+    pw.println("        if (ordinal != null) {");
+    pw.println("          switch (ordinal.intValue()) {");
+    final Set<Integer> ordinals = new LinkedHashSet<Integer>();
+    for (int i = 0; i < properties.size(); i++) {
+      final Property property = properties.get(i);
+      if (property._write != null && property._ordinal != null && ordinals.add(property._ordinal)) {
+        pw.println("            case " + property._ordinal + ":");
+        generateSetProperty(pw, "              ", properties, i);
+        pw.println("              break;");
+      }
+    }
+    pw.println("          }");
+    pw.println("        }");
+    pw.println("        final String name = field.getName();");
+    pw.println("        if (name != null) {");
+    String separator = "          ";
+    final Set<String> names = new LinkedHashSet<String>();
+    for (int i = 0; i < properties.size(); i++) {
+      final Property property = properties.get(i);
+      if (property._write != null && property._ordinal == null && names.add(property._name)) {
+        pw.println(separator + "if (name.equals(" + property.nameLiteral() + ")) {");
+        generateSetProperty(pw, "            ", properties, i);
+        separator = "          } else ";
+      }
+    }
+    if (!names.isEmpty()) {
+      pw.println("          }");
+    }
+    pw.println("        }");
+    pw.println("      }");
+    pw.println("    } catch (IllegalArgumentException ex) {");
+    pw.println("      throw new org.fudgemsg.FudgeRuntimeException(\"Unable to deserialise " + beanName + "\", ex);");
+    pw.println("    }");
+    pw.println("    return object;");
+    pw.println("  }");
+    pw.println();
+    pw.println("  private static <T> T notNull(final T value, final String property) {");
+    pw.println("    if (value == null) {");
+    pw.println("      throw new IllegalArgumentException(\"Null value for primitive property \" + property);");
+    pw.println("    }");
+    pw.println("    return value;");
+    pw.println("  }");
+    pw.println();
+  }
+
+  private void generateSetProperty(final PrintWriter pw, final String indent, final List<Property> properties, final int index) {
+    final Property property = properties.get(index);
+    String value = "deserializer.fieldValueToObject(" + property.typeLiteral() + ".class, field)";
+    if (property._type.getKind().isPrimitive()) {
+      value = "notNull(" + value + ", " + processingEnv.getElementUtils().getConstantExpression(property._propertyName) + ")";
+    }
+    pw.println(indent + "if (!written[" + index + "]) {");
+    pw.println(indent + "  written[" + index + "] = true;");
+    pw.println(indent + "  object." + property._write.getSimpleName() + "(" + value + ");");
+    pw.println(indent + "}");
+  }
+
+  /**
+   * Writes the resource listing the builders generated.
+   * <p>
+   * Builders listed by an earlier compilation into the same output are kept if their
+   * class files are still present, so that incremental compilation of only some beans
+   * does not drop the others from the registry.
+   */
+  private void writeRegistry() {
+    final Set<String> builders = new LinkedHashSet<String>();
+    readRegistry(builders);
+    builders.addAll(_generated);
+    try {
+      final FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", REGISTRY_RESOURCE);
+      final PrintWriter pw = new PrintWriter(resource.openWriter());
+      try {
+        for (String builderName : builders) {
+          pw.println(builderName);
+        }
+      } finally {
+        pw.close();
+      }
+    } catch (IOException ex) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + REGISTRY_RESOURCE + ": " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Reads the builders listed by an earlier compilation whose class files still exist.
+   *
+   * @param builders  the set to add the builder names to, not null
+   */
+  private void readRegistry(final Set<String> builders) {
+    final List<String> listed = new ArrayList<String>();
+    try {
+      final FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", REGISTRY_RESOURCE);
+      final BufferedReader reader = new BufferedReader(resource.openReader(true));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          line = line.trim();
+          if (line.length() > 0) {
+            listed.add(line);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException ex) {
+      // no earlier registry
+      return;
+    }
+    for (String builderName : listed) {
+      if (classFileExists(builderName)) {
+        builders.add(builderName);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the class file for a class exists in the class output.
+   *
+   * @param className  the binary name of the class, not null
+   * @return true if the class file exists
+   */
+  private boolean classFileExists(final String className) {
+    final int dot = className.lastIndexOf('.');
+    final String packageName = (dot < 0) ? "" : className.substring(0, dot);
+    try {
+      final FileObject classFile = processingEnv.getFiler().getResource(
+          StandardLocation.CLASS_OUTPUT, packageName, className.substring(dot + 1) + ".class");
+      classFile.openInputStream().close();
+      return true;
+    } catch (IOException ex) {
+      return false;
+    } catch (IllegalArgumentException ex) {
+      return false;
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  private static boolean isPublic(Element element) {
+    while (element.getKind().isClass() || element.getKind().isInterface()) {
+      if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+        return false;
+      }
+      final Element enclosing = element.getEnclosingElement();
+      if (enclosing.getKind() != ElementKind.PACKAGE && !element.getModifiers().contains(Modifier.STATIC)) {
+        return false;
+      }
+      element = enclosing;
+    }
+    return true;
+  }
+
+  /**
+   * Checks that generated code can refer to a property type.
+   */
+  private boolean isAccessible(final TypeMirror type) {
+    switch (type.getKind()) {
+      case ARRAY:
+        return isAccessible(((ArrayType) type).getComponentType());
+      case DECLARED:
+        return isPublic(((DeclaredType) type).asElement());
+      case TYPEVAR:
+        return isAccessible(processingEnv.getTypeUtils().erasure(type));
+      default:
+        return type.getKind().isPrimitive();
+    }
+  }
+
+  private void error(final Element element, final String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * A bean property.
+   */
+  private final class Property {
+    private final String _propertyName;
+    private String _name;
+    private Integer _ordinal;
+    private final ExecutableElement _read;
+    private ExecutableElement _write;
+    private final TypeMirror _type;
+    private Property(final String name, final ExecutableElement read, final TypeMirror type) {
+      _propertyName = name;
+      _name = name;
+      _read = read;
+      _type = type;
+    }
+    /**
+     * Applies the annotations on the setter and then the getter as by JavaBeanBuilder.
+     * @return false if the property is transient
+     */
+    private boolean resolveAnnotations() {
+      for (ExecutableElement method : new ExecutableElement[] {_write, _read }) {
+        if (method == null) {
+          continue;
+        }
+        if (isTransient(method)) {
+          return false;
+        }
+        final FudgeFieldName annoName = method.getAnnotation(FudgeFieldName.class);
+        if (annoName != null) {
+          _name = annoName.value();
+        }
+        final FudgeFieldOrdinal annoOrdinal = method.getAnnotation(FudgeFieldOrdinal.class);
+        if (annoOrdinal != null) {
+          _ordinal = (int) annoOrdinal.value();
+          if (annoOrdinal.noFieldName()) {
+            _name = null;
+          }
+        }
+      }
+      return true;
+    }
+    private boolean isTransient(final ExecutableElement method) {
+      for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+        final String name = ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+        if (name.equals(FudgeTransient.class.getName()) || name.equals("javax.persistence.Transient")) {
+          return true;
+        }
+      }
+      return false;
+    }
+    private String nameLiteral() {
+      return (_name != null) ? processingEnv.getElementUtils().getConstantExpression(_name) : "null";
+    }
+    private String ordinalLiteral() {
+      return (_ordinal != null) ? "Integer.valueOf(" + _ordinal + ")" : "null";
+    }
+    private String typeLiteral() {
+      return processingEnv.getTypeUtils().erasure(_type).toString();
+    }
+  }
+
+}
@@ -35,6 +35,7 @@ import com.mongodb.DBObject;
  * Building a Fudge message:
  * <ul>
  *   <li>If the object has a suitable {@code HasFudgeBuilder} annotation, that will be used
+ *   <li>If the object has a {@code GenerateFudgeBuilder} annotation, the generated builder will be used
  *   <li>If the object has a public {@code toFudgeMsg} method, that will be used
  *   <li>If the object is an array or enum, that will be used
  *   <li>Any registered dynamic builders are used
@@ -44,6 +45,7 @@ import com.mongodb.DBObject;
  * Building an object:
  * <ul>
  *   <li>If the object has a suitable {@code HasFudgeBuilder} annotation, that will be used
+ *   <li>If the object has a {@code GenerateFudgeBuilder} annotation, the generated builder will be used
  *   <li>If the object has a public {@code fromFudgeMsg} method, that will be used
  *   <li>If the object has a public constructor that takes a {@link FudgeMsg}, that will be used
  *   <li>If the object is an array or enum, that will be used
@@ -143,6 +145,9 @@ public class FudgeDefaultBuilderFactory implements FudgeBuilderFactory {
     if ((builder = createObjectBuilderFromAnnotation(clazz)) != null) {
       return builder;
     }
+    if ((builder = createGeneratedBuilder(clazz)) != null) {
+      return builder;
+    }
     if ((builder = FromFudgeMsgObjectBuilder.create(clazz)) != null) {
       return builder;
     }
@@ -222,6 +227,9 @@ public class FudgeDefaultBuilderFactory implements FudgeBuilderFactory {
     if ((builder = createMessageBuilderFromAnnotation(clazz)) != null) {
       return builder;
     }
+    if ((builder = createGeneratedBuilder(clazz)) != null) {
+      return builder;
+    }
     if ((builder = ToFudgeMsgMessageBuilder.create(clazz)) != null) {
       return builder;
     }
@@ -276,6 +284,34 @@ public class FudgeDefaultBuilderFactory implements FudgeBuilderFactory {
     return result;
   }
 
+  /**
+   * Attempts to load the builder generated for a type with the {@code GenerateFudgeBuilder} annotation.
+   * <p>
+   * The builder is generated at compile time by {@link FudgeBuilderProcessor}.
+   * If the processor was not run no builder is found and a reflection based builder will be used.
+   * 
+   * @param <T> Java type of the class a builder is requested for
+   * @param clazz  the Java class a builder is requested for, not null
+   * @return the builder, null if none was generated
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> FudgeBuilder<T> createGeneratedBuilder(final Class<T> clazz) {
+    if (!clazz.isAnnotationPresent(GenerateFudgeBuilder.class)) {
+      return null;
+    }
+    final Class<?> builderClass;
+    try {
+      builderClass = Class.forName(FudgeBuilderProcessor.getBuilderClassName(clazz.getName()), true, clazz.getClassLoader());
+    } catch (ClassNotFoundException ex) {
+      return null;
+    }
+    try {
+      return (FudgeBuilder<T>) builderClass.newInstance();
+    } catch (Exception e) {
+      throw new FudgeRuntimeException("Unable to instantiate generated builder class " + builderClass, e);
+    }
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public <T> void addGenericBuilder (final Class<T> clazz, final FudgeBuilder<T> builder) {
@@ -21,12 +21,15 @@ import java.util.List;
 import java.util.Map;
 
 import org.fudgemsg.*;
+import org.fudgemsg.wire.FudgeStreamReader;
+import org.fudgemsg.wire.types.FudgeWireType;
 
 /**
  * Deserializer used to control the conversion of a Fudge message to an object structure.
  * <p/>
  * This is the central point for Fudge message to Java Object deserialization on a given stream.
- * Note that the deserializer cannot process cyclic object graphs at present.
+ * Object references sent by a {@link FudgeSerializer} with reference tracking enabled are
+ * resolved to the object previously deserialized.
  * <p/>
  * The object builder framework methods all take a deserialization context so that a
  * deserializer can refer any sub-messages to this for construction if it does not have
@@ -44,6 +47,10 @@ public class FudgeDeserializer {
    * The buffer for handling object graph cycles.
    */
   private final SerializationBuffer _serialisationBuffer = new SerializationBuffer();
+  /**
+   * The time spent in timed builder calls, used to separate the self time of nested objects.
+   */
+  private long _timedNanos;
 
   /**
    * Creates a new context based on a parent context.
@@ -165,6 +172,11 @@ public class FudgeDeserializer {
             case BuilderUtil.KEY_ORDINAL:
               keyOrdinalPresent =true;
               break;
+            case BuilderUtil.PRIMITIVE_ARRAY_ORDINAL:
+              // list or set entries, distinguished by the type hint
+              break;
+            case FudgeSerializer.OBJECT_ID_ORDINAL:
+              break;
             default:
               // not a list/set/map
               return message;
@@ -194,16 +206,11 @@ public class FudgeDeserializer {
       for (FudgeField type : types) {
         final Object obj = type.getValue();
         if (obj instanceof Number) {
-          throw new UnsupportedOperationException("Serialisation framework does not support back/forward references");
+          return getSerialisationBuffer().getObject(((Number) obj).intValue());
         } else if (obj instanceof String) {
-          try {
-            Class<?> cls = getFudgeContext().getTypeDictionary().loadClass((String) obj);
-            FudgeObjectBuilder<?> builder = getFudgeContext().getObjectDictionary().getObjectBuilder(cls);
-            if (builder != null) {
-              return builder.buildObject(this, message);
-            }
-          } catch (ClassNotFoundException ex) {
-            // ignore
+          final FudgeObjectDictionary.ClassHeader header = resolveClassHeader((String) obj);
+          if (header != null && header.getBuilder() != null) {
+            return buildObject(header.getBuilder(), message);
           }
         }
       }
@@ -239,20 +246,17 @@ public class FudgeDeserializer {
       for (FudgeField type : types) {
         final Object obj = type.getValue();
         if (obj instanceof Number) {
-          throw new UnsupportedOperationException("Serialisation framework does not support back/forward references");
+          final Object referenced = getSerialisationBuffer().getObject(((Number) obj).intValue());
+          if (!clazz.isInstance(referenced)) {
+            throw new IllegalArgumentException("Object reference " + obj + " is not a " + clazz);
+          }
+          return (T) referenced;
         } else if (obj instanceof String) {
           try {
-            final Class<?> possibleClazz = getFudgeContext().getTypeDictionary().loadClass((String) obj);
-            // System.out.println("Trying " + possibleClazz);
-            if (clazz.isAssignableFrom(possibleClazz)) {
-              builder = (FudgeObjectBuilder<T>) getFudgeContext().getObjectDictionary().getObjectBuilder(possibleClazz);
-              // System.out.println("Builder " + builder);
-              if (builder != null) {
-                return builder.buildObject(this, message);
-              }
+            final FudgeObjectDictionary.ClassHeader header = resolveClassHeader((String) obj);
+            if (header != null && header.getBuilder() != null && clazz.isAssignableFrom(header.getType())) {
+              return buildObject((FudgeObjectBuilder<T>) header.getBuilder(), message);
             }
-          } catch (ClassNotFoundException ex) {
-            // ignore
           } catch (Exception ex) {
             //e.printStackTrace();
             exceptions.add(ex);
@@ -266,7 +270,7 @@ public class FudgeDeserializer {
     builder = getFudgeContext().getObjectDictionary().getObjectBuilder(clazz);
     if (builder != null) {
       try {
-        return builder.buildObject(this, message);
+        return buildObject(builder, message);
       } catch (Exception ex) {
         exceptions.add(ex);
         lastException = ex;
@@ -280,4 +284,219 @@ public class FudgeDeserializer {
     }
   }
 
+  /**
+   * Resolves a class name from a type header to the class and its builder.
+   * <p>
+   * The resolution is cached by the object dictionary, so is shared by all
+   * deserializers of the context.
+   *
+   * @param className  the class name, not null
+   * @return the resolved header, null if the class cannot be loaded
+   */
+  private FudgeObjectDictionary.ClassHeader resolveClassHeader(final String className) {
+    return getFudgeContext().getObjectDictionary().resolveClassHeader(className, getFudgeContext().getTypeDictionary());
+  }
+
+  /**
+   * Converts a Fudge message to a Java object using a specific builder.
+   * <p>
+   * This should be used by builders that have already identified the builder for a
+   * sub-message, rather than calling the builder directly, so that object references
+   * are resolved.
+   *
+   * @param <T>     target Java type to decode to
+   * @param builder the builder to use, not null
+   * @param message the message to deserialize, not null
+   * @return the deserialized object
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T fudgeMsgToObject(final FudgeObjectBuilder<T> builder, final FudgeMsg message) {
+    final FudgeField type = message.getByOrdinal(FudgeSerializer.TYPES_HEADER_ORDINAL);
+    if (type != null && type.getValue() instanceof Number) {
+      return (T) getSerialisationBuffer().getObject(((Number) type.getValue()).intValue());
+    }
+    return buildObject(builder, message);
+  }
+
+  /**
+   * Builds an object, registering it if the message carries an object identifier.
+   *
+   * @param <T>     target Java type to decode to
+   * @param builder the builder to use, not null
+   * @param message the message to deserialize, not null
+   * @return the deserialized object
+   */
+  private <T> T buildObject(final FudgeObjectBuilder<T> builder, final FudgeMsg message) {
+    final MappingStatistics statistics = getMappingStatistics();
+    final T object;
+    if (statistics == null) {
+      object = builder.buildObject(this, message);
+    } else {
+      final long nestedNanos = _timedNanos;
+      final long start = System.nanoTime();
+      object = builder.buildObject(this, message);
+      recordTiming(statistics, builder, object, nestedNanos, start);
+    }
+    final Integer id = SerializationBuffer.getObjectId(message);
+    if (id != null && object != null) {
+      getSerialisationBuffer().registerObject(id, object);
+    }
+    return object;
+  }
+
+  /**
+   * Gets the mapping statistics to record into.
+   *
+   * @return the statistics, null if metrics are disabled
+   */
+  private MappingStatistics getMappingStatistics() {
+    final FudgeMetrics metrics = getFudgeContext().getMetrics();
+    return (metrics != null) ? metrics.getMappingStatistics() : null;
+  }
+
+  /**
+   * Records a timed builder call in the mapping statistics.
+   *
+   * @param statistics  the statistics, not null
+   * @param builder  the builder called, not null
+   * @param object  the object built, null if none
+   * @param nestedNanos  the time spent in timed builder calls when the call started
+   * @param start  the time the call started
+   */
+  private void recordTiming(final MappingStatistics statistics, final Object builder, final Object object, final long nestedNanos, final long start) {
+    final long elapsed = System.nanoTime() - start;
+    if (object != null) {
+      statistics.record(MappingStatistics.Direction.DESERIALIZE, object.getClass(), builder, elapsed, elapsed - (_timedNanos - nestedNanos), -1);
+    }
+    // the enclosing object excludes the time taken here, including the recording
+    _timedNanos = nestedNanos + (System.nanoTime() - start);
+  }
+
+  /**
+   * Registers an object being deserialized before its builder has completed.
+   * <p>
+   * A builder that creates its object before reading the fields of the message may
+   * call this so that references to the object from within its own fields, as found
+   * in cyclic graphs, can be resolved. It has no effect if the message does not carry
+   * an object identifier.
+   *
+   * @param message the message the object is being built from, not null
+   * @param object  the object, not null
+   */
+  public void registerObject(final FudgeMsg message, final Object object) {
+    final Integer id = SerializationBuffer.getObjectId(message);
+    if (id != null) {
+      getSerialisationBuffer().registerObject(id, object);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Converts the fields of the current message or sub-message in a stream to a specific Java type.
+   * <p>
+   * The reader must be positioned after the message envelope or the start of the sub-message
+   * field; the fields are consumed up to and including the end of the sub-message. If the builder
+   * for the requested type is a {@link FudgeStreamObjectBuilder} the object is built directly from
+   * the stream, otherwise the fields are read into a message first.
+   * <p>
+   * Type headers are sent after the fields of a sub-message so cannot be honoured when streaming.
+   * This should only be used where the message cannot name a subclass of the requested type, such
+   * as the top level messages written by a {@link FudgeObjectWriter}, the elements of collections,
+   * or properties of a final type.
+   *
+   * @param <T>     target Java type to decode to
+   * @param clazz   the class of the target Java type to decode to, not null
+   * @param reader  the reader positioned at the start of the message, not null
+   * @return the deserialized object
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T fudgeStreamToObject(final Class<T> clazz, final FudgeStreamReader reader) {
+    if (clazz == FudgeMsg.class) {
+      return (T) fudgeStreamToMessage(reader);
+    }
+    final FudgeObjectBuilder<T> builder = getFudgeContext().getObjectDictionary().getObjectBuilder(clazz);
+    if (builder == null) {
+      return fudgeMsgToObject(clazz, fudgeStreamToMessage(reader));
+    }
+    return fudgeStreamToObject(builder, reader);
+  }
+
+  /**
+   * Converts the fields of the current message or sub-message in a stream to a Java object
+   * using a specific builder.
+   * <p>
+   * This is the streaming equivalent of {@link #fudgeMsgToObject(FudgeObjectBuilder, FudgeMsg)}.
+   *
+   * @param <T>     target Java type to decode to
+   * @param builder the builder to use, not null
+   * @param reader  the reader positioned at the start of the message, not null
+   * @return the deserialized object
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T fudgeStreamToObject(final FudgeObjectBuilder<T> builder, final FudgeStreamReader reader) {
+    if (builder instanceof FudgeStreamObjectBuilder<?>) {
+      final MappingStatistics statistics = getMappingStatistics();
+      if (statistics == null) {
+        return ((FudgeStreamObjectBuilder<T>) builder).buildObject(this, reader);
+      }
+      final long nestedNanos = _timedNanos;
+      final long start = System.nanoTime();
+      final T object = ((FudgeStreamObjectBuilder<T>) builder).buildObject(this, reader);
+      recordTiming(statistics, builder, object, nestedNanos, start);
+      return object;
+    }
+    return fudgeMsgToObject(builder, fudgeStreamToMessage(reader));
+  }
+
+  /**
+   * Reads the fields of the current message or sub-message in a stream into a message.
+   * <p>
+   * The reader must be positioned after the message envelope or the start of the sub-message
+   * field; the fields are consumed up to and including the end of the sub-message.
+   *
+   * @param reader  the reader positioned at the start of the message, not null
+   * @return the message, not null
+   */
+  public MutableFudgeMsg fudgeStreamToMessage(final FudgeStreamReader reader) {
+    final MutableFudgeMsg message = getFudgeContext().newMessage();
+    while (reader.hasNext()) {
+      switch (reader.next()) {
+        case SIMPLE_FIELD:
+          message.add(reader.getFieldName(), reader.getFieldOrdinal(), reader.getFieldType(), reader.getFieldValue());
+          break;
+        case SUBMESSAGE_FIELD_START: {
+          final String name = reader.getFieldName();
+          final Integer ordinal = reader.getFieldOrdinal();
+          message.add(name, ordinal, FudgeWireType.SUB_MESSAGE, fudgeStreamToMessage(reader));
+          break;
+        }
+        case SUBMESSAGE_FIELD_END:
+          return message;
+        default:
+          throw new IllegalArgumentException("Unexpected stream element " + reader.getCurrentElement());
+      }
+    }
+    return message;
+  }
+
+  /**
+   * Returns an object already deserialized from a reference sent with reference tracking.
+   *
+   * @param id  the object identifier, not null
+   * @return the object, not null
+   */
+  /* package */Object getReferencedObject(final Number id) {
+    return getSerialisationBuffer().getObject(id.intValue());
+  }
+
+  /**
+   * Registers an object with the identifier sent with reference tracking.
+   *
+   * @param id  the object identifier, not null
+   * @param object  the object, not null
+   */
+  /* package */void registerObject(final Number id, final Object object) {
+    getSerialisationBuffer().registerObject(id.intValue(), object);
+  }
+
 }
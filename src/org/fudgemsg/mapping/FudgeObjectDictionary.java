@@ -16,15 +16,18 @@
 
 package org.fudgemsg.mapping;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeTypeDictionary;
 import org.fudgemsg.MutableFudgeMsg;
 import org.fudgemsg.types.ClasspathUtilities;
 
@@ -68,6 +71,10 @@ public class FudgeObjectDictionary {
    * for builders on startup.
    */
   public static final String AUTO_CLASSPATH_SCAN_PROPERTY = "org.fudgemsg.autoscan";
+  /**
+   * The maximum number of class headers to cache the resolution of.
+   */
+  private static final int MAX_CACHED_CLASS_HEADERS = 1024;
   /**
    * A message builder to indicate null in the cache.
    */
@@ -103,6 +110,15 @@ public class FudgeObjectDictionary {
    * The builder factory.
    */
   private volatile FudgeBuilderFactory _defaultBuilderFactory;
+  /**
+   * The number of builder lookups that were not cached.
+   */
+  private final AtomicLong _builderCacheMisses = new AtomicLong();
+  /**
+   * The class headers resolved to a class, keyed by class name.
+   * This is cleared when object builders are registered or the builder factory changes.
+   */
+  private final ConcurrentMap<String, ClassHeader> _classHeaders = new ConcurrentHashMap<String, ClassHeader>();
 
   /**
    * Creates a new empty dictionary.
@@ -149,6 +165,7 @@ public class FudgeObjectDictionary {
    */
   public void setDefaultBuilderFactory(final FudgeBuilderFactory defaultBuilderFactory) {
     _defaultBuilderFactory = defaultBuilderFactory;
+    _classHeaders.clear();
   }
 
   //-------------------------------------------------------------------------
@@ -165,6 +182,7 @@ public class FudgeObjectDictionary {
    */
   public <T> void addObjectBuilder(final Class<T> clazz, final FudgeObjectBuilder<? extends T> builder) {
     _objectBuilders.put(clazz, builder);
+    _classHeaders.clear();
   }
 
   /**
@@ -217,6 +235,7 @@ public class FudgeObjectDictionary {
   public <T> FudgeObjectBuilder<T> getObjectBuilder(final Class<T> clazz) {
     FudgeObjectBuilder<T> builder = (FudgeObjectBuilder<T>) _objectBuilders.get(clazz);
     if (builder == null) {
+      _builderCacheMisses.incrementAndGet();
       builder = getDefaultBuilderFactory().createObjectBuilder(clazz);
       if (builder == null) {
         builder = (FudgeObjectBuilder<T>) NULL_OBJECTBUILDER;
@@ -244,6 +263,7 @@ public class FudgeObjectDictionary {
   public <T> FudgeMessageBuilder<T> getMessageBuilder(final Class<T> clazz) {
     FudgeMessageBuilder<T> builder = (FudgeMessageBuilder<T>) _messageBuilders.get(clazz);
     if (builder == null) {
+      _builderCacheMisses.incrementAndGet();
       builder = getDefaultBuilderFactory().createMessageBuilder(clazz);
       if (builder == null) {
         builder = (FudgeMessageBuilder<T>) NULL_MESSAGEBUILDER;
@@ -255,6 +275,82 @@ public class FudgeObjectDictionary {
     return (builder == NULL_MESSAGEBUILDER) ? null : builder;
   }
 
+  /**
+   * Resolves a class name from a type header to the class and its object builder.
+   * <p>
+   * Names that load but have no builder are cached too, so that large graphs with many
+   * type headers only resolve each name once. Names that cannot be loaded are not cached
+   * here, so that a later class rename is seen; the type dictionary caches those itself.
+   * A cached resolution is only used with the type dictionary that produced it.
+   * 
+   * @param className  the class name, not null
+   * @param typeDictionary  the type dictionary to load classes through, not null
+   * @return the resolved header, null if the class cannot be loaded
+   */
+  /* package */ ClassHeader resolveClassHeader(final String className, final FudgeTypeDictionary typeDictionary) {
+    ClassHeader header = _classHeaders.get(className);
+    if (header == null || header.getTypeDictionary() != typeDictionary) {
+      final Class<?> clazz = typeDictionary.findClass(className);
+      if (clazz == null) {
+        return null;
+      }
+      header = new ClassHeader(typeDictionary, clazz, getObjectBuilder(clazz));
+      if (_classHeaders.size() >= MAX_CACHED_CLASS_HEADERS) {
+        _classHeaders.clear();
+      }
+      _classHeaders.put(className, header);
+    }
+    return header;
+  }
+
+  /**
+   * Gets the number of builder lookups that were not cached and so used the builder factory.
+   * <p>
+   * Each type normally misses once for its object builder and once for its message builder.
+   * 
+   * @return the number of misses, not negative
+   */
+  public long getBuilderCacheMisses() {
+    return _builderCacheMisses.get();
+  }
+
+  /**
+   * Creates and caches the builders for a type ahead of first use.
+   * <p>
+   * This moves the cost of finding or creating the builders, such as the introspection
+   * performed by {@link JavaBeanBuilder}, out of the first serialization of the type.
+   * 
+   * @param clazz  the Java class to create builders for, not null
+   * @return true if an object or message builder is available for the type
+   */
+  public boolean prewarm(final Class<?> clazz) {
+    final boolean hasObjectBuilder = (getObjectBuilder(clazz) != null);
+    final boolean hasMessageBuilder = (getMessageBuilder(clazz) != null);
+    return hasObjectBuilder || hasMessageBuilder;
+  }
+
+  /**
+   * Gets the classes that currently have a builder in this dictionary.
+   * <p>
+   * This includes builders registered explicitly and those created on demand.
+   * 
+   * @return the classes, not null
+   */
+  public Set<Class<?>> getBuilderClasses() {
+    final Set<Class<?>> classes = new HashSet<Class<?>>();
+    for (Map.Entry<Class<?>, FudgeObjectBuilder<?>> entry : _objectBuilders.entrySet()) {
+      if (entry.getValue() != NULL_OBJECTBUILDER) {
+        classes.add(entry.getKey());
+      }
+    }
+    for (Map.Entry<Class<?>, FudgeMessageBuilder<?>> entry : _messageBuilders.entrySet()) {
+      if (entry.getValue() != NULL_MESSAGEBUILDER) {
+        classes.add(entry.getKey());
+      }
+    }
+    return classes;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Checks if the type is handled in the specification with a default serialization.
@@ -320,6 +416,20 @@ public class FudgeObjectDictionary {
     }
   }
 
+  /**
+   * Registers the builders generated at compile time for classes with the
+   * {@link GenerateFudgeBuilder} annotation.
+   * <p>
+   * This reads the list of builders written by {@link FudgeBuilderProcessor} in each
+   * classpath element rather than scanning the classpath, so is cheap enough to call
+   * at startup. Generated builders are also found on demand without this call.
+   */
+  public void addAllGeneratedBuilders() {
+    for (String className : ClasspathUtilities.getClassNamesFromResources(FudgeBuilderProcessor.REGISTRY_RESOURCE)) {
+      addAnnotatedBuilderClass(className);
+    }
+  }
+
   /**
    * Registers a class which is known to have a {@code FudgeBuilderFor} annotation.
    * 
@@ -397,4 +507,32 @@ public class FudgeObjectDictionary {
     return builderClass;
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * A class name from a type header resolved to the class and its builder.
+   */
+  /* package */ static final class ClassHeader {
+    private final FudgeTypeDictionary _typeDictionary;
+    private final Class<?> _type;
+    private final FudgeObjectBuilder<?> _builder;
+
+    private ClassHeader(final FudgeTypeDictionary typeDictionary, final Class<?> type, final FudgeObjectBuilder<?> builder) {
+      _typeDictionary = typeDictionary;
+      _type = type;
+      _builder = builder;
+    }
+
+    private FudgeTypeDictionary getTypeDictionary() {
+      return _typeDictionary;
+    }
+
+    /* package */ Class<?> getType() {
+      return _type;
+    }
+
+    /* package */ FudgeObjectBuilder<?> getBuilder() {
+      return _builder;
+    }
+  }
+
 }
@@ -19,6 +19,7 @@ package org.fudgemsg.mapping;
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.wire.FudgeMsgReader;
+import org.fudgemsg.wire.FudgeStreamReader;
 
 /**
  * Reader to access and deserialize Java objects from an underlying stream of Fudge messages.
@@ -33,6 +34,10 @@ public class FudgeObjectReader {
    * The deserializer.
    */
   private FudgeDeserializer _deserializer;
+  /**
+   * The dictionary of class names already read, null if not in use.
+   */
+  private ClassNameDictionary _classNameDictionary;
 
   /**
    * Creates a reader around the underlying Fudge stream.
@@ -81,6 +86,29 @@ public class FudgeObjectReader {
     return context.getFudgeContext();
   }
 
+  /**
+   * Checks whether class names are expected once per stream rather than once per type header.
+   * 
+   * @return true if a class name dictionary is in use
+   */
+  public boolean isClassNameDictionary() {
+    return _classNameDictionary != null;
+  }
+
+  /**
+   * Sets whether class names are expected once per stream rather than once per type header.
+   * <p>
+   * This must match the setting of the {@link FudgeObjectWriter} that produced the stream,
+   * and must be set before the first message is read. A stream written with a dictionary
+   * can still be read without one; repeated type headers are then lost so objects are only
+   * built correctly if the requested type is known to the receiver.
+   * 
+   * @param classNameDictionary  true to use a class name dictionary
+   */
+  public void setClassNameDictionary(final boolean classNameDictionary) {
+    _classNameDictionary = classNameDictionary ? new ClassNameDictionary() : null;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Checks if the underlying message source has another message.
@@ -101,7 +129,7 @@ public class FudgeObjectReader {
    * @return the converted Java object
    */
   public Object read() {
-    FudgeMsg message = getMessageReader().nextMessage();
+    FudgeMsg message = nextMessage();
     getDeserializer().reset();
     return getDeserializer().fudgeMsgToObject(message);
   }
@@ -116,11 +144,46 @@ public class FudgeObjectReader {
    * @return the converted Java object
    */
   public <T> T read(final Class<T> clazz) {
-    FudgeMsg message = getMessageReader().nextMessage();
+    FudgeMsg message = nextMessage();
     getDeserializer().reset();
     return getDeserializer().fudgeMsgToObject(clazz, message);
   }
 
+  /**
+   * Reads the next message from the underlying source and deserializes it to the requested Java type
+   * as the fields arrive.
+   * <p>
+   * This avoids building the Fudge message before converting it, for builders that support it.
+   * Type headers in the top level message are not honoured, so this should only be used for streams
+   * written by a {@link FudgeObjectWriter}; see {@link FudgeDeserializer#fudgeStreamToObject(Class, FudgeStreamReader)}.
+   * If a class name dictionary is in use, this is the same as {@link #read(Class)}.
+   * 
+   * @param <T> Java type of the requested object
+   * @param clazz  the Java class of the requested object, not null
+   * @return the converted Java object
+   */
+  public <T> T readStreamed(final Class<T> clazz) {
+    if (_classNameDictionary != null) {
+      return read(clazz);
+    }
+    final FudgeStreamReader reader = getMessageReader().nextMessageStream();
+    getDeserializer().reset();
+    return getDeserializer().fudgeStreamToObject(clazz, reader);
+  }
+
+  /**
+   * Reads the next message, expanding any class name indices.
+   * 
+   * @return the message, not null
+   */
+  private FudgeMsg nextMessage() {
+    final FudgeMsg message = getMessageReader().nextMessage();
+    if (_classNameDictionary == null) {
+      return message;
+    }
+    return _classNameDictionary.expand(message, getFudgeContext());
+  }
+
   /**
    * Closes the underlying stream.
    */
@@ -18,6 +18,7 @@ package org.fudgemsg.mapping;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.wire.FudgeMsgEncoder;
 import org.fudgemsg.wire.FudgeMsgWriter;
 
 /**
@@ -33,6 +34,14 @@ public class FudgeObjectWriter {
    * The serializer.
    */
   private FudgeSerializer _serializer;
+  /**
+   * The dictionary of class names already written, null if not in use.
+   */
+  private ClassNameDictionary _classNameDictionary;
+  /**
+   * The encoder used by {@link #writeStreamed(Object)}, null until first used.
+   */
+  private FudgeMsgEncoder _encoder;
 
   /**
    * Creates a writer around the underlying Fudge stream.
@@ -81,6 +90,29 @@ public class FudgeObjectWriter {
     return context.getFudgeContext();
   }
 
+  /**
+   * Checks whether class names are sent once per stream rather than once per type header.
+   * 
+   * @return true if a class name dictionary is in use
+   */
+  public boolean isClassNameDictionary() {
+    return _classNameDictionary != null;
+  }
+
+  /**
+   * Sets whether class names are sent once per stream rather than once per type header.
+   * <p>
+   * When enabled, the first header for each class is written in full and later headers for
+   * the same class, in this or any subsequent message, are written as a small index. The
+   * stream must then be read by a {@link FudgeObjectReader} with the dictionary enabled that
+   * sees every message in order. Changing the setting starts a new dictionary.
+   * 
+   * @param classNameDictionary  true to use a class name dictionary
+   */
+  public void setClassNameDictionary(final boolean classNameDictionary) {
+    _classNameDictionary = classNameDictionary ? new ClassNameDictionary() : null;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Writes to the stream a serialized form of the given object.
@@ -99,10 +131,40 @@ public class FudgeObjectWriter {
     } else {
       // delegate to a message builder
       message = getSerializer().objectToFudgeMsg(obj);
+      if (_classNameDictionary != null) {
+        message = _classNameDictionary.compress(message, getSerializer());
+      }
     }
     getMessageWriter().writeMessage(message, 0);
   }
 
+  /**
+   * Writes to the stream a serialized form of the given object without building
+   * intermediate messages.
+   * <p>
+   * The object is written to an encoder by {@link FudgeSerializer#objectToFudgeStream}
+   * and the encoded fields written to the target stream. The bytes written are the same
+   * as {@link #write(Object)}. If reference tracking or a class name dictionary is in use
+   * the object is written by {@link #write(Object)}.
+   * 
+   * @param <T> type of the Java object
+   * @param obj the object to write
+   */
+  public <T> void writeStreamed(final T obj) {
+    if (obj == null || _classNameDictionary != null || getSerializer().isReferenceTracking()) {
+      write(obj);
+      return;
+    }
+    getSerializer().reset();
+    if (_encoder == null) {
+      _encoder = new FudgeMsgEncoder(getFudgeContext());
+    } else {
+      _encoder.reset();
+    }
+    getSerializer().objectToFudgeStream(obj, _encoder);
+    getMessageWriter().writeMessage(_encoder.toFudgeMsg(), 0);
+  }
+
   /**
    * Closes the underlying stream.
    */
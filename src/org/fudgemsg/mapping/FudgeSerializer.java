@@ -19,9 +19,13 @@ package org.fudgemsg.mapping;
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.FudgeMetrics;
 import org.fudgemsg.FudgeMsgFactory;
 import org.fudgemsg.FudgeTypeDictionary;
 import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.MappingStatistics.Direction;
+import org.fudgemsg.wire.FudgeMsgEncoder;
+import org.fudgemsg.wire.FudgeSize;
 import org.fudgemsg.wire.types.FudgeWireType;
 
 /**
@@ -29,7 +33,11 @@ import org.fudgemsg.wire.types.FudgeWireType;
  * <p>
  * This is the central point for Java Object serialization to a Fudge message on a given stream.
  * The object builder framework methods all take a serializer.
- * Note that the serializer cannot process cyclic object graphs at present.
+ * <p>
+ * By default each occurrence of an object is sent in full and a cyclic object graph
+ * is an error. If reference tracking is enabled, an object that occurs more than once
+ * is sent in full the first time and as a reference to it thereafter, which allows
+ * cyclic graphs and reduces the size of graphs with shared objects.
  * <p>
  * This class is mutable and intended for use by a single thread.
  */
@@ -39,6 +47,16 @@ public class FudgeSerializer implements FudgeMsgFactory {
    * The field ordinal used to send type information.
    */
   public static final int TYPES_HEADER_ORDINAL = 0;
+  /**
+   * The field ordinal used to send the identifier of an object that is referenced
+   * elsewhere in the message when reference tracking is enabled.
+   */
+  public static final int OBJECT_ID_ORDINAL = -4;
+  /**
+   * The field ordinal used by {@link FudgeObjectWriter} to send the index of a class name
+   * already sent on the stream in place of a repeated type header.
+   */
+  public static final int CLASS_NAME_INDEX_ORDINAL = -5;
 
   /**
    * The parent Fudge context.
@@ -48,6 +66,18 @@ public class FudgeSerializer implements FudgeMsgFactory {
    * The buffer for handling object graph cycles.
    */
   private final SerializationBuffer _serialisationBuffer = new SerializationBuffer();
+  /**
+   * The time spent in timed builder calls, used to separate the self time of nested objects.
+   */
+  private long _timedNanos;
+  /**
+   * The number of timed builder calls building a message in progress, only the outermost message is sized.
+   */
+  private int _timedMessageDepth;
+  /**
+   * Whether lists and sets of primitive wrappers are sent as array fields.
+   */
+  private boolean _primitiveArrays;
 
   /**
    * Creates a new context based on a parent context.
@@ -89,6 +119,51 @@ public class FudgeSerializer implements FudgeMsgFactory {
     getSerialisationBuffer().reset();
   }
 
+  /**
+   * Checks whether objects that occur more than once are sent as references.
+   * 
+   * @return true if reference tracking is enabled
+   */
+  public boolean isReferenceTracking() {
+    return getSerialisationBuffer().isReferenceTracking();
+  }
+
+  /**
+   * Sets whether objects that occur more than once are sent as references.
+   * <p>
+   * Objects are compared by identity. The references are resolved by any
+   * {@link FudgeDeserializer}, but builders that read the fields of a sub-message
+   * directly rather than through the deserializer will not see the referenced object.
+   * References are only valid until the next call to {@link #reset()}.
+   * 
+   * @param referenceTracking  true to enable reference tracking
+   */
+  public void setReferenceTracking(final boolean referenceTracking) {
+    getSerialisationBuffer().setReferenceTracking(referenceTracking);
+  }
+
+  /**
+   * Checks whether lists and sets of primitive wrappers are sent as array fields.
+   * 
+   * @return true if primitive array encoding is enabled
+   */
+  public boolean isPrimitiveArrays() {
+    return _primitiveArrays;
+  }
+
+  /**
+   * Sets whether lists and sets of primitive wrappers are sent as array fields.
+   * <p>
+   * A non-empty list or set of only {@code Double}, only {@code Long} or only {@code Integer}
+   * entries is then written as a single array field at {@link BuilderUtil#PRIMITIVE_ARRAY_ORDINAL}.
+   * This is disabled by default as readers before version 0.4 reject that ordinal.
+   * 
+   * @param primitiveArrays  true to enable primitive array encoding
+   */
+  public void setPrimitiveArrays(final boolean primitiveArrays) {
+    _primitiveArrays = primitiveArrays;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public MutableFudgeMsg newMessage() {
@@ -244,14 +319,212 @@ public class FudgeSerializer implements FudgeMsgFactory {
     if (object == null) {
       throw new NullPointerException("Object cannot be null");
     }
-    getSerialisationBuffer().beginObject(object);
+    final SerializationBuffer buffer = getSerialisationBuffer();
+    final MutableFudgeMsg reference = buffer.getReference(object, this);
+    if (reference != null) {
+      return reference;
+    }
+    buffer.beginObject(object);
+    MutableFudgeMsg message = null;
+    try {
+      Class<?> clazz = object.getClass();
+      FudgeMessageBuilder<Object> builder = getFudgeContext().getObjectDictionary().getMessageBuilder((Class<Object>) clazz);
+      message = buildMessage(builder, object);
+      return message;
+    } finally {
+      buffer.endObject(object, message);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Adds an object to the current message of an encoder in the simplest way.
+   * <p>
+   * This writes the same field as {@link #addToMessage(MutableFudgeMsg, String, Integer, Object)}
+   * but a complex object is written directly to the encoder using
+   * {@link #objectToFudgeStream(Object, FudgeMsgEncoder)}.
+   * 
+   * @param encoder  the encoder to write to, not null
+   * @param name  the field name for the field, null if no field name required
+   * @param ordinal  the ordinal for the field, null if no field ordinal required
+   * @param object  the value to add, null ignored
+   */
+  public void addToStream(
+      final FudgeMsgEncoder encoder, final String name, final Integer ordinal, final Object object) {
+    if (object == null) {
+      return;
+    }
+    final FudgeFieldType fieldType = getFudgeContext().getTypeDictionary().getByJavaType(object.getClass());
+    if (isNative(fieldType, object)) {
+      encoder.writeField(name, ordinal, fieldType, object);
+    } else {
+      encoder.startSubMessage(name, ordinal);
+      streamObject(object, encoder);
+      encoder.endSubMessage();
+    }
+  }
+
+  /**
+   * Adds an object to the current message of an encoder sending class name headers.
+   * <p>
+   * This writes the same field as
+   * {@link #addToMessageWithClassHeaders(MutableFudgeMsg, String, Integer, Object)}.
+   * 
+   * @param encoder  the encoder to write to, not null
+   * @param name  the field name for the field, null if no field name required
+   * @param ordinal  the ordinal for the field, null if no field ordinal required
+   * @param object  the value to add, null ignored
+   */
+  public void addToStreamWithClassHeaders(
+      final FudgeMsgEncoder encoder, final String name, final Integer ordinal, final Object object) {
+    addToStreamWithClassHeaders(encoder, name, ordinal, object, Object.class);
+  }
+
+  /**
+   * Adds an object to the current message of an encoder sending class name headers.
+   * <p>
+   * This writes the same field as
+   * {@link #addToMessageWithClassHeaders(MutableFudgeMsg, String, Integer, Object, Class)}.
+   * The class name headers are written after the fields of the object.
+   * 
+   * @param encoder  the encoder to write to, not null
+   * @param name  the field name for the field, null if no field name required
+   * @param ordinal  the ordinal for the field, null if no field ordinal required
+   * @param object  the value to add, null ignored
+   * @param receiverTarget  the Java class the receiver will expect, not null
+   */
+  public void addToStreamWithClassHeaders(
+      final FudgeMsgEncoder encoder, final String name,
+      final Integer ordinal, final Object object, final Class<?> receiverTarget) {
+    if (object == null) {
+      return;
+    }
+    final Class<?> clazz = object.getClass();
+    final FudgeFieldType fieldType = getFudgeContext().getTypeDictionary().getByJavaType(clazz);
+    if (isNative(fieldType, object)) {
+      encoder.writeField(name, ordinal, fieldType, object);
+    } else {
+      encoder.startSubMessage(name, ordinal);
+      final boolean classHeader = streamObject(object, encoder);
+      if (!classHeader && !getFudgeContext().getObjectDictionary().isDefaultObject(clazz)) {
+        addClassHeader(encoder, clazz, receiverTarget);
+      }
+      encoder.endSubMessage();
+    }
+  }
+
+  /**
+   * Converts a Java object to fields written directly to an encoder using a registered builder.
+   * <p>
+   * The fields are written to the current message of the encoder and are the same as those of
+   * the message returned by {@link #objectToFudgeMsg(Object)}. If the builder implements
+   * {@link FudgeStreamMessageBuilder} no message is built for the object, otherwise the
+   * message is built and its fields copied to the encoder.
+   * <p>
+   * Reference tracking is not supported as the identifier of a shared object is only
+   * allocated after the fields for its first occurrence have been written.
+   * 
+   * @param object  the Java object to serialize, not null
+   * @param encoder  the encoder to write to, not null
+   * @throws UnsupportedOperationException if reference tracking is enabled
+   */
+  public void objectToFudgeStream(final Object object, final FudgeMsgEncoder encoder) {
+    streamObject(object, encoder);
+  }
+
+  /**
+   * Writes the fields of a Java object to an encoder.
+   * 
+   * @param object  the Java object to serialize, not null
+   * @param encoder  the encoder to write to, not null
+   * @return true if the builder wrote its own class name headers
+   */
+  @SuppressWarnings("unchecked")
+  private boolean streamObject(final Object object, final FudgeMsgEncoder encoder) {
+    if (object == null) {
+      throw new NullPointerException("Object cannot be null");
+    }
+    if (isReferenceTracking()) {
+      throw new UnsupportedOperationException("Streaming serialization does not support reference tracking");
+    }
+    final SerializationBuffer buffer = getSerialisationBuffer();
+    buffer.beginObject(object);
     try {
       Class<?> clazz = object.getClass();
       FudgeMessageBuilder<Object> builder = getFudgeContext().getObjectDictionary().getMessageBuilder((Class<Object>) clazz);
+      if (builder instanceof FudgeStreamMessageBuilder<?>) {
+        streamMessage((FudgeStreamMessageBuilder<Object>) builder, object, encoder);
+        return false;
+      }
+      final MutableFudgeMsg message = buildMessage(builder, object);
+      encoder.writeFields(message);
+      return message.getByOrdinal(TYPES_HEADER_ORDINAL) != null;
+    } finally {
+      buffer.endObject(object, null);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the mapping statistics to record into.
+   * 
+   * @return the statistics, null if metrics are disabled
+   */
+  private MappingStatistics getMappingStatistics() {
+    final FudgeMetrics metrics = getFudgeContext().getMetrics();
+    return (metrics != null) ? metrics.getMappingStatistics() : null;
+  }
+
+  /**
+   * Calls a builder to build a message, recording the mapping statistics if enabled.
+   * 
+   * @param builder  the builder, not null
+   * @param object  the Java object to serialize, not null
+   * @return the message built, not null
+   */
+  private MutableFudgeMsg buildMessage(final FudgeMessageBuilder<Object> builder, final Object object) {
+    final MappingStatistics statistics = getMappingStatistics();
+    if (statistics == null) {
       return builder.buildMessage(this, object);
+    }
+    final long nestedNanos = _timedNanos;
+    final long start = System.nanoTime();
+    final MutableFudgeMsg message;
+    _timedMessageDepth++;
+    try {
+      message = builder.buildMessage(this, object);
     } finally {
-      getSerialisationBuffer().endObject(object);
+      _timedMessageDepth--;
     }
+    final long elapsed = System.nanoTime() - start;
+    statistics.record(Direction.SERIALIZE, object.getClass(), builder, elapsed, elapsed - (_timedNanos - nestedNanos),
+        (_timedMessageDepth == 0) ? FudgeSize.calculateMessageSize(message) : -1);
+    // the enclosing object excludes the time taken here, including the recording
+    _timedNanos = nestedNanos + (System.nanoTime() - start);
+    return message;
+  }
+
+  /**
+   * Calls a builder to write fields to an encoder, recording the mapping statistics if enabled.
+   * 
+   * @param builder  the builder, not null
+   * @param object  the Java object to serialize, not null
+   * @param encoder  the encoder to write to, not null
+   */
+  private void streamMessage(final FudgeStreamMessageBuilder<Object> builder, final Object object, final FudgeMsgEncoder encoder) {
+    final MappingStatistics statistics = getMappingStatistics();
+    if (statistics == null) {
+      builder.buildMessage(this, object, encoder);
+      return;
+    }
+    final int length = encoder.getLength();
+    final long nestedNanos = _timedNanos;
+    final long start = System.nanoTime();
+    builder.buildMessage(this, object, encoder);
+    final long elapsed = System.nanoTime() - start;
+    statistics.record(Direction.SERIALIZE, object.getClass(), builder, elapsed, elapsed - (_timedNanos - nestedNanos),
+        encoder.getLength() - length);
+    _timedNanos = nestedNanos + (System.nanoTime() - start);
   }
 
   //-------------------------------------------------------------------------
@@ -295,4 +568,18 @@ public class FudgeSerializer implements FudgeMsgFactory {
     return message;
   }
 
+  /**
+   * Writes partial class names to an encoder with field ordinal 0 for use by a deserializer.
+   * 
+   * @param encoder  the encoder to write to, not null
+   * @param clazz  the Java class to add type data for, not null
+   * @param receiverTarget  the Java class the receiver will expect, not null
+   */
+  private static void addClassHeader(final FudgeMsgEncoder encoder, Class<?> clazz, final Class<?> receiverTarget) {
+    while (clazz != null && receiverTarget.isAssignableFrom(clazz) && receiverTarget != clazz) {
+      encoder.writeField(null, TYPES_HEADER_ORDINAL, FudgeWireType.STRING, clazz.getName());
+      clazz = clazz.getSuperclass();
+    }
+  }
+
 }
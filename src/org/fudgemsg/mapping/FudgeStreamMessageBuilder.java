@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import org.fudgemsg.wire.FudgeMsgEncoder;
+
+/**
+ * Defines a builder that can also write the fields for an object directly to an encoder.
+ * <p>
+ * This avoids building a Fudge message for the object before encoding it. Builders that
+ * implement this are used by {@link FudgeSerializer#objectToFudgeStream(Object, FudgeMsgEncoder)}.
+ * The fields written must be the same as those of the message built by
+ * {@link #buildMessage(FudgeSerializer, Object)}.
+ * 
+ * @param <T> the Java type to serialize
+ */
+public interface FudgeStreamMessageBuilder<T> extends FudgeMessageBuilder<T> {
+
+  /**
+   * Writes the fields of the object to the current message of the encoder.
+   * <p>
+   * Any sub-message fields must be started and ended within this call. Objects held by
+   * the object should be written using the {@code addToStream} methods on the serializer.
+   * Type header fields with ordinal {@link FudgeSerializer#TYPES_HEADER_ORDINAL} must not
+   * be written as the serializer may add them after the fields.
+   * 
+   * @param serializer  the instance in control of serialization, not null
+   * @param object  the object to write, not null
+   * @param encoder  the encoder to write the fields to, not null
+   */
+  void buildMessage(FudgeSerializer serializer, T object, FudgeMsgEncoder encoder);
+
+}
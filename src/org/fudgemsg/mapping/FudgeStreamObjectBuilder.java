@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import org.fudgemsg.wire.FudgeStreamReader;
+
+/**
+ * Defines a builder that can also convert fields read from a stream directly to a Java object.
+ * <p>
+ * This avoids building a Fudge message for the object before converting it. Builders that
+ * implement this are used by {@link FudgeDeserializer#fudgeStreamToObject(Class, FudgeStreamReader)}.
+ * 
+ * @param <T> the Java type to deserialize
+ */
+public interface FudgeStreamObjectBuilder<T> extends FudgeObjectBuilder<T> {
+
+  /**
+   * Reads the fields of the current message or sub-message and converts them to a Java object.
+   * <p>
+   * The reader is positioned after the message envelope or the start of the sub-message field.
+   * All fields up to and including the end of the sub-message must be consumed. Sub-message
+   * fields should be passed to {@link FudgeDeserializer#fudgeStreamToObject(Class, FudgeStreamReader)}
+   * or read with {@link FudgeDeserializer#fudgeStreamToMessage(FudgeStreamReader)}.
+   * 
+   * @param deserializer  the deserializer, not null
+   * @param reader  the reader positioned at the start of the message, not null
+   * @return the Java object
+   */
+  T buildObject(FudgeDeserializer deserializer, FudgeStreamReader reader);
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to request a Fudge builder generated at compile time.
+ * <p>
+ * When the {@link FudgeBuilderProcessor} annotation processor is run by the compiler, a
+ * builder is generated for each annotated bean in the same package, named after the bean
+ * with the suffix {@code FudgeBuilder}. The generated builder calls the bean constructor and
+ * property methods directly and maps properties in the same way as the reflection based
+ * builder, including {@link FudgeFieldName}, {@link FudgeFieldOrdinal} and {@link FudgeTransient}.
+ * <p>
+ * The generated builder is found by {@link FudgeDefaultBuilderFactory} from this annotation,
+ * or can be registered without scanning by {@link FudgeObjectDictionary#addAllGeneratedBuilders()}.
+ * If the processor was not run, the reflection based builder is used.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateFudgeBuilder {
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+/**
+ * Creates and accesses the properties of a bean on behalf of {@link JavaBeanBuilder}.
+ * <p>
+ * Properties are identified by their index in the builder. Implementations are either
+ * generated at runtime by {@link JavaBeanAccessorGenerator} or use reflection.
+ * This interface is only public so that generated implementations, which are defined
+ * by their own class loader, can implement it. It is not intended for application use.
+ *
+ * @param <T> the bean class
+ */
+public interface JavaBeanAccessor<T> {
+
+  /**
+   * Creates a new bean.
+   *
+   * @return the bean, not null
+   * @throws Exception if the bean cannot be created
+   */
+  T newInstance() throws Exception;
+
+  /**
+   * Reads a property of a bean.
+   *
+   * @param bean  the bean to read from, not null
+   * @param property  the index of the property
+   * @return the property value, primitives boxed
+   * @throws Exception if the property cannot be read
+   */
+  Object get(T bean, int property) throws Exception;
+
+  /**
+   * Writes a property of a bean.
+   *
+   * @param bean  the bean to write to, not null
+   * @param property  the index of the property
+   * @param value  the property value, primitives boxed, not null for primitive properties
+   * @throws Exception if the property cannot be written
+   */
+  void set(T bean, int property, Object value) throws Exception;
+
+}
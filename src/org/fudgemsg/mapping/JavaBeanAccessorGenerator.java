@@ -0,0 +1,549 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fudgemsg.FudgeRuntimeException;
+
+/**
+ * Generates {@link JavaBeanAccessor} implementations that call the bean constructor and
+ * property methods directly rather than through reflection.
+ * <p>
+ * The accessor is written as a class file and defined by a new class loader whose parent
+ * is the loader of the bean, so the generated code links directly against the bean class.
+ * Each call then costs a {@code tableswitch} on the property index and a virtual call,
+ * with no argument arrays and no access checks.
+ * <p>
+ * Generated code can only call public members of public classes, so an accessor is only
+ * generated where the bean, its no-arg constructor, its property methods and the types
+ * they use are all public. Otherwise {@link #generate} returns null and the caller
+ * should use reflection.
+ */
+/* package */ final class JavaBeanAccessorGenerator {
+
+  /**
+   * The class file version, chosen so that no stack map frames are required.
+   */
+  private static final int CLASS_FILE_VERSION = 49;
+  /**
+   * The package for generated classes.
+   */
+  private static final String GENERATED_PACKAGE = "org/fudgemsg/mapping/generated/";
+  /**
+   * The internal name of the accessor interface.
+   */
+  private static final String ACCESSOR_INTERFACE = internalName(JavaBeanAccessor.class);
+  /**
+   * The sequence number used to name generated classes.
+   */
+  private static final AtomicInteger s_sequence = new AtomicInteger();
+
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_FINAL = 0x0010;
+  private static final int ACC_SUPER = 0x0020;
+
+  private static final int ILOAD_2 = 0x1C;
+  private static final int ALOAD_0 = 0x2A;
+  private static final int ALOAD_1 = 0x2B;
+  private static final int ALOAD_3 = 0x2D;
+  private static final int POP = 0x57;
+  private static final int POP2 = 0x58;
+  private static final int DUP = 0x59;
+  private static final int TABLESWITCH = 0xAA;
+  private static final int ARETURN = 0xB0;
+  private static final int RETURN = 0xB1;
+  private static final int INVOKEVIRTUAL = 0xB6;
+  private static final int INVOKESPECIAL = 0xB7;
+  private static final int INVOKESTATIC = 0xB8;
+  private static final int NEW = 0xBB;
+  private static final int ATHROW = 0xBF;
+  private static final int CHECKCAST = 0xC0;
+
+  /**
+   * Restricted constructor.
+   */
+  private JavaBeanAccessorGenerator() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Generates an accessor for a bean.
+   * <p>
+   * The property methods are indexed by the property index used in the accessor.
+   * Either method of a property may be null.
+   *
+   * @param <T> the bean class
+   * @param clazz  the bean class, not null
+   * @param reads  the read method of each property, not null
+   * @param writes  the write method of each property, not null, same length as reads
+   * @return the accessor, null if one cannot be generated for the bean
+   */
+  @SuppressWarnings("unchecked")
+  /* package */ static <T> JavaBeanAccessor<T> generate(final Class<T> clazz, final Method[] reads, final Method[] writes) {
+    if (!isGeneratable(clazz, reads, writes)) {
+      return null;
+    }
+    final String className = GENERATED_PACKAGE + clazz.getName().replace('.', '_') + "$FudgeAccessor" + s_sequence.incrementAndGet();
+    try {
+      final byte[] classFile = new ClassFileWriter(className, clazz, reads, writes).toByteArray();
+      final AccessorClassLoader loader = new AccessorClassLoader(clazz.getClassLoader());
+      return (JavaBeanAccessor<T>) loader.define(className.replace('/', '.'), classFile).newInstance();
+    } catch (LinkageError ex) {
+      return null;
+    } catch (InstantiationException ex) {
+      return null;
+    } catch (IllegalAccessException ex) {
+      return null;
+    } catch (SecurityException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether generated code can access everything needed for a bean.
+   */
+  private static boolean isGeneratable(final Class<?> clazz, final Method[] reads, final Method[] writes) {
+    if (!isAccessible(clazz) || clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+      return false;
+    }
+    try {
+      clazz.getConstructor();
+    } catch (NoSuchMethodException ex) {
+      return false;
+    } catch (SecurityException ex) {
+      return false;
+    }
+    for (int i = 0; i < reads.length; i++) {
+      if (!isAccessible(reads[i]) || !isAccessible(writes[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isAccessible(final Method method) {
+    if (method == null) {
+      return true;
+    }
+    final int modifiers = method.getModifiers();
+    if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers)) {
+      return false;
+    }
+    for (Class<?> type : method.getParameterTypes()) {
+      if (!isAccessible(type)) {
+        return false;
+      }
+    }
+    return isAccessible(method.getReturnType());
+  }
+
+  private static boolean isAccessible(Class<?> type) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+  }
+
+  //-------------------------------------------------------------------------
+  private static String internalName(final Class<?> clazz) {
+    return clazz.getName().replace('.', '/');
+  }
+
+  private static String descriptor(final Class<?> clazz) {
+    if (clazz.isPrimitive()) {
+      if (clazz == Boolean.TYPE) {
+        return "Z";
+      } else if (clazz == Byte.TYPE) {
+        return "B";
+      } else if (clazz == Character.TYPE) {
+        return "C";
+      } else if (clazz == Short.TYPE) {
+        return "S";
+      } else if (clazz == Integer.TYPE) {
+        return "I";
+      } else if (clazz == Long.TYPE) {
+        return "J";
+      } else if (clazz == Float.TYPE) {
+        return "F";
+      } else if (clazz == Double.TYPE) {
+        return "D";
+      } else {
+        return "V";
+      }
+    } else if (clazz.isArray()) {
+      return internalName(clazz);
+    } else {
+      return "L" + internalName(clazz) + ";";
+    }
+  }
+
+  private static String descriptor(final Method method) {
+    final StringBuilder sb = new StringBuilder("(");
+    for (Class<?> type : method.getParameterTypes()) {
+      sb.append(descriptor(type));
+    }
+    return sb.append(')').append(descriptor(method.getReturnType())).toString();
+  }
+
+  /**
+   * Gets the wrapper class for a primitive type.
+   */
+  private static Class<?> boxedType(final Class<?> clazz) {
+    if (clazz == Boolean.TYPE) {
+      return Boolean.class;
+    } else if (clazz == Byte.TYPE) {
+      return Byte.class;
+    } else if (clazz == Character.TYPE) {
+      return Character.class;
+    } else if (clazz == Short.TYPE) {
+      return Short.class;
+    } else if (clazz == Integer.TYPE) {
+      return Integer.class;
+    } else if (clazz == Long.TYPE) {
+      return Long.class;
+    } else if (clazz == Float.TYPE) {
+      return Float.class;
+    } else {
+      return Double.class;
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Class loader for a generated accessor.
+   * <p>
+   * The accessor interface is always resolved to the one used by this library, in case
+   * the loader of the bean cannot see it. Everything else is resolved through the loader
+   * of the bean.
+   */
+  private static final class AccessorClassLoader extends ClassLoader {
+
+    AccessorClassLoader(final ClassLoader parent) {
+      super(parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+      if (name.equals(JavaBeanAccessor.class.getName())) {
+        return JavaBeanAccessor.class;
+      }
+      return super.loadClass(name, resolve);
+    }
+
+    Class<?> define(final String name, final byte[] classFile) {
+      return defineClass(name, classFile, 0, classFile.length);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes the class file for an accessor.
+   */
+  private static final class ClassFileWriter {
+    private final Map<String, Integer> _constants = new HashMap<String, Integer>();
+    private final ByteArrayOutputStream _constantPool = new ByteArrayOutputStream();
+    private final DataOutputStream _constantPoolOut = new DataOutputStream(_constantPool);
+    private int _constantCount = 1;
+    private final String _className;
+    private final Class<?> _beanClass;
+    private final Method[] _reads;
+    private final Method[] _writes;
+
+    ClassFileWriter(final String className, final Class<?> beanClass, final Method[] reads, final Method[] writes) {
+      _className = className;
+      _beanClass = beanClass;
+      _reads = reads;
+      _writes = writes;
+    }
+
+    byte[] toByteArray() {
+      try {
+        // methods first so the constant pool is complete
+        final int thisClass = classConstant(_className);
+        final int superClass = classConstant("java/lang/Object");
+        final int accessorInterface = classConstant(ACCESSOR_INTERFACE);
+        final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        final DataOutputStream methodsOut = new DataOutputStream(methods);
+        writeMethod(methodsOut, "<init>", "()V", 1, 1, constructorCode());
+        writeMethod(methodsOut, "newInstance", "()Ljava/lang/Object;", 2, 1, newInstanceCode());
+        writeMethod(methodsOut, "get", "(Ljava/lang/Object;I)Ljava/lang/Object;", 4, 3, getCode());
+        writeMethod(methodsOut, "set", "(Ljava/lang/Object;ILjava/lang/Object;)V", 4, 4, setCode());
+        final ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(classFile);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_FILE_VERSION);
+        out.writeShort(_constantCount);
+        _constantPool.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(accessorInterface);
+        out.writeShort(0);
+        out.writeShort(4);
+        methods.writeTo(out);
+        out.writeShort(0);
+        return classFile.toByteArray();
+      } catch (IOException ex) {
+        throw new FudgeRuntimeException("Unable to generate accessor for " + _beanClass, ex);
+      }
+    }
+
+    private void writeMethod(final DataOutputStream out, final String name, final String descriptor,
+        final int maxStack, final int maxLocals, final Code code) throws IOException {
+      out.writeShort(ACC_PUBLIC);
+      out.writeShort(utf8Constant(name));
+      out.writeShort(utf8Constant(descriptor));
+      out.writeShort(1);
+      out.writeShort(utf8Constant("Code"));
+      out.writeInt(12 + code.size());
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(code.size());
+      code.writeTo(out);
+      out.writeShort(0);
+      out.writeShort(0);
+    }
+
+    //-------------------------------------------------------------------------
+    private Code constructorCode() throws IOException {
+      final Code code = new Code();
+      code.writeByte(ALOAD_0);
+      code.writeByte(INVOKESPECIAL);
+      code.writeShort(methodConstant("java/lang/Object", "<init>", "()V"));
+      code.writeByte(RETURN);
+      return code;
+    }
+
+    private Code newInstanceCode() throws IOException {
+      final Code code = new Code();
+      code.writeByte(NEW);
+      code.writeShort(classConstant(internalName(_beanClass)));
+      code.writeByte(DUP);
+      code.writeByte(INVOKESPECIAL);
+      code.writeShort(methodConstant(internalName(_beanClass), "<init>", "()V"));
+      code.writeByte(ARETURN);
+      return code;
+    }
+
+    private Code getCode() throws IOException {
+      final Code code = new Code();
+      final int[] cases = writeSwitch(code);
+      for (int i = 0; i < _reads.length; i++) {
+        final Method read = _reads[i];
+        if (read == null) {
+          continue;
+        }
+        code.patchCase(cases, i);
+        code.writeByte(ALOAD_1);
+        code.writeByte(CHECKCAST);
+        code.writeShort(classConstant(internalName(_beanClass)));
+        code.writeByte(INVOKEVIRTUAL);
+        code.writeShort(methodConstant(internalName(_beanClass), read.getName(), descriptor(read)));
+        final Class<?> type = read.getReturnType();
+        if (type.isPrimitive()) {
+          final Class<?> boxed = boxedType(type);
+          code.writeByte(INVOKESTATIC);
+          code.writeShort(methodConstant(internalName(boxed), "valueOf", "(" + descriptor(type) + ")" + descriptor(boxed)));
+        }
+        code.writeByte(ARETURN);
+      }
+      writeDefault(code, cases);
+      return code;
+    }
+
+    private Code setCode() throws IOException {
+      final Code code = new Code();
+      final int[] cases = writeSwitch(code);
+      for (int i = 0; i < _writes.length; i++) {
+        final Method write = _writes[i];
+        if (write == null) {
+          continue;
+        }
+        code.patchCase(cases, i);
+        code.writeByte(ALOAD_1);
+        code.writeByte(CHECKCAST);
+        code.writeShort(classConstant(internalName(_beanClass)));
+        code.writeByte(ALOAD_3);
+        final Class<?> type = write.getParameterTypes()[0];
+        if (type.isPrimitive()) {
+          final Class<?> boxed = boxedType(type);
+          code.writeByte(CHECKCAST);
+          code.writeShort(classConstant(internalName(boxed)));
+          code.writeByte(INVOKEVIRTUAL);
+          code.writeShort(methodConstant(internalName(boxed), type.getName() + "Value", "()" + descriptor(type)));
+        } else if (type != Object.class) {
+          code.writeByte(CHECKCAST);
+          code.writeShort(classConstant(internalName(type)));
+        }
+        code.writeByte(INVOKEVIRTUAL);
+        code.writeShort(methodConstant(internalName(_beanClass), write.getName(), descriptor(write)));
+        final Class<?> returnType = write.getReturnType();
+        if (returnType == Long.TYPE || returnType == Double.TYPE) {
+          code.writeByte(POP2);
+        } else if (returnType != Void.TYPE) {
+          code.writeByte(POP);
+        }
+        code.writeByte(RETURN);
+      }
+      writeDefault(code, cases);
+      return code;
+    }
+
+    /**
+     * Writes a {@code tableswitch} on the property index, returning the offsets to patch.
+     */
+    private int[] writeSwitch(final Code code) {
+      final int count = _reads.length;
+      if (count == 0) {
+        return new int[] {-1, -1 };
+      }
+      code.writeByte(ILOAD_2);
+      final int switchPosition = code.size();
+      code.writeByte(TABLESWITCH);
+      while ((code.size() % 4) != 0) {
+        code.writeByte(0);
+      }
+      final int[] cases = new int[count + 2];
+      cases[0] = switchPosition;
+      cases[1] = code.size();
+      code.writeInt(0);
+      code.writeInt(0);
+      code.writeInt(count - 1);
+      for (int i = 0; i < count; i++) {
+        cases[i + 2] = code.size();
+        code.writeInt(0);
+      }
+      return cases;
+    }
+
+    /**
+     * Writes the default branch, which throws an exception for an unknown property.
+     */
+    private void writeDefault(final Code code, final int[] cases) throws IOException {
+      if (cases[0] >= 0) {
+        final int position = code.size();
+        code.patchInt(cases[1], position - cases[0]);
+        for (int i = 2; i < cases.length; i++) {
+          if (code.readInt(cases[i]) == 0) {
+            code.patchInt(cases[i], position - cases[0]);
+          }
+        }
+      }
+      code.writeByte(NEW);
+      code.writeShort(classConstant("java/lang/IllegalArgumentException"));
+      code.writeByte(DUP);
+      code.writeByte(INVOKESPECIAL);
+      code.writeShort(methodConstant("java/lang/IllegalArgumentException", "<init>", "()V"));
+      code.writeByte(ATHROW);
+    }
+
+    //-------------------------------------------------------------------------
+    private int utf8Constant(final String value) throws IOException {
+      final String key = "U" + value;
+      Integer index = _constants.get(key);
+      if (index == null) {
+        _constantPoolOut.writeByte(1);
+        _constantPoolOut.writeUTF(value);
+        index = _constantCount++;
+        _constants.put(key, index);
+      }
+      return index;
+    }
+
+    private int classConstant(final String internalName) throws IOException {
+      final String key = "C" + internalName;
+      Integer index = _constants.get(key);
+      if (index == null) {
+        final int name = utf8Constant(internalName);
+        _constantPoolOut.writeByte(7);
+        _constantPoolOut.writeShort(name);
+        index = _constantCount++;
+        _constants.put(key, index);
+      }
+      return index;
+    }
+
+    private int methodConstant(final String owner, final String name, final String descriptor) throws IOException {
+      final String key = "M" + owner + "." + name + descriptor;
+      Integer index = _constants.get(key);
+      if (index == null) {
+        final int ownerIndex = classConstant(owner);
+        final int nameIndex = utf8Constant(name);
+        final int descriptorIndex = utf8Constant(descriptor);
+        _constantPoolOut.writeByte(12);
+        _constantPoolOut.writeShort(nameIndex);
+        _constantPoolOut.writeShort(descriptorIndex);
+        final int nameAndType = _constantCount++;
+        _constantPoolOut.writeByte(10);
+        _constantPoolOut.writeShort(ownerIndex);
+        _constantPoolOut.writeShort(nameAndType);
+        index = _constantCount++;
+        _constants.put(key, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * The bytecode of a method, with support for patching branch offsets.
+   */
+  private static final class Code extends ByteArrayOutputStream {
+
+    void writeByte(final int value) {
+      write(value);
+    }
+
+    void writeShort(final int value) {
+      write(value >>> 8);
+      write(value);
+    }
+
+    void writeInt(final int value) {
+      writeShort(value >>> 16);
+      writeShort(value);
+    }
+
+    int readInt(final int position) {
+      return ((buf[position] & 0xFF) << 24) | ((buf[position + 1] & 0xFF) << 16)
+          | ((buf[position + 2] & 0xFF) << 8) | (buf[position + 3] & 0xFF);
+    }
+
+    void patchInt(final int position, final int value) {
+      buf[position] = (byte) (value >>> 24);
+      buf[position + 1] = (byte) (value >>> 16);
+      buf[position + 2] = (byte) (value >>> 8);
+      buf[position + 3] = (byte) value;
+    }
+
+    /**
+     * Points the switch case for a property at the current position.
+     */
+    void patchCase(final int[] cases, final int property) {
+      patchInt(cases[property + 2], size() - cases[0]);
+    }
+  }
+
+}
@@ -23,6 +23,8 @@ import java.util.Set;
 import org.fudgemsg.*;
 import org.fudgemsg.types.FudgeTypeConverter;
 import org.fudgemsg.types.IndicatorType;
+import org.fudgemsg.wire.FudgeMsgEncoder;
+import org.fudgemsg.wire.FudgeStreamReader;
 import org.fudgemsg.wire.types.FudgeWireType;
 
 /**
@@ -30,11 +32,12 @@ import org.fudgemsg.wire.types.FudgeWireType;
  * <p/>
  * This builder is immutable and thread safe.
  */
-/* package */final class ListBuilder implements FudgeBuilder<List<?>> {
+/* package */final class ListBuilder implements FudgeBuilder<List<?>>, FudgeStreamObjectBuilder<List<?>>, FudgeStreamMessageBuilder<List<?>> {
   // a list is sent as a sub-message where each field is a list element
   // each list element has neither a name nor an ordinal
   // nulls are sent using the indicator type
   // a set may be read into a list
+  // a list of only Double, only Long or only Integer is sent as a single array field if the serializer allows
 
   /**
    * Singleton instance of the builder.
@@ -49,11 +52,10 @@ import org.fudgemsg.wire.types.FudgeWireType;
   public MutableFudgeMsg buildMessage(FudgeSerializer serializer, List<?> list) {
     final MutableFudgeMsg msg = serializer.newMessage();
 
-    List<Class> topTypesKeys = BuilderUtil.getTopTypes(list);
-
     if (list.isEmpty()) {
       msg.add(BuilderUtil.VALUE_TYPE_HINT_ORDINAL, null);
-    } else {
+    } else if (!BuilderUtil.addPrimitiveArray(serializer, msg, BuilderUtil.VALUE_TYPE_HINT_ORDINAL, list)) {
+      List<Class<?>> topTypesKeys = BuilderUtil.getTopTypes(list);
       for (Class topType : topTypesKeys) {
         // we are hinting the List that all its entries should have common type
         msg.add(null, BuilderUtil.VALUE_TYPE_HINT_ORDINAL, FudgeWireType.STRING, topType.getName());
@@ -70,19 +72,44 @@ import org.fudgemsg.wire.types.FudgeWireType;
     return msg;
   }
 
+  @Override
+  public void buildMessage(FudgeSerializer serializer, List<?> list, FudgeMsgEncoder encoder) {
+    if (list.isEmpty()) {
+      encoder.writeField(null, BuilderUtil.VALUE_TYPE_HINT_ORDINAL, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+    } else if (!BuilderUtil.addPrimitiveArray(serializer, encoder, BuilderUtil.VALUE_TYPE_HINT_ORDINAL, list)) {
+      List<Class<?>> topTypesKeys = BuilderUtil.getTopTypes(list);
+      for (Class topType : topTypesKeys) {
+        encoder.writeField(null, BuilderUtil.VALUE_TYPE_HINT_ORDINAL, FudgeWireType.STRING, topType.getName());
+      }
+      for (Object entry : list) {
+        if (entry == null) {
+          encoder.writeField(null, null, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+        } else {
+          serializer.addToStream(encoder, null, null, entry);
+        }
+      }
+    }
+  }
+
   @Override
   public List<?> buildObject(FudgeDeserializer deserializer, FudgeMsg message) {
     final List<Object> list = new ArrayList<Object>();
+    // allow cyclic references back to this list from its entries
+    deserializer.registerObject(message, list);
     final List<FudgeField> typeHints = message.getAllByOrdinal(BuilderUtil.VALUE_TYPE_HINT_ORDINAL);
     FudgeObjectBuilder<?> listEntryBuilder = BuilderUtil.findObjectBuilder(deserializer, typeHints);
     FudgeTypeConverter fudgeTypeConverter = BuilderUtil.findTypeConverter(deserializer, typeHints);
 
     for (FudgeField field : message) {
-      if ((field.getOrdinal() != null) && (field.getOrdinal() != BuilderUtil.VALUE_TYPE_HINT_ORDINAL)) {
+      if ((field.getOrdinal() != null) && (field.getOrdinal() == BuilderUtil.PRIMITIVE_ARRAY_ORDINAL)) {
+        BuilderUtil.addPrimitiveArrayElements(field, list);
+        continue;
+      }
+      if ((field.getOrdinal() != null) && (field.getOrdinal() != BuilderUtil.VALUE_TYPE_HINT_ORDINAL) && (field.getOrdinal() != FudgeSerializer.OBJECT_ID_ORDINAL)) {
         throw new IllegalArgumentException("Sub-message interpretted as a list but found invalid ordinal " + field + ")");
       }
 
-      if (field.getOrdinal() != null && field.getOrdinal() == BuilderUtil.VALUE_TYPE_HINT_ORDINAL) {
+      if (field.getOrdinal() != null && (field.getOrdinal() == BuilderUtil.VALUE_TYPE_HINT_ORDINAL || field.getOrdinal() == FudgeSerializer.OBJECT_ID_ORDINAL)) {
         continue;
       }
 
@@ -92,7 +119,7 @@ import org.fudgemsg.wire.types.FudgeWireType;
       if(value instanceof IndicatorType){
         obj = null;
       } else if (listEntryBuilder != null && value instanceof FudgeMsg) {
-        obj = listEntryBuilder.buildObject(deserializer, (FudgeMsg) value);
+        obj = deserializer.fudgeMsgToObject(listEntryBuilder, (FudgeMsg) value);
       } else if (fudgeTypeConverter != null) {
         obj = fudgeTypeConverter.primaryToSecondary(value);
       } else {
@@ -104,4 +131,9 @@ import org.fudgemsg.wire.types.FudgeWireType;
     return list;
   }
 
+  @Override
+  public List<?> buildObject(FudgeDeserializer deserializer, FudgeStreamReader reader) {
+    return (List<?>) BuilderUtil.streamCollection(deserializer, reader, new ArrayList<Object>(), BuilderUtil.VALUE_TYPE_HINT_ORDINAL, null);
+  }
+
 }
@@ -23,7 +23,11 @@ import org.fudgemsg.FudgeField;
 import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.MutableFudgeMsg;
 import org.fudgemsg.types.FudgeTypeConverter;
+import org.fudgemsg.UnmodifiableFudgeField;
 import org.fudgemsg.types.IndicatorType;
+import org.fudgemsg.wire.FudgeMsgEncoder;
+import org.fudgemsg.wire.FudgeStreamReader;
+import org.fudgemsg.wire.FudgeStreamReader.FudgeStreamElement;
 import org.fudgemsg.wire.types.FudgeWireType;
 
 /**
@@ -31,7 +35,7 @@ import org.fudgemsg.wire.types.FudgeWireType;
  * <p/>
  * This builder is immutable and thread safe.
  */
-/* package */final class MapBuilder implements FudgeBuilder<Map<?, ?>> {
+/* package */final class MapBuilder implements FudgeBuilder<Map<?, ?>>, FudgeStreamObjectBuilder<Map<?, ?>>, FudgeStreamMessageBuilder<Map<?, ?>> {
   // map stored as sub-message where each entry is stored as two fields
   // the two fields may be read as all keys then all values, all values
   // then all keys or a more typical mixture of key-value-key-value-...
@@ -51,8 +55,8 @@ import org.fudgemsg.wire.types.FudgeWireType;
   public MutableFudgeMsg buildMessage(FudgeSerializer serializer, Map<?, ?> map) {
     final MutableFudgeMsg msg = serializer.newMessage();
 
-    List<Class> topTypesKeys = BuilderUtil.getTopTypes(map.keySet());
-    List<Class> topTypesValues = BuilderUtil.getTopTypes(map.values());
+    List<Class<?>> topTypesKeys = BuilderUtil.getTopTypes(map.keySet());
+    List<Class<?>> topTypesValues = BuilderUtil.getTopTypes(map.values());
 
     if (map.isEmpty()) {
       msg.add(BuilderUtil.KEY_TYPE_HINT_ORDINAL, null);
@@ -82,9 +86,38 @@ import org.fudgemsg.wire.types.FudgeWireType;
     return msg;
   }
 
+  @Override
+  public void buildMessage(FudgeSerializer serializer, Map<?, ?> map, FudgeMsgEncoder encoder) {
+    if (map.isEmpty()) {
+      encoder.writeField(null, BuilderUtil.KEY_TYPE_HINT_ORDINAL, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+      encoder.writeField(null, BuilderUtil.VALUE_TYPE_HINT_ORDINAL, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+      return;
+    }
+    for (Class topType : BuilderUtil.getTopTypes(map.keySet())) {
+      encoder.writeField(null, BuilderUtil.KEY_TYPE_HINT_ORDINAL, FudgeWireType.STRING, topType.getName());
+    }
+    for (Class topType : BuilderUtil.getTopTypes(map.values())) {
+      encoder.writeField(null, BuilderUtil.VALUE_TYPE_HINT_ORDINAL, FudgeWireType.STRING, topType.getName());
+    }
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      if (entry.getKey() == null) {
+        encoder.writeField(null, BuilderUtil.KEY_ORDINAL, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+      } else {
+        serializer.addToStream(encoder, null, BuilderUtil.KEY_ORDINAL, entry.getKey());
+      }
+      if (entry.getValue() == null) {
+        encoder.writeField(null, BuilderUtil.VALUE_ORDINAL, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+      } else {
+        serializer.addToStream(encoder, null, BuilderUtil.VALUE_ORDINAL, entry.getValue());
+      }
+    }
+  }
+
   @Override
   public Map<?, ?> buildObject(FudgeDeserializer deserializer, FudgeMsg message) {
     final Map<Object, Object> map = new HashMap<Object, Object>();
+    // allow cyclic references back to this map from its entries
+    deserializer.registerObject(message, map);
     final Queue<Object> keys = new LinkedList<Object>();
     final Queue<Object> values = new LinkedList<Object>();
 
@@ -107,7 +140,7 @@ import org.fudgemsg.wire.types.FudgeWireType;
         if(value instanceof IndicatorType){
           obj = null;
         } else if (keyBuilder != null && value instanceof FudgeMsg) {
-          obj = keyBuilder.buildObject(deserializer, (FudgeMsg) value);
+          obj = deserializer.fudgeMsgToObject(keyBuilder, (FudgeMsg) value);
         } else if (keyTypeConverter != null) {
           obj = keyTypeConverter.primaryToSecondary(value);
         } else {
@@ -127,7 +160,7 @@ import org.fudgemsg.wire.types.FudgeWireType;
         if(value instanceof IndicatorType){
           obj = null;
         } else if (valueBuilder != null && value instanceof FudgeMsg) {
-          obj = valueBuilder.buildObject(deserializer, (FudgeMsg) value);
+          obj = deserializer.fudgeMsgToObject(valueBuilder, (FudgeMsg) value);
         } else if (valueTypeConverter != null) {
           obj = valueTypeConverter.primaryToSecondary(value);
         } else {
@@ -142,7 +175,7 @@ import org.fudgemsg.wire.types.FudgeWireType;
           // store value along with next key
           map.put(keys.remove(), obj);
         }
-      } else if (field.getOrdinal() != null && (field.getOrdinal() == BuilderUtil.KEY_TYPE_HINT_ORDINAL || field.getOrdinal() == BuilderUtil.VALUE_TYPE_HINT_ORDINAL)) {
+      } else if (field.getOrdinal() != null && (field.getOrdinal() == BuilderUtil.KEY_TYPE_HINT_ORDINAL || field.getOrdinal() == BuilderUtil.VALUE_TYPE_HINT_ORDINAL || field.getOrdinal() == FudgeSerializer.OBJECT_ID_ORDINAL)) {
         continue;
       } else {
         throw new IllegalArgumentException("Sub-message interpretted as a map but found invalid ordinal " + field + ")");
@@ -157,4 +190,80 @@ import org.fudgemsg.wire.types.FudgeWireType;
     return map;
   }
 
+  @Override
+  public Map<?, ?> buildObject(FudgeDeserializer deserializer, FudgeStreamReader reader) {
+    final Map<Object, Object> map = new HashMap<Object, Object>();
+    final Queue<Object> keys = new LinkedList<Object>();
+    final Queue<Object> values = new LinkedList<Object>();
+    final List<FudgeField> keysTypeHints = new ArrayList<FudgeField>();
+    final List<FudgeField> valuesTypeHints = new ArrayList<FudgeField>();
+    boolean resolved = false;
+    FudgeObjectBuilder<?> keyBuilder = null;
+    FudgeTypeConverter keyTypeConverter = null;
+    FudgeObjectBuilder<?> valueBuilder = null;
+    FudgeTypeConverter valueTypeConverter = null;
+    Object reference = null;
+
+    while (reader.hasNext()) {
+      final FudgeStreamElement element = reader.next();
+      if (element == FudgeStreamElement.SUBMESSAGE_FIELD_END) {
+        break;
+      }
+      final Integer ordinal = reader.getFieldOrdinal();
+      if (ordinal == null) {
+        throw new IllegalArgumentException("Sub-message interpretted as a map but found invalid ordinal " + ordinal);
+      }
+      if (element == FudgeStreamElement.SIMPLE_FIELD) {
+        final Object value = reader.getFieldValue();
+        if (ordinal == BuilderUtil.KEY_TYPE_HINT_ORDINAL) {
+          keysTypeHints.add(UnmodifiableFudgeField.of(reader.getFieldType(), value, reader.getFieldName(), ordinal));
+          continue;
+        } else if (ordinal == BuilderUtil.VALUE_TYPE_HINT_ORDINAL) {
+          valuesTypeHints.add(UnmodifiableFudgeField.of(reader.getFieldType(), value, reader.getFieldName(), ordinal));
+          continue;
+        } else if (ordinal == FudgeSerializer.OBJECT_ID_ORDINAL) {
+          deserializer.registerObject((Number) value, map);
+          continue;
+        } else if (ordinal == FudgeSerializer.TYPES_HEADER_ORDINAL && value instanceof Number) {
+          reference = deserializer.getReferencedObject((Number) value);
+          continue;
+        }
+      }
+      if (!resolved) {
+        keyBuilder = BuilderUtil.findObjectBuilder(deserializer, keysTypeHints);
+        keyTypeConverter = BuilderUtil.findTypeConverter(deserializer, keysTypeHints);
+        valueBuilder = BuilderUtil.findObjectBuilder(deserializer, valuesTypeHints);
+        valueTypeConverter = BuilderUtil.findTypeConverter(deserializer, valuesTypeHints);
+        resolved = true;
+      }
+      if (ordinal == BuilderUtil.KEY_ORDINAL) {
+        final Object obj = BuilderUtil.streamEntry(deserializer, reader, element, keyBuilder, keyTypeConverter);
+        if (values.isEmpty()) {
+          keys.add(obj);
+        } else {
+          map.put(obj, values.remove());
+        }
+      } else if (ordinal == BuilderUtil.VALUE_ORDINAL) {
+        final Object obj = BuilderUtil.streamEntry(deserializer, reader, element, valueBuilder, valueTypeConverter);
+        if (keys.isEmpty()) {
+          values.add(obj);
+        } else {
+          map.put(keys.remove(), obj);
+        }
+      } else {
+        throw new IllegalArgumentException("Sub-message interpretted as a map but found invalid ordinal " + ordinal);
+      }
+    }
+    if (reference != null) {
+      return (Map<?, ?>) reference;
+    }
+    if (keys.size() > 0) {
+      throw new IllegalArgumentException("Sub-message interpretted as a map but had more keys than values");
+    }
+    if (values.size() > 0) {
+      throw new IllegalArgumentException("Sub-message interpretted as a map but had more values than keys");
+    }
+    return map;
+  }
+
 }
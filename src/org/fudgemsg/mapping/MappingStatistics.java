@@ -0,0 +1,327 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing and size statistics of object mapping, per Java class and builder.
+ * <p>
+ * The statistics are recorded by {@link FudgeSerializer} and {@link FudgeDeserializer}
+ * when metrics are enabled on the context, see {@link org.fudgemsg.FudgeContext#enableMetrics}.
+ * Each call to a builder records its total time, including any nested objects, and its self time,
+ * excluding the nested objects that were themselves timed. Serialization also records the size
+ * of the message produced, for streamed objects and for the outermost object built as a message.
+ * Sizing each nested message as well would measure the same fields once per level of nesting.
+ * The report is sorted by self time to show the classes that would benefit most from a
+ * hand-written builder.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class MappingStatistics {
+
+  /**
+   * The direction of mapping.
+   */
+  public enum Direction {
+    /**
+     * Java object to Fudge message.
+     */
+    SERIALIZE,
+    /**
+     * Fudge message to Java object.
+     */
+    DESERIALIZE;
+  }
+
+  /**
+   * The broad kind of a builder.
+   */
+  public enum BuilderKind {
+    /**
+     * Builders using bean properties by reflection or a generated accessor.
+     */
+    JAVA_BEAN,
+    /**
+     * Builders calling the {@code toFudgeMsg} and {@code fromFudgeMsg} methods or constructor of the class.
+     */
+    FUDGE_MSG,
+    /**
+     * The built-in list, set, map and array builders.
+     */
+    COLLECTION,
+    /**
+     * Builders annotated with {@link FudgeBuilderFor} or {@link GenericFudgeBuilderFor},
+     * including those generated from {@link GenerateFudgeBuilder}.
+     */
+    ANNOTATED,
+    /**
+     * Any other builder, such as one registered directly with the dictionary.
+     */
+    OTHER;
+
+    /**
+     * Gets the kind of a builder.
+     * 
+     * @param builder  the builder, not null
+     * @return the kind, not null
+     */
+    public static BuilderKind of(final Object builder) {
+      if (builder instanceof JavaBeanBuilder<?> || builder instanceof ReflectionMessageBuilder<?> || builder instanceof ReflectionObjectBuilder<?>) {
+        return JAVA_BEAN;
+      }
+      if (builder instanceof ToFudgeMsgMessageBuilder<?> || builder instanceof FromFudgeMsgObjectBuilder<?> || builder instanceof FudgeMsgConstructorObjectBuilder<?>) {
+        return FUDGE_MSG;
+      }
+      if (builder instanceof ListBuilder || builder instanceof SetBuilder || builder instanceof MapBuilder || builder instanceof ArrayBuilder<?>) {
+        return COLLECTION;
+      }
+      final Class<?> builderClass = builder.getClass();
+      if (builderClass.isAnnotationPresent(FudgeBuilderFor.class) || builderClass.isAnnotationPresent(GenericFudgeBuilderFor.class)) {
+        return ANNOTATED;
+      }
+      return OTHER;
+    }
+  }
+
+  /**
+   * The entries, keyed by direction, Java class and builder class.
+   */
+  private final ConcurrentMap<Key, Entry> _entries = new ConcurrentHashMap<Key, Entry>();
+
+  /**
+   * Creates an empty instance.
+   */
+  public MappingStatistics() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Records a call to a builder.
+   * 
+   * @param direction  the direction of mapping, not null
+   * @param type  the Java class mapped, not null
+   * @param builder  the builder called, not null
+   * @param totalNanos  the time taken, including nested objects
+   * @param selfNanos  the time taken, excluding timed nested objects
+   * @param messageSize  the size of the message produced in bytes, negative if not known
+   */
+  public void record(final Direction direction, final Class<?> type, final Object builder,
+      final long totalNanos, final long selfNanos, final int messageSize) {
+    final Key key = new Key(direction, type, builder.getClass());
+    Entry entry = _entries.get(key);
+    if (entry == null) {
+      // not read back from the map, which a concurrent reset may clear
+      final Entry created = new Entry(key, BuilderKind.of(builder));
+      final Entry existing = _entries.putIfAbsent(key, created);
+      entry = (existing != null) ? existing : created;
+    }
+    entry._count.incrementAndGet();
+    entry._totalNanos.addAndGet(totalNanos);
+    entry._selfNanos.addAndGet(selfNanos);
+    if (messageSize >= 0) {
+      entry._sizedCount.incrementAndGet();
+      entry._bytes.addAndGet(messageSize);
+    }
+  }
+
+  /**
+   * Gets the entries, in decreasing order of self time.
+   * 
+   * @return a snapshot of the entries, not null
+   */
+  public List<Entry> getEntries() {
+    final List<Entry> entries = new ArrayList<Entry>(_entries.values());
+    Collections.sort(entries, new Comparator<Entry>() {
+      @Override
+      public int compare(final Entry o1, final Entry o2) {
+        final long self1 = o1.getSelfNanos();
+        final long self2 = o2.getSelfNanos();
+        return (self1 > self2) ? -1 : ((self1 < self2) ? 1 : 0);
+      }
+    });
+    return entries;
+  }
+
+  /**
+   * Clears all the entries.
+   */
+  public void reset() {
+    _entries.clear();
+  }
+
+  /**
+   * Gets a report of the entries as a text table, in decreasing order of self time.
+   * 
+   * @return the report, not null
+   */
+  public String getReport() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%-11s %-50s %-40s %-10s %10s %12s %12s %12s%n",
+        "direction", "class", "builder", "kind", "count", "total ms", "self ms", "mean bytes"));
+    for (Entry entry : getEntries()) {
+      sb.append(String.format("%-11s %-50s %-40s %-10s %10d %12.3f %12.3f %12s%n",
+          entry.getDirection(), entry.getType().getName(), entry.getBuilderClass().getSimpleName(), entry.getBuilderKind(),
+          entry.getCount(), entry.getTotalNanos() / 1e6, entry.getSelfNanos() / 1e6,
+          (entry.getSizedCount() > 0) ? Long.toString(entry.getBytes() / entry.getSizedCount()) : "-"));
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return getReport();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The statistics of one Java class mapped by one builder in one direction.
+   */
+  public static final class Entry {
+    private final Key _key;
+    private final BuilderKind _builderKind;
+    private final AtomicLong _count = new AtomicLong();
+    private final AtomicLong _totalNanos = new AtomicLong();
+    private final AtomicLong _selfNanos = new AtomicLong();
+    private final AtomicLong _sizedCount = new AtomicLong();
+    private final AtomicLong _bytes = new AtomicLong();
+
+    private Entry(final Key key, final BuilderKind builderKind) {
+      _key = key;
+      _builderKind = builderKind;
+    }
+
+    /**
+     * Gets the direction of mapping.
+     * 
+     * @return the direction, not null
+     */
+    public Direction getDirection() {
+      return _key._direction;
+    }
+
+    /**
+     * Gets the Java class mapped.
+     * 
+     * @return the class, not null
+     */
+    public Class<?> getType() {
+      return _key._type;
+    }
+
+    /**
+     * Gets the class of the builder used.
+     * 
+     * @return the builder class, not null
+     */
+    public Class<?> getBuilderClass() {
+      return _key._builderClass;
+    }
+
+    /**
+     * Gets the kind of the builder used.
+     * 
+     * @return the builder kind, not null
+     */
+    public BuilderKind getBuilderKind() {
+      return _builderKind;
+    }
+
+    /**
+     * Gets the number of calls to the builder.
+     * 
+     * @return the count
+     */
+    public long getCount() {
+      return _count.get();
+    }
+
+    /**
+     * Gets the cumulative time of the calls, including nested objects.
+     * 
+     * @return the time in nanoseconds
+     */
+    public long getTotalNanos() {
+      return _totalNanos.get();
+    }
+
+    /**
+     * Gets the cumulative time of the calls, excluding timed nested objects.
+     * 
+     * @return the time in nanoseconds
+     */
+    public long getSelfNanos() {
+      return _selfNanos.get();
+    }
+
+    /**
+     * Gets the number of calls for which the message size is known.
+     * 
+     * @return the count
+     */
+    public long getSizedCount() {
+      return _sizedCount.get();
+    }
+
+    /**
+     * Gets the cumulative size of the messages produced, where known.
+     * 
+     * @return the size in bytes
+     */
+    public long getBytes() {
+      return _bytes.get();
+    }
+  }
+
+  /**
+   * The key of an entry.
+   */
+  private static final class Key {
+    private final Direction _direction;
+    private final Class<?> _type;
+    private final Class<?> _builderClass;
+
+    private Key(final Direction direction, final Class<?> type, final Class<?> builderClass) {
+      _direction = direction;
+      _type = type;
+      _builderClass = builderClass;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof Key) {
+        final Key other = (Key) obj;
+        return _direction == other._direction && _type == other._type && _builderClass == other._builderClass;
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return (_direction.hashCode() * 31 + _type.hashCode()) * 31 + _builderClass.hashCode();
+    }
+  }
+
+}
@@ -16,23 +16,58 @@
 
 package org.fudgemsg.mapping;
 
-import java.util.Stack;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgFactory;
 import org.fudgemsg.FudgeRuntimeException;
+import org.fudgemsg.MutableFudgeMsg;
 
 /**
  * Buffer used for serialization and deserialization contexts that can detect cycles.
  * <p>
- * Some structures are graphs that contain cycles.
- * When the method for processing object graphs has been agreed, this will process
- * back and forward references.
+ * Objects are tracked by identity. By default a cycle is an error. When reference
+ * tracking is enabled, the serializer sends an object the first time it is seen and
+ * sends a reference to it on every subsequent occasion, including from within the
+ * object itself. The deserializer uses the same buffer to resolve those references.
+ * <p>
+ * An object that is referenced is given an identifier, sent as an integer field with
+ * ordinal {@link FudgeSerializer#OBJECT_ID_ORDINAL} in the message for that object.
+ * The identifier is only added when the second occurrence is found, which may be after
+ * the message for the first occurrence has been built, so objects that are never
+ * shared cost nothing. A reference is a message containing only the identifier with
+ * ordinal {@link FudgeSerializer#TYPES_HEADER_ORDINAL}.
  */
 /* package */class SerializationBuffer {
 
   /**
-   * The buffer stack.
+   * Placeholder value for objects in progress.
    */
-  private final Stack<Object> _buffer = new Stack<Object>();
+  private static final Object IN_PROGRESS = new Object();
+
+  /**
+   * The objects currently being processed, by identity.
+   */
+  private final Map<Object, Object> _inProgress = new IdentityHashMap<Object, Object>();
+  /**
+   * Whether to send references to objects already sent.
+   */
+  private boolean _referenceTracking;
+  /**
+   * The messages sent for each object, by identity, when tracking references.
+   */
+  private final Map<Object, MutableFudgeMsg> _messages = new IdentityHashMap<Object, MutableFudgeMsg>();
+  /**
+   * The identifiers given to referenced objects, by identity.
+   */
+  private final Map<Object, Integer> _objectIds = new IdentityHashMap<Object, Integer>();
+  /**
+   * The objects received, by identifier.
+   */
+  private final Map<Integer, Object> _objectsById = new HashMap<Integer, Object>();
 
   /**
    * Creates a new {@link SerializationBuffer}.
@@ -41,6 +76,56 @@ import org.fudgemsg.FudgeRuntimeException;
   }
 
   //-------------------------------------------------------------------------
+  /**
+   * Checks whether references are sent for objects already sent.
+   * 
+   * @return true if references are tracked
+   */
+  /* package */boolean isReferenceTracking() {
+    return _referenceTracking;
+  }
+
+  /**
+   * Sets whether references are sent for objects already sent.
+   * 
+   * @param referenceTracking  true to track references
+   */
+  /* package */void setReferenceTracking(final boolean referenceTracking) {
+    _referenceTracking = referenceTracking;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets a reference message for an object already sent or being sent.
+   * <p>
+   * The first time an object is referenced its identifier is allocated and added to the
+   * message for the object, or will be added when that message is complete.
+   * 
+   * @param object  the object to reference, not null
+   * @param factory  the factory for the reference message, not null
+   * @return the reference message, null if reference tracking is off or the object has not been seen
+   */
+  /* package */MutableFudgeMsg getReference(final Object object, final FudgeMsgFactory factory) {
+    if (!_referenceTracking) {
+      return null;
+    }
+    final MutableFudgeMsg message = _messages.get(object);
+    if (message == null && !_inProgress.containsKey(object)) {
+      return null;
+    }
+    Integer id = _objectIds.get(object);
+    if (id == null) {
+      id = _objectIds.size();
+      _objectIds.put(object, id);
+      if (message != null) {
+        message.add(null, FudgeSerializer.OBJECT_ID_ORDINAL, id);
+      }
+    }
+    final MutableFudgeMsg reference = factory.newMessage();
+    reference.add(null, FudgeSerializer.TYPES_HEADER_ORDINAL, id);
+    return reference;
+  }
+
   /**
    * Registers the start of an object being processed. During serialization can detect a loop
    * and raise a {@link FudgeRuntimeException}.
@@ -49,27 +134,79 @@ import org.fudgemsg.FudgeRuntimeException;
    * @throws FudgeRuntimeException if a cyclic reference is detected    
    */
   /* package */void beginObject(final Object object) {
-    if (_buffer.contains(object)) {
-      throw new UnsupportedOperationException("Serialization framework does not support cyclic references");
+    if (_inProgress.put(object, IN_PROGRESS) != null) {
+      throw new UnsupportedOperationException("Serialization framework does not support cyclic references unless reference tracking is enabled");
     }
-    _buffer.push(object);
   }
 
   /**
    * Registers the end of an object being processed.
    * 
    * @param object  the object being processed
+   * @param message  the message built for the object, null if it failed
+   */
+  /* package */void endObject(final Object object, final MutableFudgeMsg message) {
+    final Object obj = _inProgress.remove(object);
+    assert obj == IN_PROGRESS;
+    if (_referenceTracking && message != null) {
+      _messages.put(object, message);
+      final Integer id = _objectIds.get(object);
+      if (id != null) {
+        // referenced from within itself
+        message.add(null, FudgeSerializer.OBJECT_ID_ORDINAL, id);
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the identifier of an object sent in a message.
+   * 
+   * @param message  the message, not null
+   * @return the identifier, null if the object is not referenced
    */
-  /* package */void endObject(final Object object) {
-    final Object obj = _buffer.pop();
-    assert obj == object;
+  /* package */static Integer getObjectId(final FudgeMsg message) {
+    final FudgeField field = message.getByOrdinal(FudgeSerializer.OBJECT_ID_ORDINAL);
+    if (field == null || !(field.getValue() instanceof Number)) {
+      return null;
+    }
+    return ((Number) field.getValue()).intValue();
+  }
+
+  /**
+   * Registers an object received with an identifier.
+   * 
+   * @param id  the identifier
+   * @param object  the object, not null
+   */
+  /* package */void registerObject(final int id, final Object object) {
+    _objectsById.put(id, object);
+  }
+
+  /**
+   * Gets an object received with an identifier.
+   * 
+   * @param id  the identifier
+   * @return the object, not null
+   * @throws IllegalArgumentException if no object has been received with the identifier
+   */
+  /* package */Object getObject(final int id) {
+    final Object object = _objectsById.get(id);
+    if (object == null) {
+      throw new IllegalArgumentException("Unresolved object reference " + id
+          + ", the object is not known or is still being constructed");
+    }
+    return object;
   }
 
   /**
    * Resets the state of the buffer.
    */
   /* package */void reset() {
-    _buffer.clear();
+    _inProgress.clear();
+    _messages.clear();
+    _objectIds.clear();
+    _objectsById.clear();
   }
 
 }
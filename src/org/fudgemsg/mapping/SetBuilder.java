@@ -26,6 +26,8 @@ import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.MutableFudgeMsg;
 import org.fudgemsg.types.FudgeTypeConverter;
 import org.fudgemsg.types.IndicatorType;
+import org.fudgemsg.wire.FudgeMsgEncoder;
+import org.fudgemsg.wire.FudgeStreamReader;
 import org.fudgemsg.wire.types.FudgeWireType;
 
 /**
@@ -33,10 +35,11 @@ import org.fudgemsg.wire.types.FudgeWireType;
  * <p/>
  * This builder is immutable and thread safe.
  */
-/* package */final class SetBuilder implements FudgeBuilder<Set<?>> {
+/* package */final class SetBuilder implements FudgeBuilder<Set<?>>, FudgeStreamObjectBuilder<Set<?>>, FudgeStreamMessageBuilder<Set<?>> {
   // a list is sent as a sub-message where each field is a set element
   // each field has the ordinal 1
   // nulls are sent using the indicator type
+  // a set of only Double, only Long or only Integer is sent as a single array field if the serializer allows
 
   /**
    * Singleton instance of the {@link SetBuilder}.
@@ -50,13 +53,15 @@ import org.fudgemsg.wire.types.FudgeWireType;
   @Override
   public MutableFudgeMsg buildMessage(FudgeSerializer serializer, Set<?> set) {
 
-    List<Class> topTypesKeys = BuilderUtil.getTopTypes(set);
     final MutableFudgeMsg msg = serializer.newMessage();
 
     if (set.isEmpty()) {
       msg.add(BuilderUtil.KEY_TYPE_HINT_ORDINAL, null);
+    } else if (BuilderUtil.addPrimitiveArray(serializer, msg, BuilderUtil.KEY_TYPE_HINT_ORDINAL, set)) {
+      return msg;
     } else {
       // we are hinting the Set that all its entries should have common type
+      List<Class<?>> topTypesKeys = BuilderUtil.getTopTypes(set);
       for (Class topType : topTypesKeys) {
         msg.add(null, BuilderUtil.KEY_TYPE_HINT_ORDINAL, FudgeWireType.STRING, topType.getName());
       }
@@ -71,9 +76,32 @@ import org.fudgemsg.wire.types.FudgeWireType;
     return msg;
   }
 
+  @Override
+  public void buildMessage(FudgeSerializer serializer, Set<?> set, FudgeMsgEncoder encoder) {
+    if (set.isEmpty()) {
+      encoder.writeField(null, BuilderUtil.KEY_TYPE_HINT_ORDINAL, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+      return;
+    } else if (BuilderUtil.addPrimitiveArray(serializer, encoder, BuilderUtil.KEY_TYPE_HINT_ORDINAL, set)) {
+      return;
+    }
+    List<Class<?>> topTypesKeys = BuilderUtil.getTopTypes(set);
+    for (Class topType : topTypesKeys) {
+      encoder.writeField(null, BuilderUtil.KEY_TYPE_HINT_ORDINAL, FudgeWireType.STRING, topType.getName());
+    }
+    for (Object entry : set) {
+      if (entry == null) {
+        encoder.writeField(null, BuilderUtil.KEY_ORDINAL, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+      } else {
+        serializer.addToStream(encoder, null, BuilderUtil.KEY_ORDINAL, entry);
+      }
+    }
+  }
+
   @Override
   public Set<?> buildObject(FudgeDeserializer deserializer, FudgeMsg message) {
     final Set<Object> set = new HashSet<Object>();
+    // allow cyclic references back to this set from its entries
+    deserializer.registerObject(message, set);
 
     final List<FudgeField> typeHints = message.getAllByOrdinal(BuilderUtil.KEY_TYPE_HINT_ORDINAL);
     FudgeObjectBuilder<?> entryBuilder = BuilderUtil.findObjectBuilder(deserializer, typeHints);
@@ -82,15 +110,17 @@ import org.fudgemsg.wire.types.FudgeWireType;
     for (FudgeField field : message) {
       if ((field.getOrdinal() == null) && (field.getOrdinal() != BuilderUtil.KEY_ORDINAL) && (field.getOrdinal() != BuilderUtil.KEY_TYPE_HINT_ORDINAL)) {
         throw new IllegalArgumentException("Sub-message interpretted as a set but found invalid ordinal " + field + ")");
-      } else if (field.getOrdinal() == BuilderUtil.KEY_TYPE_HINT_ORDINAL) {
+      } else if (field.getOrdinal() == BuilderUtil.KEY_TYPE_HINT_ORDINAL || field.getOrdinal() == FudgeSerializer.OBJECT_ID_ORDINAL) {
         continue;
+      } else if (field.getOrdinal() == BuilderUtil.PRIMITIVE_ARRAY_ORDINAL) {
+        BuilderUtil.addPrimitiveArrayElements(field, set);
       } else {
         final Object value = field.getValue();
         final Object obj;
         if(value instanceof IndicatorType){
           obj = null;
         } else if (entryBuilder != null && value instanceof FudgeMsg) {
-          obj = entryBuilder.buildObject(deserializer, (FudgeMsg) value);
+          obj = deserializer.fudgeMsgToObject(entryBuilder, (FudgeMsg) value);
         } else if (typeConverter != null) {
           obj = typeConverter.primaryToSecondary(value);
         } else {
@@ -102,4 +132,9 @@ import org.fudgemsg.wire.types.FudgeWireType;
     return set;
   }
 
+  @Override
+  public Set<?> buildObject(FudgeDeserializer deserializer, FudgeStreamReader reader) {
+    return (Set<?>) BuilderUtil.streamCollection(deserializer, reader, new HashSet<Object>(), BuilderUtil.KEY_TYPE_HINT_ORDINAL, BuilderUtil.KEY_ORDINAL);
+  }
+
 }
@@ -0,0 +1,358 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.taxonomy;
+
+import java.util.Map;
+
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgFactory;
+import org.fudgemsg.MutableFudgeMsg;
+
+/**
+ * An immutable taxonomy implementation using pre-computed lookup tables.
+ * <p>
+ * Ordinal to name lookups index directly into an array covering the range of ordinals
+ * in the taxonomy. Name to ordinal lookups use an open-addressed hash table whose hash
+ * multiplier is chosen when the taxonomy is built so that, where possible, every name
+ * is found on the first probe. The stored names are interned so that names taken from
+ * string literals are matched by identity before falling back to {@code equals}.
+ * <p>
+ * This is intended for taxonomies that are used on every message of a high volume feed.
+ * Use {@link TaxonomyCompiler} to generate a compiled taxonomy class from a properties file.
+ */
+public class CompiledFudgeTaxonomy implements FudgeTaxonomy {
+
+  /**
+   * The number of hash multipliers to try at each table size before growing the table.
+   */
+  private static final int MULTIPLIER_ATTEMPTS = 64;
+  /**
+   * The maximum factor by which the hash table may be larger than the number of names.
+   */
+  private static final int MAX_TABLE_FACTOR = 8;
+
+  /**
+   * The lowest ordinal in the taxonomy.
+   */
+  private final int _minOrdinal;
+  /**
+   * The field names, indexed by ordinal less the lowest ordinal.
+   */
+  private final String[] _ordinalToName;
+  /**
+   * The hash table of names.
+   */
+  private final String[] _hashNames;
+  /**
+   * The ordinals corresponding to the hash table of names.
+   */
+  private final int[] _hashOrdinals;
+  /**
+   * The multiplier applied to the name hash code.
+   */
+  private final int _hashMultiplier;
+  /**
+   * The shift applied to the multiplied hash code to give the table index.
+   */
+  private final int _hashShift;
+  /**
+   * The number of fields in the taxonomy.
+   */
+  private final int _fieldCount;
+
+  /**
+   * Creates a new taxonomy initialized by the supplied map.
+   *
+   * @param ordinalToNameMap  the map of ordinal to field names, not null, no nulls
+   */
+  public CompiledFudgeTaxonomy(final Map<Integer, String> ordinalToNameMap) {
+    this(keys(ordinalToNameMap), values(ordinalToNameMap));
+  }
+
+  /**
+   * Creates a new taxonomy initialized by a list of ordinals and corresponding names.
+   * The ordinal and name arrays must be the same length.
+   *
+   * @param ordinals  the array of ordinal values, not null
+   * @param names  the array of field names, not null, no nulls
+   */
+  public CompiledFudgeTaxonomy(final int[] ordinals, final String[] names) {
+    this(ordinals, names, findHashTable(names));
+  }
+
+  /**
+   * Creates a new taxonomy initialized by a list of ordinals and corresponding names,
+   * using a hash table layout found when the taxonomy was compiled.
+   * <p>
+   * This is used by classes generated by {@link TaxonomyCompiler} so that the search for
+   * the hash multiplier is not repeated when the class is loaded. The layout only affects
+   * the number of probes needed by a lookup, not its result.
+   *
+   * @param ordinals  the array of ordinal values, not null
+   * @param names  the array of field names, not null, no nulls
+   * @param hashBits  the log2 size of the hash table of names, which must be larger than the number of names
+   * @param hashMultiplier  the multiplier applied to the name hash code
+   */
+  protected CompiledFudgeTaxonomy(final int[] ordinals, final String[] names, final int hashBits, final int hashMultiplier) {
+    this(ordinals, names, new int[] {hashBits, hashMultiplier });
+  }
+
+  /**
+   * Creates a new taxonomy.
+   *
+   * @param ordinals  the array of ordinal values, not null
+   * @param names  the array of field names, not null, no nulls
+   * @param hashTable  the log2 size of the hash table and the hash multiplier, not null
+   */
+  private CompiledFudgeTaxonomy(final int[] ordinals, final String[] names, final int[] hashTable) {
+    if (ordinals == null) {
+      throw new NullPointerException("Ordinal array must not be null");
+    }
+    if (names == null) {
+      throw new NullPointerException("Name array must not be null");
+    }
+    if (ordinals.length != names.length) {
+      throw new IllegalArgumentException("Ordinal and Name array must be same length");
+    }
+    final int hashBits = hashTable[0];
+    if ((hashBits < 1) || (hashBits > 30) || ((1 << hashBits) <= names.length)) {
+      throw new IllegalArgumentException("Hash table of " + hashBits + " bits too small for " + names.length + " names");
+    }
+    // ordinal to name array
+    int minOrdinal = 0;
+    int maxOrdinal = -1;
+    for (int i = 0; i < ordinals.length; i++) {
+      if (names[i] == null) {
+        throw new NullPointerException("Name array must not contain null");
+      }
+      if ((ordinals[i] < Short.MIN_VALUE) || (ordinals[i] > Short.MAX_VALUE)) {
+        throw new IllegalArgumentException("Ordinal " + ordinals[i] + " out of range");
+      }
+      if ((i == 0) || (ordinals[i] < minOrdinal)) {
+        minOrdinal = ordinals[i];
+      }
+      if ((i == 0) || (ordinals[i] > maxOrdinal)) {
+        maxOrdinal = ordinals[i];
+      }
+    }
+    _minOrdinal = minOrdinal;
+    _fieldCount = ordinals.length;
+    _ordinalToName = new String[maxOrdinal - minOrdinal + 1];
+    final String[] interned = new String[names.length];
+    for (int i = 0; i < ordinals.length; i++) {
+      interned[i] = names[i].intern();
+      if (_ordinalToName[ordinals[i] - minOrdinal] != null) {
+        throw new IllegalArgumentException("Duplicate ordinal " + ordinals[i]);
+      }
+      _ordinalToName[ordinals[i] - minOrdinal] = interned[i];
+    }
+    // name to ordinal hash table
+    _hashMultiplier = hashTable[1];
+    _hashShift = 32 - hashBits;
+    _hashNames = new String[1 << hashBits];
+    _hashOrdinals = new int[1 << hashBits];
+    for (int i = 0; i < interned.length; i++) {
+      final int mask = _hashNames.length - 1;
+      int index = (interned[i].hashCode() * _hashMultiplier) >>> _hashShift;
+      while (_hashNames[index] != null) {
+        if (_hashNames[index].equals(interned[i])) {
+          throw new IllegalArgumentException("Duplicate name " + interned[i]);
+        }
+        index = (index + 1) & mask;
+      }
+      _hashNames[index] = interned[i];
+      _hashOrdinals[index] = ordinals[i];
+    }
+  }
+
+  /**
+   * Finds the hash table size and multiplier needing the fewest probes to insert the names.
+   *
+   * @param names  the array of field names, not null, no nulls
+   * @return the log2 size of the hash table and the hash multiplier, not null
+   */
+  private static int[] findHashTable(final String[] names) {
+    if (names == null) {
+      throw new NullPointerException("Name array must not be null");
+    }
+    for (String name : names) {
+      if (name == null) {
+        throw new NullPointerException("Name array must not contain null");
+      }
+    }
+    int tableBits = 1;
+    while ((1 << tableBits) < names.length * 2) {
+      tableBits++;
+    }
+    int bestBits = tableBits;
+    int bestMultiplier = 1;
+    int bestProbes = Integer.MAX_VALUE;
+    search:
+    for (int bits = tableBits; (1 << bits) <= Math.max(2, names.length) * MAX_TABLE_FACTOR; bits++) {
+      int multiplier = 0x9E3779B9;
+      for (int attempt = 0; attempt < MULTIPLIER_ATTEMPTS; attempt++) {
+        final int probes = countProbes(names, bits, multiplier);
+        if (probes < bestProbes) {
+          bestBits = bits;
+          bestMultiplier = multiplier;
+          bestProbes = probes;
+          if (probes == names.length) {
+            // every name found on the first probe
+            break search;
+          }
+        }
+        multiplier = (multiplier * 0x5DEECE6D) | 1;
+      }
+    }
+    return new int[] {bestBits, bestMultiplier };
+  }
+
+  /**
+   * Counts the total number of probes needed to insert every name into a hash table.
+   *
+   * @param names  the names to insert, not null
+   * @param bits  the log2 size of the table
+   * @param multiplier  the hash multiplier
+   * @return the total number of probes
+   */
+  private static int countProbes(final String[] names, final int bits, final int multiplier) {
+    final boolean[] used = new boolean[1 << bits];
+    final int mask = used.length - 1;
+    int probes = 0;
+    for (String name : names) {
+      int index = (name.hashCode() * multiplier) >>> (32 - bits);
+      probes++;
+      while (used[index]) {
+        index = (index + 1) & mask;
+        probes++;
+      }
+      used[index] = true;
+    }
+    return probes;
+  }
+
+  private static int[] keys(final Map<Integer, String> ordinalToNameMap) {
+    final int[] ordinals = new int[ordinalToNameMap.size()];
+    int i = 0;
+    for (Integer ordinal : ordinalToNameMap.keySet()) {
+      if (ordinal == null) {
+        throw new NullPointerException("Map must not contain null");
+      }
+      ordinals[i++] = ordinal;
+    }
+    return ordinals;
+  }
+
+  private static String[] values(final Map<Integer, String> ordinalToNameMap) {
+    return ordinalToNameMap.values().toArray(new String[ordinalToNameMap.size()]);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the log2 size of the hash table of names.
+   *
+   * @return the number of bits
+   */
+  /* package */int getHashBits() {
+    return 32 - _hashShift;
+  }
+
+  /**
+   * Gets the multiplier applied to the name hash code.
+   *
+   * @return the multiplier
+   */
+  /* package */int getHashMultiplier() {
+    return _hashMultiplier;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String getFieldName(final int ordinal) {
+    final int index = ordinal - _minOrdinal;
+    if ((index < 0) || (index >= _ordinalToName.length)) {
+      return null;
+    }
+    return _ordinalToName[index];
+  }
+
+  @Override
+  public Integer getFieldOrdinal(final String name) {
+    if (name == null) {
+      return null;
+    }
+    final String[] hashNames = _hashNames;
+    final int mask = hashNames.length - 1;
+    final int hashCode = name.hashCode();
+    int index = (hashCode * _hashMultiplier) >>> _hashShift;
+    String candidate;
+    while ((candidate = hashNames[index]) != null) {
+      if ((candidate == name) || ((candidate.hashCode() == hashCode) && candidate.equals(name))) {
+        return _hashOrdinals[index];
+      }
+      index = (index + 1) & mask;
+    }
+    return null;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Encodes the taxonomy as a Fudge message as per the specification.
+   * <p>
+   * An encoded taxonomy can be decoded back to a taxonomy object by the
+   * {@link #fromFudgeMsg} method on this class or equivalent function
+   * in any other language implementation.
+   *
+   * @param context  the message context, not null
+   * @return the created message, not null
+   */
+  public MutableFudgeMsg toFudgeMsg(final FudgeMsgFactory context) {
+    final MutableFudgeMsg msg = context.newMessage();
+    for (int i = 0; i < _ordinalToName.length; i++) {
+      if (_ordinalToName[i] != null) {
+        msg.add(i + _minOrdinal, _ordinalToName[i]);
+      }
+    }
+    return msg;
+  }
+
+  /**
+   * Decodes a taxonomy from a Fudge message as per the specification.
+   *
+   * @param msg  the message to decode, not null
+   * @return the decoded taxonomy, not null
+   */
+  public static CompiledFudgeTaxonomy fromFudgeMsg(final FudgeMsg msg) {
+    return compile((MapFudgeTaxonomy) MapFudgeTaxonomy.fromFudgeMsg(msg));
+  }
+
+  /**
+   * Compiles an existing taxonomy.
+   *
+   * @param taxonomy  the taxonomy to compile, not null
+   * @return the compiled taxonomy, not null
+   */
+  public static CompiledFudgeTaxonomy compile(final MapFudgeTaxonomy taxonomy) {
+    return new CompiledFudgeTaxonomy(taxonomy.getOrdinalToNameMap());
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "CompiledFudgeTaxonomy[" + _fieldCount + " fields]";
+  }
+
+}
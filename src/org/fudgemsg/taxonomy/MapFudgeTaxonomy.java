@@ -119,6 +119,24 @@ public class MapFudgeTaxonomy implements FudgeTaxonomy {
     return ordinal;
   }
 
+  /**
+   * Gets the map of ordinal to field names.
+   * 
+   * @return the map, not null
+   */
+  Map<Integer, String> getOrdinalToNameMap() {
+    return Collections.unmodifiableMap(_ordinalToNameMap);
+  }
+
+  /**
+   * Compiles this taxonomy into one using pre-computed lookup tables.
+   * 
+   * @return the compiled taxonomy, not null
+   */
+  public CompiledFudgeTaxonomy compile() {
+    return CompiledFudgeTaxonomy.compile(this);
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Encodes the taxonomy as a Fudge message as per the specification.
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.taxonomy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.fudgemsg.FudgeRuntimeException;
+
+/**
+ * Tool to compile a {@link PropertyFileTaxonomy} definition into Java source for a
+ * {@link CompiledFudgeTaxonomy} subclass.
+ * <p>
+ * The generated class has a public no-arg constructor and holds the taxonomy as constant
+ * arrays, so no properties file needs to be located or parsed at runtime. The hash table
+ * layout is found when the source is generated, as {@link String#hashCode} is the same on
+ * every JVM, so it is not searched for when the class is loaded.
+ * <p>
+ * Usage:
+ * <pre>
+ * java org.fudgemsg.taxonomy.TaxonomyCompiler MyTaxonomy.properties com.example.MyTaxonomy src
+ * </pre>
+ * Files ending in {@code .xml} are read with {@link Properties#loadFromXML}, any other file
+ * is read with {@link Properties#load}.
+ */
+public final class TaxonomyCompiler {
+
+  /**
+   * Restricted constructor.
+   */
+  private TaxonomyCompiler() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Command line entry point.
+   *
+   * @param args  the properties file, the fully qualified class name to generate and the source output directory
+   */
+  public static void main(final String[] args) {
+    if (args.length != 3) {
+      System.err.println("Usage: TaxonomyCompiler <taxonomy-properties-file> <class-name> <output-directory>");
+      System.exit(1);
+    }
+    final File source = compile(new File(args[0]), args[1], new File(args[2]));
+    System.out.println("Wrote " + source);
+  }
+
+  /**
+   * Compiles a taxonomy properties file into a Java source file.
+   *
+   * @param propertiesFile  the taxonomy definition, not null
+   * @param className  the fully qualified name of the class to generate, not null
+   * @param outputDirectory  the root of the source tree to write to, not null
+   * @return the generated source file, not null
+   */
+  public static File compile(final File propertiesFile, final String className, final File outputDirectory) {
+    final Properties properties = new Properties();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(propertiesFile);
+      if (propertiesFile.getName().endsWith(".xml")) {
+        properties.loadFromXML(in);
+      } else {
+        properties.load(in);
+      }
+    } catch (IOException ex) {
+      throw new FudgeRuntimeException("Error reading taxonomy " + propertiesFile, ex);
+    } finally {
+      closeQuietly(in);
+    }
+    final String source = generateSource(new PropertyFileTaxonomy(properties), className);
+    final File file = new File(outputDirectory, className.replace('.', File.separatorChar) + ".java");
+    file.getParentFile().mkdirs();
+    Writer out = null;
+    try {
+      out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      out.write(source);
+    } catch (IOException ex) {
+      throw new FudgeRuntimeException("Error writing " + file, ex);
+    } finally {
+      closeQuietly(out);
+    }
+    return file;
+  }
+
+  /**
+   * Generates the Java source for a compiled taxonomy class.
+   *
+   * @param taxonomy  the taxonomy to compile, not null
+   * @param className  the fully qualified name of the class to generate, not null
+   * @return the Java source, not null
+   */
+  public static String generateSource(final MapFudgeTaxonomy taxonomy, final String className) {
+    final int dot = className.lastIndexOf('.');
+    final String packageName = (dot < 0) ? null : className.substring(0, dot);
+    final String simpleName = className.substring(dot + 1);
+    final Map<Integer, String> fields = new TreeMap<Integer, String>(taxonomy.getOrdinalToNameMap());
+    final int[] ordinals = new int[fields.size()];
+    int i = 0;
+    for (Integer ordinal : fields.keySet()) {
+      ordinals[i++] = ordinal;
+    }
+    final CompiledFudgeTaxonomy compiled = new CompiledFudgeTaxonomy(ordinals, fields.values().toArray(new String[fields.size()]));
+    final StringBuilder sb = new StringBuilder();
+    if (packageName != null) {
+      sb.append("package ").append(packageName).append(";\n\n");
+    }
+    sb.append("import org.fudgemsg.taxonomy.CompiledFudgeTaxonomy;\n\n");
+    sb.append("/**\n * Compiled Fudge taxonomy generated by TaxonomyCompiler. Do not edit.\n */\n");
+    sb.append("public class ").append(simpleName).append(" extends CompiledFudgeTaxonomy {\n\n");
+    sb.append("  private static final int[] ORDINALS = {");
+    boolean first = true;
+    for (Integer ordinal : fields.keySet()) {
+      sb.append(first ? "\n      " : ",\n      ").append(ordinal);
+      first = false;
+    }
+    sb.append("\n  };\n\n");
+    sb.append("  private static final String[] NAMES = {");
+    first = true;
+    for (String name : fields.values()) {
+      sb.append(first ? "\n      " : ",\n      ");
+      appendStringLiteral(sb, name);
+      first = false;
+    }
+    sb.append("\n  };\n\n");
+    sb.append("  private static final int HASH_BITS = ").append(compiled.getHashBits()).append(";\n\n");
+    sb.append("  private static final int HASH_MULTIPLIER = 0x").append(Integer.toHexString(compiled.getHashMultiplier())).append(";\n\n");
+    sb.append("  /**\n   * Creates the taxonomy.\n   */\n");
+    sb.append("  public ").append(simpleName).append("() {\n");
+    sb.append("    super(ORDINALS, NAMES, HASH_BITS, HASH_MULTIPLIER);\n");
+    sb.append("  }\n\n}\n");
+    return sb.toString();
+  }
+
+  private static void appendStringLiteral(final StringBuilder sb, final String str) {
+    sb.append('"');
+    for (int i = 0; i < str.length(); i++) {
+      final char c = str.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        case '\b':
+          sb.append("\\b");
+          break;
+        case '\f':
+          sb.append("\\f");
+          break;
+        default:
+          if (c < 0x20) {
+            // not a unicode escape, as those are translated before the source is parsed
+            sb.append(String.format("\\%03o", (int) c));
+          } else if (c > 0x7E) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+
+  private static void closeQuietly(final Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ex) {
+        // ignore
+      }
+    }
+  }
+
+}
@@ -15,11 +15,23 @@
  */
 package org.fudgemsg.taxonomy;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.fudgemsg.FudgeRuntimeException;
 
@@ -28,6 +40,18 @@ import org.fudgemsg.FudgeRuntimeException;
  * <p>
  * A concrete implementation must specify how the URL is constructed.
  * This resolver will cache the taxonomy objects.
+ * <p>
+ * Only one fetch is made for a given taxonomy at a time; concurrent requests for the same
+ * taxonomy wait for the fetch already in progress. Optionally:
+ * <ul>
+ * <li>taxonomies that could not be found are remembered for a time-to-live, see {@link #setMissTimeToLive};</li>
+ * <li>fetched taxonomies are written to a local directory and read from there in preference
+ * to the URL, giving a fast restart, see {@link #setCacheDirectory};</li>
+ * <li>callers can bound the time spent waiting for a fetch, with the fetch completing
+ * in the background, see {@link #setResolveTimeout};</li>
+ * <li>taxonomies known to be needed can be fetched in the background before the first
+ * message arrives, see {@link #prefetch}.</li>
+ * </ul>
  */
 public abstract class URLTaxonomyResolver implements TaxonomyResolver {
 
@@ -35,6 +59,30 @@ public abstract class URLTaxonomyResolver implements TaxonomyResolver {
    * The cache of taxonomies.
    */
   private final ConcurrentMap<Short, FudgeTaxonomy> _cache = new ConcurrentHashMap<Short, FudgeTaxonomy>();
+  /**
+   * The fetches in progress.
+   */
+  private final ConcurrentMap<Short, FutureTask<FudgeTaxonomy>> _pending = new ConcurrentHashMap<Short, FutureTask<FudgeTaxonomy>>();
+  /**
+   * The expiry times, in milliseconds, of taxonomies that could not be found.
+   */
+  private final ConcurrentMap<Short, Long> _misses = new ConcurrentHashMap<Short, Long>();
+  /**
+   * The time, in milliseconds, to remember a taxonomy could not be found.
+   */
+  private volatile long _missTimeToLive;
+  /**
+   * The maximum time, in milliseconds, to wait for a fetch, negative to wait indefinitely.
+   */
+  private volatile long _resolveTimeout = -1;
+  /**
+   * The local directory taxonomies are persisted to, null if none.
+   */
+  private volatile File _cacheDirectory;
+  /**
+   * The executor for background fetches.
+   */
+  private volatile Executor _executor = new DaemonThreadExecutor();
 
   /**
    * Creates a new resolver.
@@ -42,28 +90,308 @@ public abstract class URLTaxonomyResolver implements TaxonomyResolver {
   protected URLTaxonomyResolver() {
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the time that a taxonomy which could not be found is remembered for.
+   * 
+   * @return the time-to-live in milliseconds, zero if misses are not cached
+   */
+  public long getMissTimeToLive() {
+    return _missTimeToLive;
+  }
+
+  /**
+   * Sets the time that a taxonomy which could not be found is remembered for.
+   * During this time requests for the taxonomy return null without fetching it again.
+   * The default is zero, fetching again on every request.
+   * 
+   * @param missTimeToLive  the time-to-live in milliseconds, zero to not cache misses
+   */
+  public void setMissTimeToLive(final long missTimeToLive) {
+    _missTimeToLive = missTimeToLive;
+  }
+
+  /**
+   * Gets the maximum time to wait for a taxonomy to be fetched.
+   * 
+   * @return the timeout in milliseconds, negative to wait indefinitely
+   */
+  public long getResolveTimeout() {
+    return _resolveTimeout;
+  }
+
+  /**
+   * Sets the maximum time to wait for a taxonomy to be fetched.
+   * If the fetch has not completed in this time, null is returned and the fetch continues
+   * in the background so that a later request will find the taxonomy.
+   * The default is to wait indefinitely.
+   * 
+   * @param resolveTimeout  the timeout in milliseconds, negative to wait indefinitely
+   */
+  public void setResolveTimeout(final long resolveTimeout) {
+    _resolveTimeout = resolveTimeout;
+  }
+
+  /**
+   * Gets the local directory fetched taxonomies are written to.
+   * 
+   * @return the directory, null if none
+   */
+  public File getCacheDirectory() {
+    return _cacheDirectory;
+  }
+
+  /**
+   * Sets the local directory fetched taxonomies are written to.
+   * Taxonomies found in this directory are used in preference to fetching from the URL.
+   * 
+   * @param cacheDirectory  the directory, null for none
+   */
+  public void setCacheDirectory(final File cacheDirectory) {
+    _cacheDirectory = cacheDirectory;
+  }
+
+  /**
+   * Gets the executor used for background fetches.
+   * 
+   * @return the executor, not null
+   */
+  public Executor getExecutor() {
+    return _executor;
+  }
+
+  /**
+   * Sets the executor used for background fetches.
+   * The default starts a new daemon thread for each fetch.
+   * 
+   * @param executor  the executor, not null
+   */
+  public void setExecutor(final Executor executor) {
+    if (executor == null) {
+      throw new NullPointerException("Executor must not be null");
+    }
+    _executor = executor;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public FudgeTaxonomy resolveTaxonomy(final short taxonomyId) {
     FudgeTaxonomy taxonomy = _cache.get(taxonomyId);
-    if (taxonomy == null) {
-      try {
-        FudgeTaxonomy freshTaxonomy = new PropertyFileTaxonomy(createTaxonomyURL(taxonomyId));
-        taxonomy = _cache.putIfAbsent(taxonomyId, freshTaxonomy);
-        taxonomy = _cache.get(taxonomyId);
-      } catch (FudgeRuntimeException ex) {
-        if (ex.getCause() instanceof FileNotFoundException) {
-          return null;
-        } else {
-          throw ex;
+    if (taxonomy != null) {
+      return taxonomy;
+    }
+    if (isCachedMiss(taxonomyId)) {
+      return null;
+    }
+    final long timeout = getResolveTimeout();
+    FutureTask<FudgeTaxonomy> fetch = _pending.get(taxonomyId);
+    if (fetch == null) {
+      fetch = createFetch(taxonomyId);
+      if (fetch == null) {
+        // another thread started a fetch, which may also have completed
+        fetch = _pending.get(taxonomyId);
+        if (fetch == null) {
+          return _cache.get(taxonomyId);
+        }
+      } else if (timeout >= 0) {
+        getExecutor().execute(fetch);
+      }
+    }
+    if (timeout < 0) {
+      // run the fetch on this thread unless another thread is already doing so
+      fetch.run();
+    }
+    return waitFor(taxonomyId, fetch, timeout);
+  }
+
+  /**
+   * Starts background fetches of the given taxonomies.
+   * Taxonomies already cached, or already being fetched, are ignored.
+   * 
+   * @param taxonomyIds  the taxonomy IDs to fetch, not null
+   */
+  public void prefetch(final short... taxonomyIds) {
+    for (short taxonomyId : taxonomyIds) {
+      if (_cache.containsKey(taxonomyId) || _pending.containsKey(taxonomyId)) {
+        continue;
+      }
+      final FutureTask<FudgeTaxonomy> fetch = createFetch(taxonomyId);
+      if (fetch != null) {
+        getExecutor().execute(fetch);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the taxonomy is known to be missing.
+   * 
+   * @param taxonomyId  the taxonomy ID
+   * @return true if a previous fetch failed and has not expired
+   */
+  private boolean isCachedMiss(final short taxonomyId) {
+    final Long expiry = _misses.get(taxonomyId);
+    if (expiry == null) {
+      return false;
+    }
+    if (expiry > System.currentTimeMillis()) {
+      return true;
+    }
+    _misses.remove(taxonomyId, expiry);
+    return false;
+  }
+
+  /**
+   * Creates a fetch for a taxonomy, unless one is already in progress.
+   * <p>
+   * The fetch is not started. Only the caller that created it should start it;
+   * other callers wait on the fetch in progress.
+   * 
+   * @param taxonomyId  the taxonomy ID
+   * @return the new fetch, null if a fetch is in progress or the taxonomy is already cached
+   */
+  private FutureTask<FudgeTaxonomy> createFetch(final short taxonomyId) {
+    final FutureTask<FudgeTaxonomy> fetch = new FutureTask<FudgeTaxonomy>(new Callable<FudgeTaxonomy>() {
+      @Override
+      public FudgeTaxonomy call() throws Exception {
+        try {
+          final FudgeTaxonomy taxonomy = fetchTaxonomy(taxonomyId);
+          if (taxonomy != null) {
+            _cache.put(taxonomyId, taxonomy);
+            _misses.remove(taxonomyId);
+          } else if (getMissTimeToLive() > 0) {
+            _misses.put(taxonomyId, System.currentTimeMillis() + getMissTimeToLive());
+          }
+          return taxonomy;
+        } finally {
+          _pending.remove(taxonomyId);
         }
+      }
+    });
+    if (_pending.putIfAbsent(taxonomyId, fetch) != null) {
+      return null;
+    }
+    if (_cache.containsKey(taxonomyId)) {
+      _pending.remove(taxonomyId, fetch);
+      return null;
+    }
+    return fetch;
+  }
+
+  /**
+   * Waits for a fetch to complete.
+   * 
+   * @param taxonomyId  the taxonomy ID
+   * @param fetch  the fetch, not null
+   * @param timeout  the maximum time to wait in milliseconds, negative to wait indefinitely
+   * @return the taxonomy, null if not found or not fetched in time
+   */
+  private FudgeTaxonomy waitFor(final short taxonomyId, final FutureTask<FudgeTaxonomy> fetch, final long timeout) {
+    try {
+      if (timeout < 0) {
+        return fetch.get();
+      } else {
+        return fetch.get(timeout, TimeUnit.MILLISECONDS);
+      }
+    } catch (TimeoutException ex) {
+      return null;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new FudgeRuntimeException("Unable to fetch taxonomy: " + taxonomyId, cause);
+    }
+  }
+
+  /**
+   * Fetches a taxonomy, from the cache directory if present there, or from its URL.
+   * 
+   * @param taxonomyId  the taxonomy ID
+   * @return the taxonomy, null if not found
+   */
+  protected FudgeTaxonomy fetchTaxonomy(final short taxonomyId) {
+    final File cacheFile = getCacheFile(taxonomyId);
+    if (cacheFile != null && cacheFile.isFile()) {
+      try {
+        return new PropertyFileTaxonomy(cacheFile.toURI().toURL());
       } catch (MalformedURLException ex) {
-        throw new FudgeRuntimeException("Unable to create URL for taxonomy: " + taxonomyId, ex);
+        throw new FudgeRuntimeException("Unable to create URL for cached taxonomy: " + cacheFile, ex);
+      } catch (FudgeRuntimeException ex) {
+        // unreadable cache file, so fetch again
+      }
+    }
+    final PropertyFileTaxonomy taxonomy;
+    try {
+      taxonomy = new PropertyFileTaxonomy(createTaxonomyURL(taxonomyId));
+    } catch (FudgeRuntimeException ex) {
+      if (ex.getCause() instanceof FileNotFoundException) {
+        return null;
+      } else {
+        throw ex;
       }
+    } catch (MalformedURLException ex) {
+      throw new FudgeRuntimeException("Unable to create URL for taxonomy: " + taxonomyId, ex);
+    }
+    if (cacheFile != null) {
+      writeCacheFile(cacheFile, taxonomy);
     }
     return taxonomy;
   }
 
+  /**
+   * Gets the file in the cache directory for a taxonomy.
+   * 
+   * @param taxonomyId  the taxonomy ID
+   * @return the file, null if there is no cache directory
+   */
+  private File getCacheFile(final short taxonomyId) {
+    final File directory = getCacheDirectory();
+    if (directory == null) {
+      return null;
+    }
+    return new File(directory, taxonomyId + ".xml");
+  }
+
+  /**
+   * Writes a taxonomy to the cache directory.
+   * The file is written under a temporary name and renamed so that a partial file is never read.
+   * Failure to write is ignored as the taxonomy can always be fetched again.
+   * 
+   * @param cacheFile  the file to write, not null
+   * @param taxonomy  the taxonomy, not null
+   */
+  private static void writeCacheFile(final File cacheFile, final MapFudgeTaxonomy taxonomy) {
+    final Properties properties = new Properties();
+    for (Map.Entry<Integer, String> entry : taxonomy.getOrdinalToNameMap().entrySet()) {
+      properties.setProperty(entry.getKey().toString(), entry.getValue());
+    }
+    cacheFile.getParentFile().mkdirs();
+    final File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp" + Thread.currentThread().getId());
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(tempFile);
+      properties.storeToXML(out, null);
+      out.close();
+      out = null;
+      if (!tempFile.renameTo(cacheFile)) {
+        tempFile.delete();
+      }
+    } catch (IOException ex) {
+      tempFile.delete();
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException ex) {
+          // ignore
+        }
+      }
+    }
+  }
+
   /**
    * Returns the URL that the taxonomy corresponding to the ID should be loaded from.
    * 
@@ -75,9 +403,24 @@ public abstract class URLTaxonomyResolver implements TaxonomyResolver {
 
   /**
    * Clears the resolver cache.
+   * Taxonomies remembered as missing are also cleared; the cache directory is not affected.
    */
   public void reset() {
     _cache.clear();
+    _misses.clear();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Executor starting a daemon thread for each task.
+   */
+  private static final class DaemonThreadExecutor implements Executor {
+    @Override
+    public void execute(final Runnable command) {
+      final Thread thread = new Thread(command, "URLTaxonomyResolver");
+      thread.setDaemon(true);
+      thread.start();
+    }
   }
 
 }
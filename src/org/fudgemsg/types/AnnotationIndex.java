@@ -0,0 +1,389 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.types;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import org.fudgemsg.FudgeRuntimeException;
+import org.scannotation.AnnotationDB;
+
+/**
+ * Index of the classes using a fixed set of annotations across the classpath.
+ * <p>
+ * Each classpath element is indexed in the cheapest way available:
+ * <ul>
+ *   <li>from the index resource written into a jar at build time, if present
+ *   <li>from the cache file, if the element is a jar with the same timestamp and length as when cached
+ *   <li>otherwise by scanning the element, with all such elements scanned in parallel
+ * </ul>
+ * The cache file is rewritten if any element was scanned. Directories are always scanned
+ * as their timestamp does not reflect changes to their contents.
+ * <p>
+ * This class is immutable and thread-safe once built.
+ */
+/* package */final class AnnotationIndex {
+
+  /**
+   * The marker for the start of an element in the cache file.
+   */
+  private static final String CACHE_ELEMENT = "element ";
+
+  /**
+   * The class names, keyed by annotation name.
+   */
+  private final Map<String, Set<String>> _classNames;
+
+  /**
+   * Creates an index.
+   *
+   * @param classNames  the class names by annotation name, not null
+   */
+  private AnnotationIndex(final Map<String, Set<String>> classNames) {
+    _classNames = classNames;
+  }
+
+  /**
+   * Gets the names of the classes using an annotation.
+   *
+   * @param annotationName  the annotation class name, not null
+   * @return the class names, not null
+   */
+  /* package */Set<String> getClassNames(final String annotationName) {
+    final Set<String> classNames = _classNames.get(annotationName);
+    return (classNames != null) ? Collections.unmodifiableSet(classNames) : Collections.<String>emptySet();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Builds an index of classpath elements.
+   *
+   * @param elements  the classpath elements, not null
+   * @param annotationNames  the names of the annotations to index, not null
+   * @param cacheFile  the cache file, null for no cache
+   * @return the index, not null
+   */
+  /* package */static AnnotationIndex build(final URL[] elements, final Set<String> annotationNames, final File cacheFile) {
+    final Map<String, ElementIndex> cached = (cacheFile != null) ? readCache(cacheFile) : Collections.<String, ElementIndex>emptyMap();
+    final Map<String, ElementIndex> indices = new LinkedHashMap<String, ElementIndex>();
+    final List<URL> unindexed = new ArrayList<URL>();
+    for (URL element : elements) {
+      final String key = element.toExternalForm();
+      ElementIndex index = readIndexResource(element);
+      if (index == null) {
+        final ElementIndex cachedIndex = cached.get(key);
+        if (cachedIndex != null && cachedIndex._stamp != null && cachedIndex._stamp.equals(getStamp(element))) {
+          index = cachedIndex;
+        }
+      }
+      if (index == null) {
+        unindexed.add(element);
+      }
+      indices.put(key, index);
+    }
+    if (!unindexed.isEmpty()) {
+      for (ElementIndex index : scan(unindexed, annotationNames)) {
+        indices.put(index._element, index);
+      }
+      if (cacheFile != null) {
+        writeCache(cacheFile, indices.values());
+      }
+    }
+    final Map<String, Set<String>> classNames = new HashMap<String, Set<String>>();
+    for (ElementIndex index : indices.values()) {
+      for (String[] entry : index._entries) {
+        if (!annotationNames.contains(entry[0])) {
+          continue;
+        }
+        Set<String> names = classNames.get(entry[0]);
+        if (names == null) {
+          names = new LinkedHashSet<String>();
+          classNames.put(entry[0], names);
+        }
+        names.add(entry[1]);
+      }
+    }
+    return new AnnotationIndex(classNames);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the file of a classpath element.
+   *
+   * @param element  the element, not null
+   * @return the file, null if not a file URL
+   */
+  private static File getFile(final URL element) {
+    if (!"file".equals(element.getProtocol())) {
+      return null;
+    }
+    try {
+      return new File(element.toURI());
+    } catch (URISyntaxException ex) {
+      return null;
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets the stamp that changes when a classpath element changes.
+   *
+   * @param element  the element, not null
+   * @return the stamp, null if the element is not a file and cannot be cached
+   */
+  private static String getStamp(final URL element) {
+    final File file = getFile(element);
+    if (file == null || !file.isFile()) {
+      return null;
+    }
+    return file.lastModified() + "/" + file.length();
+  }
+
+  /**
+   * Reads the index resource written into a jar at build time.
+   * <p>
+   * The resource is not read from directories, as an incremental compile may write an index
+   * of just the classes recompiled.
+   *
+   * @param element  the element, not null
+   * @return the index, null if the element is not a jar with an index resource
+   */
+  private static ElementIndex readIndexResource(final URL element) {
+    final File file = getFile(element);
+    if (file == null || !file.isFile()) {
+      return null;
+    }
+    try {
+      final JarFile jar = new JarFile(file);
+      try {
+        final ZipEntry entry = jar.getEntry(ClasspathUtilities.ANNOTATION_INDEX_RESOURCE);
+        if (entry == null) {
+          return null;
+        }
+        return readIndex(element.toExternalForm(), jar.getInputStream(entry));
+      } finally {
+        jar.close();
+      }
+    } catch (IOException ex) {
+      // fall back to scanning
+      return null;
+    }
+  }
+
+  /**
+   * Reads the entries of an index resource, closing the stream.
+   */
+  private static ElementIndex readIndex(final String element, final InputStream in) throws IOException {
+    final ElementIndex index = new ElementIndex(element, null);
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        index.addLine(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return index;
+  }
+
+  /**
+   * Scans classpath elements in parallel.
+   *
+   * @param elements  the elements to scan, not empty
+   * @param annotationNames  the names of the annotations to index, not null
+   * @return the indices, not null
+   */
+  private static List<ElementIndex> scan(final List<URL> elements, final Set<String> annotationNames) {
+    final int threads = Math.min(elements.size(), Runtime.getRuntime().availableProcessors());
+    final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "fudge-classpath-scan");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      final List<Future<ElementIndex>> futures = new ArrayList<Future<ElementIndex>>(elements.size());
+      for (final URL element : elements) {
+        futures.add(executor.submit(new Callable<ElementIndex>() {
+          @Override
+          public ElementIndex call() throws IOException {
+            return scan(element, annotationNames);
+          }
+        }));
+      }
+      final List<ElementIndex> indices = new ArrayList<ElementIndex>(elements.size());
+      for (Future<ElementIndex> future : futures) {
+        indices.add(future.get());
+      }
+      return indices;
+    } catch (ExecutionException ex) {
+      throw new FudgeRuntimeException("Unable to scan classpath elements for annotations", ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FudgeRuntimeException("Interrupted scanning classpath elements for annotations", ex);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Scans a single classpath element.
+   */
+  private static ElementIndex scan(final URL element, final Set<String> annotationNames) throws IOException {
+    // the stamp is taken first so that a change during the scan invalidates the cache entry
+    final ElementIndex index = new ElementIndex(element.toExternalForm(), getStamp(element));
+    final AnnotationDB annotationDB = new AnnotationDB();
+    annotationDB.setScanClassAnnotations(true);
+    annotationDB.setScanFieldAnnotations(true);
+    annotationDB.setScanMethodAnnotations(false);
+    annotationDB.setScanParameterAnnotations(false);
+    annotationDB.scanArchives(element);
+    for (Map.Entry<String, Set<String>> entry : annotationDB.getAnnotationIndex().entrySet()) {
+      if (annotationNames.contains(entry.getKey())) {
+        for (String className : entry.getValue()) {
+          index._entries.add(new String[] {entry.getKey(), className });
+        }
+      }
+    }
+    return index;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Reads the cache file.
+   *
+   * @param cacheFile  the file, not null
+   * @return the cached indices keyed by element, empty if the file cannot be read
+   */
+  private static Map<String, ElementIndex> readCache(final File cacheFile) {
+    final Map<String, ElementIndex> cached = new HashMap<String, ElementIndex>();
+    if (!cacheFile.isFile()) {
+      return cached;
+    }
+    try {
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), "UTF-8"));
+      try {
+        ElementIndex index = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.startsWith(CACHE_ELEMENT)) {
+            final String[] parts = line.substring(CACHE_ELEMENT.length()).split(" ");
+            if (parts.length == 2) {
+              index = new ElementIndex(parts[0], parts[1]);
+              cached.put(index._element, index);
+            } else {
+              index = null;
+            }
+          } else if (index != null) {
+            index.addLine(line);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException ex) {
+      // rescan everything
+      cached.clear();
+    }
+    return cached;
+  }
+
+  /**
+   * Writes the cache file, ignoring failures.
+   *
+   * @param cacheFile  the file, not null
+   * @param indices  the indices, not null
+   */
+  private static void writeCache(final File cacheFile, final Iterable<ElementIndex> indices) {
+    final File tempFile = new File(cacheFile.getPath() + ".tmp");
+    try {
+      final PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8")));
+      try {
+        for (ElementIndex index : indices) {
+          if (index._stamp == null) {
+            continue;
+          }
+          pw.println(CACHE_ELEMENT + index._element + " " + index._stamp);
+          for (String[] entry : index._entries) {
+            pw.println(entry[0] + " " + entry[1]);
+          }
+        }
+      } finally {
+        pw.close();
+      }
+      cacheFile.delete();
+      tempFile.renameTo(cacheFile);
+    } catch (IOException ex) {
+      // Error writing the file
+      tempFile.delete();
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The annotations used in a single classpath element.
+   */
+  private static final class ElementIndex {
+    private final String _element;
+    private final String _stamp;
+    private final List<String[]> _entries = new ArrayList<String[]>();
+    private ElementIndex(final String element, final String stamp) {
+      _element = element;
+      _stamp = stamp;
+    }
+    private void addLine(String line) {
+      line = line.trim();
+      if (line.length() == 0 || line.startsWith("#")) {
+        return;
+      }
+      final int space = line.indexOf(' ');
+      if (space > 0) {
+        _entries.add(new String[] {line.substring(0, space), line.substring(space + 1).trim() });
+      }
+    }
+  }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.types;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor writing the index of classes using the Fudge annotations.
+ * <p>
+ * The index is written to {@link ClasspathUtilities#ANNOTATION_INDEX_RESOURCE} so that a jar
+ * built with this processor is not scanned by {@link ClasspathUtilities#getClassNamesWithAnnotation}.
+ * A field annotated with {@link FudgeSecondaryType} is indexed by its declaring class, as when scanned.
+ * <p>
+ * Entries written by an earlier compilation into the same output are kept if their class
+ * was not compiled again and its class file is still present, so that incremental
+ * compilation of only some classes does not drop the others from the index.
+ * <p>
+ * The processor is registered as a service so that it is run by the compiler whenever this
+ * library is on the processor path. It supports all annotation types, without claiming them,
+ * so that it also runs when the classes compiled no longer use the Fudge annotations.
+ */
+@SupportedAnnotationTypes("*")
+public class AnnotationIndexProcessor extends AbstractProcessor {
+
+  /**
+   * The names of the annotations indexed.
+   */
+  private static final Set<String> INDEXED_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+      "org.fudgemsg.mapping.FudgeBuilderFor", "org.fudgemsg.mapping.GenericFudgeBuilderFor", "org.fudgemsg.types.FudgeSecondaryType"));
+
+  /**
+   * The index entries, each the annotation name and class name separated by a space, sorted.
+   */
+  private final Set<String> _entries = new TreeSet<String>();
+  /**
+   * The binary names of the classes compiled, including nested classes.
+   */
+  private final Set<String> _compiled = new HashSet<String>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getRootElements()) {
+      addCompiled(element);
+    }
+    for (TypeElement annotation : annotations) {
+      final String annotationName = annotation.getQualifiedName().toString();
+      if (!INDEXED_ANNOTATIONS.contains(annotationName)) {
+        continue;
+      }
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        while (element != null && !(element instanceof TypeElement)) {
+          element = element.getEnclosingElement();
+        }
+        if (element != null) {
+          _entries.add(annotationName + " " + processingEnv.getElementUtils().getBinaryName((TypeElement) element));
+        }
+      }
+    }
+    if (roundEnv.processingOver()) {
+      writeIndex();
+    }
+    return false;
+  }
+
+  /**
+   * Records a compiled class and the classes nested within it.
+   * 
+   * @param element  the element, not null
+   */
+  private void addCompiled(final Element element) {
+    if (element instanceof TypeElement) {
+      _compiled.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+      for (Element enclosed : element.getEnclosedElements()) {
+        if (enclosed.getKind().isClass() || enclosed.getKind().isInterface()) {
+          addCompiled(enclosed);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the index resource, merged with any index from an earlier compilation.
+   */
+  private void writeIndex() {
+    final List<String> earlier = readIndex();
+    if (earlier == null && _entries.isEmpty()) {
+      return;
+    }
+    if (earlier != null) {
+      for (String entry : earlier) {
+        final String className = entry.substring(entry.indexOf(' ') + 1);
+        if (!_compiled.contains(className) && classFileExists(className)) {
+          _entries.add(entry);
+        }
+      }
+    }
+    try {
+      final FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ClasspathUtilities.ANNOTATION_INDEX_RESOURCE);
+      final PrintWriter pw = new PrintWriter(resource.openWriter());
+      try {
+        for (String entry : _entries) {
+          pw.println(entry);
+        }
+      } finally {
+        pw.close();
+      }
+    } catch (IOException ex) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + ClasspathUtilities.ANNOTATION_INDEX_RESOURCE + ": " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Reads the index written by an earlier compilation into the class output.
+   * 
+   * @return the entries, null if there is no earlier index
+   */
+  private List<String> readIndex() {
+    final List<String> entries = new ArrayList<String>();
+    try {
+      final FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", ClasspathUtilities.ANNOTATION_INDEX_RESOURCE);
+      final BufferedReader reader = new BufferedReader(resource.openReader(true));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          line = line.trim();
+          if (line.indexOf(' ') > 0) {
+            entries.add(line);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException ex) {
+      // no earlier index
+      return null;
+    }
+    return entries;
+  }
+
+  /**
+   * Checks whether the class file for a class exists in the class output.
+   *
+   * @param className  the binary name of the class, not null
+   * @return true if the class file exists
+   */
+  private boolean classFileExists(final String className) {
+    final int dot = className.lastIndexOf('.');
+    final String packageName = (dot < 0) ? "" : className.substring(0, dot);
+    try {
+      final FileObject classFile = processingEnv.getFiler().getResource(
+          StandardLocation.CLASS_OUTPUT, packageName, className.substring(dot + 1) + ".class");
+      classFile.openInputStream().close();
+      return true;
+    } catch (IOException ex) {
+      return false;
+    } catch (IllegalArgumentException ex) {
+      return false;
+    }
+  }
+
+}
@@ -22,15 +22,21 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
 import org.fudgemsg.FudgeRuntimeException;
@@ -45,9 +51,28 @@ public final class ClasspathUtilities {
    * The property used to specify where the path annotations should be cached to avoid costly scanning.
    */
   public static final String ANNOTATION_CACHE_PATH_PROPERTY = "fudgemsg.annotationCachePath";
+  /**
+   * The resource written at build time listing the classes using the Fudge annotations,
+   * see {@link AnnotationIndexProcessor}. It is only read from jars, as an incremental
+   * compile into a class directory may write an index of just the classes recompiled.
+   * Each line holds the annotation class name and the annotated class name separated by a space.
+   */
+  public static final String ANNOTATION_INDEX_RESOURCE = "META-INF/fudgemsg/annotation-index";
+  /**
+   * The names of the annotations held in the annotation index.
+   */
+  /* package */static final Set<String> INDEXED_ANNOTATIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+      "org.fudgemsg.mapping.FudgeBuilderFor",
+      "org.fudgemsg.mapping.GenericFudgeBuilderFor",
+      "org.fudgemsg.types.FudgeSecondaryType")));
+  /**
+   * The name of the annotation index cache file.
+   */
+  private static final String ANNOTATION_INDEX_CACHE_FILE = ".annotation-index";
 
   private static volatile URL[] _classPathElements;
   private static volatile AnnotationDB _annotationDB;
+  private static volatile AnnotationIndex _annotationIndex;
 
   private ClasspathUtilities() {
   }
@@ -116,6 +141,22 @@ public final class ClasspathUtilities {
     return results.toArray(new URL[0]);
   }
 
+  /**
+   * Obtain the index of the Fudge annotations on the current classpath.
+   * 
+   * @return the index, not null
+   */
+  private static AnnotationIndex getAnnotationIndex() {
+    // Don't bother locking. Double-scanning is acceptable, but not desirable,
+    // and the synchronization is worse.
+    if (_annotationIndex == null) {
+      final String cachePath = System.getProperty(ANNOTATION_CACHE_PATH_PROPERTY);
+      final File cacheFile = (cachePath != null) ? new File(cachePath + File.separatorChar + ANNOTATION_INDEX_CACHE_FILE) : null;
+      _annotationIndex = AnnotationIndex.build(getClassPathElements(), INDEXED_ANNOTATIONS, cacheFile);
+    }
+    return _annotationIndex;
+  }
+
   private static File getCacheFile(final String cachePath, final Class<? extends Annotation> annotationClass) {
     return new File(cachePath + File.separatorChar + "." + annotationClass.getSimpleName());
   }
@@ -123,11 +164,19 @@ public final class ClasspathUtilities {
   /**
    * Returns a set of classes with the declared annotation, using a cache file on disk if one is
    * available.
+   * <p>
+   * The Fudge annotations are found using the annotation index. Each jar with an
+   * {@link #ANNOTATION_INDEX_RESOURCE} written at build time is not scanned. The other classpath
+   * elements, including all directories, are scanned in parallel, and if a cache path is set the
+   * results for jars are cached until the jar's timestamp or length changes.
    * 
    * @param annotationClass annotation to search for
    * @return the set of class names
    */
   public static Set<String> getClassNamesWithAnnotation(final Class<? extends Annotation> annotationClass) {
+    if (INDEXED_ANNOTATIONS.contains(annotationClass.getName())) {
+      return getAnnotationIndex().getClassNames(annotationClass.getName());
+    }
     final String cachePath = System.getProperty(ANNOTATION_CACHE_PATH_PROPERTY);
     Set<String> classes;
     if (cachePath != null) {
@@ -169,4 +218,119 @@ public final class ClasspathUtilities {
     return classes;
   }
 
+  /**
+   * Returns the class names listed in a resource, reading every copy of the resource on the classpath.
+   * <p>
+   * Each line of the resource is a class name. Blank lines and lines starting with '#' are ignored.
+   * This is used to read lists written at build time, avoiding a scan of the classpath.
+   * 
+   * @param resourceName  the name of the resource, not null
+   * @return the set of class names, in classpath order, not null
+   */
+  public static Set<String> getClassNamesFromResources(final String resourceName) {
+    final Set<String> classes = new LinkedHashSet<String>();
+    try {
+      final Enumeration<URL> resources = ClasspathUtilities.class.getClassLoader().getResources(resourceName);
+      while (resources.hasMoreElements()) {
+        final URL resource = resources.nextElement();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), "UTF-8"));
+        try {
+          String line = reader.readLine();
+          while (line != null) {
+            line = line.trim();
+            if (line.length() > 0 && !line.startsWith("#")) {
+              classes.add(line);
+            }
+            line = reader.readLine();
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    } catch (IOException e) {
+      throw new FudgeRuntimeException("Unable to read classpath resource " + resourceName, e);
+    }
+    return classes;
+  }
+
+  /**
+   * Returns the names of the classes in a package and its sub-packages on the classpath.
+   * <p>
+   * Jars and class directories on the classpath are listed without loading any classes.
+   * Elements that are not local files, and jars that cannot be read, are skipped.
+   * 
+   * @param packageName  the package name, empty for all packages, not null
+   * @return the set of class names, in classpath order, not null
+   */
+  public static Set<String> getClassNamesInPackage(final String packageName) {
+    return getClassNamesInPackage(getClassPathElements(), packageName);
+  }
+
+  /**
+   * Returns the names of the classes in a package and its sub-packages in classpath elements.
+   * 
+   * @param elements  the classpath elements, not null
+   * @param packageName  the package name, empty for all packages, not null
+   * @return the set of class names, in element order, not null
+   */
+  /* package */static Set<String> getClassNamesInPackage(final URL[] elements, final String packageName) {
+    final String prefix = (packageName.length() > 0) ? packageName.replace('.', '/') + "/" : "";
+    final Set<String> classes = new LinkedHashSet<String>();
+    for (URL element : elements) {
+      final File file;
+      try {
+        file = new File(element.toURI());
+      } catch (URISyntaxException e) {
+        continue;
+      } catch (IllegalArgumentException e) {
+        // not a file URI
+        continue;
+      }
+      if (file.isDirectory()) {
+        findClassNames(new File(file, prefix), prefix, classes);
+      } else if (file.isFile()) {
+        final Set<String> jarClasses = new LinkedHashSet<String>();
+        try {
+          final JarFile jar = new JarFile(file);
+          try {
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+              final String name = entries.nextElement().getName();
+              if (name.startsWith(prefix)) {
+                addClassName(name, jarClasses);
+              }
+            }
+          } finally {
+            jar.close();
+          }
+        } catch (IOException e) {
+          // not a readable jar
+          continue;
+        }
+        classes.addAll(jarClasses);
+      }
+    }
+    return classes;
+  }
+
+  private static void findClassNames(final File dir, final String path, final Set<String> classes) {
+    final File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        findClassNames(file, path + file.getName() + "/", classes);
+      } else {
+        addClassName(path + file.getName(), classes);
+      }
+    }
+  }
+
+  private static void addClassName(final String path, final Set<String> classes) {
+    if (path.endsWith(".class") && !path.endsWith("package-info.class") && !path.endsWith("module-info.class")) {
+      classes.add(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+    }
+  }
+
 }
@@ -18,6 +18,7 @@ package org.fudgemsg.wire;
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeField;
 import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.FudgeMetrics;
 import org.fudgemsg.taxonomy.FudgeTaxonomy;
 
 /**
@@ -68,6 +69,10 @@ public abstract class AbstractFudgeStreamWriter implements FudgeStreamWriter {
   public void setCurrentTaxonomyId(final int taxonomyId) {
     _taxonomyId = taxonomyId;
     _taxonomy = getFudgeContext().getTaxonomyResolver().resolveTaxonomy((short) taxonomyId);
+    final FudgeMetrics metrics = getFudgeContext().getMetrics();
+    if (metrics != null) {
+      metrics.taxonomyResolved(taxonomyId, _taxonomy != null);
+    }
   }
 
   @Override
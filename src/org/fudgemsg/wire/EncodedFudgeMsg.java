@@ -116,6 +116,7 @@ public class EncodedFudgeMsg extends AbstractFudgeMsg implements FudgeEncoded {
       _complete = _dataLength == 0;
     } else {
       _streamReader = streamReader;
+      _complete = !streamReader.hasNext();
     }
   }
 
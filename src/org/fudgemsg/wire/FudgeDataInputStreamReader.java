@@ -25,6 +25,7 @@ import java.util.Stack;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.FudgeMetrics;
 import org.fudgemsg.taxonomy.FudgeTaxonomy;
 import org.fudgemsg.wire.types.FudgeWireType;
 
@@ -119,6 +120,15 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
     return _schemaVersion;
   }
 
+  /**
+   * Gets the size of the current message envelope, including the header.
+   * 
+   * @return the envelope size in bytes, zero if no envelope has been read
+   */
+  public int getEnvelopeSize() {
+    return _envelopeSize;
+  }
+
   @Override
   public short getTaxonomyId() {
     return _taxonomyId;
@@ -384,6 +394,10 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
     _taxonomyId = getDataInput().readShort();
     _envelopeSize = getDataInput().readInt();
     _taxonomy = getFudgeContext().getTaxonomyResolver().resolveTaxonomy(_taxonomyId);
+    final FudgeMetrics metrics = getFudgeContext().getMetrics();
+    if (metrics != null) {
+      metrics.taxonomyResolved(_taxonomyId, _taxonomy != null);
+    }
     pushProcessingState(8, _envelopeSize);
     return true;
   }
@@ -144,15 +144,16 @@ public class FudgeDataOutputStreamWriter extends AbstractFudgeStreamWriter {
   //-------------------------------------------------------------------------
   @Override
   public void writeFields(Iterable<FudgeField> fields) {
-    if (fields instanceof FudgeEncoded) {
-      // optimize for the case where the data is already encoded
+    // optimize for the case where the data is already encoded
+    final byte[] encoded = (fields instanceof FudgeEncoded) ? ((FudgeEncoded) fields).getFudgeEncoded() : null;
+    if (encoded != null) {
       try {
-        getDataOutput().write(((FudgeEncoded) fields).getFudgeEncoded());
+        getDataOutput().write(encoded);
       } catch (IOException ex) {
         throw new FudgeRuntimeIOException(ex);
       }
     } else {
-      // encode and write the data
+      // encode and write the data, including messages read lazily from another encoding
       writeAllFields(fields);
     }
   }
@@ -270,8 +271,9 @@ public class FudgeDataOutputStreamWriter extends AbstractFudgeStreamWriter {
               getDataOutput().writeInt(valueSize);
             }
           }
-          if (value instanceof FudgeEncoded) {
-            getDataOutput().write(((FudgeEncoded) value).getFudgeEncoded());
+          final byte[] encoded = (value instanceof FudgeEncoded) ? ((FudgeEncoded) value).getFudgeEncoded() : null;
+          if (encoded != null) {
+            getDataOutput().write(encoded);
           } else if (value instanceof FudgeMsg) {
             writeAllFields((FudgeMsg) value);
           } else {
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.wire;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+
+/**
+ * A cache of Fudge messages held in their encoded form.
+ * <p>
+ * Messages are encoded when they are added to the cache and are bounded by the total
+ * number of encoded bytes held rather than the number of entries. When adding a message
+ * would exceed the bound, the least recently used entries are evicted until it fits.
+ * <p>
+ * A message is returned from the cache as a new {@link EncodedFudgeMsg} view onto the
+ * cached bytes so the fields are only decoded if they are inspected. Each call to
+ * {@link #get} returns a new view as {@code EncodedFudgeMsg} is not thread-safe.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @param <K> the key type
+ */
+public class FudgeMsgCache<K> {
+
+  /**
+   * The length of the envelope header preceding the encoded fields.
+   */
+  private static final int ENVELOPE_HEADER_SIZE = 8;
+
+  /**
+   * The Fudge context used to encode and decode messages.
+   */
+  private final FudgeContext _fudgeContext;
+  /**
+   * The maximum number of encoded bytes to hold.
+   */
+  private final long _maxSize;
+  /**
+   * The cached entries, in access order.
+   */
+  private final LinkedHashMap<K, byte[]> _entries = new LinkedHashMap<K, byte[]>(16, 0.75f, true);
+  /**
+   * The number of encoded bytes currently held.
+   */
+  private long _size;
+  /**
+   * The number of successful lookups.
+   */
+  private long _hits;
+  /**
+   * The number of failed lookups.
+   */
+  private long _misses;
+  /**
+   * The number of entries evicted to keep within the size bound.
+   */
+  private long _evictions;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param fudgeContext  the Fudge context to use for encoding and decoding messages, not null
+   * @param maxSize  the maximum number of encoded bytes to hold, positive
+   */
+  public FudgeMsgCache(final FudgeContext fudgeContext, final long maxSize) {
+    if (fudgeContext == null) {
+      throw new NullPointerException("FudgeContext must not be null");
+    }
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Maximum size must be positive");
+    }
+    _fudgeContext = fudgeContext;
+    _maxSize = maxSize;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the Fudge context used for encoding and decoding messages.
+   *
+   * @return the Fudge context, not null
+   */
+  public FudgeContext getFudgeContext() {
+    return _fudgeContext;
+  }
+
+  /**
+   * Gets the maximum number of encoded bytes the cache will hold.
+   *
+   * @return the maximum size in bytes
+   */
+  public long getMaxSize() {
+    return _maxSize;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Adds a message to the cache, replacing any existing entry for the key.
+   * <p>
+   * The message is encoded immediately. If the encoded message is larger than the
+   * maximum size of the cache it is not stored and any existing entry is removed.
+   *
+   * @param key  the key to store the message under, not null
+   * @param message  the message to store, not null
+   * @return true if the message was stored
+   */
+  public boolean put(final K key, final FudgeMsg message) {
+    if (key == null) {
+      throw new NullPointerException("Key must not be null");
+    }
+    if (message == null) {
+      throw new NullPointerException("FudgeMsg must not be null");
+    }
+    final byte[] encoded = getFudgeContext().toByteArray(message);
+    synchronized (this) {
+      final byte[] previous = _entries.remove(key);
+      if (previous != null) {
+        _size -= previous.length;
+      }
+      if (encoded.length > _maxSize) {
+        return false;
+      }
+      evict(_maxSize - encoded.length);
+      _entries.put(key, encoded);
+      _size += encoded.length;
+    }
+    return true;
+  }
+
+  /**
+   * Gets a message from the cache.
+   * <p>
+   * The message returned is backed by the cached encoding and is only decoded as
+   * fields are accessed.
+   *
+   * @param key  the key to look up, not null
+   * @return the message, null if not in the cache
+   */
+  public EncodedFudgeMsg get(final K key) {
+    final byte[] encoded;
+    synchronized (this) {
+      encoded = _entries.get(key);
+      if (encoded == null) {
+        _misses++;
+        return null;
+      }
+      _hits++;
+    }
+    return new EncodedFudgeMsg(encoded, ENVELOPE_HEADER_SIZE, encoded.length - ENVELOPE_HEADER_SIZE, getFudgeContext());
+  }
+
+  /**
+   * Removes a message from the cache.
+   *
+   * @param key  the key to remove, not null
+   * @return true if an entry was removed
+   */
+  public synchronized boolean remove(final K key) {
+    final byte[] previous = _entries.remove(key);
+    if (previous == null) {
+      return false;
+    }
+    _size -= previous.length;
+    return true;
+  }
+
+  /**
+   * Removes all messages from the cache.
+   * The statistics counters are not reset.
+   */
+  public synchronized void clear() {
+    _entries.clear();
+    _size = 0;
+  }
+
+  /**
+   * Evicts the least recently used entries until the cache holds no more than the given number of bytes.
+   *
+   * @param targetSize  the number of bytes to reduce the cache to
+   */
+  private void evict(final long targetSize) {
+    final Iterator<Map.Entry<K, byte[]>> itr = _entries.entrySet().iterator();
+    while ((_size > targetSize) && itr.hasNext()) {
+      final byte[] encoded = itr.next().getValue();
+      itr.remove();
+      _size -= encoded.length;
+      _evictions++;
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of messages held in the cache.
+   *
+   * @return the number of entries
+   */
+  public synchronized int getEntryCount() {
+    return _entries.size();
+  }
+
+  /**
+   * Gets the number of encoded bytes held in the cache.
+   *
+   * @return the size in bytes
+   */
+  public synchronized long getSize() {
+    return _size;
+  }
+
+  /**
+   * Gets the number of lookups that found a message.
+   *
+   * @return the hit count
+   */
+  public synchronized long getHitCount() {
+    return _hits;
+  }
+
+  /**
+   * Gets the number of lookups that did not find a message.
+   *
+   * @return the miss count
+   */
+  public synchronized long getMissCount() {
+    return _misses;
+  }
+
+  /**
+   * Gets the number of messages evicted to keep the cache within its size bound.
+   *
+   * @return the eviction count
+   */
+  public synchronized long getEvictionCount() {
+    return _evictions;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Returns a string suitable for debugging.
+   *
+   * @return the string, not null
+   */
+  @Override
+  public synchronized String toString() {
+    return "FudgeMsgCache{entries=" + _entries.size() + ", size=" + _size + "/" + _maxSize + ", hits=" + _hits
+        + ", misses=" + _misses + ", evictions=" + _evictions + "}";
+  }
+
+}
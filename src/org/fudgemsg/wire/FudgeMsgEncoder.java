@@ -0,0 +1,281 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.wire;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.StandardFudgeMsg;
+import org.fudgemsg.types.SecondaryFieldType;
+import org.fudgemsg.wire.types.FudgeWireType;
+
+/**
+ * Encodes fields directly to the Fudge binary form without building a message.
+ * <p>
+ * Sub-messages are written by {@link #startSubMessage} and {@link #endSubMessage}
+ * rather than as a message value. The size of a sub-message is back-patched when it
+ * ends, so the encoding is the same as writing the equivalent message.
+ * The result is available as an {@link EncodedFudgeMsg} which is written without
+ * being decoded by a {@link FudgeDataOutputStreamWriter}.
+ * <p>
+ * Field names are not reduced to ordinals using a taxonomy.
+ * <p>
+ * This class is mutable and not thread-safe.
+ */
+public class FudgeMsgEncoder {
+
+  /**
+   * The width reserved for the size of a sub-message until it is known.
+   */
+  private static final int RESERVED_SIZE_WIDTH = 4;
+
+  /**
+   * The Fudge context.
+   */
+  private final FudgeContext _fudgeContext;
+  /**
+   * The encoded data.
+   */
+  private byte[] _buffer = new byte[256];
+  /**
+   * The length of the encoded data.
+   */
+  private int _length;
+  /**
+   * The position of the field prefix of each open sub-message.
+   */
+  private int[] _subMessages = new int[16];
+  /**
+   * The number of open sub-messages.
+   */
+  private int _depth;
+  /**
+   * The writer used to encode fields into the buffer.
+   */
+  private final FudgeDataOutputStreamWriter _writer;
+
+  /**
+   * Creates an encoder.
+   *
+   * @param fudgeContext  the Fudge context to use, not null
+   */
+  public FudgeMsgEncoder(final FudgeContext fudgeContext) {
+    if (fudgeContext == null) {
+      throw new NullPointerException("FudgeContext must not be null");
+    }
+    _fudgeContext = fudgeContext;
+    _writer = new FudgeDataOutputStreamWriter(fudgeContext, (DataOutput) new DataOutputStream(new BufferOutputStream()));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the Fudge context.
+   *
+   * @return the Fudge context, not null
+   */
+  public FudgeContext getFudgeContext() {
+    return _fudgeContext;
+  }
+
+  /**
+   * Gets the number of sub-messages started but not ended.
+   *
+   * @return the depth, zero at the top level
+   */
+  public int getDepth() {
+    return _depth;
+  }
+
+  /**
+   * Gets the number of bytes encoded so far.
+   *
+   * @return the length, not negative
+   */
+  public int getLength() {
+    return _length;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes a field to the current message.
+   * <p>
+   * The value may be a message, which is encoded in full. Integral values are reduced
+   * to the smallest type that holds them, as when added to a {@link StandardFudgeMsg}.
+   *
+   * @param name  the name of the field, null if no name
+   * @param ordinal  the ordinal of the field, null if no ordinal
+   * @param type  the type of the field, not null
+   * @param value  the value of the field, not null
+   */
+  @SuppressWarnings("unchecked")
+  public void writeField(final String name, final Integer ordinal, FudgeFieldType type, Object value) {
+    if (type == null) {
+      throw new NullPointerException("FudgeFieldType must not be null");
+    }
+    switch (type.getTypeId()) {
+      case FudgeWireType.SHORT_TYPE_ID:
+      case FudgeWireType.INT_TYPE_ID:
+      case FudgeWireType.LONG_TYPE_ID:
+        if (type instanceof SecondaryFieldType<?, ?>) {
+          value = ((SecondaryFieldType<Object, ?>) type).secondaryToPrimary(value);
+          type = ((SecondaryFieldType<?, ?>) type).getPrimaryType();
+        }
+        final long valueAsLong = ((Number) value).longValue();
+        if (valueAsLong >= Byte.MIN_VALUE && valueAsLong <= Byte.MAX_VALUE) {
+          value = Byte.valueOf((byte) valueAsLong);
+          type = FudgeWireType.BYTE;
+        } else if (valueAsLong >= Short.MIN_VALUE && valueAsLong <= Short.MAX_VALUE) {
+          value = Short.valueOf((short) valueAsLong);
+          type = FudgeWireType.SHORT;
+        } else if (valueAsLong >= Integer.MIN_VALUE && valueAsLong <= Integer.MAX_VALUE) {
+          value = Integer.valueOf((int) valueAsLong);
+          type = FudgeWireType.INT;
+        }
+        break;
+    }
+    _writer.writeField(name, ordinal, type, value);
+  }
+
+  /**
+   * Writes a field to the current message.
+   *
+   * @param field  the field to write, not null
+   */
+  public void writeField(final FudgeField field) {
+    writeField(field.getName(), field.getOrdinal(), field.getType(), field.getValue());
+  }
+
+  /**
+   * Writes fields to the current message.
+   *
+   * @param fields  the fields to write, not null
+   */
+  public void writeFields(final Iterable<FudgeField> fields) {
+    for (FudgeField field : fields) {
+      writeField(field);
+    }
+  }
+
+  /**
+   * Starts a sub-message field in the current message.
+   * Fields written until the matching {@link #endSubMessage()} are part of the sub-message.
+   *
+   * @param name  the name of the field, null if no name
+   * @param ordinal  the ordinal of the field, null if no ordinal
+   */
+  public void startSubMessage(final String name, final Integer ordinal) {
+    if (_depth == _subMessages.length) {
+      _subMessages = Arrays.copyOf(_subMessages, _depth * 2);
+    }
+    _subMessages[_depth++] = _length;
+    // reserve the widest size, the prefix is corrected when the sub-message ends
+    final int fieldPrefix = FudgeFieldPrefixCodec.composeFieldPrefix(false, Integer.MAX_VALUE, ordinal != null, name != null);
+    _writer.writeHeader(name, ordinal, FudgeWireType.SUB_MESSAGE, fieldPrefix);
+    ensureCapacity(RESERVED_SIZE_WIDTH);
+    _length += RESERVED_SIZE_WIDTH;
+  }
+
+  /**
+   * Ends the current sub-message field, writing its size.
+   */
+  public void endSubMessage() {
+    if (_depth == 0) {
+      throw new IllegalStateException("No sub-message has been started");
+    }
+    final int prefixPosition = _subMessages[--_depth];
+    final int fieldPrefix = _buffer[prefixPosition] & 0xFF;
+    final int sizePosition = prefixPosition + headerLength(fieldPrefix, prefixPosition);
+    final int dataPosition = sizePosition + RESERVED_SIZE_WIDTH;
+    final int size = _length - dataPosition;
+    // match the width chosen by FudgeDataOutputStreamWriter
+    final int width = (size <= 255) ? 1 : ((size <= Short.MAX_VALUE) ? 2 : 4);
+    if (width < RESERVED_SIZE_WIDTH) {
+      System.arraycopy(_buffer, dataPosition, _buffer, sizePosition + width, size);
+      _length -= RESERVED_SIZE_WIDTH - width;
+    }
+    _buffer[prefixPosition] = (byte) FudgeFieldPrefixCodec.composeFieldPrefix(false, size,
+        FudgeFieldPrefixCodec.hasOrdinal(fieldPrefix), FudgeFieldPrefixCodec.hasName(fieldPrefix));
+    for (int i = width - 1, shift = 0; i >= 0; i--, shift += 8) {
+      _buffer[sizePosition + i] = (byte) (size >> shift);
+    }
+  }
+
+  /**
+   * Gets the length of the field prefix, type, ordinal and name of a field.
+   */
+  private int headerLength(final int fieldPrefix, final int prefixPosition) {
+    int length = 2;
+    if (FudgeFieldPrefixCodec.hasOrdinal(fieldPrefix)) {
+      length += 2;
+    }
+    if (FudgeFieldPrefixCodec.hasName(fieldPrefix)) {
+      length += 1 + (_buffer[prefixPosition + length] & 0xFF);
+    }
+    return length;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the message encoded.
+   * All sub-messages must have been ended.
+   *
+   * @return the encoded message, not null
+   */
+  public EncodedFudgeMsg toFudgeMsg() {
+    if (_depth != 0) {
+      throw new IllegalStateException("Sub-message has not been ended");
+    }
+    return new EncodedFudgeMsg(Arrays.copyOf(_buffer, _length), getFudgeContext());
+  }
+
+  /**
+   * Clears the encoder so that another message can be encoded.
+   */
+  public void reset() {
+    _length = 0;
+    _depth = 0;
+  }
+
+  private void ensureCapacity(final int extra) {
+    if (_length + extra > _buffer.length) {
+      _buffer = Arrays.copyOf(_buffer, Math.max(_buffer.length * 2, _length + extra));
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Output stream appending to the buffer.
+   */
+  private final class BufferOutputStream extends OutputStream {
+    @Override
+    public void write(final int b) {
+      ensureCapacity(1);
+      _buffer[_length++] = (byte) b;
+    }
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+      ensureCapacity(len);
+      System.arraycopy(b, off, _buffer, _length, len);
+      _length += len;
+    }
+  }
+
+}
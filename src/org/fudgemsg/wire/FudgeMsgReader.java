@@ -17,6 +17,7 @@ package org.fudgemsg.wire;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMetrics;
 import org.fudgemsg.FudgeMsgEnvelope;
 import org.fudgemsg.MutableFudgeMsg;
 import org.fudgemsg.wire.FudgeStreamReader.FudgeStreamElement;
@@ -50,6 +51,14 @@ public class FudgeMsgReader {
    * {@link FudgeStreamReader#skipMessageField}.
    */
   private boolean _lazyReads;
+  /**
+   * The number of sub-messages read lazily in the current message.
+   */
+  private int _lazySubMessages;
+  /**
+   * The number of sub-messages decoded eagerly in the current message.
+   */
+  private int _eagerSubMessages;
 
   /**
    * Creates a new reader around an existing stream reader.
@@ -153,9 +162,35 @@ public class FudgeMsgReader {
       _currentEnvelope = null;
     }
     processFields((MutableFudgeMsg) msgEnv.getMessage());
+    final FudgeMetrics metrics = getFudgeContext().getMetrics();
+    if (metrics != null) {
+      metrics.subMessagesRead(_lazySubMessages, _eagerSubMessages);
+    }
+    _lazySubMessages = 0;
+    _eagerSubMessages = 0;
     return msgEnv;
   }
 
+  /**
+   * Reads the next message envelope, leaving the underlying stream positioned at its first field.
+   * <p>
+   * This allows the fields to be consumed directly from the stream, for example by
+   * streaming deserialization, without building a message. All fields of the message
+   * must be consumed before the next message is read.
+   * 
+   * @return the stream reader positioned at the first field, null if there are no more messages
+   */
+  public FudgeStreamReader nextMessageStream() {
+    if (_currentEnvelope == null) {
+      if (readMessageEnvelope() == null) {
+        return null;
+      }
+    } else {
+      _currentEnvelope = null;
+    }
+    return getStreamReader();
+  }
+
   /**
    * Reads the next message envelope from the underlying stream. No fields are read.
    * 
@@ -172,6 +207,11 @@ public class FudgeMsgReader {
     if (element != FudgeStreamElement.MESSAGE_ENVELOPE) {
       throw new IllegalArgumentException("First element in encoding stream wasn't a message element.");
     }
+    final FudgeMetrics metrics = getFudgeContext().getMetrics();
+    if (metrics != null) {
+      final FudgeStreamReader reader = getStreamReader();
+      metrics.messageRead(reader.getClass(), (reader instanceof FudgeDataInputStreamReader) ? ((FudgeDataInputStreamReader) reader).getEnvelopeSize() : -1);
+    }
     MutableFudgeMsg msg = getFudgeContext().newMessage();
     FudgeMsgEnvelope envelope = new FudgeMsgEnvelope(msg, getStreamReader().getSchemaVersion(), getStreamReader()
         .getProcessingDirectives());
@@ -196,6 +236,7 @@ public class FudgeMsgReader {
             try {
               final EncodedFudgeMsg subMsg = new EncodedFudgeMsg(reader.skipMessageField());
               msg.add(reader.getFieldName(), reader.getFieldOrdinal(), FudgeWireType.SUB_MESSAGE, subMsg);
+              _lazySubMessages++;
               continue;
             } catch (UnsupportedOperationException e) {
               // The stream doesn't support lazy reads, so turn it off again
@@ -204,6 +245,7 @@ public class FudgeMsgReader {
           }
           final MutableFudgeMsg subMsg = getFudgeContext().newMessage();
           msg.add(reader.getFieldName(), reader.getFieldOrdinal(), FudgeWireType.SUB_MESSAGE, subMsg);
+          _eagerSubMessages++;
           processFields(subMsg);
           break;
         case SUBMESSAGE_FIELD_END:
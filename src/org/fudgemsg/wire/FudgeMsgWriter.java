@@ -18,6 +18,7 @@ package org.fudgemsg.wire;
 import java.io.Flushable;
 
 import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMetrics;
 import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.FudgeMsgEnvelope;
 
@@ -195,6 +196,10 @@ public class FudgeMsgWriter implements Flushable {
     writer.writeEnvelopeHeader(envelope.getProcessingDirectives(), envelope.getVersion(), messageSize);
     writer.writeFields(envelope.getMessage());
     writer.envelopeComplete();
+    final FudgeMetrics metrics = writer.getFudgeContext().getMetrics();
+    if (metrics != null) {
+      metrics.messageWritten(writer.getClass(), (writer instanceof FudgeDataOutputStreamWriter) ? messageSize : -1);
+    }
   }
 
   /**
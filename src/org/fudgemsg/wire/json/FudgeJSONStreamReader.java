@@ -17,32 +17,54 @@ package org.fudgemsg.wire.json;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeFieldType;
-import org.fudgemsg.FudgeRuntimeException;
+import org.fudgemsg.FudgeMetrics;
 import org.fudgemsg.taxonomy.FudgeTaxonomy;
 import org.fudgemsg.types.IndicatorType;
 import org.fudgemsg.wire.FudgeRuntimeIOException;
 import org.fudgemsg.wire.FudgeStreamReader;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 
 /**
  * A Fudge reader that interprets JSON.
+ * <p>
+ * The JSON is tokenized incrementally and each field is returned as soon as it has been parsed,
+ * so memory use does not depend on the size of the message. A skipped sub-message is captured
+ * as text and only parsed when its fields are requested, supporting lazy reads. The processing directives, schema
+ * version and taxonomy of a message are read from the fields named by the {@link FudgeJSONSettings}
+ * that precede the first field of the message, as written by {@link FudgeJSONStreamWriter}.
+ * <p>
+ * An array of numbers is read as an {@code int[]}, {@code long[]} or {@code double[]} field,
+ * the narrowest that holds all of its elements. Any other array is read as a repeated field,
+ * with an array nested within it read as a number array or else as its JSON text.
  */
 public class FudgeJSONStreamReader implements FudgeStreamReader {
 
+  /**
+   * The size of the character buffer.
+   */
+  private static final int BUFFER_SIZE = 8192;
+  /**
+   * The kinds of the parsed numbers.
+   */
+  private static final byte INT = 0;
+  private static final byte LONG = 1;
+  private static final byte DOUBLE = 2;
+  /**
+   * Marker for the JSON null literal within a nested array.
+   */
+  private static final Object NULL = new Object();
+
   private final FudgeJSONSettings _settings;
   private final FudgeContext _fudgeContext;
   private final Reader _underlying;
-  private final JSONTokener _tokener;
 
   private int _taxonomyId = 0;
   private FudgeTaxonomy _taxonomy = null;
@@ -53,10 +75,63 @@ public class FudgeJSONStreamReader implements FudgeStreamReader {
   private Integer _fieldOrdinal = null;
   private Object _fieldValue = null;
 
-  private final Stack<JSONObject> _objectStack = new Stack<JSONObject>();
-  private final Stack<Iterator<String>> _iteratorStack = new Stack<Iterator<String>>();
-  private final Queue<String> _fieldLookahead = new LinkedList<String>();
-  private final Queue<Object> _valueLookahead = new LinkedList<Object>();
+  /**
+   * The characters read from the underlying reader.
+   */
+  private final char[] _buffer;
+  /**
+   * The position of the next character in the buffer.
+   */
+  private int _position;
+  /**
+   * The number of characters in the buffer.
+   */
+  private int _limit;
+  /**
+   * The number of characters before the start of the buffer, for error messages.
+   */
+  private long _offset;
+  /**
+   * The open JSON objects and arrays of the current message, innermost last.
+   * An object is null; an array being read as a repeated field is the raw field name.
+   */
+  private final Stack<String> _containers = new Stack<String>();
+  /**
+   * The raw name of the next field of the top-level object, already read while looking ahead.
+   */
+  private String _nextName;
+  /**
+   * The values of a repeated field already parsed while looking for a number array.
+   */
+  private final List<Object> _pendingValues = new ArrayList<Object>();
+  /**
+   * The index of the next pending value.
+   */
+  private int _pendingIndex;
+  /**
+   * The numbers of the array being parsed, doubles held as their raw bits.
+   */
+  private long[] _arrayValues = new long[64];
+  /**
+   * The kinds of the numbers of the array being parsed.
+   */
+  private byte[] _arrayKinds = new byte[64];
+  /**
+   * The kind of the last number parsed.
+   */
+  private byte _numberKind;
+  /**
+   * The last integral number parsed.
+   */
+  private long _longValue;
+  /**
+   * The last floating point number parsed.
+   */
+  private double _doubleValue;
+  /**
+   * The buffer for building strings and number tokens.
+   */
+  private final StringBuilder _text = new StringBuilder();
 
   /**
    * Creates a new instance for reading a Fudge stream from a JSON reader.
@@ -79,35 +154,40 @@ public class FudgeJSONStreamReader implements FudgeStreamReader {
     _fudgeContext = fudgeContext;
     _underlying = reader;
     _settings = settings;
-    _tokener = new JSONTokener(reader);
+    _buffer = new char[BUFFER_SIZE];
   }
 
-  //-------------------------------------------------------------------------
   /**
-   * Gets the underlying reader.
+   * Creates a reader for a sub-message skipped by another reader.
    * 
-   * @return the reader, not null
+   * @param parent  the reader that skipped the sub-message, not null
+   * @param text  the JSON text of the sub-message, not null
+   * @param length  the number of characters of text
    */
-  protected Reader getUnderlying() {
-    return _underlying;
+  private FudgeJSONStreamReader(final FudgeJSONStreamReader parent, final char[] text, final int length) {
+    _fudgeContext = parent.getFudgeContext();
+    _underlying = null;
+    _settings = parent.getSettings();
+    _buffer = text;
+    _limit = length;
+    _processingDirectives = parent._processingDirectives;
+    _schemaVersion = parent._schemaVersion;
+    _taxonomyId = parent._taxonomyId;
+    _taxonomy = parent._taxonomy;
+    expect('{');
+    _containers.push(null);
+    setCurrentElement(FudgeStreamElement.SUBMESSAGE_FIELD_START);
+    readAhead();
   }
 
+  //-------------------------------------------------------------------------
   /**
-   * Gets the JSON token provider.
+   * Gets the underlying reader.
    * 
-   * @return the JSON reader, not null
+   * @return the reader, null if reading a skipped sub-message
    */
-  protected JSONTokener getTokener() {
-    return _tokener;
-  }
-
-  protected RuntimeException wrapException(String message, final JSONException ex) {
-    message = "Error " + message + " from JSON stream";
-    if (ex.getCause() instanceof IOException) {
-      return new FudgeRuntimeIOException(message, (IOException) ex.getCause());
-    } else {
-      return new FudgeRuntimeException(message, ex);
-    }
+  protected Reader getUnderlying() {
+    return _underlying;
   }
 
   @Override
@@ -132,16 +212,26 @@ public class FudgeJSONStreamReader implements FudgeStreamReader {
   protected void setCurrentFieldName(final String name) {
     if (name.length() == 0) {
       setNameAndOrdinal(null, null);
-    } else {
+    } else if (isOrdinal(name)) {
       try {
         int ordinal = Integer.parseInt(name);
         setNameAndOrdinal(null, ordinal);
       } catch (NumberFormatException nfe) {
         setNameAndOrdinal(name, null);
       }
+    } else {
+      setNameAndOrdinal(name, null);
     }
   }
 
+  /**
+   * Checks if a field name could be an ordinal, avoiding the cost of a failed parse for most names.
+   */
+  private static boolean isOrdinal(final String name) {
+    final char first = name.charAt(0);
+    return (first >= '0' && first <= '9') || first == '-' || first == '+';
+  }
+
   @Override
   public Integer getFieldOrdinal() {
     return _fieldOrdinal;
@@ -158,7 +248,6 @@ public class FudgeJSONStreamReader implements FudgeStreamReader {
   }
 
   protected void setFieldValue(final Object object) {
-    // TODO match the object to see what we've got ...
     _fieldValue = object;
   }
 
@@ -187,6 +276,10 @@ public class FudgeJSONStreamReader implements FudgeStreamReader {
     _schemaVersion = schemaVersion;
     _taxonomyId = taxonomyId;
     _taxonomy = getFudgeContext().getTaxonomyResolver().resolveTaxonomy((short) _taxonomyId);
+    final FudgeMetrics metrics = getFudgeContext().getMetrics();
+    if (metrics != null) {
+      metrics.taxonomyResolved(_taxonomyId, _taxonomy != null);
+    }
   }
 
   @Override
@@ -194,17 +287,19 @@ public class FudgeJSONStreamReader implements FudgeStreamReader {
     return (short) _taxonomyId;
   }
 
+  public FudgeJSONSettings getSettings() {
+    return _settings;
+  }
+
+  //-------------------------------------------------------------------------
   @Override
   public boolean hasNext() {
     if (getCurrentElement() == null) {
       // haven't read anything yet (or have read a full message already)
-      try {
-        return getTokener().more();
-      } catch (JSONException e) {
-        throw wrapException("testing for end of JSON stream", e);
-      }
+      skipWhitespace();
+      return peek() >= 0;
     }
-    if (!_objectStack.isEmpty()) {
+    if (!_containers.isEmpty()) {
       // More to read
       return true;
     } else {
@@ -214,170 +309,695 @@ public class FudgeJSONStreamReader implements FudgeStreamReader {
     }
   }
 
-  private int integerValue(final Object o) {
-    if (o instanceof Number) {
-      return ((Number) o).intValue();
+  @Override
+  public FudgeStreamElement next() {
+    final FudgeStreamElement element;
+    if (_pendingIndex < _pendingValues.size()) {
+      // the field name is unchanged from the previous value of the repeated field
+      setFieldValue(_pendingValues.get(_pendingIndex++));
+      if (_pendingIndex == _pendingValues.size()) {
+        _pendingValues.clear();
+        _pendingIndex = 0;
+      }
+      element = FudgeStreamElement.SIMPLE_FIELD;
+    } else if (_containers.isEmpty()) {
+      element = readEnvelope();
     } else {
-      return 0;
+      element = readElement();
     }
+    setCurrentElement(element);
+    readAhead();
+    return element;
   }
 
-  private void checkMessageEnd() {
-    if ((_iteratorStack.size() == 1) && !_iteratorStack.peek().hasNext() && _fieldLookahead.isEmpty()) {
-      _objectStack.pop();
-      _iteratorStack.pop();
+  /**
+   * Reads ahead past the ends of repeated fields and, at the top level, to the next field name.
+   * This allows {@link #hasNext} to report the end of the message as soon as its last field is read.
+   */
+  private void readAhead() {
+    if (_pendingIndex < _pendingValues.size()) {
+      return;
+    }
+    while (!_containers.isEmpty() && _containers.peek() != null) {
+      skipWhitespaceAndComma();
+      if (peek() != ']') {
+        return;
+      }
+      _position++;
+      _containers.pop();
+    }
+    if (_containers.size() == 1 && _nextName == null) {
+      readTopLevelName();
     }
   }
 
-  private Object jsonArrayToPrimitiveArray(final JSONArray arr) throws JSONException {
-    boolean arrInt = true, arrDouble = true, arrLong = true;
-    for (int j = 0; j < arr.length(); j++) {
-      Object arrValue = arr.get(j);
-      if (JSONObject.NULL.equals(arrValue)) {
-        arrInt = arrDouble = false;
+  /**
+   * Reads the start of a message and its header fields.
+   */
+  private FudgeStreamElement readEnvelope() {
+    skipWhitespace();
+    expect('{');
+    _containers.push(null);
+    int processingDirectives = 0;
+    int schemaVersion = 0;
+    int taxonomyId = 0;
+    while (readTopLevelName()) {
+      if (_nextName.equals(getSettings().getProcessingDirectivesField())) {
+        processingDirectives = readHeaderValue();
+      } else if (_nextName.equals(getSettings().getSchemaVersionField())) {
+        schemaVersion = readHeaderValue();
+      } else if (_nextName.equals(getSettings().getTaxonomyField())) {
+        taxonomyId = readHeaderValue();
+      } else {
         break;
-      } else if (arrValue instanceof Number) {
-        if (arrValue instanceof Integer) {
-        } else if (arrValue instanceof Double) {
-          arrInt = false;
-          arrLong = false;
-        } else if (arrValue instanceof Long) {
-          arrInt = false;
-        } else {
-          arrInt = arrDouble = false;
+      }
+      _nextName = null;
+    }
+    setEnvelopeFields(processingDirectives, schemaVersion, taxonomyId);
+    return FudgeStreamElement.MESSAGE_ENVELOPE;
+  }
+
+  /**
+   * Reads the value of a header field.
+   */
+  private int readHeaderValue() {
+    final Object value = readTree();
+    return (value instanceof Number) ? ((Number) value).intValue() : 0;
+  }
+
+  /**
+   * Reads the next field name of the top-level object, ending the message if there is none.
+   * 
+   * @return true if a field name was read, false if the message ended
+   */
+  private boolean readTopLevelName() {
+    skipWhitespaceAndComma();
+    if (peek() == '}') {
+      _position++;
+      _containers.pop();
+      return false;
+    }
+    _nextName = readString();
+    skipWhitespace();
+    expect(':');
+    return true;
+  }
+
+  /**
+   * Reads the next element within a message.
+   */
+  private FudgeStreamElement readElement() {
+    while (true) {
+      final String arrayName = _containers.peek();
+      skipWhitespaceAndComma();
+      if (arrayName != null) {
+        // an element of a repeated field
+        if (peek() == ']') {
+          _position++;
+          _containers.pop();
+          continue;
         }
-      } else if (arrValue instanceof JSONObject) {
-        arrInt = arrDouble = false;
-        break;
-      } else if (arrValue instanceof JSONArray) {
-        arrInt = arrDouble = false;
+        setCurrentFieldName(arrayName);
+        return readValue(arrayName, true);
+      }
+      final String name;
+      if (_nextName != null) {
+        name = _nextName;
+        _nextName = null;
+      } else {
+        if (peek() == '}') {
+          _position++;
+          _containers.pop();
+          return FudgeStreamElement.SUBMESSAGE_FIELD_END;
+        }
+        name = readString();
+        skipWhitespace();
+        expect(':');
+      }
+      setCurrentFieldName(name);
+      final FudgeStreamElement element = readValue(name, false);
+      if (element != null) {
+        return element;
+      }
+      // an array with no leading numbers, so continue with its elements
+    }
+  }
+
+  /**
+   * Reads the value of the current field.
+   * 
+   * @param name  the raw name of the field, not null
+   * @param repeated  whether the value is an element of a repeated field
+   * @return the element read, null if a repeated field was started with no value read
+   */
+  private FudgeStreamElement readValue(final String name, final boolean repeated) {
+    skipWhitespace();
+    final int c = peek();
+    if (c == '{') {
+      _position++;
+      _containers.push(null);
+      return FudgeStreamElement.SUBMESSAGE_FIELD_START;
+    }
+    if (c == '[') {
+      _position++;
+      if (repeated) {
+        setFieldValue(readNestedArray());
+        return FudgeStreamElement.SIMPLE_FIELD;
+      }
+      final Object array = readNumberArray();
+      if (array != null) {
+        setFieldValue(array);
+        return FudgeStreamElement.SIMPLE_FIELD;
+      }
+      // the array is a repeated field, returning any numbers already read first
+      _containers.push(name);
+      if (_pendingValues.isEmpty()) {
+        return null;
+      }
+      setFieldValue(_pendingValues.get(_pendingIndex++));
+      if (_pendingIndex == _pendingValues.size()) {
+        _pendingValues.clear();
+        _pendingIndex = 0;
+      }
+      return FudgeStreamElement.SIMPLE_FIELD;
+    }
+    final Object value = readScalar();
+    setFieldValue((value == NULL) ? IndicatorType.INSTANCE : value);
+    return FudgeStreamElement.SIMPLE_FIELD;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Reads an array of numbers, after the opening bracket, into a primitive array.
+   * If an element is not a number the numbers read so far become pending values
+   * and the stream is left at that element.
+   * 
+   * @return the primitive array, null if the array is not all numbers
+   */
+  private Object readNumberArray() {
+    int count = 0;
+    boolean allInts = true;
+    boolean anyDoubles = false;
+    while (true) {
+      skipWhitespaceAndComma();
+      final int c = peek();
+      if (c == ']') {
+        _position++;
         break;
       }
+      if (c != '-' && (c < '0' || c > '9')) {
+        for (int i = 0; i < count; i++) {
+          _pendingValues.add(boxNumber(_arrayKinds[i], _arrayValues[i]));
+        }
+        return null;
+      }
+      readNumber();
+      if (count == _arrayValues.length) {
+        final long[] values = new long[count * 2];
+        System.arraycopy(_arrayValues, 0, values, 0, count);
+        _arrayValues = values;
+        final byte[] kinds = new byte[count * 2];
+        System.arraycopy(_arrayKinds, 0, kinds, 0, count);
+        _arrayKinds = kinds;
+      }
+      _arrayKinds[count] = _numberKind;
+      if (_numberKind == DOUBLE) {
+        _arrayValues[count] = Double.doubleToRawLongBits(_doubleValue);
+        allInts = false;
+        anyDoubles = true;
+      } else {
+        _arrayValues[count] = _longValue;
+        allInts &= (_numberKind == INT);
+      }
+      count++;
     }
-    if (arrInt) {
-      final int[] data = new int[arr.length()];
-      for (int j = 0; j < data.length; j++) {
-        data[j] = ((Number) arr.get(j)).intValue();
+    if (allInts) {
+      final int[] data = new int[count];
+      for (int i = 0; i < count; i++) {
+        data[i] = (int) _arrayValues[i];
       }
       return data;
-    } else if (arrLong) {
-      final long[] data = new long[arr.length()];
-      for (int j = 0; j < data.length; j++) {
-        data[j] = ((Number) arr.get(j)).longValue();
-      }
+    } else if (!anyDoubles) {
+      final long[] data = new long[count];
+      System.arraycopy(_arrayValues, 0, data, 0, count);
       return data;
-    } else if (arrDouble) {
-      final double[] data = new double[arr.length()];
-      for (int j = 0; j < data.length; j++) {
-        data[j] = ((Number) arr.get(j)).doubleValue();
+    } else {
+      final double[] data = new double[count];
+      for (int i = 0; i < count; i++) {
+        data[i] = (_arrayKinds[i] == DOUBLE) ? Double.longBitsToDouble(_arrayValues[i]) : (double) _arrayValues[i];
       }
       return data;
-    } else {
-      return null;
     }
   }
 
-  @SuppressWarnings("unchecked")
-  @Override
-  public FudgeStreamElement next() {
-    try {
-      JSONObject o;
-      if (_objectStack.isEmpty()) {
-        _objectStack.push(o = new JSONObject(getTokener()));
-      } else {
-        o = _objectStack.peek();
-      }
-      Iterator<String> i;
-      if (_iteratorStack.isEmpty()) {
-        _iteratorStack.push(i = (Iterator<String>) o.keys());
-        // Note: the keys collection is sorted and not in the message order, breaking the logic below
-        // File a jira to fix this
-        int processingDirectives = 0;
-        int schemaVersion = 0;
-        int taxonomyId = 0;
-        while (i.hasNext()) {
-          final String fieldName = i.next();
-          if (fieldName.equals(getSettings().getProcessingDirectivesField())) {
-            processingDirectives = integerValue(o.get(fieldName));
-          } else if (fieldName.equals(getSettings().getSchemaVersionField())) {
-            schemaVersion = integerValue(o.get(fieldName));
-          } else if (fieldName.equals(getSettings().getTaxonomyField())) {
-            taxonomyId = integerValue(o.get(fieldName));
-          } else {
-            _fieldLookahead.add(fieldName);
-            break;
-          }
+  /**
+   * Reads an array nested within a repeated field, after the opening bracket.
+   * 
+   * @return the primitive array if all numbers, otherwise the JSON text of the array
+   */
+  private Object readNestedArray() {
+    final Object array = readNumberArray();
+    if (array != null) {
+      return array;
+    }
+    final List<Object> elements = new ArrayList<Object>(_pendingValues);
+    _pendingValues.clear();
+    readTreeElements(elements);
+    final StringBuilder sb = new StringBuilder();
+    appendTree(sb, elements);
+    return sb.toString();
+  }
+
+  private static Object boxNumber(final byte kind, final long value) {
+    switch (kind) {
+      case INT:
+        return (int) value;
+      case LONG:
+        return value;
+      default:
+        return Double.longBitsToDouble(value);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Reads a scalar value: a string, number, boolean or null.
+   * 
+   * @return the value, {@link #NULL} for null
+   */
+  private Object readScalar() {
+    final int c = peek();
+    if (c == '"') {
+      return readString();
+    }
+    if (c == '-' || (c >= '0' && c <= '9')) {
+      readNumber();
+      return boxNumber(_numberKind, (_numberKind == DOUBLE) ? Double.doubleToRawLongBits(_doubleValue) : _longValue);
+    }
+    if (c == 't') {
+      expectLiteral("true");
+      return Boolean.TRUE;
+    }
+    if (c == 'f') {
+      expectLiteral("false");
+      return Boolean.FALSE;
+    }
+    if (c == 'n') {
+      expectLiteral("null");
+      return NULL;
+    }
+    throw syntaxError("a value");
+  }
+
+  /**
+   * Reads any JSON value into simple Java objects: lists, maps, strings, numbers, booleans and {@link #NULL}.
+   */
+  private Object readTree() {
+    skipWhitespace();
+    final int c = peek();
+    if (c == '[') {
+      _position++;
+      final List<Object> elements = new ArrayList<Object>();
+      readTreeElements(elements);
+      return elements;
+    }
+    if (c == '{') {
+      _position++;
+      final Map<String, Object> members = new LinkedHashMap<String, Object>();
+      while (true) {
+        skipWhitespaceAndComma();
+        if (peek() == '}') {
+          _position++;
+          return members;
         }
-        setEnvelopeFields(processingDirectives, schemaVersion, taxonomyId);
-        checkMessageEnd();
-        return setCurrentElement(FudgeStreamElement.MESSAGE_ENVELOPE);
-      } else {
-        i = _iteratorStack.peek();
-      }
-      if (i.hasNext() || !_fieldLookahead.isEmpty()) {
-        final String fieldName;
-        if (_fieldLookahead.isEmpty()) {
-          fieldName = i.next();
-        } else {
-          fieldName = _fieldLookahead.remove();
+        final String name = readString();
+        skipWhitespace();
+        expect(':');
+        members.put(name, readTree());
+      }
+    }
+    return readScalar();
+  }
+
+  /**
+   * Reads the elements of an array, after the opening bracket, into a list.
+   */
+  private void readTreeElements(final List<Object> elements) {
+    while (true) {
+      skipWhitespaceAndComma();
+      if (peek() == ']') {
+        _position++;
+        return;
+      }
+      elements.add(readTree());
+    }
+  }
+
+  /**
+   * Appends a value read by {@link #readTree} as JSON text.
+   */
+  @SuppressWarnings("unchecked")
+  private static void appendTree(final StringBuilder sb, final Object value) {
+    if (value instanceof List<?>) {
+      sb.append('[');
+      final Iterator<Object> it = ((List<Object>) value).iterator();
+      while (it.hasNext()) {
+        appendTree(sb, it.next());
+        if (it.hasNext()) {
+          sb.append(',');
         }
-        setCurrentFieldName(fieldName);
-        final Object value;
-        final boolean isValuelookahead;
-        if (_valueLookahead.isEmpty()) {
-          value = o.get(fieldName);
-          isValuelookahead = false;
-        } else {
-          value = _valueLookahead.remove();
-          isValuelookahead = true;
+      }
+      sb.append(']');
+    } else if (value instanceof Map<?, ?>) {
+      sb.append('{');
+      final Iterator<Map.Entry<String, Object>> it = ((Map<String, Object>) value).entrySet().iterator();
+      while (it.hasNext()) {
+        final Map.Entry<String, Object> entry = it.next();
+        appendString(sb, entry.getKey());
+        sb.append(':');
+        appendTree(sb, entry.getValue());
+        if (it.hasNext()) {
+          sb.append(',');
         }
-        if (JSONObject.NULL.equals(value)) {
-          setFieldValue(IndicatorType.INSTANCE);
-        } else if (value instanceof JSONArray) {
-          final JSONArray arr = (JSONArray) value;
-          Object primArray = jsonArrayToPrimitiveArray(arr);
-          if (primArray != null) {
-            setFieldValue(primArray);
+      }
+      sb.append('}');
+    } else if (value instanceof String) {
+      appendString(sb, (String) value);
+    } else if (value == NULL) {
+      sb.append("null");
+    } else {
+      sb.append(value);
+    }
+  }
+
+  private static void appendString(final StringBuilder sb, final String str) {
+    sb.append('"');
+    for (int i = 0; i < str.length(); i++) {
+      final char c = str.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+          sb.append('\\').append(c);
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < ' ') {
+            sb.append(String.format("\\u%04x", (int) c));
           } else {
-            if (isValuelookahead) {
-              // we're interpreting the JSON array as a repeated field; the data doesn't match a primitive type
-              setFieldValue(arr.toString());
-            } else {
-              for (int j = 0; j < arr.length(); j++) {
-                _fieldLookahead.add(fieldName);
-                _valueLookahead.add(arr.get(j));
-              }
-              return next();
-            }
+            sb.append(c);
           }
-        } else if (value instanceof JSONObject) {
-          o = (JSONObject) value;
-          _objectStack.push(o);
-          _iteratorStack.push(o.keys());
-          return setCurrentElement(FudgeStreamElement.SUBMESSAGE_FIELD_START);
-        } else {
-          setFieldValue(value);
+      }
+    }
+    sb.append('"');
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Reads a JSON string, including the quotes.
+   */
+  private String readString() {
+    skipWhitespace();
+    expect('"');
+    _text.setLength(0);
+    while (true) {
+      if (_position == _limit && !fill()) {
+        throw syntaxError("the end of a string");
+      }
+      // copy runs of plain characters directly from the buffer
+      int end = _position;
+      while (end < _limit) {
+        final char c = _buffer[end];
+        if (c == '"' || c == '\\') {
+          break;
         }
-        checkMessageEnd();
-        return setCurrentElement(FudgeStreamElement.SIMPLE_FIELD);
-      } else {
-        _iteratorStack.pop();
-        _objectStack.pop();
-        checkMessageEnd();
-        return setCurrentElement(FudgeStreamElement.SUBMESSAGE_FIELD_END);
+        end++;
+      }
+      _text.append(_buffer, _position, end - _position);
+      _position = end;
+      if (_position == _limit) {
+        continue;
       }
-    } catch (JSONException e) {
-      throw wrapException("reading next element", e);
+      final char c = _buffer[_position++];
+      if (c == '"') {
+        return _text.toString();
+      }
+      _text.append(readEscape());
     }
   }
 
-  public FudgeJSONSettings getSettings() {
-    return _settings;
+  /**
+   * Reads the character of an escape sequence, after the backslash.
+   */
+  private char readEscape() {
+    final int c = read();
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        return (char) c;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          final int digit = Character.digit(read(), 16);
+          if (digit < 0) {
+            throw syntaxError("a hexadecimal digit");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      default:
+        throw syntaxError("an escape sequence");
+    }
+  }
+
+  /**
+   * Reads a JSON number, setting the number kind and value.
+   */
+  private void readNumber() {
+    boolean negative = false;
+    if (peek() == '-') {
+      _position++;
+      negative = true;
+    }
+    // accumulate negatively so that Long.MIN_VALUE can be held
+    long value = 0;
+    int digits = 0;
+    boolean overflow = false;
+    _text.setLength(0);
+    if (negative) {
+      _text.append('-');
+    }
+    int c;
+    while ((c = peek()) >= '0' && c <= '9') {
+      _position++;
+      digits++;
+      if (overflow) {
+        _text.append((char) c);
+        continue;
+      }
+      final int digit = c - '0';
+      if (value < Long.MIN_VALUE / 10 || (value == Long.MIN_VALUE / 10 && digit > 8)) {
+        // too large for a long, so keep the text to parse as a double
+        overflow = true;
+        appendDigits(value);
+        _text.append((char) c);
+        continue;
+      }
+      value = value * 10 - digit;
+    }
+    if (digits == 0) {
+      throw syntaxError("a digit");
+    }
+    if (!overflow) {
+      if (c != '.' && c != 'e' && c != 'E' && (negative || value != Long.MIN_VALUE)) {
+        _longValue = negative ? value : -value;
+        _numberKind = (_longValue >= Integer.MIN_VALUE && _longValue <= Integer.MAX_VALUE) ? INT : LONG;
+        return;
+      }
+      appendDigits(value);
+    }
+    // floating point, or too large for a long, so parse the text
+    while ((c = peek()) == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9')) {
+      _position++;
+      _text.append((char) c);
+    }
+    try {
+      _doubleValue = Double.parseDouble(_text.toString());
+    } catch (NumberFormatException ex) {
+      throw syntaxError("a number");
+    }
+    _numberKind = DOUBLE;
   }
 
+  /**
+   * Appends the digits of a negatively accumulated number.
+   */
+  private void appendDigits(final long negativeValue) {
+    if (negativeValue == 0) {
+      _text.append('0');
+    } else {
+      final String digits = Long.toString(negativeValue);
+      _text.append(digits, 1, digits.length());
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the next character without consuming it.
+   * 
+   * @return the character, -1 at the end of the stream
+   */
+  private int peek() {
+    if (_position == _limit && !fill()) {
+      return -1;
+    }
+    return _buffer[_position];
+  }
+
+  /**
+   * Consumes the next character.
+   * 
+   * @return the character, -1 at the end of the stream
+   */
+  private int read() {
+    if (_position == _limit && !fill()) {
+      return -1;
+    }
+    return _buffer[_position++];
+  }
+
+  /**
+   * Refills the buffer from the underlying reader.
+   * 
+   * @return false if at the end of the stream
+   */
+  private boolean fill() {
+    if (getUnderlying() == null) {
+      return false;
+    }
+    _offset += _limit;
+    _position = 0;
+    _limit = 0;
+    try {
+      int count;
+      do {
+        count = getUnderlying().read(_buffer, 0, _buffer.length);
+      } while (count == 0);
+      if (count < 0) {
+        return false;
+      }
+      _limit = count;
+      return true;
+    } catch (IOException ex) {
+      throw new FudgeRuntimeIOException("Error reading from JSON stream", ex);
+    }
+  }
+
+  private void skipWhitespace() {
+    int c;
+    while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+      _position++;
+    }
+  }
+
+  /**
+   * Skips whitespace and a separating comma.
+   */
+  private void skipWhitespaceAndComma() {
+    skipWhitespace();
+    if (peek() == ',') {
+      _position++;
+      skipWhitespace();
+    }
+  }
+
+  private void expect(final char expected) {
+    if (read() != expected) {
+      throw syntaxError("'" + expected + "'");
+    }
+  }
+
+  private void expectLiteral(final String literal) {
+    for (int i = 0; i < literal.length(); i++) {
+      if (read() != literal.charAt(i)) {
+        throw syntaxError(literal);
+      }
+    }
+  }
+
+  private IllegalArgumentException syntaxError(final String expected) {
+    return new IllegalArgumentException("Malformed JSON stream, expected " + expected + " at character " + (_offset + _position));
+  }
+
+  /**
+   * Skips a sub-message, capturing its JSON text without parsing any of its values.
+   * <p>
+   * The returned reader parses the captured text as its fields are requested.
+   * 
+   * @return a reader for the skipped fields, not null
+   */
   @Override
   public FudgeStreamReader skipMessageField() {
-    throw new UnsupportedOperationException();
+    assert getCurrentElement() == FudgeStreamElement.SUBMESSAGE_FIELD_START;
+    char[] text = new char[256];
+    text[0] = '{';
+    int length = 1;
+    int depth = 1;
+    boolean inString = false;
+    boolean escaped = false;
+    while (depth > 0) {
+      if (_position == _limit && !fill()) {
+        throw syntaxError("'}'");
+      }
+      final int start = _position;
+      while (_position < _limit && depth > 0) {
+        final char c = _buffer[_position++];
+        if (inString) {
+          if (escaped) {
+            escaped = false;
+          } else if (c == '\\') {
+            escaped = true;
+          } else if (c == '"') {
+            inString = false;
+          }
+        } else if (c == '"') {
+          inString = true;
+        } else if (c == '{' || c == '[') {
+          depth++;
+        } else if (c == '}' || c == ']') {
+          depth--;
+        }
+      }
+      final int count = _position - start;
+      if (length + count > text.length) {
+        final char[] larger = new char[Math.max(text.length * 2, length + count)];
+        System.arraycopy(text, 0, larger, 0, length);
+        text = larger;
+      }
+      System.arraycopy(_buffer, start, text, length, count);
+      length += count;
+    }
+    _containers.pop();
+    readAhead();
+    return new FudgeJSONStreamReader(this, text, length);
   }
 
   //-------------------------------------------------------------------------
@@ -16,17 +16,15 @@
 package org.fudgemsg.wire.json;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeFieldType;
-import org.fudgemsg.FudgeRuntimeException;
 import org.fudgemsg.types.SecondaryFieldTypeBase;
 import org.fudgemsg.wire.EventBasedFudgeStreamWriter;
 import org.fudgemsg.wire.FudgeRuntimeIOException;
 import org.fudgemsg.wire.types.FudgeWireType;
-import org.json.JSONException;
-import org.json.JSONWriter;
 
 /**
  * A Fudge writer that produces JSON.
@@ -35,11 +33,66 @@ import org.json.JSONWriter;
  * This can be used for JSON output, or can be used to assist in developing/debugging
  * a streaming serializer without having to inspect the binary output.
  * <p>
+ * The JSON text is formatted directly into a reusable buffer, which is passed to the
+ * underlying writer at the end of each message. Numbers and arrays of numbers are
+ * formatted without intermediate strings. When writing to an {@link OutputStream}
+ * the text is encoded as UTF-8 without a separate {@code OutputStreamWriter}.
+ * <p>
+ * Repeated fields are written as repeated keys within the JSON object.
+ * <p>
  * Please refer to <a href="http://wiki.fudgemsg.org/display/FDG/JSON+Fudge+Messages">JSON Fudge Messages</a>
  * for details on the representation.
  */
 public class FudgeJSONStreamWriter extends EventBasedFudgeStreamWriter {
 
+  /**
+   * The size of the text buffer.
+   */
+  private static final int BUFFER_SIZE = 8192;
+  /**
+   * The escape sequences for ASCII characters, null if the character is written as is.
+   */
+  private static final char[][] s_escapes = new char[128][];
+  static {
+    for (int c = 0; c < 0x20; c++) {
+      s_escapes[c] = unicodeEscape((char) c);
+    }
+    s_escapes['\b'] = new char[] {'\\', 'b' };
+    s_escapes['\t'] = new char[] {'\\', 't' };
+    s_escapes['\n'] = new char[] {'\\', 'n' };
+    s_escapes['\f'] = new char[] {'\\', 'f' };
+    s_escapes['\r'] = new char[] {'\\', 'r' };
+    s_escapes['"'] = new char[] {'\\', '"' };
+    s_escapes['\\'] = new char[] {'\\', '\\' };
+  }
+  /**
+   * The escape sequence for a slash following a less-than sign.
+   */
+  private static final char[] SLASH_ESCAPE = new char[] {'\\', '/' };
+  /**
+   * The tens digit of the numbers 0 to 99.
+   */
+  private static final char[] DIGIT_TENS = new char[100];
+  /**
+   * The units digit of the numbers 0 to 99.
+   */
+  private static final char[] DIGIT_ONES = new char[100];
+  static {
+    for (int i = 0; i < 100; i++) {
+      DIGIT_TENS[i] = (char) ('0' + i / 10);
+      DIGIT_ONES[i] = (char) ('0' + i % 10);
+    }
+  }
+  /**
+   * The text of the smallest long, which cannot be negated.
+   */
+  private static final String LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE);
+  /**
+   * The magnitude below which integral floating point values are written without a fraction.
+   * This matches the range {@link Double#toString} formats without an exponent.
+   */
+  private static final double INTEGRAL_LIMIT = 1e7;
+
   /**
    * The JSON settings.
    */
@@ -49,9 +102,21 @@ public class FudgeJSONStreamWriter extends EventBasedFudgeStreamWriter {
    */
   private final Writer _underlyingWriter;
   /**
-   * The JSON writer.
+   * The buffer of text not yet passed to the underlying writer.
+   */
+  private final char[] _buffer = new char[BUFFER_SIZE];
+  /**
+   * The number of characters in the buffer.
+   */
+  private int _count;
+  /**
+   * Whether a comma is needed before the next field of the current object.
+   */
+  private boolean _separator;
+  /**
+   * The buffer used to format floating point values.
    */
-  private JSONWriter _writer;
+  private final StringBuilder _number = new StringBuilder(32);
 
   /**
    * Creates a new instance for writing a Fudge stream to a JSON writer.
@@ -74,48 +139,51 @@ public class FudgeJSONStreamWriter extends EventBasedFudgeStreamWriter {
   public FudgeJSONStreamWriter(final FudgeContext fudgeContext, final Writer writer, final FudgeJSONSettings settings) {
     super(fudgeContext);
     if (writer == null) {
-      throw new NullPointerException("XMLStreamWriter must not be null");
+      throw new NullPointerException("Writer must not be null");
     }
     if (settings == null) {
-      throw new NullPointerException("FudgeXMLSettings must not be null");
+      throw new NullPointerException("FudgeJSONSettings must not be null");
     }
     _settings = settings;
     _underlyingWriter = writer;
   }
 
-  //-------------------------------------------------------------------------
   /**
-   * Gets the JSON settings.
+   * Creates a new instance for writing a Fudge stream as UTF-8 encoded JSON.
    * 
-   * @return the JSON settings, not null
+   * @param fudgeContext  the Fudge context, not null
+   * @param outputStream  the underlying stream, not null
    */
-  public FudgeJSONSettings getSettings() {
-    return _settings;
+  public FudgeJSONStreamWriter(final FudgeContext fudgeContext, final OutputStream outputStream) {
+    this(fudgeContext, outputStream, new FudgeJSONSettings());
   }
 
   /**
-   * Gets the JSON writer being used, allocating one if necessary.
+   * Creates a new instance for writing a Fudge stream as UTF-8 encoded JSON.
    * 
-   * @return the writer, not null
+   * @param fudgeContext  the Fudge context, not null
+   * @param outputStream  the underlying stream, not null
+   * @param settings  the JSON settings, not null
    */
-  protected JSONWriter getWriter() {
-    if (_writer == null) {
-      _writer = new JSONWriter(getUnderlying());
-    }
-    return _writer;
+  public FudgeJSONStreamWriter(final FudgeContext fudgeContext, final OutputStream outputStream, final FudgeJSONSettings settings) {
+    this(fudgeContext, new UTF8Writer(outputStream), settings);
   }
 
+  //-------------------------------------------------------------------------
   /**
-   * Discards the JSON writer.
-   * The implementation only allows a single use so we must drop the instance
-   * after each message envelope completes.
+   * Gets the JSON settings.
+   * 
+   * @return the JSON settings, not null
    */
-  protected void clearWriter() {
-    _writer = null;
+  public FudgeJSONSettings getSettings() {
+    return _settings;
   }
 
   /**
-   * Gets the underlying {@link Writer} that is wrapped by {@link JSONWriter} instances for messages.
+   * Gets the underlying {@link Writer} that the JSON text is written to.
+   * <p>
+   * Text is passed to the writer at the end of each message, or when the internal
+   * buffer fills.
    * 
    * @return the writer, not null
    */
@@ -124,33 +192,16 @@ public class FudgeJSONStreamWriter extends EventBasedFudgeStreamWriter {
   }
 
   //-------------------------------------------------------------------------
-  /**
-   * Wraps a JSON exception (which may in turn wrap {@link IOException} into
-   * either a {@link FudgeRuntimeException} or {@link FudgeRuntimeIOException}.
-   * 
-   * @param message message describing the current operation
-   * @param e the originating exception
-   */
-  protected void wrapException(String message, final JSONException e) {
-    message = "Error writing " + message + " to JSON stream";
-    if (e.getCause() instanceof IOException) {
-      throw new FudgeRuntimeIOException(message, (IOException) e.getCause());
-    } else {
-      throw new FudgeRuntimeException(message, e);
-    }
-  }
-
   /**
    * {@inheritDoc}
    */
   @Override
   public void flush() {
-    if (getUnderlying() != null) {
-      try {
-        getUnderlying().flush();
-      } catch (IOException e) {
-        throw new FudgeRuntimeIOException(e);
-      }
+    writeBuffer();
+    try {
+      getUnderlying().flush();
+    } catch (IOException ex) {
+      throw new FudgeRuntimeIOException(ex);
     }
   }
 
@@ -158,120 +209,72 @@ public class FudgeJSONStreamWriter extends EventBasedFudgeStreamWriter {
    * Begins a JSON object with the processing directives, schema and taxonomy.
    */
   @Override
-  protected void fudgeEnvelopeStart (final int processingDirectives, final int schemaVersion) {
-    try {
-      getWriter ().object ();
-      if ((processingDirectives != 0) && (getSettings ().getProcessingDirectivesField () != null)) getWriter ().key (getSettings ().getProcessingDirectivesField ()).value (processingDirectives);
-      if ((schemaVersion != 0) && (getSettings ().getSchemaVersionField () != null)) getWriter ().key (getSettings ().getSchemaVersionField ()).value (schemaVersion);
-      if ((getCurrentTaxonomyId () != 0) && (getSettings ().getTaxonomyField () != null)) getWriter ().key (getSettings ().getTaxonomyField ()).value (getCurrentTaxonomyId ());
-    } catch (JSONException e) {
-      wrapException ("start of message", e);
+  protected void fudgeEnvelopeStart(final int processingDirectives, final int schemaVersion) {
+    // discard any unwritten text left by a message that failed part way through
+    _count = 0;
+    append('{');
+    _separator = false;
+    if ((processingDirectives != 0) && (getSettings().getProcessingDirectivesField() != null)) {
+      writeKey(getSettings().getProcessingDirectivesField());
+      appendLong(processingDirectives);
+    }
+    if ((schemaVersion != 0) && (getSettings().getSchemaVersionField() != null)) {
+      writeKey(getSettings().getSchemaVersionField());
+      appendLong(schemaVersion);
+    }
+    if ((getCurrentTaxonomyId() != 0) && (getSettings().getTaxonomyField() != null)) {
+      writeKey(getSettings().getTaxonomyField());
+      appendLong(getCurrentTaxonomyId());
     }
   }
-  
+
   /**
-   * Ends the JSON object.
+   * Ends the JSON object, passing the message text to the underlying writer.
    */
   @Override
-  protected void fudgeEnvelopeEnd () {
-    try {
-      getWriter ().endObject ();
-      clearWriter ();
-    } catch (JSONException e) {
-      wrapException ("end of message", e);
-    }
+  protected void fudgeEnvelopeEnd() {
+    append('}');
+    _separator = false;
+    writeBuffer();
   }
-  
+
   /**
    * Writes out the field name to the JSON object.
    */
   @Override
-  protected boolean fudgeFieldStart (Integer ordinal, String name, FudgeFieldType type) {
-    try {
-      if (getSettings ().getPreserveFieldNames ()) {
-        if (name != null) {
-          getWriter ().key (name);
-        } else if (ordinal != null) {
-          getWriter ().key (ordinal.toString());
-        } else {
-          getWriter ().key ("");
-        }
+  protected boolean fudgeFieldStart(Integer ordinal, String name, FudgeFieldType type) {
+    if (getSettings().getPreserveFieldNames()) {
+      if (name != null) {
+        writeKey(name);
+      } else if (ordinal != null) {
+        writeKey(ordinal);
       } else {
-        if (ordinal != null) {
-          getWriter ().key (ordinal.toString());
-        } else if (name != null) {
-          getWriter ().key (name);
-        } else {
-          getWriter ().key ("");
-        }
+        writeKey("");
+      }
+    } else {
+      if (ordinal != null) {
+        writeKey(ordinal);
+      } else if (name != null) {
+        writeKey(name);
+      } else {
+        writeKey("");
       }
-    } catch (JSONException e) {
-      wrapException ("start of field", e);
     }
     return true;
   }
-  
-  protected void writeArray (final byte[] data) throws JSONException {
-    getWriter ().array ();
-    for (int i = 0; i < data.length; i++) {
-      getWriter ().value (data[i]);
-    }
-    getWriter ().endArray ();
-  }
-  
-  protected void writeArray (final short[] data) throws JSONException {
-    getWriter ().array ();
-    for (int i = 0; i < data.length; i++) {
-      getWriter ().value (data[i]);
-    }
-    getWriter ().endArray ();
-  }
-  
-  protected void writeArray (final int[] data) throws JSONException {
-    getWriter ().array ();
-    for (int i = 0; i < data.length; i++) {
-      getWriter ().value (data[i]);
-    }
-    getWriter ().endArray ();
-  }
-  
-  protected void writeArray (final long[] data) throws JSONException {
-    getWriter ().array ();
-    for (int i = 0; i < data.length; i++) {
-      getWriter ().value (data[i]);
-    }
-    getWriter ().endArray ();
-  }
-  
-  protected void writeArray (final float[] data) throws JSONException {
-    getWriter ().array ();
-    for (int i = 0; i < data.length; i++) {
-      getWriter ().value (data[i]);
-    }
-    getWriter ().endArray ();
-  }
-  
-  protected void writeArray (final double[] data) throws JSONException {
-    getWriter ().array ();
-    for (int i = 0; i < data.length; i++) {
-      getWriter ().value (data[i]);
-    }
-    getWriter ().endArray ();
-  }
-  
+
   /**
    * Writes the field value to the JSON object.
    */
   @SuppressWarnings("unchecked")
   @Override
-  protected void fudgeFieldValue (FudgeFieldType type, Object fieldValue) {
-    try {
-      if (type instanceof SecondaryFieldTypeBase<?,?,?>) {
-        fieldValue = ((SecondaryFieldTypeBase<Object,Object,Object>)type).secondaryToPrimary(fieldValue);
-      }
-      switch (type.getTypeId ()) {
-      case FudgeWireType.INDICATOR_TYPE_ID :
-        getWriter ().value (null);
+  protected void fudgeFieldValue(FudgeFieldType type, Object fieldValue) {
+    if (type instanceof SecondaryFieldTypeBase<?, ?, ?>) {
+      fieldValue = ((SecondaryFieldTypeBase<Object, Object, Object>) type).secondaryToPrimary(fieldValue);
+    }
+    switch (type.getTypeId()) {
+      case FudgeWireType.INDICATOR_TYPE_ID:
+        appendAscii("null");
         break;
       case FudgeWireType.BYTE_ARRAY_TYPE_ID:
       case FudgeWireType.BYTE_ARRAY_4_TYPE_ID:
@@ -283,54 +286,459 @@ public class FudgeJSONStreamWriter extends EventBasedFudgeStreamWriter {
       case FudgeWireType.BYTE_ARRAY_128_TYPE_ID:
       case FudgeWireType.BYTE_ARRAY_256_TYPE_ID:
       case FudgeWireType.BYTE_ARRAY_512_TYPE_ID:
-        writeArray ((byte[])fieldValue);
+        writeArray((byte[]) fieldValue);
         break;
       case FudgeWireType.SHORT_ARRAY_TYPE_ID:
-        writeArray ((short[])fieldValue);
+        writeArray((short[]) fieldValue);
         break;
       case FudgeWireType.INT_ARRAY_TYPE_ID:
-        writeArray ((int[])fieldValue);
+        writeArray((int[]) fieldValue);
         break;
       case FudgeWireType.LONG_ARRAY_TYPE_ID:
-        writeArray ((long[])fieldValue);
+        writeArray((long[]) fieldValue);
         break;
       case FudgeWireType.FLOAT_ARRAY_TYPE_ID:
-        writeArray ((float[])fieldValue);
+        writeArray((float[]) fieldValue);
         break;
       case FudgeWireType.DOUBLE_ARRAY_TYPE_ID:
-        writeArray ((double[])fieldValue);
+        writeArray((double[]) fieldValue);
         break;
-      default :
-        getWriter ().value (fieldValue);
+      default:
+        writeValue(fieldValue);
         break;
-      }
-    } catch (JSONException e) {
-      wrapException ("field value", e);
     }
   }
-  
+
   /**
-   * Starts a sub-object within the JSON object.  
+   * Starts a sub-object within the JSON object.
    */
   @Override
-  protected void fudgeSubMessageStart () {
-    try {
-      getWriter ().object ();
-    } catch (JSONException e) {
-      wrapException ("start of submessage", e);
-    }
+  protected void fudgeSubMessageStart() {
+    append('{');
+    _separator = false;
   }
-  
+
   /**
    * Ends the JSON sub-object.
    */
   @Override
-  protected void fudgeSubMessageEnd () {
-    try {
-      getWriter ().endObject ();
-    } catch (JSONException e) {
-      wrapException ("end of submessage", e);
+  protected void fudgeSubMessageEnd() {
+    append('}');
+    _separator = true;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes a scalar value.
+   * <p>
+   * Numbers and booleans are written as JSON literals, and any other value as the JSON
+   * string of its {@code toString} form.
+   * 
+   * @param value  the value, not null
+   */
+  protected void writeValue(final Object value) {
+    if (value instanceof String) {
+      appendString((String) value);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      appendLong(((Number) value).longValue());
+    } else if (value instanceof Double) {
+      appendDouble((Double) value);
+    } else if (value instanceof Float) {
+      appendFloat((Float) value);
+    } else if (value instanceof Boolean) {
+      appendAscii(((Boolean) value).booleanValue() ? "true" : "false");
+    } else if (value instanceof Number) {
+      appendAscii(value.toString());
+    } else {
+      appendString(value.toString());
     }
   }
-  
-}
\ No newline at end of file
+
+  protected void writeArray(final byte[] data) {
+    append('[');
+    for (int i = 0; i < data.length; i++) {
+      if (i > 0) {
+        append(',');
+      }
+      appendLong(data[i]);
+    }
+    append(']');
+  }
+
+  protected void writeArray(final short[] data) {
+    append('[');
+    for (int i = 0; i < data.length; i++) {
+      if (i > 0) {
+        append(',');
+      }
+      appendLong(data[i]);
+    }
+    append(']');
+  }
+
+  protected void writeArray(final int[] data) {
+    append('[');
+    for (int i = 0; i < data.length; i++) {
+      if (i > 0) {
+        append(',');
+      }
+      appendLong(data[i]);
+    }
+    append(']');
+  }
+
+  protected void writeArray(final long[] data) {
+    append('[');
+    for (int i = 0; i < data.length; i++) {
+      if (i > 0) {
+        append(',');
+      }
+      appendLong(data[i]);
+    }
+    append(']');
+  }
+
+  protected void writeArray(final float[] data) {
+    append('[');
+    for (int i = 0; i < data.length; i++) {
+      if (i > 0) {
+        append(',');
+      }
+      appendFloat(data[i]);
+    }
+    append(']');
+  }
+
+  protected void writeArray(final double[] data) {
+    append('[');
+    for (int i = 0; i < data.length; i++) {
+      if (i > 0) {
+        append(',');
+      }
+      appendDouble(data[i]);
+    }
+    append(']');
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes an object key, preceded by a comma if needed.
+   * 
+   * @param key  the key, not null
+   */
+  private void writeKey(final String key) {
+    if (_separator) {
+      append(',');
+    }
+    appendString(key);
+    append(':');
+    _separator = true;
+  }
+
+  /**
+   * Writes an ordinal as an object key, preceded by a comma if needed.
+   * 
+   * @param ordinal  the ordinal, not null
+   */
+  private void writeKey(final Integer ordinal) {
+    if (_separator) {
+      append(',');
+    }
+    append('"');
+    appendLong(ordinal);
+    append('"');
+    append(':');
+    _separator = true;
+  }
+
+  /**
+   * Passes the buffered text to the underlying writer.
+   */
+  private void writeBuffer() {
+    if (_count > 0) {
+      try {
+        getUnderlying().write(_buffer, 0, _count);
+      } catch (IOException ex) {
+        throw new FudgeRuntimeIOException("Error writing to JSON stream", ex);
+      }
+      _count = 0;
+    }
+  }
+
+  /**
+   * Ensures the buffer has space for a number of characters.
+   * 
+   * @param length  the number of characters, at most the buffer size
+   */
+  private void ensure(final int length) {
+    if (_count + length > _buffer.length) {
+      writeBuffer();
+    }
+  }
+
+  private void append(final char c) {
+    if (_count == _buffer.length) {
+      writeBuffer();
+    }
+    _buffer[_count++] = c;
+  }
+
+  private void append(final char[] chars) {
+    ensure(chars.length);
+    System.arraycopy(chars, 0, _buffer, _count, chars.length);
+    _count += chars.length;
+  }
+
+  /**
+   * Appends a string that needs no escaping.
+   * 
+   * @param str  the string, not null
+   */
+  private void appendAscii(final String str) {
+    appendChars(str, 0, str.length());
+  }
+
+  /**
+   * Appends part of a string that needs no escaping.
+   * 
+   * @param str  the string, not null
+   * @param start  the index of the first character
+   * @param end  the index after the last character
+   */
+  private void appendChars(final String str, int start, final int end) {
+    while (start < end) {
+      if (_count == _buffer.length) {
+        writeBuffer();
+      }
+      final int length = Math.min(end - start, _buffer.length - _count);
+      str.getChars(start, start + length, _buffer, _count);
+      _count += length;
+      start += length;
+    }
+  }
+
+  /**
+   * Appends a quoted and escaped JSON string.
+   * <p>
+   * Runs of characters that need no escaping are copied in bulk.
+   * 
+   * @param str  the string, not null
+   */
+  private void appendString(final String str) {
+    append('"');
+    final int length = str.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = str.charAt(i);
+      final char[] escape;
+      if (c < 128) {
+        if (c == '/' && i > 0 && str.charAt(i - 1) == '<') {
+          escape = SLASH_ESCAPE;
+        } else {
+          escape = s_escapes[c];
+          if (escape == null) {
+            continue;
+          }
+        }
+      } else if ((c >= 0x80 && c < 0xA0) || (c >= 0x2000 && c < 0x2100)) {
+        escape = unicodeEscape(c);
+      } else {
+        continue;
+      }
+      appendChars(str, start, i);
+      append(escape);
+      start = i + 1;
+    }
+    appendChars(str, start, length);
+    append('"');
+  }
+
+  /**
+   * Creates the unicode escape sequence for a character.
+   * 
+   * @param c  the character
+   * @return the escape sequence, not null
+   */
+  private static char[] unicodeEscape(final char c) {
+    final String hex = Integer.toHexString(c);
+    final char[] escape = new char[] {'\\', 'u', '0', '0', '0', '0' };
+    hex.getChars(0, hex.length(), escape, escape.length - hex.length());
+    return escape;
+  }
+
+  /**
+   * Appends a long in decimal, two digits at a time.
+   * 
+   * @param value  the value
+   */
+  private void appendLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      appendAscii(LONG_MIN_VALUE);
+      return;
+    }
+    ensure(20);
+    if (value < 0) {
+      _buffer[_count++] = '-';
+      value = -value;
+    }
+    final int end = _count + digits(value);
+    int pos = end;
+    while (value >= 100) {
+      final int r = (int) (value % 100);
+      value /= 100;
+      _buffer[--pos] = DIGIT_ONES[r];
+      _buffer[--pos] = DIGIT_TENS[r];
+    }
+    final int r = (int) value;
+    _buffer[--pos] = DIGIT_ONES[r];
+    if (r >= 10) {
+      _buffer[--pos] = DIGIT_TENS[r];
+    }
+    _count = end;
+  }
+
+  /**
+   * Counts the decimal digits of a non-negative long.
+   * 
+   * @param value  the value, not negative
+   * @return the number of digits, from 1 to 19
+   */
+  private static int digits(final long value) {
+    long limit = 10;
+    for (int i = 1; i < 19; i++) {
+      if (value < limit) {
+        return i;
+      }
+      limit *= 10;
+    }
+    return 19;
+  }
+
+  /**
+   * Appends a double, without a fraction if it is a small integer.
+   * 
+   * @param value  the value, finite
+   */
+  private void appendDouble(final double value) {
+    checkFinite(Double.isNaN(value) || Double.isInfinite(value));
+    if (value == (long) value && Math.abs(value) < INTEGRAL_LIMIT && (value != 0 || 1 / value > 0)) {
+      appendLong((long) value);
+    } else {
+      _number.setLength(0);
+      _number.append(value);
+      appendNumber();
+    }
+  }
+
+  /**
+   * Appends a float, without a fraction if it is a small integer.
+   * 
+   * @param value  the value, finite
+   */
+  private void appendFloat(final float value) {
+    checkFinite(Float.isNaN(value) || Float.isInfinite(value));
+    if (value == (long) value && Math.abs(value) < INTEGRAL_LIMIT && (value != 0 || 1 / value > 0)) {
+      appendLong((long) value);
+    } else {
+      _number.setLength(0);
+      _number.append(value);
+      appendNumber();
+    }
+  }
+
+  /**
+   * Appends the formatted number buffer.
+   */
+  private void appendNumber() {
+    final int length = _number.length();
+    ensure(length);
+    _number.getChars(0, length, _buffer, _count);
+    _count += length;
+  }
+
+  private static void checkFinite(final boolean nonFinite) {
+    if (nonFinite) {
+      throw new IllegalArgumentException("JSON does not allow non-finite numbers");
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writer encoding characters as UTF-8 to an output stream.
+   * <p>
+   * A surrogate pair may be split across calls. Unpaired surrogates are written as '?'.
+   */
+  private static final class UTF8Writer extends Writer {
+    private final OutputStream _out;
+    private final byte[] _bytes = new byte[BUFFER_SIZE];
+    private int _count;
+    private char _highSurrogate;
+
+    private UTF8Writer(final OutputStream out) {
+      if (out == null) {
+        throw new NullPointerException("OutputStream must not be null");
+      }
+      _out = out;
+    }
+
+    @Override
+    public void write(final char[] chars, final int offset, final int length) throws IOException {
+      final int end = offset + length;
+      for (int i = offset; i < end; i++) {
+        final char c = chars[i];
+        if (_count + 4 > _bytes.length) {
+          writeBytes();
+        }
+        if (_highSurrogate != 0) {
+          final char high = _highSurrogate;
+          _highSurrogate = 0;
+          if (Character.isLowSurrogate(c)) {
+            final int codePoint = Character.toCodePoint(high, c);
+            _bytes[_count++] = (byte) (0xF0 | (codePoint >> 18));
+            _bytes[_count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            _bytes[_count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            _bytes[_count++] = (byte) (0x80 | (codePoint & 0x3F));
+            continue;
+          }
+          _bytes[_count++] = '?';
+          if (_count + 4 > _bytes.length) {
+            writeBytes();
+          }
+        }
+        if (c < 0x80) {
+          _bytes[_count++] = (byte) c;
+        } else if (c < 0x800) {
+          _bytes[_count++] = (byte) (0xC0 | (c >> 6));
+          _bytes[_count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+          _highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+          _bytes[_count++] = '?';
+        } else {
+          _bytes[_count++] = (byte) (0xE0 | (c >> 12));
+          _bytes[_count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          _bytes[_count++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+      writeBytes();
+    }
+
+    private void writeBytes() throws IOException {
+      if (_count > 0) {
+        _out.write(_bytes, 0, _count);
+        _count = 0;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      _out.close();
+    }
+  }
+
+}
@@ -17,6 +17,8 @@ package org.fudgemsg.wire.xml;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import javax.time.calendar.LocalDate;
@@ -29,6 +31,7 @@ import javax.xml.stream.XMLStreamReader;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.FudgeMetrics;
 import org.fudgemsg.FudgeRuntimeException;
 import org.fudgemsg.taxonomy.FudgeTaxonomy;
 import org.fudgemsg.types.IndicatorType;
@@ -38,6 +41,9 @@ import org.fudgemsg.wire.types.FudgeWireType;
 
 /**
  * Reader that decodes XML into Fudge messages.
+ * <p>
+ * A skipped sub-message is recorded as the names, attributes and text of its elements,
+ * with field values only converted when its fields are requested, supporting lazy reads.
  */
 public class FudgeXMLStreamReader implements FudgeStreamReader {
 
@@ -57,6 +63,14 @@ public class FudgeXMLStreamReader implements FudgeStreamReader {
   private Object _fieldValue = null;
   private FudgeFieldType _fieldType = null;
   private int _currentEvent = XMLStreamConstants.START_DOCUMENT;
+  /**
+   * The recorded elements of a skipped sub-message, null if reading from the XML stream.
+   */
+  private final List<RecordedElement> _recorded;
+  /**
+   * The index of the next recorded element.
+   */
+  private int _recordedIndex;
 
   /**
    * Creates a new instance for reading a Fudge stream from an XML reader.
@@ -89,6 +103,26 @@ public class FudgeXMLStreamReader implements FudgeStreamReader {
     _underlying = reader;
     _settings = settings;
     _xmlStreamReader = createXMLStreamReader(reader);
+    _recorded = null;
+  }
+
+  /**
+   * Creates a reader for a sub-message skipped by another reader.
+   * 
+   * @param parent  the reader that skipped the sub-message, not null
+   * @param recorded  the recorded elements of the sub-message, not null
+   */
+  private FudgeXMLStreamReader(final FudgeXMLStreamReader parent, final List<RecordedElement> recorded) {
+    _fudgeContext = parent._fudgeContext;
+    _underlying = null;
+    _settings = parent._settings;
+    _xmlStreamReader = null;
+    _recorded = recorded;
+    _taxonomyId = parent._taxonomyId;
+    _taxonomy = parent._taxonomy;
+    _processingDirectives = parent._processingDirectives;
+    _schemaVersion = parent._schemaVersion;
+    _currentElement = FudgeStreamElement.SUBMESSAGE_FIELD_START;
   }
 
   /**
@@ -155,6 +189,9 @@ public class FudgeXMLStreamReader implements FudgeStreamReader {
 
   @Override
   public boolean hasNext() {
+    if (_recorded != null) {
+      return _recordedIndex < _recorded.size();
+    }
     return !(isEndOfDocument() || isEndOfEnvelopeElement());
   }
 
@@ -168,6 +205,16 @@ public class FudgeXMLStreamReader implements FudgeStreamReader {
 
   @Override
   public FudgeStreamElement next() {
+    if (_recorded != null) {
+      final RecordedElement recorded = _recorded.get(_recordedIndex++);
+      if (recorded == RecordedElement.END) {
+        _messageStack.pop();
+        setCurrentElement(FudgeStreamElement.SUBMESSAGE_FIELD_END);
+      } else {
+        setCurrentElement(processFieldElement(recorded._element, recorded._fieldAttrName, recorded._type, recorded._ordinalAttr, recorded._text));
+      }
+      return _currentElement;
+    }
     try {
       for (int event = _xmlStreamReader.next(); event != XMLStreamConstants.END_DOCUMENT; event = _xmlStreamReader.next()) {
         _currentEvent = event;
@@ -193,22 +240,49 @@ public class FudgeXMLStreamReader implements FudgeStreamReader {
 
   private FudgeStreamElement processStartElement() throws XMLStreamException {
     String element = _xmlStreamReader.getLocalName();
-    String fieldAttrName = _xmlStreamReader.getAttributeValue(null, _settings.getFieldAttributeName());
     if (isEnvelopeElement(element)) {
       return processEnvelopeElement(element);
-    } 
+    }
+    final RecordedElement field = readFieldElement(element);
+    return processFieldElement(element, field._fieldAttrName, field._type, field._ordinalAttr, field._text);
+  }
+
+  /**
+   * Reads the attributes of a field element and, unless it is a sub-message, its text.
+   * 
+   * @param element  the element name, not null
+   * @return the field element, not null
+   */
+  private RecordedElement readFieldElement(final String element) throws XMLStreamException {
+    String fieldAttrName = _xmlStreamReader.getAttributeValue(null, _settings.getFieldAttributeName());
     String type = _xmlStreamReader.getAttributeValue(null, _settings.getFieldAttributeType());
-    int ordinalAttr = toInt(_xmlStreamReader.getAttributeValue(null, _settings.getFieldAttributeOrdinal()), Integer.MIN_VALUE);
-    Integer ordinal = ordinalAttr != Integer.MIN_VALUE ? Integer.valueOf(ordinalAttr) : null;
+    String ordinalAttr = _xmlStreamReader.getAttributeValue(null, _settings.getFieldAttributeOrdinal());
+    String text = isMessage(type) ? null : _xmlStreamReader.getElementText();
+    return new RecordedElement(element, fieldAttrName, type, ordinalAttr, text);
+  }
+
+  /**
+   * Processes a field element.
+   * 
+   * @param element  the element name, not null
+   * @param fieldAttrName  the field name attribute, may be null
+   * @param type  the type attribute
+   * @param ordinalAttr  the ordinal attribute, may be null
+   * @param text  the element text, null for a sub-message
+   * @return the stream element, not null
+   */
+  private FudgeStreamElement processFieldElement(String element, String fieldAttrName, String type, String ordinalAttr, String text) {
+    int ordinalValue = toInt(ordinalAttr, Integer.MIN_VALUE);
+    Integer ordinal = ordinalValue != Integer.MIN_VALUE ? Integer.valueOf(ordinalValue) : null;
     processFieldNameAndOrdinal(element, fieldAttrName, ordinal);
-    if (isMessage(type)) {        
+    if (text == null) {
       _messageStack.push(element);
       return FudgeStreamElement.SUBMESSAGE_FIELD_START;
     } else {
       Integer fudgeTypeId = _settings.getIdentifiersToFudgeType().get(type);
       FudgeFieldType fudgeType = _fudgeContext.getTypeDictionary().getByTypeId(fudgeTypeId);
       _fieldType = fudgeType;
-      _fieldValue = convertFieldValue(fudgeType, _xmlStreamReader.getElementText());
+      _fieldValue = convertFieldValue(fudgeType, text);
       return FudgeStreamElement.SIMPLE_FIELD;
     }
   }
@@ -357,6 +431,10 @@ public class FudgeXMLStreamReader implements FudgeStreamReader {
     String taxonomyIdAttr = _xmlStreamReader.getAttributeValue(null, _settings.getEnvelopeAttributeTaxonomy());
     _taxonomyId = toInt(taxonomyIdAttr, 0);
     _taxonomy = _fudgeContext.getTaxonomyResolver().resolveTaxonomy((short) _taxonomyId);
+    final FudgeMetrics metrics = _fudgeContext.getMetrics();
+    if (metrics != null) {
+      metrics.taxonomyResolved(_taxonomyId, _taxonomy != null);
+    }
     _messageStack.push(element);
     return FudgeStreamElement.MESSAGE_ENVELOPE;
   }
@@ -422,9 +500,59 @@ public class FudgeXMLStreamReader implements FudgeStreamReader {
     return _fudgeContext;
   }
 
+  /**
+   * Skips a sub-message, recording its elements without converting any of its values.
+   * <p>
+   * The returned reader converts the recorded values as its fields are requested.
+   * 
+   * @return a reader for the skipped fields, not null
+   */
   @Override
   public FudgeStreamReader skipMessageField() {
-    throw new UnsupportedOperationException();
+    assert _currentElement == FudgeStreamElement.SUBMESSAGE_FIELD_START;
+    final List<RecordedElement> recorded;
+    if (_recorded != null) {
+      final int start = _recordedIndex;
+      int depth = 0;
+      while (true) {
+        final RecordedElement element = _recorded.get(_recordedIndex++);
+        if (element == RecordedElement.END) {
+          if (depth-- == 0) {
+            break;
+          }
+        } else if (element._text == null) {
+          depth++;
+        }
+      }
+      recorded = _recorded.subList(start, _recordedIndex - 1);
+    } else {
+      recorded = new ArrayList<RecordedElement>();
+      try {
+        int depth = 0;
+        while (true) {
+          final int event = _xmlStreamReader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            final RecordedElement element = readFieldElement(_xmlStreamReader.getLocalName());
+            if (element._text == null) {
+              depth++;
+            }
+            recorded.add(element);
+          } else if (event == XMLStreamConstants.END_ELEMENT) {
+            if (depth-- == 0) {
+              _currentEvent = event;
+              break;
+            }
+            recorded.add(RecordedElement.END);
+          } else if (event == XMLStreamConstants.END_DOCUMENT) {
+            throw new IllegalArgumentException("Unexpected end of XML stream within a sub-message");
+          }
+        }
+      } catch (XMLStreamException ex) {
+        throw wrapException("skipping sub-message", ex);
+      }
+    }
+    _messageStack.pop();
+    return new FudgeXMLStreamReader(this, recorded);
   }
 
   //-------------------------------------------------------------------------
@@ -443,4 +571,24 @@ public class FudgeXMLStreamReader implements FudgeStreamReader {
     }
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * A field element of a sub-message, or the end of a nested sub-message.
+   */
+  private static final class RecordedElement {
+    private static final RecordedElement END = new RecordedElement(null, null, null, null, null);
+    private final String _element;
+    private final String _fieldAttrName;
+    private final String _type;
+    private final String _ordinalAttr;
+    private final String _text;
+    private RecordedElement(final String element, final String fieldAttrName, final String type, final String ordinalAttr, final String text) {
+      _element = element;
+      _fieldAttrName = fieldAttrName;
+      _type = type;
+      _ordinalAttr = ordinalAttr;
+      _text = text;
+    }
+  }
+
 }
@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.benchmarks.BenchmarkMessages.Naming;
+import org.fudgemsg.benchmarks.BenchmarkMessages.Shape;
+import org.fudgemsg.benchmarks.ObjectMappingBenchmark.Tick;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeSerializer;
+import org.fudgemsg.wire.FudgeDataInputStreamReader;
+import org.fudgemsg.wire.FudgeMsgReader;
+
+/**
+ * Checks the bytes allocated per operation on the core paths against stored baselines.
+ * <p>
+ * Each operation is warmed up and then run repeatedly on one thread, and the bytes it
+ * allocated are read from the thread allocation counter of the JVM. An operation fails if
+ * it allocates more than its baseline plus the tolerance, which defaults to 10%.
+ * <p>
+ * Run with the baseline file as the first argument. With {@code --update} as the second
+ * argument the measurements are written to the file as the new baselines instead.
+ * Operations without a baseline fail, so new operations must have their baselines recorded.
+ * <p>
+ * Allocation can also be seen alongside the timings of the JMH benchmarks by running them
+ * with the GC profiler, {@code -prof gc}.
+ */
+public final class AllocationBudget {
+
+  /**
+   * The baseline property holding the tolerance as a fraction of the baseline.
+   */
+  private static final String TOLERANCE = "tolerance";
+  /**
+   * The default tolerance.
+   */
+  private static final double DEFAULT_TOLERANCE = 0.10;
+  /**
+   * The number of warm up iterations of each operation.
+   */
+  private static final int WARMUP_ITERATIONS = 20000;
+  /**
+   * The number of measured iterations of each operation.
+   */
+  private static final int MEASURED_ITERATIONS = 10000;
+
+  /**
+   * The results of operations, kept so that they are not optimized away.
+   */
+  private static volatile Object s_sink;
+
+  /**
+   * An operation to measure.
+   */
+  private interface Operation {
+    Object run();
+  }
+
+  private final com.sun.management.ThreadMXBean _threads;
+  private final Map<String, Operation> _operations = new LinkedHashMap<String, Operation>();
+
+  private AllocationBudget() {
+    _threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (!_threads.isThreadAllocatedMemorySupported()) {
+      throw new UnsupportedOperationException("Thread allocation counters are not supported by this JVM");
+    }
+    _threads.setThreadAllocatedMemoryEnabled(true);
+    final FudgeContext context = BenchmarkMessages.createContext();
+    for (final Shape shape : new Shape[] {Shape.FLAT, Shape.NESTED }) {
+      final String suffix = "." + shape.name().toLowerCase();
+      final FudgeMsg message = BenchmarkMessages.createMessage(context, shape, Naming.NAMES);
+      final byte[] encoded = context.toByteArray(message);
+      _operations.put("toByteArray" + suffix, new Operation() {
+        @Override
+        public Object run() {
+          return context.toByteArray(message);
+        }
+      });
+      _operations.put("deserialize" + suffix, new Operation() {
+        @Override
+        public Object run() {
+          return context.deserialize(encoded).getMessage();
+        }
+      });
+      for (final boolean lazyReads : new boolean[] {false, true }) {
+        _operations.put("reader." + (lazyReads ? "lazy" : "eager") + suffix, new Operation() {
+          @Override
+          public Object run() {
+            final FudgeMsgReader reader = new FudgeMsgReader(new FudgeDataInputStreamReader(context, new ByteArrayInputStream(encoded)));
+            reader.setLazyReads(lazyReads);
+            final FudgeMsg read = reader.nextMessage();
+            // touch the top level fields only, leaving lazily read sub-messages undecoded
+            int count = 0;
+            for (FudgeField field : read) {
+              if (field.getValue() != null) {
+                count++;
+              }
+            }
+            return count;
+          }
+        });
+      }
+    }
+    final Tick tick = new Tick();
+    tick.setTicker("ACME.N");
+    tick.setBid(101.25);
+    tick.setAsk(101.5);
+    tick.setSize(2500);
+    tick.setTimestamp(1300000000000L);
+    final FudgeMsg tickMessage = new FudgeSerializer(context).objectToFudgeMsg(tick);
+    _operations.put("serializer.bean", new Operation() {
+      @Override
+      public Object run() {
+        return new FudgeSerializer(context).objectToFudgeMsg(tick);
+      }
+    });
+    _operations.put("deserializer.bean", new Operation() {
+      @Override
+      public Object run() {
+        return new FudgeDeserializer(context).fudgeMsgToObject(Tick.class, tickMessage);
+      }
+    });
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Measures the bytes allocated by one run of an operation.
+   */
+  private long measure(final Operation operation) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      s_sink = operation.run();
+    }
+    final long threadId = Thread.currentThread().getId();
+    final long before = _threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      s_sink = operation.run();
+    }
+    final long after = _threads.getThreadAllocatedBytes(threadId);
+    return (after - before) / MEASURED_ITERATIONS;
+  }
+
+  /**
+   * Measures every operation.
+   */
+  private Map<String, Long> measureAll() {
+    final Map<String, Long> results = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Operation> entry : _operations.entrySet()) {
+      results.put(entry.getKey(), measure(entry.getValue()));
+    }
+    return results;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Runs the check.
+   *
+   * @param args  the baseline file, optionally followed by {@code --update}
+   * @throws IOException if the baseline file cannot be read or written
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: AllocationBudget <baseline file> [--update]");
+      System.exit(2);
+    }
+    final File baselineFile = new File(args[0]);
+    final boolean update = (args.length > 1) && "--update".equals(args[1]);
+    final Properties baselines = new Properties();
+    if (baselineFile.isFile()) {
+      final InputStream in = new FileInputStream(baselineFile);
+      try {
+        baselines.load(in);
+      } finally {
+        in.close();
+      }
+    }
+    final double tolerance = Double.parseDouble(baselines.getProperty(TOLERANCE, Double.toString(DEFAULT_TOLERANCE)));
+    final Map<String, Long> results = new AllocationBudget().measureAll();
+    if (update) {
+      final Properties updated = new Properties() {
+        private static final long serialVersionUID = 1L;
+        // write sorted so that changes to the file are easy to review, store uses keys
+        // on older JVMs and entrySet on newer ones
+        @Override
+        public synchronized Enumeration<Object> keys() {
+          return Collections.enumeration(sorted().keySet());
+        }
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+          return Collections.synchronizedSet(sorted().entrySet());
+        }
+        private Map<Object, Object> sorted() {
+          final Map<Object, Object> sorted = new TreeMap<Object, Object>();
+          for (Map.Entry<Object, Object> entry : super.entrySet()) {
+            sorted.put(entry.getKey(), entry.getValue());
+          }
+          return sorted;
+        }
+      };
+      updated.setProperty(TOLERANCE, Double.toString(tolerance));
+      for (Map.Entry<String, Long> entry : results.entrySet()) {
+        updated.setProperty(entry.getKey(), entry.getValue().toString());
+      }
+      final OutputStream out = new FileOutputStream(baselineFile);
+      try {
+        updated.store(out, "Bytes allocated per operation, checked by \"ant allocation-budget\"\n"
+            + "Record the baselines on the reference machine with: ant allocation-budget -Dallocation.args=--update");
+      } finally {
+        out.close();
+      }
+      System.out.println("Baselines written to " + baselineFile);
+      return;
+    }
+    int failures = 0;
+    System.out.println(String.format("%-24s %12s %12s %8s", "operation", "bytes/op", "baseline", "change"));
+    for (Map.Entry<String, Long> entry : results.entrySet()) {
+      final long measured = entry.getValue();
+      final String baselineText = baselines.getProperty(entry.getKey());
+      if (baselineText == null) {
+        failures++;
+        System.out.println(String.format("%-24s %12d %12s %8s", entry.getKey(), measured, "-", "FAIL"));
+        continue;
+      }
+      final long baseline = Long.parseLong(baselineText.trim());
+      final double change = (baseline > 0) ? ((double) (measured - baseline) / baseline) : (measured > 0 ? Double.POSITIVE_INFINITY : 0);
+      final boolean failed = measured > baseline * (1 + tolerance);
+      if (failed) {
+        failures++;
+      }
+      System.out.println(String.format("%-24s %12d %12d %+7.1f%%%s", entry.getKey(), measured, baseline, change * 100, failed ? " FAIL" : ""));
+    }
+    if (failures > 0) {
+      System.out.println(failures + " operation(s) had no baseline or allocated more than their baseline plus " + (tolerance * 100) + "%");
+      System.exit(1);
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.benchmarks;
+
+import java.util.Collections;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.taxonomy.FudgeTaxonomy;
+import org.fudgemsg.taxonomy.ImmutableMapTaxonomyResolver;
+import org.fudgemsg.taxonomy.MapFudgeTaxonomy;
+
+/**
+ * Messages of different shapes and naming schemes shared by the benchmarks.
+ * <p>
+ * Field {@code i} is named {@code "field" + i} and has ordinal {@code i + 1}. The taxonomy
+ * registered on the context returned by {@link #createContext()} maps between the two.
+ */
+public final class BenchmarkMessages {
+
+  /**
+   * The taxonomy identifier registered by {@link #createContext()}.
+   */
+  public static final short TAXONOMY_ID = 1;
+  /**
+   * The number of fields in a wide message.
+   */
+  public static final int WIDE_FIELDS = 1000;
+  /**
+   * The depth of a nested message.
+   */
+  public static final int NESTED_DEPTH = 6;
+
+  /**
+   * The layout of a message.
+   */
+  public enum Shape {
+    /** A single message of twenty fields of mixed types. */
+    FLAT,
+    /** A binary tree of sub-messages, each with a few fields. */
+    NESTED,
+    /** A single message of many double fields. */
+    WIDE
+  }
+
+  /**
+   * How the fields of a message are identified on the wire.
+   */
+  public enum Naming {
+    /** Field names only. */
+    NAMES,
+    /** Field ordinals only. */
+    ORDINALS,
+    /** Field names, replaced by ordinals using a taxonomy when written. */
+    TAXONOMY
+  }
+
+  private BenchmarkMessages() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Creates a context with the benchmark taxonomy registered.
+   *
+   * @return the context, not null
+   */
+  public static FudgeContext createContext() {
+    final int[] ordinals = new int[WIDE_FIELDS];
+    final String[] names = new String[WIDE_FIELDS];
+    for (int i = 0; i < WIDE_FIELDS; i++) {
+      ordinals[i] = i + 1;
+      names[i] = "field" + i;
+    }
+    final FudgeContext context = new FudgeContext();
+    context.setTaxonomyResolver(new ImmutableMapTaxonomyResolver(
+        Collections.<Short, FudgeTaxonomy>singletonMap(TAXONOMY_ID, new MapFudgeTaxonomy(ordinals, names))));
+    return context;
+  }
+
+  /**
+   * Gets the taxonomy identifier to write messages with.
+   *
+   * @param naming  the naming scheme, not null
+   * @return the taxonomy identifier, zero for none
+   */
+  public static short getTaxonomyId(final Naming naming) {
+    return (naming == Naming.TAXONOMY) ? TAXONOMY_ID : 0;
+  }
+
+  /**
+   * Creates a message.
+   *
+   * @param context  the context, not null
+   * @param shape  the shape of the message, not null
+   * @param naming  the naming scheme, not null
+   * @return the message, not null
+   */
+  public static FudgeMsg createMessage(final FudgeContext context, final Shape shape, final Naming naming) {
+    switch (shape) {
+      case FLAT:
+        return createFlat(context, naming);
+      case NESTED:
+        return createNested(context, naming, NESTED_DEPTH);
+      case WIDE:
+        return createWide(context, naming);
+      default:
+        throw new IllegalArgumentException("Unknown shape " + shape);
+    }
+  }
+
+  private static void add(final MutableFudgeMsg message, final Naming naming, final int field, final Object value) {
+    if (naming == Naming.ORDINALS) {
+      message.add(field + 1, value);
+    } else {
+      message.add("field" + field, value);
+    }
+  }
+
+  private static FudgeMsg createFlat(final FudgeContext context, final Naming naming) {
+    final MutableFudgeMsg message = context.newMessage();
+    for (int i = 0; i < 20; i += 5) {
+      add(message, naming, i, "ticker-" + i);
+      add(message, naming, i + 1, 1234.5678 * i);
+      add(message, naming, i + 2, 100000 + i);
+      add(message, naming, i + 3, Long.MAX_VALUE - i);
+      add(message, naming, i + 4, (i % 2) == 0);
+    }
+    return message;
+  }
+
+  private static FudgeMsg createNested(final FudgeContext context, final Naming naming, final int depth) {
+    final MutableFudgeMsg message = context.newMessage();
+    add(message, naming, 0, "level-" + depth);
+    add(message, naming, 1, depth * 1.5);
+    add(message, naming, 2, depth);
+    if (depth > 0) {
+      add(message, naming, 3, createNested(context, naming, depth - 1));
+      add(message, naming, 4, createNested(context, naming, depth - 1));
+    }
+    return message;
+  }
+
+  private static FudgeMsg createWide(final FudgeContext context, final Naming naming) {
+    final MutableFudgeMsg message = context.newMessage();
+    for (int i = 0; i < WIDE_FIELDS; i++) {
+      add(message, naming, i, i * 0.25);
+    }
+    return message;
+  }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.benchmarks.BenchmarkMessages.Naming;
+import org.fudgemsg.benchmarks.BenchmarkMessages.Shape;
+import org.fudgemsg.wire.FudgeDataInputStreamReader;
+import org.fudgemsg.wire.FudgeMsgReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the binary encoding and decoding of messages.
+ * <p>
+ * Decoding is measured both reading every field and reading just the first, with sub-messages
+ * decoded as they arrive or deferred by {@link FudgeMsgReader#setLazyReads lazy reads}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryCodecBenchmark {
+
+  // parameters are public and named for the benchmark report, as required by JMH
+  @Param({"FLAT", "NESTED", "WIDE" })
+  public Shape shape;
+  @Param({"NAMES", "ORDINALS", "TAXONOMY" })
+  public Naming naming;
+
+  private FudgeContext _context;
+  private FudgeMsg _message;
+  private short _taxonomyId;
+  private byte[] _encoded;
+
+  @Setup
+  public void setUp() {
+    _context = BenchmarkMessages.createContext();
+    _message = BenchmarkMessages.createMessage(_context, shape, naming);
+    _taxonomyId = BenchmarkMessages.getTaxonomyId(naming);
+    _encoded = _context.toByteArray(_message, _taxonomyId);
+  }
+
+  //-------------------------------------------------------------------------
+  @Benchmark
+  public byte[] encode() {
+    return _context.toByteArray(_message, _taxonomyId);
+  }
+
+  @Benchmark
+  public void decodeAllFields(final Reads reads, final Blackhole blackhole) {
+    visit(decode(reads), blackhole);
+  }
+
+  @Benchmark
+  public Object decodeFirstField(final Reads reads) {
+    return decode(reads).iterator().next().getValue();
+  }
+
+  private FudgeMsg decode(final Reads reads) {
+    final FudgeMsgReader reader = new FudgeMsgReader(new FudgeDataInputStreamReader(_context, new ByteArrayInputStream(_encoded)));
+    reader.setLazyReads(reads.lazyReads);
+    return reader.nextMessage();
+  }
+
+  /**
+   * Reads every field of a message and its sub-messages.
+   */
+  /* package */static void visit(final FudgeMsg message, final Blackhole blackhole) {
+    for (FudgeField field : message) {
+      final Object value = field.getValue();
+      if (value instanceof FudgeMsg) {
+        visit((FudgeMsg) value, blackhole);
+      } else {
+        blackhole.consume(value);
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The decoding options, held separately so that encoding is not repeated for each.
+   */
+  @State(Scope.Benchmark)
+  public static class Reads {
+    @Param({"false", "true" })
+    public boolean lazyReads;
+  }
+
+}
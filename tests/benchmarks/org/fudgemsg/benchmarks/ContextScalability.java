@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.benchmarks.BenchmarkMessages.Naming;
+import org.fudgemsg.benchmarks.BenchmarkMessages.Shape;
+import org.fudgemsg.benchmarks.ObjectMappingBenchmark.Tick;
+
+/**
+ * Measures how workloads sharing one {@link FudgeContext} scale with the number of threads.
+ * <p>
+ * Each workload is run at 1, 2, 4 and so on up to the maximum number of threads, all using
+ * the same context so that they share its type dictionary, object dictionary and taxonomy
+ * resolver. The report gives the throughput at each thread count, the speedup over one
+ * thread and the scaling efficiency, the speedup divided by the number of threads.
+ * An efficiency well below 100% while cores are idle indicates contention in the context.
+ * <p>
+ * The optional arguments are the maximum number of threads, defaulting to the number of
+ * processors, and the seconds to measure each run for, defaulting to 5.
+ */
+public final class ContextScalability {
+
+  /**
+   * The results of operations, kept so that they are not optimized away.
+   */
+  private static volatile Object s_sink;
+
+  /**
+   * A workload run repeatedly by each thread.
+   */
+  private interface Workload {
+    Object run();
+  }
+
+  private final Map<String, Workload> _workloads = new LinkedHashMap<String, Workload>();
+
+  private ContextScalability() {
+    final FudgeContext context = BenchmarkMessages.createContext();
+    final FudgeMsg message = BenchmarkMessages.createMessage(context, Shape.NESTED, Naming.TAXONOMY);
+    final byte[] encoded = context.toByteArray(message, BenchmarkMessages.TAXONOMY_ID);
+    final FudgeMsg flat = BenchmarkMessages.createMessage(context, Shape.FLAT, Naming.NAMES);
+    final Tick tick = new Tick();
+    tick.setTicker("ACME.N");
+    tick.setBid(101.25);
+    tick.setAsk(101.5);
+    tick.setSize(2500);
+    tick.setTimestamp(1300000000000L);
+    _workloads.put("encode", new Workload() {
+      @Override
+      public Object run() {
+        return context.toByteArray(message, BenchmarkMessages.TAXONOMY_ID);
+      }
+    });
+    _workloads.put("decode", new Workload() {
+      @Override
+      public Object run() {
+        return context.deserialize(encoded).getMessage();
+      }
+    });
+    _workloads.put("mapping", new Workload() {
+      @Override
+      public Object run() {
+        return context.fromFudgeMsg(context.toFudgeMsg(tick).getMessage());
+      }
+    });
+    _workloads.put("conversion", new Workload() {
+      @Override
+      public Object run() {
+        double total = 0;
+        for (FudgeField field : flat) {
+          if (field.getValue() instanceof Number) {
+            total += context.getFieldValue(Double.class, field);
+          } else {
+            total += context.getFieldValue(String.class, field).length();
+          }
+        }
+        return total;
+      }
+    });
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Runs a workload on a number of threads.
+   *
+   * @return the operations per second
+   */
+  private static double run(final Workload workload, final int threadCount, final long measureMillis) throws InterruptedException {
+    final Phase phase = new Phase();
+    final long[] counts = new long[threadCount];
+    final CountDownLatch started = new CountDownLatch(threadCount);
+    final List<Thread> threads = new ArrayList<Thread>(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      final int index = i;
+      final Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          started.countDown();
+          Object last = null;
+          while (phase._value == Phase.WARMUP) {
+            last = workload.run();
+          }
+          long count = 0;
+          while (phase._value == Phase.MEASURE) {
+            last = workload.run();
+            count++;
+          }
+          counts[index] = count;
+          s_sink = last;
+        }
+      }, "scalability-" + i);
+      threads.add(thread);
+      thread.start();
+    }
+    started.await();
+    Thread.sleep(Math.max(1000, measureMillis / 2));
+    phase._value = Phase.MEASURE;
+    final long start = System.nanoTime();
+    Thread.sleep(measureMillis);
+    phase._value = Phase.STOP;
+    final long elapsed = System.nanoTime() - start;
+    long total = 0;
+    for (int i = 0; i < threadCount; i++) {
+      threads.get(i).join();
+      total += counts[i];
+    }
+    return total * 1e9 / elapsed;
+  }
+
+  /**
+   * The phase of a run, shared by its threads.
+   */
+  private static final class Phase {
+    static final int WARMUP = 0;
+    static final int MEASURE = 1;
+    static final int STOP = 2;
+    private volatile int _value = WARMUP;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Runs every workload at each thread count and prints the report.
+   *
+   * @param args  the maximum number of threads and the seconds to measure each run for, both optional
+   * @throws InterruptedException if interrupted
+   */
+  public static void main(final String[] args) throws InterruptedException {
+    final int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    final long measureMillis = ((args.length > 1) ? Long.parseLong(args[1]) : 5) * 1000;
+    final List<Integer> threadCounts = new ArrayList<Integer>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(maxThreads);
+    final ContextScalability scalability = new ContextScalability();
+    System.out.println(String.format("%-12s %8s %14s %8s %10s", "workload", "threads", "ops/s", "speedup", "efficiency"));
+    for (Map.Entry<String, Workload> entry : scalability._workloads.entrySet()) {
+      double single = 0;
+      for (int threads : threadCounts) {
+        final double throughput = run(entry.getValue(), threads, measureMillis);
+        if (threads == 1) {
+          single = throughput;
+        }
+        final double speedup = throughput / single;
+        System.out.println(String.format("%-12s %8d %14.0f %7.2fx %9.1f%%", entry.getKey(), threads, throughput, speedup, speedup * 100 / threads));
+      }
+    }
+  }
+
+}
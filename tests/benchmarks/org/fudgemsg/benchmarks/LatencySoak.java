@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.StandardFudgeMessages;
+
+/**
+ * Long running harness reporting the latency percentiles of encoding and decoding at a fixed rate.
+ * <p>
+ * Operations are scheduled at a fixed interval, cycling through encoding and decoding each of
+ * the {@link StandardFudgeMessages} fixtures. The latency of an operation is measured from the
+ * time it was scheduled to start rather than the time it actually started, so a stall that
+ * delays later operations is counted against each of them. This corrects for coordinated
+ * omission; the uncorrected service time is reported alongside for comparison.
+ * <p>
+ * The optional arguments are the rate in operations per second, defaulting to 10000, the
+ * seconds to run for, defaulting to 300, and the seconds to warm up for, defaulting to 30.
+ * A summary line is printed every ten seconds and the full percentiles at the end.
+ */
+public final class LatencySoak {
+
+  /**
+   * The highest latency recorded, larger values are clamped.
+   */
+  private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(60);
+  /**
+   * The interval between summary lines.
+   */
+  private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+  /**
+   * The percentiles reported.
+   */
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99, 100 };
+
+  /**
+   * The results of operations, kept so that they are not optimized away.
+   */
+  private static volatile Object s_sink;
+
+  /**
+   * An operation on one fixture, with its histograms.
+   */
+  private abstract static class Operation {
+    private final String _name;
+    private final Histogram _latency = new Histogram(MAX_LATENCY_NANOS, 3);
+    private final Histogram _serviceTime = new Histogram(MAX_LATENCY_NANOS, 3);
+    Operation(final String name) {
+      _name = name;
+    }
+    abstract Object run();
+  }
+
+  private final List<Operation> _operations = new ArrayList<Operation>();
+  private final Histogram _allLatency = new Histogram(MAX_LATENCY_NANOS, 3);
+
+  private LatencySoak() {
+    final FudgeContext context = new FudgeContext();
+    addFixture(context, "allNames", StandardFudgeMessages.createMessageAllNames(context));
+    addFixture(context, "allOrdinals", StandardFudgeMessages.createMessageAllOrdinals(context));
+    addFixture(context, "subMsgs", StandardFudgeMessages.createMessageWithSubMsgs(context));
+    addFixture(context, "byteArrays", StandardFudgeMessages.createMessageAllByteArrayLengths(context));
+  }
+
+  private void addFixture(final FudgeContext context, final String name, final FudgeMsg message) {
+    final byte[] encoded = context.toByteArray(message);
+    _operations.add(new Operation("encode " + name) {
+      @Override
+      Object run() {
+        return context.toByteArray(message);
+      }
+    });
+    _operations.add(new Operation("decode " + name) {
+      @Override
+      Object run() {
+        return context.deserialize(encoded).getMessage();
+      }
+    });
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Runs operations at a fixed rate.
+   *
+   * @param intervalNanos  the interval between operations
+   * @param durationNanos  the time to run for
+   * @param report  whether to print summary lines
+   */
+  private void run(final long intervalNanos, final long durationNanos, final boolean report) {
+    final long start = System.nanoTime();
+    final long end = start + durationNanos;
+    long nextReport = start + REPORT_INTERVAL_NANOS;
+    long scheduled = start;
+    int next = 0;
+    while (scheduled < end) {
+      long now = System.nanoTime();
+      while (now < scheduled) {
+        if (scheduled - now > 50000) {
+          LockSupport.parkNanos(scheduled - now - 50000);
+        }
+        now = System.nanoTime();
+      }
+      final Operation operation = _operations.get(next);
+      s_sink = operation.run();
+      final long finished = System.nanoTime();
+      final long latency = Math.min(finished - scheduled, MAX_LATENCY_NANOS);
+      operation._latency.recordValue(latency);
+      operation._serviceTime.recordValue(Math.min(finished - now, MAX_LATENCY_NANOS));
+      _allLatency.recordValue(latency);
+      next = (next + 1) % _operations.size();
+      scheduled += intervalNanos;
+      if (report && finished >= nextReport) {
+        System.out.println(String.format("%6ds  ops %10d  p50 %9.1fus  p99 %9.1fus  p99.9 %9.1fus  max %9.1fus",
+            TimeUnit.NANOSECONDS.toSeconds(finished - start), _allLatency.getTotalCount(),
+            micros(_allLatency.getValueAtPercentile(50)), micros(_allLatency.getValueAtPercentile(99)),
+            micros(_allLatency.getValueAtPercentile(99.9)), micros(_allLatency.getMaxValue())));
+        nextReport += REPORT_INTERVAL_NANOS;
+      }
+    }
+  }
+
+  private void reset() {
+    _allLatency.reset();
+    for (Operation operation : _operations) {
+      operation._latency.reset();
+      operation._serviceTime.reset();
+    }
+  }
+
+  private void printPercentiles() {
+    final StringBuilder header = new StringBuilder(String.format("%-22s %-8s", "operation", "measure"));
+    for (double percentile : PERCENTILES) {
+      header.append(String.format(" %10s", (percentile == 100) ? "max" : ("p" + percentile)));
+    }
+    System.out.println(header.append("  (microseconds)"));
+    for (Operation operation : _operations) {
+      printPercentiles(operation._name, "latency", operation._latency);
+      printPercentiles(operation._name, "service", operation._serviceTime);
+    }
+    printPercentiles("all", "latency", _allLatency);
+  }
+
+  private static void printPercentiles(final String name, final String measure, final Histogram histogram) {
+    final StringBuilder line = new StringBuilder(String.format("%-22s %-8s", name, measure));
+    for (double percentile : PERCENTILES) {
+      line.append(String.format(" %10.1f", micros(histogram.getValueAtPercentile(percentile))));
+    }
+    System.out.println(line);
+  }
+
+  private static double micros(final long nanos) {
+    return nanos / 1000d;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Runs the soak test.
+   *
+   * @param args  the rate, duration and warm up in seconds, all optional
+   */
+  public static void main(final String[] args) {
+    final long rate = (args.length > 0) ? Long.parseLong(args[0]) : 10000;
+    final long duration = (args.length > 1) ? Long.parseLong(args[1]) : 300;
+    final long warmup = (args.length > 2) ? Long.parseLong(args[2]) : 30;
+    final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    final LatencySoak soak = new LatencySoak();
+    System.out.println("Warming up for " + warmup + "s at " + rate + " ops/s");
+    soak.run(intervalNanos, TimeUnit.SECONDS.toNanos(warmup), false);
+    soak.reset();
+    System.out.println("Running for " + duration + "s at " + rate + " ops/s");
+    soak.run(intervalNanos, TimeUnit.SECONDS.toNanos(duration), true);
+    soak.printPercentiles();
+  }
+
+}
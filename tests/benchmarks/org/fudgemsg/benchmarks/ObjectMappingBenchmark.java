@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeBuilder;
+import org.fudgemsg.mapping.FudgeDeserializer;
+import org.fudgemsg.mapping.FudgeObjectWriter;
+import org.fudgemsg.mapping.FudgeSerializer;
+import org.fudgemsg.mapping.GenerateFudgeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks object mapping of the same bean through each kind of builder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectMappingBenchmark {
+
+  /**
+   * The kind of builder used.
+   */
+  public enum BuilderType {
+    /** The reflective {@code JavaBeanBuilder}. */
+    JAVA_BEAN,
+    /** A builder generated at compile time by {@code FudgeBuilderProcessor}. */
+    GENERATED,
+    /** The {@code toFudgeMsg} and {@code fromFudgeMsg} methods of the class. */
+    CONVENTION,
+    /** A hand written builder registered with the dictionary. */
+    CUSTOM
+  }
+
+  // parameters are public and named for the benchmark report, as required by JMH
+  @Param({"JAVA_BEAN", "GENERATED", "CONVENTION", "CUSTOM" })
+  public BuilderType builder;
+
+  private FudgeContext _context;
+  private Tick _object;
+  private Class<? extends Tick> _class;
+  private FudgeMsg _message;
+  private byte[] _encoded;
+
+  @Setup
+  public void setUp() {
+    _context = new FudgeContext();
+    _context.getObjectDictionary().addBuilder(CustomTick.class, new CustomTickBuilder());
+    switch (builder) {
+      case JAVA_BEAN:
+        _object = new Tick();
+        break;
+      case GENERATED:
+        _object = new GeneratedTick();
+        break;
+      case CONVENTION:
+        _object = new ConventionTick();
+        break;
+      case CUSTOM:
+        _object = new CustomTick();
+        break;
+    }
+    _object.setTicker("ACME.N");
+    _object.setBid(101.25);
+    _object.setAsk(101.5);
+    _object.setSize(2500);
+    _object.setTimestamp(1300000000000L);
+    _class = _object.getClass();
+    _context.prewarm(_class);
+    _message = _context.toFudgeMsg(_object).getMessage();
+    _encoded = writeObject().toByteArray();
+  }
+
+  //-------------------------------------------------------------------------
+  @Benchmark
+  public FudgeMsg toFudgeMsg() {
+    return _context.toFudgeMsg(_object).getMessage();
+  }
+
+  @Benchmark
+  public Object fromFudgeMsg() {
+    return _context.fromFudgeMsg(_class, _message);
+  }
+
+  @Benchmark
+  public ByteArrayOutputStream writeObject() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+    _context.writeObject(_object, out);
+    return out;
+  }
+
+  @Benchmark
+  public ByteArrayOutputStream writeObjectStreamed() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+    final FudgeObjectWriter writer = _context.createObjectWriter(out);
+    writer.writeStreamed(_object);
+    return out;
+  }
+
+  @Benchmark
+  public Object readObject() {
+    return _context.readObject(_class, new ByteArrayInputStream(_encoded));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Bean mapped by the {@code JavaBeanBuilder}.
+   */
+  public static class Tick {
+    private String _ticker;
+    private double _bid;
+    private double _ask;
+    private int _size;
+    private long _timestamp;
+    public String getTicker() {
+      return _ticker;
+    }
+    public void setTicker(final String ticker) {
+      _ticker = ticker;
+    }
+    public double getBid() {
+      return _bid;
+    }
+    public void setBid(final double bid) {
+      _bid = bid;
+    }
+    public double getAsk() {
+      return _ask;
+    }
+    public void setAsk(final double ask) {
+      _ask = ask;
+    }
+    public int getSize() {
+      return _size;
+    }
+    public void setSize(final int size) {
+      _size = size;
+    }
+    public long getTimestamp() {
+      return _timestamp;
+    }
+    public void setTimestamp(final long timestamp) {
+      _timestamp = timestamp;
+    }
+  }
+
+  /**
+   * Bean mapped by a generated builder.
+   */
+  @GenerateFudgeBuilder
+  public static class GeneratedTick extends Tick {
+  }
+
+  /**
+   * Bean mapped by its own conversion methods.
+   */
+  public static class ConventionTick extends Tick {
+    public void toFudgeMsg(final FudgeSerializer serializer, final MutableFudgeMsg msg) {
+      writeFields(msg, this);
+    }
+    public static ConventionTick fromFudgeMsg(final FudgeDeserializer deserializer, final FudgeMsg msg) {
+      return readFields(msg, new ConventionTick());
+    }
+  }
+
+  /**
+   * Bean mapped by a registered builder.
+   */
+  public static class CustomTick extends Tick {
+  }
+
+  /**
+   * Builder for {@link CustomTick}.
+   */
+  private static final class CustomTickBuilder implements FudgeBuilder<CustomTick> {
+    @Override
+    public MutableFudgeMsg buildMessage(final FudgeSerializer serializer, final CustomTick object) {
+      final MutableFudgeMsg msg = serializer.newMessage();
+      writeFields(msg, object);
+      return msg;
+    }
+    @Override
+    public CustomTick buildObject(final FudgeDeserializer deserializer, final FudgeMsg msg) {
+      return readFields(msg, new CustomTick());
+    }
+  }
+
+  private static void writeFields(final MutableFudgeMsg msg, final Tick tick) {
+    msg.add("ticker", tick.getTicker());
+    msg.add("bid", tick.getBid());
+    msg.add("ask", tick.getAsk());
+    msg.add("size", tick.getSize());
+    msg.add("timestamp", tick.getTimestamp());
+  }
+
+  private static <T extends Tick> T readFields(final FudgeMsg msg, final T tick) {
+    tick.setTicker(msg.getString("ticker"));
+    tick.setBid(msg.getDouble("bid"));
+    tick.setAsk(msg.getDouble("ask"));
+    tick.setSize(msg.getInt("size"));
+    tick.setTimestamp(msg.getLong("timestamp"));
+    return tick;
+  }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.benchmarks.BenchmarkMessages.Naming;
+import org.fudgemsg.benchmarks.BenchmarkMessages.Shape;
+import org.fudgemsg.wire.FudgeMsgReader;
+import org.fudgemsg.wire.FudgeMsgWriter;
+import org.fudgemsg.wire.FudgeStreamReader;
+import org.fudgemsg.wire.FudgeStreamWriter;
+import org.fudgemsg.wire.json.FudgeJSONStreamReader;
+import org.fudgemsg.wire.json.FudgeJSONStreamWriter;
+import org.fudgemsg.wire.xml.FudgeXMLStreamReader;
+import org.fudgemsg.wire.xml.FudgeXMLStreamWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks writing and reading messages as JSON and XML.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextCodecBenchmark {
+
+  /**
+   * The text format.
+   */
+  public enum Format {
+    /** Fudge JSON. */
+    JSON,
+    /** Fudge XML. */
+    XML
+  }
+
+  // parameters are public and named for the benchmark report, as required by JMH
+  @Param({"JSON", "XML" })
+  public Format format;
+  @Param({"FLAT", "NESTED", "WIDE" })
+  public Shape shape;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private FudgeContext _context;
+  private FudgeMsg _message;
+  private char[] _encoded;
+
+  @Setup
+  public void setUp() {
+    _context = BenchmarkMessages.createContext();
+    _message = BenchmarkMessages.createMessage(_context, shape, Naming.NAMES);
+    _encoded = write().toCharArray();
+  }
+
+  //-------------------------------------------------------------------------
+  @Benchmark
+  public CharArrayWriter write() {
+    final CharArrayWriter out = new CharArrayWriter(1024);
+    final FudgeStreamWriter streamWriter = (format == Format.JSON)
+        ? new FudgeJSONStreamWriter(_context, out) : new FudgeXMLStreamWriter(_context, out);
+    final FudgeMsgWriter writer = new FudgeMsgWriter(streamWriter);
+    writer.writeMessage(_message);
+    writer.flush();
+    return out;
+  }
+
+  @Benchmark
+  public ByteArrayOutputStream writeUTF8() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+    final FudgeStreamWriter streamWriter = (format == Format.JSON)
+        ? new FudgeJSONStreamWriter(_context, out) : new FudgeXMLStreamWriter(_context, new OutputStreamWriter(out, UTF8));
+    final FudgeMsgWriter writer = new FudgeMsgWriter(streamWriter);
+    writer.writeMessage(_message);
+    writer.flush();
+    return out;
+  }
+
+  @Benchmark
+  public void read(final Blackhole blackhole) {
+    final CharArrayReader in = new CharArrayReader(_encoded);
+    final FudgeStreamReader streamReader = (format == Format.JSON)
+        ? new FudgeJSONStreamReader(_context, in) : new FudgeXMLStreamReader(_context, in);
+    BinaryCodecBenchmark.visit(new FudgeMsgReader(streamReader).nextMessage(), blackhole);
+  }
+
+}
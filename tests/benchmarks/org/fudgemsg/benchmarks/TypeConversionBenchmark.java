@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading field values of the requested type against reading values
+ * that must be converted by the type dictionary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeConversionBenchmark {
+
+  // parameters are public and named for the benchmark report, as required by JMH
+  @Param({"false", "true" })
+  public boolean converted;
+
+  private FudgeMsg _message;
+
+  @Setup
+  public void setUp() {
+    final MutableFudgeMsg msg = new FudgeContext().newMessage();
+    if (converted) {
+      msg.add("ask", 1, 100.5f);
+      msg.add("askVolume", 2, 1000);
+      msg.add("bid", 3, 99.5f);
+      msg.add("bidVolume", 4, 2000);
+      msg.add("ts", 5, (short) 12345);
+    } else {
+      msg.add("ask", 1, 100.5);
+      msg.add("askVolume", 2, 1000L);
+      msg.add("bid", 3, 99.5);
+      msg.add("bidVolume", 4, 2000L);
+      msg.add("ts", 5, 12345L);
+    }
+    _message = msg;
+  }
+
+  //-------------------------------------------------------------------------
+  @Benchmark
+  public double readFields() {
+    double result = _message.getDouble("ask") + _message.getDouble(3);
+    result += _message.getLong("askVolume") + _message.getLong(4);
+    result += _message.getLong("ts");
+    return result;
+  }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.SmallFinancialTick;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the JavaBeanBuilder using generated accessors against the
+ * JavaBeanBuilder using reflection.
+ * <p>
+ * This is in the mapping package to reach the package-private factory that
+ * chooses the accessor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaBeanAccessorBenchmark {
+
+  // parameters are public and named for the benchmark report, as required by JMH
+  @Param({"true", "false" })
+  public boolean generateAccessor;
+
+  private FudgeContext _context;
+  private JavaBeanBuilder<SmallFinancialTick> _builder;
+  private SmallFinancialTick _object;
+  private FudgeMsg _message;
+
+  @Setup
+  public void setUp() {
+    _context = new FudgeContext();
+    _builder = JavaBeanBuilder.create(SmallFinancialTick.class, generateAccessor);
+    _object = new SmallFinancialTick();
+    _object.setAsk(100.5);
+    _object.setAskVolume(1000);
+    _object.setBid(99.5);
+    _object.setBidVolume(2000);
+    _message = buildMessage();
+  }
+
+  //-------------------------------------------------------------------------
+  @Benchmark
+  public FudgeMsg buildMessage() {
+    return _builder.buildMessage(new FudgeSerializer(_context), _object);
+  }
+
+  @Benchmark
+  public SmallFinancialTick buildObject() {
+    return _builder.buildObject(new FudgeDeserializer(_context), _message);
+  }
+
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.fudgemsg.taxonomy.FudgeTaxonomy;
+import org.fudgemsg.taxonomy.ImmutableMapTaxonomyResolver;
+import org.fudgemsg.taxonomy.MapFudgeTaxonomy;
+import org.fudgemsg.wire.FudgeMsgReader;
+import org.junit.Test;
+
+/**
+ * Tests the FudgeMetrics implementation.
+ */
+public class FudgeMetricsTest {
+
+  /**
+   * Bean for the builder cache.
+   */
+  public static class Bean {
+    private int _value;
+    public int getValue() {
+      return _value;
+    }
+    public void setValue(final int value) {
+      _value = value;
+    }
+  }
+
+  private static FudgeMsg createMessage(final FudgeContext context) {
+    final MutableFudgeMsg msg = context.newMessage();
+    msg.add("a", 1);
+    msg.addSubMessage("sub", null).add("b", "text");
+    msg.addSubMessage("sub", null).add("c", 2.5);
+    return msg;
+  }
+
+  @Test
+  public void disabledByDefault() {
+    final FudgeContext context = new FudgeContext();
+    assertNull(context.getMetrics());
+    context.deserialize(context.toByteArray(createMessage(context)));
+    final FudgeMetrics metrics = context.enableMetrics();
+    assertSame(metrics, context.enableMetrics());
+    assertTrue(metrics.getMessagesRead().isEmpty());
+    context.disableMetrics();
+    assertNull(context.getMetrics());
+  }
+
+  @Test
+  public void binaryCodec() {
+    final FudgeContext context = new FudgeContext();
+    final FudgeMetrics metrics = context.enableMetrics();
+    final byte[] data = context.toByteArray(createMessage(context));
+    context.deserialize(data);
+    context.deserialize(data);
+    assertEquals(Long.valueOf(1), metrics.getMessagesWritten().get("FudgeDataOutputStreamWriter"));
+    assertEquals(Long.valueOf(data.length), metrics.getBytesWritten().get("FudgeDataOutputStreamWriter"));
+    assertEquals(Long.valueOf(2), metrics.getMessagesRead().get("FudgeDataInputStreamReader"));
+    assertEquals(Long.valueOf(2 * data.length), metrics.getBytesRead().get("FudgeDataInputStreamReader"));
+    final int bucket = 31 - Integer.numberOfLeadingZeros(data.length);
+    assertEquals(1, metrics.getWrittenEnvelopeSizes()[bucket]);
+    assertEquals(2, metrics.getReadEnvelopeSizes()[bucket]);
+    metrics.reset();
+    assertTrue(metrics.getMessagesRead().isEmpty());
+    assertEquals(0, metrics.getReadEnvelopeSizes()[bucket]);
+  }
+
+  @Test
+  public void lazyDecodeRatio() {
+    final FudgeContext context = new FudgeContext();
+    final FudgeMetrics metrics = context.enableMetrics();
+    final byte[] data = context.toByteArray(createMessage(context));
+    context.deserialize(data);
+    assertEquals(0, metrics.getLazySubMessages());
+    assertEquals(2, metrics.getEagerSubMessages());
+    final FudgeMsgReader reader = context.createMessageReader(new ByteArrayInputStream(data));
+    reader.setLazyReads(true);
+    reader.nextMessage();
+    assertEquals(2, metrics.getLazySubMessages());
+    assertEquals(0.5, metrics.getLazyDecodeRatio(), 0d);
+  }
+
+  @Test
+  public void taxonomyResolution() {
+    final FudgeContext context = new FudgeContext();
+    final Map<Short, FudgeTaxonomy> resolverMap = new HashMap<Short, FudgeTaxonomy>();
+    resolverMap.put((short) 45, new MapFudgeTaxonomy(new int[] {1 }, new String[] {"a" }));
+    context.setTaxonomyResolver(new ImmutableMapTaxonomyResolver(resolverMap));
+    final FudgeMetrics metrics = context.enableMetrics();
+    context.deserialize(context.toByteArray(createMessage(context), (short) 45));
+    assertEquals(2, metrics.getTaxonomyHits());
+    context.deserialize(context.toByteArray(createMessage(context), (short) 46));
+    assertEquals(2, metrics.getTaxonomyMisses());
+    context.deserialize(context.toByteArray(createMessage(context)));
+    assertEquals(2, metrics.getTaxonomyHits());
+    assertEquals(2, metrics.getTaxonomyMisses());
+  }
+
+  @Test
+  public void builderCacheMisses() {
+    final FudgeContext context = new FudgeContext();
+    final FudgeMetrics metrics = context.enableMetrics();
+    final Bean bean = new Bean();
+    bean.setValue(3);
+    final FudgeMsg msg = context.toFudgeMsg(bean).getMessage();
+    final long misses = metrics.getBuilderCacheMisses();
+    assertTrue(misses > 0);
+    assertEquals(3, context.fromFudgeMsg(Bean.class, msg).getValue());
+    assertEquals(3, context.fromFudgeMsg(Bean.class, context.toFudgeMsg(bean).getMessage()).getValue());
+    final long afterFirstRead = metrics.getBuilderCacheMisses();
+    context.fromFudgeMsg(Bean.class, context.toFudgeMsg(bean).getMessage());
+    assertEquals(afterFirstRead, metrics.getBuilderCacheMisses());
+    metrics.reset();
+    assertEquals(0, metrics.getBuilderCacheMisses());
+  }
+
+  @Test
+  public void registerMBean() throws Exception {
+    final FudgeContext context = new FudgeContext();
+    final FudgeMetrics metrics = context.enableMetrics();
+    final ObjectName name = metrics.registerMBean("FudgeMetricsTest");
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      assertTrue(server.isRegistered(name));
+      context.deserialize(context.toByteArray(createMessage(context)));
+      assertEquals(2L, server.getAttribute(name, "EagerSubMessages"));
+    } finally {
+      context.disableMetrics();
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+  @Test
+  public void resetWhileEncoding() throws InterruptedException {
+    final FudgeContext context = new FudgeContext();
+    final FudgeMetrics metrics = context.enableMetrics();
+    final FudgeMsg msg = createMessage(context);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final AtomicBoolean stop = new AtomicBoolean();
+    final Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (!stop.get()) {
+              context.deserialize(context.toByteArray(msg));
+            }
+          } catch (Throwable ex) {
+            failure.compareAndSet(null, ex);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    final long end = System.currentTimeMillis() + 500;
+    while (System.currentTimeMillis() < end && failure.get() == null) {
+      metrics.reset();
+    }
+    stop.set(true);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+  }
+
+}
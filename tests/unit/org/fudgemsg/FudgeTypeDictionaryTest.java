@@ -17,8 +17,11 @@ package org.fudgemsg;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
@@ -223,6 +226,48 @@ public class FudgeTypeDictionaryTest {
     dictionary.getFieldValue (Bar.class, stringField);
   }
 
+  @Test
+  public void repeatedTypeConversion () {
+    final FudgeTypeDictionary dictionary = new FudgeTypeDictionary ();
+    final FudgeField intField = UnmodifiableFudgeField.of(FudgeWireType.INT, 42);
+    final FudgeField shortField = UnmodifiableFudgeField.of(FudgeWireType.SHORT, (short) 7);
+    for (int i = 0; i < 3; i++) {
+      assertEquals (Long.valueOf (42), dictionary.getFieldValue (Long.class, intField));
+      assertEquals (Double.valueOf (42), dictionary.getFieldValue (Double.class, intField));
+      assertEquals (Long.valueOf (7), dictionary.getFieldValue (Long.class, shortField));
+      assertTrue (dictionary.canConvertField (Long.class, intField));
+      assertFalse (dictionary.canConvertField (Thread.class, intField));
+    }
+  }
+
+  @Test
+  public void convertedMessageReads () {
+    final FudgeContext context = new FudgeContext ();
+    final MutableFudgeMsg msg = context.newMessage ();
+    msg.add ("ask", 1, 100.5f);
+    msg.add ("askVolume", 2, 1000);
+    msg.add ("ts", 3, (short) 12345);
+    for (int i = 0; i < 3; i++) {
+      assertEquals (100.5, msg.getDouble ("ask"), 0d);
+      assertEquals (100.5, msg.getDouble (1), 0d);
+      assertEquals (Long.valueOf (1000), msg.getLong ("askVolume"));
+      assertEquals (Long.valueOf (1000), msg.getLong (2));
+      assertEquals (Long.valueOf (12345), msg.getLong ("ts"));
+      assertEquals (Integer.valueOf (12345), msg.getInt (3));
+    }
+  }
+
+  @Test
+  public void typeConversionAfterAddType () {
+    final FudgeTypeDictionary dictionary = new FudgeTypeDictionary ();
+    final byte[] data = new Foo ().getData ();
+    final FudgeField bytesField = UnmodifiableFudgeField.of(FudgeWireType.BYTE_ARRAY_16, data);
+    assertFalse (dictionary.canConvertField (Foo.class, bytesField));
+    dictionary.addType (FooSecondaryType.INSTANCE);
+    assertTrue (dictionary.canConvertField (Foo.class, bytesField));
+    assertArrayEquals (data, dictionary.getFieldValue (Foo.class, bytesField).getData ());
+  }
+
   @Test
   public void registerRename() throws ClassNotFoundException{
     final FudgeTypeDictionary dictionary = new FudgeTypeDictionary ();
@@ -244,4 +289,27 @@ public class FudgeTypeDictionaryTest {
     dictionary.registerClassRename("SomeName", FudgeTypeDictionary.class);
   }
 
+  @Test
+  public void findClass() {
+    final FudgeTypeDictionary dictionary = new FudgeTypeDictionary ();
+    assertEquals(FudgeTypeDictionaryTest.class, dictionary.findClass(FudgeTypeDictionaryTest.class.getName()));
+    assertNull(dictionary.findClass("SomeName"));
+    assertNull(dictionary.findClass("SomeName"));
+  }
+
+  @Test(expected=ClassNotFoundException.class)
+  public void loadClassNotFound() throws ClassNotFoundException {
+    final FudgeTypeDictionary dictionary = new FudgeTypeDictionary ();
+    assertNull(dictionary.findClass("SomeName"));
+    dictionary.loadClass("SomeName");
+  }
+
+  @Test
+  public void registerRenameAfterNotFound() throws ClassNotFoundException {
+    final FudgeTypeDictionary dictionary = new FudgeTypeDictionary ();
+    assertNull(dictionary.findClass("SomeName"));
+    dictionary.registerClassRename("SomeName", FudgeTypeDictionaryTest.class);
+    assertEquals(FudgeTypeDictionaryTest.class, dictionary.loadClass("SomeName"));
+  }
+
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the type hint resolution in BuilderUtil.
+ */
+public class BuilderUtilTest {
+
+  @Test
+  public void topTypesOfSingleClass() {
+    final List<Class<?>> topTypes = BuilderUtil.getTopTypes(Arrays.asList(1, 2, null, 3));
+    assertEquals(Integer.class, topTypes.get(0));
+    assertTrue(topTypes.contains(Number.class));
+    assertFalse(topTypes.contains(Object.class));
+    assertSame(topTypes, BuilderUtil.getTopTypes(Collections.singleton(4)));
+  }
+
+  @Test
+  public void topTypesOfMixedClasses() {
+    final List<Class<?>> topTypes = BuilderUtil.getTopTypes(Arrays.<Object>asList(1, 2L, 3));
+    assertTrue(topTypes.contains(Number.class));
+    assertFalse(topTypes.contains(Integer.class));
+    assertFalse(topTypes.contains(Long.class));
+    assertEquals(topTypes, BuilderUtil.getTopTypes(Arrays.<Object>asList(4L, 5)));
+  }
+
+  @Test
+  public void topTypesOfLists() {
+    final List<Class<?>> topTypes = BuilderUtil.getTopTypes(Arrays.<Object>asList(new ArrayList<Object>(), new LinkedList<Object>()));
+    assertTrue(topTypes.contains(List.class));
+    assertFalse(topTypes.contains(ArrayList.class));
+  }
+
+  @Test
+  public void topTypesOfNulls() {
+    assertTrue(BuilderUtil.getTopTypes(Arrays.asList(null, null)).isEmpty());
+    assertTrue(BuilderUtil.getTopTypes(Collections.emptyList()).isEmpty());
+  }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.junit.Test;
+
+/**
+ * Tests the ClassNameDictionary implementation.
+ */
+public class ClassNameDictionaryTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  /**
+   * Simple bean.
+   */
+  public static class Item {
+    private String _name;
+    public String getName() {
+      return _name;
+    }
+    public void setName(final String name) {
+      _name = name;
+    }
+  }
+
+  /**
+   * Bean with an untyped property, so the value is sent with a type header.
+   */
+  public static class Slot {
+    private Object _value;
+    public Object getValue() {
+      return _value;
+    }
+    public void setValue(final Object value) {
+      _value = value;
+    }
+  }
+
+  /**
+   * Bean holding a list of slots.
+   */
+  public static class Basket {
+    private List<Slot> _slots = new ArrayList<Slot>();
+    public List<Slot> getSlots() {
+      return _slots;
+    }
+    public void setSlots(final List<Slot> slots) {
+      _slots = slots;
+    }
+  }
+
+  private static Basket basket(final String prefix, final int size) {
+    final Basket basket = new Basket();
+    for (int i = 0; i < size; i++) {
+      final Item item = new Item();
+      item.setName(prefix + i);
+      final Slot slot = new Slot();
+      slot.setValue(item);
+      basket.getSlots().add(slot);
+    }
+    return basket;
+  }
+
+  private static byte[] write(final boolean classNameDictionary, final Object... objects) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final FudgeObjectWriter writer = s_fudgeContext.createObjectWriter(out);
+    writer.setClassNameDictionary(classNameDictionary);
+    for (Object object : objects) {
+      writer.write(object);
+    }
+    writer.close();
+    return out.toByteArray();
+  }
+
+  private static FudgeObjectReader reader(final byte[] data, final boolean classNameDictionary) {
+    final FudgeObjectReader reader = s_fudgeContext.createObjectReader(new ByteArrayInputStream(data));
+    reader.setClassNameDictionary(classNameDictionary);
+    return reader;
+  }
+
+  private static void assertBasket(final String prefix, final int size, final Basket basket) {
+    assertEquals(size, basket.getSlots().size());
+    for (int i = 0; i < size; i++) {
+      assertEquals(prefix + i, ((Item) basket.getSlots().get(i).getValue()).getName());
+    }
+  }
+
+  @Test
+  public void roundTrip() {
+    final FudgeObjectReader reader = reader(write(true, basket("a", 5), basket("b", 3), basket("c", 0)), true);
+    assertBasket("a", 5, reader.read(Basket.class));
+    assertBasket("b", 3, reader.read(Basket.class));
+    assertBasket("c", 0, reader.read(Basket.class));
+  }
+
+  @Test
+  public void smallerWithDictionary() {
+    final Basket basket = basket("x", 100);
+    final int withDictionary = write(true, basket, basket).length;
+    final int withoutDictionary = write(false, basket, basket).length;
+    assertTrue(withDictionary * 2 < withoutDictionary);
+  }
+
+  @Test
+  public void readWithoutDictionary() {
+    final FudgeObjectReader reader = reader(write(true, basket("a", 2), basket("b", 2)), false);
+    // the first item carries the full name
+    final Basket first = reader.read(Basket.class);
+    assertEquals(Item.class, first.getSlots().get(0).getValue().getClass());
+    assertEquals("a0", ((Item) first.getSlots().get(0).getValue()).getName());
+    assertNotNull(reader.read(Basket.class));
+  }
+
+  @Test
+  public void unknownIndexDropped() {
+    final MutableFudgeMsg msg = s_fudgeContext.newMessage();
+    msg.add(null, FudgeSerializer.CLASS_NAME_INDEX_ORDINAL, 7);
+    msg.add("name", "foo");
+    final FudgeMsg expanded = new ClassNameDictionary().expand(msg, s_fudgeContext);
+    assertEquals(1, expanded.getNumFields());
+    assertNull(expanded.getByOrdinal(FudgeSerializer.CLASS_NAME_INDEX_ORDINAL));
+  }
+
+  @Test
+  public void compressExpand() {
+    final ClassNameDictionary writer = new ClassNameDictionary();
+    final ClassNameDictionary reader = new ClassNameDictionary();
+    final MutableFudgeMsg msg = s_fudgeContext.newMessage();
+    final MutableFudgeMsg submsg = s_fudgeContext.newMessage();
+    submsg.add(null, FudgeSerializer.TYPES_HEADER_ORDINAL, "com.foo.Bar");
+    submsg.add(null, FudgeSerializer.TYPES_HEADER_ORDINAL, "com.foo.Base");
+    msg.add(null, FudgeSerializer.TYPES_HEADER_ORDINAL, "com.foo.Bar");
+    msg.add("sub", submsg);
+    assertEquals(msg, reader.expand(writer.compress(msg, s_fudgeContext), s_fudgeContext));
+    final FudgeMsg compressed = writer.compress(msg, s_fudgeContext);
+    assertNull(compressed.getByOrdinal(FudgeSerializer.TYPES_HEADER_ORDINAL));
+    assertEquals(msg, reader.expand(compressed, s_fudgeContext));
+  }
+
+}
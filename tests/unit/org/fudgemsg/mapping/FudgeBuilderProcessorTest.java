@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.MutableFudgeMsg;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the FudgeBuilderProcessor implementation.
+ */
+public class FudgeBuilderProcessorTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static final String BEAN_SOURCE =
+      "package generated.test;\n" +
+      "import org.fudgemsg.mapping.*;\n" +
+      "@GenerateFudgeBuilder\n" +
+      "public class Bean {\n" +
+      "  private String _name;\n" +
+      "  private int _count;\n" +
+      "  private long _id;\n" +
+      "  private String _secret;\n" +
+      "  private java.util.List<String> _items;\n" +
+      "  public String getName() { return _name; }\n" +
+      "  public void setName(String name) { _name = name; }\n" +
+      "  public int getCount() { return _count; }\n" +
+      "  public void setCount(int count) { _count = count; }\n" +
+      "  @FudgeFieldOrdinal(value = 7, noFieldName = true)\n" +
+      "  public long getId() { return _id; }\n" +
+      "  public void setId(long id) { _id = id; }\n" +
+      "  @FudgeTransient\n" +
+      "  public String getSecret() { return _secret; }\n" +
+      "  public void setSecret(String secret) { _secret = secret; }\n" +
+      "  public java.util.List<String> getItems() { return _items; }\n" +
+      "  public void setItems(java.util.List<String> items) { _items = items; }\n" +
+      "}\n";
+
+  private File _dir;
+
+  @Before
+  public void createDirectory() throws IOException {
+    _dir = File.createTempFile("FudgeBuilderProcessorTest", "");
+    _dir.delete();
+    _dir.mkdir();
+  }
+
+  @After
+  public void deleteDirectory() {
+    deleteDirectory(_dir);
+  }
+
+  private static void deleteDirectory(final File dir) {
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    dir.delete();
+  }
+
+  private DiagnosticCollector<JavaFileObject> compile(final String className, final String source) throws IOException {
+    final File file = new File(_dir, className.replace('.', File.separatorChar) + ".java");
+    file.getParentFile().mkdirs();
+    final FileWriter writer = new FileWriter(file);
+    writer.write(source);
+    writer.close();
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+    final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+    try {
+      final CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+          Arrays.asList("-d", _dir.getPath(), "-s", _dir.getPath(), "-classpath", System.getProperty("java.class.path")),
+          null, fileManager.getJavaFileObjects(file));
+      task.setProcessors(Collections.singleton(new FudgeBuilderProcessor()));
+      task.call();
+    } finally {
+      fileManager.close();
+    }
+    return diagnostics;
+  }
+
+  private static boolean hasErrors(final DiagnosticCollector<JavaFileObject> diagnostics) {
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void registryMergedAcrossCompilations() throws IOException {
+    assertFalse(hasErrors(compile("generated.test.Bean", BEAN_SOURCE)));
+    assertFalse(hasErrors(compile("generated.test.Other",
+        "package generated.test;\n" +
+        "@org.fudgemsg.mapping.GenerateFudgeBuilder\n" +
+        "public class Other {\n" +
+        "  private String _name;\n" +
+        "  public String getName() { return _name; }\n" +
+        "  public void setName(String name) { _name = name; }\n" +
+        "}\n")));
+    final List<String> builders = readLines(new File(_dir, FudgeBuilderProcessor.REGISTRY_RESOURCE));
+    assertEquals(Arrays.asList("generated.test.BeanFudgeBuilder", "generated.test.OtherFudgeBuilder"), builders);
+    assertFalse(hasErrors(compile("generated.test.Bean", BEAN_SOURCE)));
+    assertEquals(builders, readLines(new File(_dir, FudgeBuilderProcessor.REGISTRY_RESOURCE)));
+  }
+
+  private static List<String> readLines(final File file) throws IOException {
+    final List<String> lines = new ArrayList<String>();
+    final BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+
+  @Test
+  public void builderClassName() {
+    assertEquals("a.b.BeanFudgeBuilder", FudgeBuilderProcessor.getBuilderClassName("a.b.Bean"));
+    assertEquals("a.b.Outer_InnerFudgeBuilder", FudgeBuilderProcessor.getBuilderClassName("a.b.Outer$Inner"));
+    assertEquals("BeanFudgeBuilder", FudgeBuilderProcessor.getBuilderClassName("Bean"));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void generatedMatchesJavaBeanBuilder() throws Exception {
+    assertFalse(hasErrors(compile("generated.test.Bean", BEAN_SOURCE)));
+    assertTrue(new File(_dir, FudgeBuilderProcessor.REGISTRY_RESOURCE).exists());
+    final ClassLoader loader = new URLClassLoader(new URL[] {_dir.toURI().toURL() }, getClass().getClassLoader());
+    final Class<Object> beanClass = (Class<Object>) loader.loadClass("generated.test.Bean");
+    final Class<?> builderClass = loader.loadClass("generated.test.BeanFudgeBuilder");
+    assertEquals(beanClass, builderClass.getAnnotation(FudgeBuilderFor.class).value());
+    final FudgeBuilder<Object> generated = (FudgeBuilder<Object>) builderClass.newInstance();
+    final FudgeBuilder<Object> reflection = JavaBeanBuilder.create(beanClass);
+
+    final Object bean = beanClass.newInstance();
+    beanClass.getMethod("setName", String.class).invoke(bean, "name");
+    beanClass.getMethod("setCount", int.class).invoke(bean, 3);
+    beanClass.getMethod("setId", long.class).invoke(bean, 123456789L);
+    beanClass.getMethod("setSecret", String.class).invoke(bean, "secret");
+    beanClass.getMethod("setItems", java.util.List.class).invoke(bean, Arrays.asList("a", "b"));
+    final MutableFudgeMsg message = generated.buildMessage(new FudgeSerializer(s_fudgeContext), bean);
+    assertArrayEquals(s_fudgeContext.toByteArray(reflection.buildMessage(new FudgeSerializer(s_fudgeContext), bean)),
+        s_fudgeContext.toByteArray(message));
+    assertNotNull(message.getByOrdinal(7));
+
+    final Object result = generated.buildObject(new FudgeDeserializer(s_fudgeContext), message);
+    assertEquals("name", beanClass.getMethod("getName").invoke(result));
+    assertEquals(3, beanClass.getMethod("getCount").invoke(result));
+    assertEquals(123456789L, beanClass.getMethod("getId").invoke(result));
+    assertEquals(null, beanClass.getMethod("getSecret").invoke(result));
+    assertEquals(Arrays.asList("a", "b"), beanClass.getMethod("getItems").invoke(result));
+  }
+
+  @Test
+  public void rejectsBeanWithoutConstructor() throws IOException {
+    final DiagnosticCollector<JavaFileObject> diagnostics = compile("generated.test.NoConstructor",
+        "package generated.test;\n" +
+        "@org.fudgemsg.mapping.GenerateFudgeBuilder\n" +
+        "public class NoConstructor {\n" +
+        "  public NoConstructor(String value) { }\n" +
+        "}\n");
+    assertTrue(hasErrors(diagnostics));
+    assertFalse(new File(_dir, "generated/test/NoConstructorFudgeBuilder.java").exists());
+  }
+
+}
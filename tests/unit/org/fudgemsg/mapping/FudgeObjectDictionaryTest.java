@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeTypeDictionary;
+import org.fudgemsg.mapping.ObjectMappingTestUtil.MappedNameBean;
+import org.junit.Test;
+
+/**
+ * Tests the class header cache of the FudgeObjectDictionary implementation.
+ */
+public class FudgeObjectDictionaryTest {
+
+  private static final MappedNameBean s_bean = new MappedNameBean();
+  static {
+    s_bean.setFieldOne("one");
+  }
+
+  private static FudgeContext createContext(final CountingTypeDictionary typeDictionary) {
+    final FudgeContext context = new FudgeContext();
+    context.setTypeDictionary(typeDictionary);
+    return context;
+  }
+
+  @Test
+  public void classHeaderCachedAcrossDeserializers() {
+    final CountingTypeDictionary typeDictionary = new CountingTypeDictionary();
+    final FudgeContext context = createContext(typeDictionary);
+    final FudgeMsg msg = context.toFudgeMsg(s_bean).getMessage();
+    assertEquals("one", ((MappedNameBean) context.fromFudgeMsg(msg)).getFieldOne());
+    assertEquals(1, typeDictionary._beanLookups);
+    assertEquals("one", ((MappedNameBean) context.fromFudgeMsg(msg)).getFieldOne());
+    assertEquals("one", context.fromFudgeMsg(MappedNameBean.class, msg).getFieldOne());
+    assertEquals(1, typeDictionary._beanLookups);
+  }
+
+  @Test
+  public void classHeaderInvalidatedByAddBuilder() {
+    final CountingTypeDictionary typeDictionary = new CountingTypeDictionary();
+    final FudgeContext context = createContext(typeDictionary);
+    final FudgeMsg msg = context.toFudgeMsg(s_bean).getMessage();
+    context.fromFudgeMsg(msg);
+    final MappedNameBean replacement = new MappedNameBean();
+    context.getObjectDictionary().addObjectBuilder(MappedNameBean.class, new FudgeObjectBuilder<MappedNameBean>() {
+      @Override
+      public MappedNameBean buildObject(final FudgeDeserializer deserializer, final FudgeMsg message) {
+        return replacement;
+      }
+    });
+    assertSame(replacement, context.fromFudgeMsg(msg));
+    assertEquals(2, typeDictionary._beanLookups);
+  }
+
+  @Test
+  public void classHeaderNotSharedBetweenTypeDictionaries() {
+    final CountingTypeDictionary typeDictionary = new CountingTypeDictionary();
+    final FudgeContext context = createContext(typeDictionary);
+    final FudgeMsg msg = context.toFudgeMsg(s_bean).getMessage();
+    context.fromFudgeMsg(msg);
+    final CountingTypeDictionary other = new CountingTypeDictionary();
+    context.setTypeDictionary(other);
+    context.fromFudgeMsg(msg);
+    assertEquals(1, other._beanLookups);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Type dictionary counting the class lookups for the bean.
+   */
+  private static class CountingTypeDictionary extends FudgeTypeDictionary {
+    private int _beanLookups;
+    @Override
+    public Class<?> findClass(final String className) {
+      if (MappedNameBean.class.getName().equals(className)) {
+        _beanLookups++;
+      }
+      return super.findClass(className);
+    }
+  }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeRuntimeException;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.SmallFinancialTick;
+import org.fudgemsg.mapping.ObjectMappingTestUtil.MappedNameBean;
+import org.junit.Test;
+
+/**
+ * Tests the JavaBeanBuilder implementation.
+ */
+public class JavaBeanBuilderTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static MutableFudgeMsg createMessage() {
+    final MutableFudgeMsg msg = s_fudgeContext.newMessage();
+    // fields in the reverse order of the properties, with duplicates
+    msg.add(null, 100, "four");
+    msg.add("fieldThree", 99, "three");
+    msg.add("bar", "two");
+    msg.add("foo", "one");
+    msg.add("bar", "duplicate");
+    msg.add(null, 99, "duplicate");
+    return msg;
+  }
+
+  private static void assertBuildObject(final JavaBeanBuilder<MappedNameBean> builder) {
+    final MappedNameBean bean = builder.buildObject(new FudgeDeserializer(s_fudgeContext), createMessage());
+    assertEquals("one", bean.getFieldOne());
+    assertEquals("two", bean.getFieldTwo());
+    assertEquals("three", bean.getFieldThree());
+    assertEquals("four", bean.getFieldFour());
+  }
+
+  @Test
+  public void buildObjectGenerated() {
+    assertBuildObject(JavaBeanBuilder.create(MappedNameBean.class, true));
+  }
+
+  @Test
+  public void buildObjectReflection() {
+    assertBuildObject(JavaBeanBuilder.create(MappedNameBean.class, false));
+  }
+
+  @Test
+  public void ordinalPropertyIgnoresName() {
+    final MutableFudgeMsg msg = s_fudgeContext.newMessage();
+    msg.add("fieldThree", "three");
+    msg.add("fieldFour", "four");
+    final MappedNameBean bean = JavaBeanBuilder.create(MappedNameBean.class).buildObject(new FudgeDeserializer(s_fudgeContext), msg);
+    assertNull(bean.getFieldThree());
+    assertNull(bean.getFieldFour());
+  }
+
+  @Test
+  public void roundTrip() {
+    final JavaBeanBuilder<MappedNameBean> builder = JavaBeanBuilder.create(MappedNameBean.class);
+    final MappedNameBean bean = new MappedNameBean();
+    bean.setFieldOne("one");
+    bean.setFieldTwo("two");
+    bean.setFieldThree("three");
+    bean.setFieldFour("four");
+    final MappedNameBean result = builder.buildObject(new FudgeDeserializer(s_fudgeContext), builder.buildMessage(new FudgeSerializer(s_fudgeContext), bean));
+    assertEquals("one", result.getFieldOne());
+    assertEquals("two", result.getFieldTwo());
+    assertEquals("three", result.getFieldThree());
+    assertEquals("four", result.getFieldFour());
+  }
+
+  @Test
+  public void accessorIsGenerated() {
+    final JavaBeanBuilder<SmallFinancialTick> builder = JavaBeanBuilder.create(SmallFinancialTick.class, true);
+    assertFalse(builder.getAccessor().getClass().getName().startsWith(JavaBeanBuilder.class.getName()));
+  }
+
+  @Test
+  public void generatedMatchesReflection() {
+    final JavaBeanBuilder<SmallFinancialTick> generated = JavaBeanBuilder.create(SmallFinancialTick.class, true);
+    final JavaBeanBuilder<SmallFinancialTick> reflection = JavaBeanBuilder.create(SmallFinancialTick.class, false);
+    final SmallFinancialTick tick = new SmallFinancialTick();
+    tick.setAsk(100.5);
+    tick.setAskVolume(1000);
+    tick.setBid(99.5);
+    tick.setBidVolume(2000);
+    final FudgeMsg generatedMsg = generated.buildMessage(new FudgeSerializer(s_fudgeContext), tick);
+    final FudgeMsg reflectionMsg = reflection.buildMessage(new FudgeSerializer(s_fudgeContext), tick);
+    assertEquals(reflectionMsg, generatedMsg);
+    final SmallFinancialTick generatedTick = generated.buildObject(new FudgeDeserializer(s_fudgeContext), reflectionMsg);
+    final SmallFinancialTick reflectionTick = reflection.buildObject(new FudgeDeserializer(s_fudgeContext), generatedMsg);
+    assertEquals(tick.getAsk(), generatedTick.getAsk(), 0d);
+    assertEquals(tick.getBidVolume(), generatedTick.getBidVolume(), 0d);
+    assertEquals(tick.getTimestamp(), generatedTick.getTimestamp());
+    assertEquals(tick.getAsk(), reflectionTick.getAsk(), 0d);
+    assertEquals(tick.getTimestamp(), reflectionTick.getTimestamp());
+  }
+
+  @Test(expected = FudgeRuntimeException.class)
+  public void readErrorGenerated() {
+    JavaBeanBuilder.create(FailingBean.class, true).buildMessage(new FudgeSerializer(s_fudgeContext), new FailingBean());
+  }
+
+  @Test(expected = FudgeRuntimeException.class)
+  public void readErrorReflection() {
+    JavaBeanBuilder.create(FailingBean.class, false).buildMessage(new FudgeSerializer(s_fudgeContext), new FailingBean());
+  }
+
+  @Test(expected = FudgeRuntimeException.class)
+  public void writeErrorGenerated() {
+    final MutableFudgeMsg msg = s_fudgeContext.newMessage();
+    msg.add("value", "one");
+    JavaBeanBuilder.create(FailingBean.class, true).buildObject(new FudgeDeserializer(s_fudgeContext), msg);
+  }
+
+  @Test(expected = FudgeRuntimeException.class)
+  public void writeErrorReflection() {
+    final MutableFudgeMsg msg = s_fudgeContext.newMessage();
+    msg.add("value", "one");
+    JavaBeanBuilder.create(FailingBean.class, false).buildObject(new FudgeDeserializer(s_fudgeContext), msg);
+  }
+
+  /**
+   * Bean whose property methods throw.
+   */
+  public static class FailingBean {
+    public String getValue() {
+      throw new IllegalStateException("read");
+    }
+    public void setValue(final String value) {
+      throw new IllegalStateException("write");
+    }
+  }
+
+}
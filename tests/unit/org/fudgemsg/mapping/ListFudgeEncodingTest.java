@@ -17,6 +17,8 @@ package org.fudgemsg.mapping;
 
 
 import org.fudgemsg.AbstractFudgeBuilderTestCase;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.wire.types.FudgeWireType;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -26,6 +28,7 @@ import java.util.Currency;
 import java.util.LinkedList;
 import java.util.List;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
 
 
@@ -119,4 +122,57 @@ public class ListFudgeEncodingTest extends AbstractFudgeBuilderTestCase {
   }
 
 
+  @Test
+  public void testListOfDoublesEncodedAsArray() {
+    List<Double> list = new ArrayList<Double>();
+    for (int i = 0; i < 100; i++) {
+      list.add(i * 0.5);
+    }
+
+    getFudgeSerializer().setPrimitiveArrays(true);
+    FudgeMsg msg = getFudgeSerializer().objectToFudgeMsg(list);
+    assertEquals(FudgeWireType.DOUBLE_ARRAY, msg.getByOrdinal(BuilderUtil.PRIMITIVE_ARRAY_ORDINAL).getType());
+
+    Object deserializedObject = getFudgeDeserializer().fudgeMsgToObject(msg);
+
+    assertEquals(list, deserializedObject);
+  }
+
+  @Test
+  public void testListOfDoublesNotEncodedAsArrayByDefault() {
+    List<Double> list = new ArrayList<Double>();
+    list.add(1.5);
+    list.add(2.5);
+
+    FudgeMsg msg = getFudgeSerializer().objectToFudgeMsg(list);
+    assertNull(msg.getByOrdinal(BuilderUtil.PRIMITIVE_ARRAY_ORDINAL));
+  }
+
+  @Test
+  public void testListOfIntegersAndLongsNotEncodedAsArray() {
+    List list = new ArrayList();
+    list.add(1);
+    list.add(2L);
+
+    getFudgeSerializer().setPrimitiveArrays(true);
+    FudgeMsg msg = getFudgeSerializer().objectToFudgeMsg(list);
+    assertNull(msg.getByOrdinal(BuilderUtil.PRIMITIVE_ARRAY_ORDINAL));
+  }
+
+  @Test
+  public void testListOfLongsEncodedAsArray() {
+    List<Long> list = new ArrayList<Long>();
+    list.add(Long.MAX_VALUE);
+    list.add(0L);
+    list.add(-1L);
+
+    getFudgeSerializer().setPrimitiveArrays(true);
+    FudgeMsg msg = getFudgeSerializer().objectToFudgeMsg(list);
+    assertEquals(FudgeWireType.LONG_ARRAY, msg.getByOrdinal(BuilderUtil.PRIMITIVE_ARRAY_ORDINAL).getType());
+
+    Object deserializedObject = getFudgeDeserializer().fudgeMsgToObject(msg);
+
+    assertEquals(list, deserializedObject);
+  }
+
 }
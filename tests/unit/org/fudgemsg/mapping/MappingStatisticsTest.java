@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMetrics;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.MappingStatistics.BuilderKind;
+import org.fudgemsg.mapping.MappingStatistics.Direction;
+import org.fudgemsg.mapping.MappingStatistics.Entry;
+import org.junit.Test;
+
+/**
+ * Tests the MappingStatistics implementation.
+ */
+public class MappingStatisticsTest {
+
+  /**
+   * Bean mapped by the JavaBean builder.
+   */
+  public static class Order {
+    private String _name;
+    private List<Item> _items = new ArrayList<Item>();
+    public String getName() {
+      return _name;
+    }
+    public void setName(final String name) {
+      _name = name;
+    }
+    public List<Item> getItems() {
+      return _items;
+    }
+    public void setItems(final List<Item> items) {
+      _items = items;
+    }
+  }
+
+  /**
+   * Class mapped by its own toFudgeMsg and fromFudgeMsg methods.
+   */
+  public static class Item {
+    private final int _quantity;
+    public Item(final int quantity) {
+      _quantity = quantity;
+    }
+    public int getQuantity() {
+      return _quantity;
+    }
+    public MutableFudgeMsg toFudgeMsg(final FudgeSerializer serializer) {
+      final MutableFudgeMsg msg = serializer.newMessage();
+      msg.add("quantity", _quantity);
+      return msg;
+    }
+    public static Item fromFudgeMsg(final FudgeDeserializer deserializer, final FudgeMsg msg) {
+      return new Item(msg.getInt("quantity"));
+    }
+  }
+
+  private static Order order() {
+    final Order order = new Order();
+    order.setName("order");
+    for (int i = 0; i < 10; i++) {
+      order.getItems().add(new Item(i));
+    }
+    return order;
+  }
+
+  private static Entry find(final MappingStatistics statistics, final Direction direction, final Class<?> type) {
+    for (Entry entry : statistics.getEntries()) {
+      if (entry.getDirection() == direction && entry.getType() == type) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void notRecordedWhenDisabled() {
+    final FudgeContext context = new FudgeContext();
+    final FudgeMetrics metrics = context.enableMetrics();
+    context.disableMetrics();
+    context.toFudgeMsg(order());
+    assertTrue(metrics.getMappingStatistics().getEntries().isEmpty());
+  }
+
+  @Test
+  public void serializeAndDeserialize() {
+    final FudgeContext context = new FudgeContext();
+    final MappingStatistics statistics = context.enableMetrics().getMappingStatistics();
+    final FudgeMsg msg = context.toFudgeMsg(order()).getMessage();
+    final Order result = context.fromFudgeMsg(Order.class, msg);
+    assertEquals(10, result.getItems().size());
+
+    final Entry order = find(statistics, Direction.SERIALIZE, Order.class);
+    assertNotNull(order);
+    assertEquals(BuilderKind.JAVA_BEAN, order.getBuilderKind());
+    assertEquals(1, order.getCount());
+    assertTrue(order.getSelfNanos() <= order.getTotalNanos());
+    assertEquals(1, order.getSizedCount());
+    assertTrue(order.getBytes() > 0);
+    final Entry item = find(statistics, Direction.SERIALIZE, Item.class);
+    assertEquals(BuilderKind.FUDGE_MSG, item.getBuilderKind());
+    assertEquals(10, item.getCount());
+    // nested messages are not sized
+    assertEquals(0, item.getSizedCount());
+
+    assertEquals(1, find(statistics, Direction.DESERIALIZE, Order.class).getCount());
+    assertEquals(10, find(statistics, Direction.DESERIALIZE, Item.class).getCount());
+    assertTrue(statistics.getReport().contains(Item.class.getName()));
+  }
+
+  @Test
+  public void streamedSizes() {
+    final FudgeContext context = new FudgeContext();
+    final MappingStatistics statistics = context.enableMetrics().getMappingStatistics();
+    final FudgeObjectWriter writer = context.createObjectWriter(new ByteArrayOutputStream());
+    writer.writeStreamed(order());
+    final Entry order = find(statistics, Direction.SERIALIZE, Order.class);
+    assertEquals(1, order.getSizedCount());
+    final long streamedBytes = order.getBytes();
+    statistics.reset();
+    assertNull(find(statistics, Direction.SERIALIZE, Order.class));
+    context.toFudgeMsg(order());
+    assertEquals(streamedBytes, find(statistics, Direction.SERIALIZE, Order.class).getBytes());
+  }
+
+  @Test
+  public void builderKinds() {
+    assertEquals(BuilderKind.COLLECTION, BuilderKind.of(ListBuilder.INSTANCE));
+    assertEquals(BuilderKind.JAVA_BEAN, BuilderKind.of(JavaBeanBuilder.create(Order.class)));
+    assertEquals(BuilderKind.OTHER, BuilderKind.of(new Object()));
+  }
+
+}
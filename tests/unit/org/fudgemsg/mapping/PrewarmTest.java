@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.mapping.StreamingDeserializationTest.Drawing;
+import org.fudgemsg.mapping.StreamingDeserializationTest.Point;
+import org.fudgemsg.mapping.StreamingDeserializationTest.Shape;
+import org.fudgemsg.util.TopologicalSort;
+import org.junit.Test;
+
+/**
+ * Tests prewarming the builders of a FudgeContext.
+ */
+public class PrewarmTest {
+
+  @Test
+  public void prewarmCreatesBuilders() {
+    final FudgeContext context = new FudgeContext();
+    assertFalse(context.getObjectDictionary().getBuilderClasses().contains(Point.class));
+    context.prewarm(Point.class, Drawing.class);
+    final Set<Class<?>> classes = context.getObjectDictionary().getBuilderClasses();
+    assertTrue(classes.contains(Point.class));
+    assertTrue(classes.contains(Drawing.class));
+    assertFalse(classes.contains(Shape.class));
+  }
+
+  @Test
+  public void snapshotRoundTrip() {
+    final FudgeContext original = new FudgeContext();
+    original.prewarm(Point.class, Shape.class, Drawing.class);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    original.writePrewarmSnapshot(out);
+
+    final FudgeContext restarted = new FudgeContext();
+    final int count = restarted.readPrewarmSnapshot(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(original.getObjectDictionary().getBuilderClasses().size(), count);
+    assertEquals(original.getObjectDictionary().getBuilderClasses(), restarted.getObjectDictionary().getBuilderClasses());
+  }
+
+  @Test
+  public void snapshotSkipsMissingClasses() throws IOException {
+    final FudgeContext context = new FudgeContext();
+    final String snapshot = "# comment\ncom.example.NoSuchClass\n\n" + Point.class.getName() + "\n";
+    assertEquals(1, context.readPrewarmSnapshot(new ByteArrayInputStream(snapshot.getBytes("UTF-8"))));
+    assertTrue(context.getObjectDictionary().getBuilderClasses().contains(Point.class));
+  }
+
+  @Test
+  public void prewarmPackage() {
+    final FudgeContext context = new FudgeContext();
+    assertTrue(context.prewarmPackage(TopologicalSort.class.getPackage().getName()) > 0);
+    assertTrue(context.getObjectDictionary().getBuilderClasses().contains(TopologicalSort.class));
+    assertEquals(0, context.prewarmPackage("com.example.nosuchpackage"));
+  }
+
+}
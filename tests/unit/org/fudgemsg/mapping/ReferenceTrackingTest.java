@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.junit.Test;
+
+/**
+ * Tests object reference tracking in FudgeSerializer and FudgeDeserializer.
+ */
+public class ReferenceTrackingTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  /**
+   * Bean that can form a cycle.
+   */
+  public static class Node {
+    private String _name;
+    private Node _next;
+    public String getName() {
+      return _name;
+    }
+    public void setName(final String name) {
+      _name = name;
+    }
+    public Node getNext() {
+      return _next;
+    }
+    public void setNext(final Node next) {
+      _next = next;
+    }
+  }
+
+  /**
+   * Bean holding a list of nodes.
+   */
+  public static class Holder {
+    private List<Node> _nodes = new ArrayList<Node>();
+    public List<Node> getNodes() {
+      return _nodes;
+    }
+    public void setNodes(final List<Node> nodes) {
+      _nodes = nodes;
+    }
+  }
+
+  /**
+   * Bean holding collections that may contain themselves.
+   */
+  public static class CollectionHolder {
+    private List<Object> _list;
+    private Set<Object> _set;
+    private Map<String, Object> _map;
+    public List<Object> getList() {
+      return _list;
+    }
+    public void setList(final List<Object> list) {
+      _list = list;
+    }
+    public Set<Object> getSet() {
+      return _set;
+    }
+    public void setSet(final Set<Object> set) {
+      _set = set;
+    }
+    public Map<String, Object> getMap() {
+      return _map;
+    }
+    public void setMap(final Map<String, Object> map) {
+      _map = map;
+    }
+  }
+
+  private static Node node(final String name) {
+    final Node node = new Node();
+    node.setName(name);
+    return node;
+  }
+
+  private static FudgeMsg serialize(final Object object, final boolean referenceTracking) {
+    final FudgeSerializer serializer = new FudgeSerializer(s_fudgeContext);
+    serializer.setReferenceTracking(referenceTracking);
+    return serializer.objectToFudgeMsg(object);
+  }
+
+  private static <T> T cycle(final Class<T> clazz, final Object object) {
+    final byte[] data = s_fudgeContext.toByteArray(serialize(object, true));
+    return new FudgeDeserializer(s_fudgeContext).fudgeMsgToObject(clazz, s_fudgeContext.deserialize(data).getMessage());
+  }
+
+  @Test
+  public void sharedObjects() {
+    final Holder holder = new Holder();
+    final Node shared = node("shared");
+    for (int i = 0; i < 10; i++) {
+      holder.getNodes().add(shared);
+    }
+    holder.getNodes().add(node("other"));
+    final Holder result = cycle(Holder.class, holder);
+    assertEquals(11, result.getNodes().size());
+    assertEquals("shared", result.getNodes().get(0).getName());
+    for (int i = 1; i < 10; i++) {
+      assertSame(result.getNodes().get(0), result.getNodes().get(i));
+    }
+    assertNotSame(result.getNodes().get(0), result.getNodes().get(10));
+    assertEquals("other", result.getNodes().get(10).getName());
+  }
+
+  @Test
+  public void sharedObjectsSmaller() {
+    final Holder holder = new Holder();
+    final Node shared = node("a node with a long name that is referenced many times");
+    for (int i = 0; i < 100; i++) {
+      holder.getNodes().add(shared);
+    }
+    final int withReferences = s_fudgeContext.toByteArray(serialize(holder, true)).length;
+    final int withoutReferences = s_fudgeContext.toByteArray(serialize(holder, false)).length;
+    assertTrue(withReferences * 3 < withoutReferences);
+  }
+
+  @Test
+  public void cyclicObjects() {
+    final Node a = node("a");
+    final Node b = node("b");
+    a.setNext(b);
+    b.setNext(a);
+    final Node result = cycle(Node.class, a);
+    assertEquals("a", result.getName());
+    assertEquals("b", result.getNext().getName());
+    assertSame(result, result.getNext().getNext());
+  }
+
+  @Test
+  public void selfReference() {
+    final Node a = node("a");
+    a.setNext(a);
+    final Node result = cycle(Node.class, a);
+    assertSame(result, result.getNext());
+  }
+
+  @Test
+  public void listSelfReference() {
+    final CollectionHolder bean = new CollectionHolder();
+    final List<Object> list = new ArrayList<Object>();
+    list.add("a");
+    list.add(list);
+    bean.setList(list);
+    final List<Object> result = cycle(CollectionHolder.class, bean).getList();
+    assertEquals(2, result.size());
+    assertEquals("a", result.get(0));
+    assertSame(result, result.get(1));
+  }
+
+  @Test
+  public void setSelfReference() {
+    final CollectionHolder bean = new CollectionHolder();
+    final Set<Object> set = new HashSet<Object>();
+    // added while empty, as the hash code of a set containing itself cannot be computed
+    set.add(set);
+    bean.setSet(set);
+    final Set<Object> result = cycle(CollectionHolder.class, bean).getSet();
+    assertEquals(1, result.size());
+    assertSame(result, result.iterator().next());
+  }
+
+  @Test
+  public void mapSelfReference() {
+    final CollectionHolder bean = new CollectionHolder();
+    final Map<String, Object> map = new HashMap<String, Object>();
+    map.put("a", "b");
+    map.put("self", map);
+    bean.setMap(map);
+    final Map<String, Object> result = cycle(CollectionHolder.class, bean).getMap();
+    assertEquals(2, result.size());
+    assertEquals("b", result.get("a"));
+    assertSame(result, result.get("self"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void cyclicObjectsWithoutTracking() {
+    final Node a = node("a");
+    a.setNext(a);
+    serialize(a, false);
+  }
+
+}
@@ -17,6 +17,8 @@ package org.fudgemsg.mapping;
 
 
 import org.fudgemsg.AbstractFudgeBuilderTestCase;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.wire.types.FudgeWireType;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -27,6 +29,7 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -154,4 +157,20 @@ public class SetFudgeEncodingTest extends AbstractFudgeBuilderTestCase {
     isInstanceOf(deserializedObject, HashSet.class);
   }
 
+  @Test
+  public void testSetOfIntegersEncodedAsArray() {
+    Set<Integer> set = new HashSet<Integer>();
+    for (int i = 0; i < 100; i++) {
+      set.add(i * 1000);
+    }
+
+    getFudgeSerializer().setPrimitiveArrays(true);
+    FudgeMsg msg = getFudgeSerializer().objectToFudgeMsg(set);
+    assertEquals(FudgeWireType.INT_ARRAY, msg.getByOrdinal(BuilderUtil.PRIMITIVE_ARRAY_ORDINAL).getType());
+
+    Object deserializedObject = getFudgeDeserializer().fudgeMsgToObject(msg);
+
+    assertEquals(set, deserializedObject);
+  }
+
 }
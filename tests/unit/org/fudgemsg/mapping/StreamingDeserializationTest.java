@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.MutableFudgeMsg;
+import org.junit.Test;
+
+/**
+ * Tests streaming deserialization through FudgeObjectReader.readStreamed.
+ */
+public class StreamingDeserializationTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  /**
+   * Final bean, streamed when used as a property.
+   */
+  public static final class Point {
+    private int _x;
+    private int _y;
+    public int getX() {
+      return _x;
+    }
+    public void setX(final int x) {
+      _x = x;
+    }
+    public int getY() {
+      return _y;
+    }
+    public void setY(final int y) {
+      _y = y;
+    }
+  }
+
+  /**
+   * Non-final bean, read into a message when used as a property.
+   */
+  public static class Shape {
+    private String _name;
+    private Point _origin;
+    private Object _tag;
+    public String getName() {
+      return _name;
+    }
+    public void setName(final String name) {
+      _name = name;
+    }
+    public Point getOrigin() {
+      return _origin;
+    }
+    public void setOrigin(final Point origin) {
+      _origin = origin;
+    }
+    public Object getTag() {
+      return _tag;
+    }
+    public void setTag(final Object tag) {
+      _tag = tag;
+    }
+  }
+
+  /**
+   * Bean with collection properties.
+   */
+  public static class Drawing {
+    private List<Shape> _shapes = new ArrayList<Shape>();
+    private Set<String> _labels = new HashSet<String>();
+    private Map<String, Point> _anchors = new HashMap<String, Point>();
+    private List<Double> _weights = new ArrayList<Double>();
+    public List<Shape> getShapes() {
+      return _shapes;
+    }
+    public void setShapes(final List<Shape> shapes) {
+      _shapes = shapes;
+    }
+    public Set<String> getLabels() {
+      return _labels;
+    }
+    public void setLabels(final Set<String> labels) {
+      _labels = labels;
+    }
+    public Map<String, Point> getAnchors() {
+      return _anchors;
+    }
+    public void setAnchors(final Map<String, Point> anchors) {
+      _anchors = anchors;
+    }
+    public List<Double> getWeights() {
+      return _weights;
+    }
+    public void setWeights(final List<Double> weights) {
+      _weights = weights;
+    }
+  }
+
+  /**
+   * Bean with primitive, boxed and final bean properties.
+   */
+  public static class Counter {
+    private int _count;
+    private Long _total;
+    private Point _origin;
+    public int getCount() {
+      return _count;
+    }
+    public void setCount(final int count) {
+      _count = count;
+    }
+    public Long getTotal() {
+      return _total;
+    }
+    public void setTotal(final Long total) {
+      _total = total;
+    }
+    public Point getOrigin() {
+      return _origin;
+    }
+    public void setOrigin(final Point origin) {
+      _origin = origin;
+    }
+  }
+
+  private static Point point(final int x, final int y) {
+    final Point point = new Point();
+    point.setX(x);
+    point.setY(y);
+    return point;
+  }
+
+  private static Shape shape(final String name, final Point origin, final Object tag) {
+    final Shape shape = new Shape();
+    shape.setName(name);
+    shape.setOrigin(origin);
+    shape.setTag(tag);
+    return shape;
+  }
+
+  private static Drawing drawing() {
+    final Drawing drawing = new Drawing();
+    drawing.getShapes().add(shape("a", point(1, 2), point(3, 4)));
+    drawing.getShapes().add(shape("b", null, "tag"));
+    drawing.getShapes().add(null);
+    drawing.getLabels().add("x");
+    drawing.getLabels().add("y");
+    drawing.getAnchors().put("top", point(5, 6));
+    drawing.getAnchors().put("bottom", null);
+    drawing.getWeights().add(0.5);
+    drawing.getWeights().add(1.5);
+    return drawing;
+  }
+
+  private static FudgeObjectReader reader(final boolean referenceTracking, final Object... objects) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final FudgeObjectWriter writer = s_fudgeContext.createObjectWriter(out);
+    writer.getSerializer().setReferenceTracking(referenceTracking);
+    for (Object object : objects) {
+      writer.write(object);
+    }
+    writer.close();
+    return s_fudgeContext.createObjectReader(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static void assertDrawing(final Drawing drawing) {
+    assertEquals(3, drawing.getShapes().size());
+    final Shape a = drawing.getShapes().get(0);
+    assertEquals("a", a.getName());
+    assertEquals(1, a.getOrigin().getX());
+    assertEquals(2, a.getOrigin().getY());
+    assertEquals(Point.class, a.getTag().getClass());
+    assertEquals(4, ((Point) a.getTag()).getY());
+    final Shape b = drawing.getShapes().get(1);
+    assertEquals("b", b.getName());
+    assertNull(b.getOrigin());
+    assertEquals("tag", b.getTag());
+    assertNull(drawing.getShapes().get(2));
+    assertEquals(new HashSet<String>(Arrays.asList("x", "y")), drawing.getLabels());
+    assertEquals(2, drawing.getAnchors().size());
+    assertEquals(6, drawing.getAnchors().get("top").getY());
+    assertNull(drawing.getAnchors().get("bottom"));
+    assertEquals(Arrays.asList(0.5, 1.5), drawing.getWeights());
+  }
+
+  @Test
+  public void streamedMatchesMessage() {
+    final FudgeObjectReader reader = reader(false, drawing(), drawing());
+    assertDrawing(reader.read(Drawing.class));
+    assertDrawing(reader.readStreamed(Drawing.class));
+    assertFalse(reader.hasNext());
+  }
+
+  @Test
+  public void streamedSequence() {
+    final FudgeObjectReader reader = reader(false, drawing(), point(7, 8), drawing());
+    assertDrawing(reader.readStreamed(Drawing.class));
+    assertEquals(8, reader.readStreamed(Point.class).getY());
+    assertDrawing(reader.readStreamed(Drawing.class));
+    assertFalse(reader.hasNext());
+  }
+
+  @Test
+  public void streamedTopLevelList() {
+    final List<Shape> shapes = new ArrayList<Shape>();
+    for (int i = 0; i < 100; i++) {
+      shapes.add(shape("s" + i, point(i, -i), null));
+    }
+    final List<?> result = reader(false, shapes).readStreamed(List.class);
+    assertEquals(100, result.size());
+    assertEquals("s42", ((Shape) result.get(42)).getName());
+    assertEquals(-42, ((Shape) result.get(42)).getOrigin().getY());
+  }
+
+  @Test
+  public void streamedSharedReferences() {
+    final Shape shared = shape("shared", point(1, 1), null);
+    final List<Shape> shapes = new ArrayList<Shape>();
+    shapes.add(shared);
+    shapes.add(shape("other", null, null));
+    shapes.add(shared);
+    final List<?> result = reader(true, shapes).readStreamed(List.class);
+    assertEquals(3, result.size());
+    assertEquals("shared", ((Shape) result.get(0)).getName());
+    assertEquals("other", ((Shape) result.get(1)).getName());
+    assertSame(result.get(0), result.get(2));
+  }
+
+  @Test
+  public void streamedConvertsPropertiesAsMessage() {
+    final MutableFudgeMsg pointMsg = s_fudgeContext.newMessage();
+    pointMsg.add("x", (byte) 3);
+    pointMsg.add("y", (short) 300);
+    final MutableFudgeMsg msg = s_fudgeContext.newMessage();
+    msg.add("count", (byte) 5);
+    msg.add("total", (short) 7);
+    msg.add("origin", pointMsg);
+    final byte[] bytes = s_fudgeContext.toByteArray(msg);
+    final FudgeObjectReader reader = s_fudgeContext.createObjectReader(new ByteArrayInputStream(bytes));
+    final Counter streamed = reader.readStreamed(Counter.class);
+    final Counter built = s_fudgeContext.fromFudgeMsg(Counter.class, msg);
+    for (Counter counter : Arrays.asList(streamed, built)) {
+      assertEquals(5, counter.getCount());
+      assertEquals(Long.valueOf(7), counter.getTotal());
+      assertEquals(3, counter.getOrigin().getX());
+      assertEquals(300, counter.getOrigin().getY());
+    }
+  }
+
+}
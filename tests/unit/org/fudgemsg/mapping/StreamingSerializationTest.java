@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.mapping;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.StreamingDeserializationTest.Drawing;
+import org.fudgemsg.mapping.StreamingDeserializationTest.Point;
+import org.fudgemsg.mapping.StreamingDeserializationTest.Shape;
+import org.fudgemsg.wire.FudgeMsgEncoder;
+import org.junit.Test;
+
+/**
+ * Tests streaming serialization through FudgeObjectWriter.writeStreamed.
+ */
+public class StreamingSerializationTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static Point point(final int x, final int y) {
+    final Point point = new Point();
+    point.setX(x);
+    point.setY(y);
+    return point;
+  }
+
+  private static Shape shape(final String name, final Point origin, final Object tag) {
+    final Shape shape = new Shape();
+    shape.setName(name);
+    shape.setOrigin(origin);
+    shape.setTag(tag);
+    return shape;
+  }
+
+  private static Drawing drawing(final int shapes) {
+    final Drawing drawing = new Drawing();
+    for (int i = 0; i < shapes; i++) {
+      drawing.getShapes().add(shape("shape" + i, point(i, i * 100000), (i % 2 == 0) ? point(-i, 0) : "tag"));
+    }
+    drawing.getShapes().add(null);
+    drawing.getLabels().add("x");
+    drawing.getAnchors().put("top", point(5, 6));
+    drawing.getAnchors().put("bottom", null);
+    drawing.getWeights().add(0.5);
+    return drawing;
+  }
+
+  private static byte[] write(final Object object, final boolean streamed, final boolean referenceTracking) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final FudgeObjectWriter writer = s_fudgeContext.createObjectWriter(out);
+    writer.getSerializer().setReferenceTracking(referenceTracking);
+    if (streamed) {
+      writer.writeStreamed(object);
+      writer.writeStreamed(object);
+    } else {
+      writer.write(object);
+      writer.write(object);
+    }
+    writer.close();
+    return out.toByteArray();
+  }
+
+  private static void assertSameBytes(final Object object) {
+    assertArrayEquals(write(object, false, false), write(object, true, false));
+  }
+
+  @Test
+  public void sameBytesAsWrite() {
+    assertSameBytes(drawing(3));
+    assertSameBytes(point(1, 2));
+    assertSameBytes(new Drawing());
+  }
+
+  @Test
+  public void sameBytesForLargeSubMessages() {
+    // sub-message sizes needing one, two and four byte widths
+    assertSameBytes(drawing(5));
+    assertSameBytes(drawing(500));
+    assertSameBytes(drawing(5000));
+  }
+
+  @Test
+  public void sameBytesForTopLevelCollection() {
+    final List<Object> list = new ArrayList<Object>();
+    for (int i = 0; i < 1000; i++) {
+      list.add(i);
+    }
+    assertSameBytes(list);
+    list.add("mixed");
+    list.add(point(1, 2));
+    assertSameBytes(list);
+  }
+
+  @Test
+  public void roundTrip() {
+    final byte[] data = write(drawing(50), true, false);
+    final FudgeObjectReader reader = s_fudgeContext.createObjectReader(new ByteArrayInputStream(data));
+    final Drawing result = reader.read(Drawing.class);
+    assertEquals(51, result.getShapes().size());
+    assertEquals("shape42", result.getShapes().get(42).getName());
+    assertEquals(4200000, result.getShapes().get(42).getOrigin().getY());
+    assertEquals(-42, ((Point) result.getShapes().get(42).getTag()).getX());
+    assertEquals("tag", result.getShapes().get(43).getTag());
+    assertEquals(6, result.getAnchors().get("top").getY());
+    assertEquals(51, reader.readStreamed(Drawing.class).getShapes().size());
+  }
+
+  @Test
+  public void referenceTrackingUsesMessages() {
+    final Shape shared = shape("shared", point(1, 1), null);
+    final List<Shape> shapes = new ArrayList<Shape>();
+    shapes.add(shared);
+    shapes.add(shared);
+    final byte[] data = write(shapes, true, true);
+    assertArrayEquals(write(shapes, false, true), data);
+    final List<?> result = s_fudgeContext.createObjectReader(new ByteArrayInputStream(data)).read(List.class);
+    assertSame(result.get(0), result.get(1));
+  }
+
+  @Test
+  public void encoderMatchesMessage() {
+    final MutableFudgeMsg message = s_fudgeContext.newMessage();
+    message.add("a", 1);
+    message.add(null, 2, 100000L);
+    final MutableFudgeMsg submsg = message.addSubMessage("sub", 3);
+    submsg.add("b", "text");
+    submsg.addSubMessage(null, null).add(null, 4, 2.5);
+    final FudgeMsgEncoder encoder = new FudgeMsgEncoder(s_fudgeContext);
+    encoder.writeField("a", null, s_fudgeContext.getTypeDictionary().getByJavaType(Integer.class), 1);
+    encoder.writeField(null, 2, s_fudgeContext.getTypeDictionary().getByJavaType(Long.class), 100000L);
+    encoder.startSubMessage("sub", 3);
+    encoder.writeField("b", null, s_fudgeContext.getTypeDictionary().getByJavaType(String.class), "text");
+    encoder.startSubMessage(null, null);
+    encoder.writeField(null, 4, s_fudgeContext.getTypeDictionary().getByJavaType(Double.class), 2.5);
+    encoder.endSubMessage();
+    encoder.endSubMessage();
+    final FudgeMsg encoded = encoder.toFudgeMsg();
+    assertArrayEquals(s_fudgeContext.toByteArray(message), s_fudgeContext.toByteArray(encoded));
+    assertEquals("text", encoded.getMessage("sub").getString("b"));
+  }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.taxon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ResourceBundle;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.taxonomy.CompiledFudgeTaxonomy;
+import org.fudgemsg.taxonomy.FudgeTaxonomy;
+import org.fudgemsg.taxonomy.MapFudgeTaxonomy;
+import org.fudgemsg.taxonomy.PropertyFileTaxonomy;
+import org.fudgemsg.taxonomy.TaxonomyCompiler;
+import org.junit.Test;
+
+/**
+ * Test the CompiledFudgeTaxonomy implementation.
+ */
+public class CompiledFudgeTaxonomyTest {
+
+  private static void verifyTaxon(final FudgeTaxonomy taxon) {
+    assertNull(taxon.getFieldName(0));
+    assertEquals("id", taxon.getFieldName(1));
+    assertEquals("name", taxon.getFieldName(2));
+    assertEquals("email", taxon.getFieldName(3));
+    assertEquals("telephone", taxon.getFieldName(4));
+    assertNull(taxon.getFieldName(5));
+    assertNull(taxon.getFieldName(-1));
+    assertNull(taxon.getFieldOrdinal("class"));
+    assertEquals(1, (int) taxon.getFieldOrdinal("id"));
+    assertEquals(2, (int) taxon.getFieldOrdinal("name"));
+    assertEquals(3, (int) taxon.getFieldOrdinal("email"));
+    assertEquals(4, (int) taxon.getFieldOrdinal("telephone"));
+    assertNull(taxon.getFieldOrdinal(null));
+  }
+
+  @Test
+  public void testCompilePropertyFileTaxonomy() {
+    final PropertyFileTaxonomy source = new PropertyFileTaxonomy(ResourceBundle.getBundle("org.fudgemsg.taxon.MyTaxonomy"));
+    verifyTaxon(source.compile());
+  }
+
+  @Test
+  public void testNonInternedNames() {
+    final FudgeTaxonomy taxon = new CompiledFudgeTaxonomy(new int[] {1, 2, 3, 4 }, new String[] {"id", "name", "email", "telephone" });
+    assertEquals(2, (int) taxon.getFieldOrdinal(new String("name")));
+    assertEquals(4, (int) taxon.getFieldOrdinal(new StringBuilder("tele").append("phone").toString()));
+  }
+
+  @Test
+  public void testLargeSparseTaxonomy() {
+    final Map<Integer, String> map = new HashMap<Integer, String>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i * 17 - 5000, "field" + i);
+    }
+    final FudgeTaxonomy taxon = new CompiledFudgeTaxonomy(map);
+    for (Map.Entry<Integer, String> entry : map.entrySet()) {
+      assertEquals(entry.getValue(), taxon.getFieldName(entry.getKey()));
+      assertEquals(entry.getKey(), taxon.getFieldOrdinal(entry.getValue()));
+    }
+    assertNull(taxon.getFieldName(-4999));
+    assertNull(taxon.getFieldOrdinal("field1000"));
+  }
+
+  @Test
+  public void testEmpty() {
+    final FudgeTaxonomy taxon = new CompiledFudgeTaxonomy(new int[0], new String[0]);
+    assertNull(taxon.getFieldName(0));
+    assertNull(taxon.getFieldOrdinal("id"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateName() {
+    new CompiledFudgeTaxonomy(new int[] {1, 2 }, new String[] {"id", "id" });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateOrdinal() {
+    new CompiledFudgeTaxonomy(new int[] {1, 1 }, new String[] {"id", "name" });
+  }
+
+  @Test
+  public void testFudgeMsgRoundTrip() {
+    final CompiledFudgeTaxonomy taxon = new PropertyFileTaxonomy(ResourceBundle.getBundle("org.fudgemsg.taxon.MyTaxonomy")).compile();
+    verifyTaxon(CompiledFudgeTaxonomy.fromFudgeMsg(taxon.toFudgeMsg(FudgeContext.GLOBAL_DEFAULT)));
+  }
+
+  @Test
+  public void testGenerateSource() {
+    final String source = TaxonomyCompiler.generateSource(new PropertyFileTaxonomy(ResourceBundle.getBundle("org.fudgemsg.taxon.MyTaxonomy")), "com.example.MyTaxonomy");
+    assertTrue(source.startsWith("package com.example;"));
+    assertTrue(source.contains("public class MyTaxonomy extends CompiledFudgeTaxonomy"));
+    assertTrue(source.contains("\"telephone\""));
+  }
+
+  @Test
+  public void testCompileGeneratedSource() throws Exception {
+    final String[] names = {"line\nbreak", "carriage\rreturn", "tab\tform\ffeed\b", "bell\u00071", "nul\u0000", "quote\"back\\slash", "\u00e9t\u00e9\u2028" };
+    final int[] ordinals = {1, 2, 3, 4, 5, 6, 7 };
+    final File dir = File.createTempFile("CompiledFudgeTaxonomyTest", "");
+    dir.delete();
+    try {
+      final File source = TaxonomyCompiler.compile(writeProperties(dir, ordinals, names), "com.example.SpecialTaxonomy", dir);
+      assertTrue(TaxonomyCompiler.generateSource(new MapFudgeTaxonomy(ordinals, names), "com.example.SpecialTaxonomy").contains(
+          "super(ORDINALS, NAMES, HASH_BITS, HASH_MULTIPLIER);"));
+      final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+      try {
+        assertTrue(compiler.getTask(null, fileManager, null,
+            Arrays.asList("-d", dir.getPath(), "-classpath", System.getProperty("java.class.path")),
+            null, fileManager.getJavaFileObjects(source)).call());
+      } finally {
+        fileManager.close();
+      }
+      final URLClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL() }, getClass().getClassLoader());
+      final FudgeTaxonomy taxon = (FudgeTaxonomy) loader.loadClass("com.example.SpecialTaxonomy").newInstance();
+      for (int i = 0; i < names.length; i++) {
+        assertEquals(names[i], taxon.getFieldName(ordinals[i]));
+        assertEquals(ordinals[i], (int) taxon.getFieldOrdinal(names[i]));
+      }
+      assertNull(taxon.getFieldOrdinal("line"));
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  private static File writeProperties(final File dir, final int[] ordinals, final String[] names) throws IOException {
+    final Properties properties = new Properties();
+    for (int i = 0; i < names.length; i++) {
+      properties.setProperty(Integer.toString(ordinals[i]), names[i]);
+    }
+    dir.mkdirs();
+    final File file = new File(dir, "taxonomy.properties");
+    final OutputStream out = new FileOutputStream(file);
+    try {
+      properties.store(out, null);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private static void deleteDirectory(final File dir) {
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    dir.delete();
+  }
+
+}
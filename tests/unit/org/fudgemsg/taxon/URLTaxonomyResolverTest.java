@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.taxon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fudgemsg.taxonomy.FudgeTaxonomy;
+import org.fudgemsg.taxonomy.RESTfulTaxonomyResolver;
+import org.fudgemsg.taxonomy.URLTaxonomyResolver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the caching behaviour of URLTaxonomyResolver using file: URLs.
+ */
+public class URLTaxonomyResolverTest {
+
+  private File _sourceDir;
+  private File _cacheDir;
+
+  @Before
+  public void createDirectories() throws IOException {
+    _sourceDir = createTempDirectory("source");
+    _cacheDir = createTempDirectory("cache");
+  }
+
+  @After
+  public void deleteDirectories() {
+    deleteDirectory(_sourceDir);
+    deleteDirectory(_cacheDir);
+  }
+
+  private static File createTempDirectory(final String name) throws IOException {
+    final File dir = File.createTempFile("URLTaxonomyResolverTest", name);
+    dir.delete();
+    dir.mkdir();
+    return dir;
+  }
+
+  private static void deleteDirectory(final File dir) {
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private RESTfulTaxonomyResolver createResolver() {
+    return new RESTfulTaxonomyResolver(_sourceDir.toURI().toString(), ".xml");
+  }
+
+  private static void verifyTaxon(final FudgeTaxonomy taxon) {
+    assertNotNull(taxon);
+    assertEquals("id", taxon.getFieldName(1));
+    assertEquals(4, (int) taxon.getFieldOrdinal("telephone"));
+  }
+
+  @Test
+  public void testResolve() throws IOException {
+    PropertyFileTaxonomyTest.writeTaxonomyXML(new File(_sourceDir, "42.xml"));
+    final URLTaxonomyResolver resolver = createResolver();
+    final FudgeTaxonomy taxon = resolver.resolveTaxonomy((short) 42);
+    verifyTaxon(taxon);
+    assertSame(taxon, resolver.resolveTaxonomy((short) 42));
+    assertNull(resolver.resolveTaxonomy((short) 43));
+  }
+
+  @Test
+  public void testMissCached() throws IOException {
+    final URLTaxonomyResolver resolver = createResolver();
+    resolver.setMissTimeToLive(60000L);
+    assertNull(resolver.resolveTaxonomy((short) 42));
+    PropertyFileTaxonomyTest.writeTaxonomyXML(new File(_sourceDir, "42.xml"));
+    assertNull(resolver.resolveTaxonomy((short) 42));
+    resolver.reset();
+    verifyTaxon(resolver.resolveTaxonomy((short) 42));
+  }
+
+  @Test
+  public void testMissNotCached() throws IOException {
+    final URLTaxonomyResolver resolver = createResolver();
+    assertNull(resolver.resolveTaxonomy((short) 42));
+    PropertyFileTaxonomyTest.writeTaxonomyXML(new File(_sourceDir, "42.xml"));
+    verifyTaxon(resolver.resolveTaxonomy((short) 42));
+  }
+
+  @Test
+  public void testCacheDirectory() throws IOException {
+    final File source = new File(_sourceDir, "42.xml");
+    PropertyFileTaxonomyTest.writeTaxonomyXML(source);
+    URLTaxonomyResolver resolver = createResolver();
+    resolver.setCacheDirectory(_cacheDir);
+    verifyTaxon(resolver.resolveTaxonomy((short) 42));
+    assertTrue(new File(_cacheDir, "42.xml").isFile());
+    // a restarted resolver reads from the cache directory
+    source.delete();
+    resolver = createResolver();
+    resolver.setCacheDirectory(_cacheDir);
+    verifyTaxon(resolver.resolveTaxonomy((short) 42));
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    PropertyFileTaxonomyTest.writeTaxonomyXML(new File(_sourceDir, "42.xml"));
+    final URLTaxonomyResolver resolver = createResolver();
+    final CountDownLatch done = new CountDownLatch(1);
+    resolver.setExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        command.run();
+        done.countDown();
+      }
+    });
+    resolver.prefetch((short) 42);
+    done.await();
+    // the prefetched taxonomy is available even without a URL to fetch from
+    new File(_sourceDir, "42.xml").delete();
+    verifyTaxon(resolver.resolveTaxonomy((short) 42));
+  }
+
+  @Test
+  public void testSingleFetch() throws Exception {
+    PropertyFileTaxonomyTest.writeTaxonomyXML(new File(_sourceDir, "42.xml"));
+    final AtomicInteger fetches = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final URLTaxonomyResolver resolver = new URLTaxonomyResolver() {
+      @Override
+      protected URL createTaxonomyURL(final short taxonomyId) throws MalformedURLException {
+        fetches.incrementAndGet();
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        return new URL(_sourceDir.toURI().toURL(), taxonomyId + ".xml");
+      }
+    };
+    final Thread[] threads = new Thread[8];
+    final FudgeTaxonomy[] results = new FudgeTaxonomy[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException ex) {
+            return;
+          }
+          results[index] = resolver.resolveTaxonomy((short) 42);
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, fetches.get());
+    for (FudgeTaxonomy result : results) {
+      verifyTaxon(result);
+    }
+  }
+
+  @Test
+  public void testSingleExecute() throws Exception {
+    PropertyFileTaxonomyTest.writeTaxonomyXML(new File(_sourceDir, "42.xml"));
+    final AtomicInteger executes = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final RESTfulTaxonomyResolver resolver = createResolver();
+    resolver.setResolveTimeout(10000L);
+    resolver.setExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        executes.incrementAndGet();
+        new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              Thread.sleep(100);
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            command.run();
+          }
+        }).start();
+      }
+    });
+    final Thread[] threads = new Thread[8];
+    final FudgeTaxonomy[] results = new FudgeTaxonomy[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException ex) {
+            return;
+          }
+          results[index] = resolver.resolveTaxonomy((short) 42);
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, executes.get());
+    for (FudgeTaxonomy result : results) {
+      verifyTaxon(result);
+    }
+    resolver.prefetch((short) 42);
+    assertEquals(1, executes.get());
+  }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the AnnotationIndexProcessor implementation.
+ */
+public class AnnotationIndexProcessorTest {
+
+  private static final String BUILDER_FOR = "org.fudgemsg.mapping.FudgeBuilderFor";
+
+  private File _dir;
+
+  @Before
+  public void createDirectory() throws IOException {
+    _dir = File.createTempFile("AnnotationIndexProcessorTest", "");
+    _dir.delete();
+    _dir.mkdir();
+  }
+
+  @After
+  public void deleteDirectory() {
+    deleteDirectory(_dir);
+  }
+
+  private static void deleteDirectory(final File dir) {
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    dir.delete();
+  }
+
+  private static String source(final String simpleName, final boolean annotated) {
+    return "package p;\n" +
+        (annotated ? "@" + BUILDER_FOR + "(String.class)\n" : "") +
+        "public class " + simpleName + " {\n" +
+        "}\n";
+  }
+
+  private boolean compile(final String... namesAndSources) throws IOException {
+    final List<File> files = new ArrayList<File>();
+    for (int i = 0; i < namesAndSources.length; i += 2) {
+      final File file = new File(_dir, "p" + File.separator + namesAndSources[i] + ".java");
+      file.getParentFile().mkdirs();
+      final FileWriter writer = new FileWriter(file);
+      writer.write(namesAndSources[i + 1]);
+      writer.close();
+      files.add(file);
+    }
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+    try {
+      final CompilationTask task = compiler.getTask(null, fileManager, null,
+          Arrays.asList("-d", _dir.getPath(), "-classpath", System.getProperty("java.class.path")),
+          null, fileManager.getJavaFileObjectsFromFiles(files));
+      task.setProcessors(Collections.singleton(new AnnotationIndexProcessor()));
+      return task.call();
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private List<String> readIndex() throws IOException {
+    final List<String> lines = new ArrayList<String>();
+    final BufferedReader reader = new BufferedReader(new FileReader(new File(_dir, ClasspathUtilities.ANNOTATION_INDEX_RESOURCE)));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+
+  @Test
+  public void indexMergedAcrossCompilations() throws IOException {
+    assertTrue(compile("A", source("A", true), "B", source("B", true)));
+    final List<String> both = Arrays.asList(BUILDER_FOR + " p.A", BUILDER_FOR + " p.B");
+    assertEquals(both, readIndex());
+    assertTrue(compile("A", source("A", true)));
+    assertEquals(both, readIndex());
+  }
+
+  @Test
+  public void recompiledClassWithoutAnnotationRemoved() throws IOException {
+    assertTrue(compile("A", source("A", true), "B", source("B", true)));
+    assertTrue(compile("A", source("A", false)));
+    assertEquals(Arrays.asList(BUILDER_FOR + " p.B"), readIndex());
+  }
+
+  @Test
+  public void deletedClassRemoved() throws IOException {
+    assertTrue(compile("A", source("A", true), "B", source("B", true)));
+    assertTrue(new File(_dir, "p" + File.separator + "B.class").delete());
+    assertTrue(compile("A", source("A", true)));
+    assertEquals(Arrays.asList(BUILDER_FOR + " p.A"), readIndex());
+  }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the AnnotationIndex implementation.
+ */
+public class AnnotationIndexTest {
+
+  private static final String ANNOTATION = "org.fudgemsg.mapping.FudgeBuilderFor";
+  private static final Set<String> ANNOTATIONS = Collections.singleton(ANNOTATION);
+
+  private File _dir;
+
+  @Before
+  public void createDirectory() throws IOException {
+    _dir = File.createTempFile("AnnotationIndexTest", "");
+    _dir.delete();
+    _dir.mkdir();
+  }
+
+  @After
+  public void deleteDirectory() {
+    final File[] files = _dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    _dir.delete();
+  }
+
+  /**
+   * Writes a jar containing no classes, with an optional index resource.
+   */
+  private File writeJar(final String name, final String index) throws IOException {
+    final File file = new File(_dir, name);
+    final JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+    try {
+      if (index != null) {
+        jar.putNextEntry(new ZipEntry(ClasspathUtilities.ANNOTATION_INDEX_RESOURCE));
+        jar.write(index.getBytes("UTF-8"));
+        jar.closeEntry();
+      } else {
+        jar.putNextEntry(new ZipEntry("empty.txt"));
+        jar.closeEntry();
+      }
+    } finally {
+      jar.close();
+    }
+    return file;
+  }
+
+  private static void writeCache(final File cacheFile, final File jar, final String className) throws IOException {
+    final PrintWriter pw = new PrintWriter(new FileWriter(cacheFile));
+    pw.println("element " + jar.toURI().toURL().toExternalForm() + " " + jar.lastModified() + "/" + jar.length());
+    pw.println(ANNOTATION + " " + className);
+    pw.close();
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void indexResource() throws IOException {
+    final File jar1 = writeJar("a.jar", "# index\n" + ANNOTATION + " foo.Bar\norg.example.Other foo.Ignored\n");
+    final File jar2 = writeJar("b.jar", ANNOTATION + " foo.Baz\n" + ANNOTATION + " foo.Bar\n");
+    final AnnotationIndex index = AnnotationIndex.build(new URL[] {jar1.toURI().toURL(), jar2.toURI().toURL() }, ANNOTATIONS, null);
+    assertEquals(Arrays.asList("foo.Bar", "foo.Baz"), Arrays.asList(index.getClassNames(ANNOTATION).toArray()));
+    assertTrue(index.getClassNames("org.example.Other").isEmpty());
+  }
+
+  @Test
+  public void cacheUsedWhenJarUnchanged() throws IOException {
+    final File jar = writeJar("a.jar", null);
+    final File cacheFile = new File(_dir, ".annotation-index");
+    writeCache(cacheFile, jar, "foo.Cached");
+    final AnnotationIndex index = AnnotationIndex.build(new URL[] {jar.toURI().toURL() }, ANNOTATIONS, cacheFile);
+    assertEquals(Collections.singleton("foo.Cached"), index.getClassNames(ANNOTATION));
+  }
+
+  @Test
+  public void cacheIgnoredWhenJarChanged() throws IOException {
+    final File jar = writeJar("a.jar", null);
+    final File cacheFile = new File(_dir, ".annotation-index");
+    writeCache(cacheFile, jar, "foo.Cached");
+    jar.setLastModified(jar.lastModified() - 10000L);
+    final AnnotationIndex index = AnnotationIndex.build(new URL[] {jar.toURI().toURL() }, ANNOTATIONS, cacheFile);
+    assertTrue(index.getClassNames(ANNOTATION).isEmpty());
+    // the rescanned jar replaces the stale entry in the cache
+    final BufferedReader reader = new BufferedReader(new FileReader(cacheFile));
+    assertEquals("element " + jar.toURI().toURL().toExternalForm() + " " + jar.lastModified() + "/" + jar.length(), reader.readLine());
+    assertNull(reader.readLine());
+    reader.close();
+  }
+
+  @Test
+  public void scansInParallel() throws IOException {
+    final URL[] elements = new URL[8];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = writeJar(i + ".jar", null).toURI().toURL();
+    }
+    final File cacheFile = new File(_dir, ".annotation-index");
+    final AnnotationIndex index = AnnotationIndex.build(elements, new HashSet<String>(ANNOTATIONS), cacheFile);
+    assertTrue(index.getClassNames(ANNOTATION).isEmpty());
+    assertTrue(cacheFile.isFile());
+  }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.types;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the ClasspathUtilities implementation.
+ */
+public class ClasspathUtilitiesTest {
+
+  private File _dir;
+
+  @Before
+  public void createDirectory() throws IOException {
+    _dir = File.createTempFile("ClasspathUtilitiesTest", "");
+    _dir.delete();
+    _dir.mkdir();
+  }
+
+  @After
+  public void deleteDirectory() {
+    deleteDirectory(_dir);
+  }
+
+  private static void deleteDirectory(final File dir) {
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    dir.delete();
+  }
+
+  private static void touch(final File file) throws IOException {
+    file.getParentFile().mkdirs();
+    new FileWriter(file).close();
+  }
+
+  @Test
+  public void classNamesInPackageSkipsUnreadableElements() throws IOException {
+    final File classes = new File(_dir, "classes");
+    touch(new File(classes, "a/b/C.class"));
+    touch(new File(classes, "a/b/package-info.class"));
+    touch(new File(classes, "a/D.class"));
+    final File jar = new File(_dir, "good.jar");
+    final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+    out.putNextEntry(new ZipEntry("a/b/c/E.class"));
+    out.closeEntry();
+    out.close();
+    final File corrupt = new File(_dir, "corrupt.jar");
+    final FileWriter writer = new FileWriter(corrupt);
+    writer.write("not a jar");
+    writer.close();
+    final URL[] elements = new URL[] {
+      new URL("http://example.com/remote.jar"),
+      corrupt.toURI().toURL(),
+      classes.toURI().toURL(),
+      jar.toURI().toURL(),
+    };
+    assertEquals(new HashSet<String>(Arrays.asList("a.b.C", "a.b.c.E")),
+        ClasspathUtilities.getClassNamesInPackage(elements, "a.b"));
+  }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.wire;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.fudgemsg.types.IndicatorType;
+import org.fudgemsg.wire.FudgeStreamReader.FudgeStreamElement;
+import org.fudgemsg.wire.json.FudgeJSONStreamReader;
+import org.junit.Test;
+
+/**
+ * Tests the FudgeJSONStreamReader implementation.
+ */
+public class FudgeJSONStreamReaderTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static FudgeMsgReader reader(final String json) {
+    return new FudgeMsgReader(new FudgeJSONStreamReader(s_fudgeContext, new StringReader(json)));
+  }
+
+  @Test
+  public void envelopeAndScalars() {
+    final FudgeMsgEnvelope envelope = reader(
+        "{\"fudgeProcessingDirectives\":1,\"fudgeSchemaVersion\":2,\"a\":1,\"5\":\"x\\n\\u0041\",\"\":true,\"b\":null,"
+        + "\"l\":3000000000,\"d\":-2.5e1}").nextMessageEnvelope();
+    assertEquals(1, envelope.getProcessingDirectives());
+    assertEquals(2, envelope.getVersion());
+    final FudgeMsg msg = envelope.getMessage();
+    assertEquals(6, msg.getNumFields());
+    assertEquals(Integer.valueOf(1), msg.getInt("a"));
+    assertEquals("x\nA", msg.getValue(5));
+    assertNull(msg.getByIndex(2).getName());
+    assertNull(msg.getByIndex(2).getOrdinal());
+    assertEquals(Boolean.TRUE, msg.getByIndex(2).getValue());
+    assertSame(IndicatorType.INSTANCE, msg.getValue("b"));
+    assertEquals(Long.valueOf(3000000000L), msg.getValue("l"));
+    assertEquals(Double.valueOf(-25d), msg.getValue("d"));
+  }
+
+  @Test
+  public void numberArrays() {
+    final FudgeMsg msg = reader("{\"i\":[1,2,3],\"l\":[1,3000000000],\"d\":[1,2.5],\"e\":[]}").nextMessage();
+    assertArrayEquals(new int[] {1, 2, 3 }, (int[]) msg.getValue("i"));
+    assertArrayEquals(new long[] {1, 3000000000L }, (long[]) msg.getValue("l"));
+    assertArrayEquals(new double[] {1, 2.5 }, (double[]) msg.getValue("d"), 0d);
+    assertArrayEquals(new int[0], (int[]) msg.getValue("e"));
+  }
+
+  @Test
+  public void repeatedFields() {
+    final FudgeMsg msg = reader("{\"r\":[1,\"s\",{\"z\":1},[1,2],[\"q\",1],2.5],\"after\":1}").nextMessage();
+    final List<FudgeField> fields = msg.getAllByName("r");
+    assertEquals(6, fields.size());
+    // the message narrows integers to the smallest type
+    assertEquals(Byte.valueOf((byte) 1), fields.get(0).getValue());
+    assertEquals("s", fields.get(1).getValue());
+    assertEquals(Integer.valueOf(1), ((FudgeMsg) fields.get(2).getValue()).getInt("z"));
+    assertArrayEquals(new int[] {1, 2 }, (int[]) fields.get(3).getValue());
+    assertEquals("[\"q\",1]", fields.get(4).getValue());
+    assertEquals(Double.valueOf(2.5), fields.get(5).getValue());
+    assertEquals(Integer.valueOf(1), msg.getInt("after"));
+  }
+
+  @Test
+  public void messageSequence() {
+    final FudgeMsgReader reader = reader("{\"a\":{\"b\":{}}} {}\n{\"c\":[{\"d\":1},{\"d\":2}]}");
+    final FudgeMsg first = reader.nextMessage();
+    assertEquals(0, first.getMessage("a").getMessage("b").getNumFields());
+    assertEquals(0, reader.nextMessage().getNumFields());
+    assertEquals(2, reader.nextMessage().getAllByName("c").size());
+    assertFalse(reader.hasNext());
+  }
+
+  @Test
+  public void endOfMessageAfterLastField() {
+    final FudgeStreamReader reader = new FudgeJSONStreamReader(s_fudgeContext, new StringReader("{\"a\":[\"x\"]}"));
+    assertTrue(reader.hasNext());
+    assertEquals(FudgeStreamElement.MESSAGE_ENVELOPE, reader.next());
+    assertTrue(reader.hasNext());
+    assertEquals(FudgeStreamElement.SIMPLE_FIELD, reader.next());
+    assertFalse(reader.hasNext());
+    assertNull(reader.getCurrentElement());
+    assertFalse(reader.hasNext());
+  }
+
+  @Test
+  public void largeMessage() {
+    final StringBuilder sb = new StringBuilder("{\"values\":[");
+    for (int i = 0; i < 100000; i++) {
+      sb.append(i).append(',');
+    }
+    sb.append("0],\"name\":\"");
+    for (int i = 0; i < 10000; i++) {
+      sb.append("abc\\\"");
+    }
+    sb.append("\"}");
+    final FudgeMsg msg = reader(sb.toString()).nextMessage();
+    assertEquals(100001, ((int[]) msg.getValue("values")).length);
+    assertEquals(99999, ((int[]) msg.getValue("values"))[99999]);
+    assertEquals(40000, ((String) msg.getValue("name")).length());
+  }
+
+  @Test
+  public void lazySubMessages() {
+    final FudgeMsgReader reader = reader("{\"a\":{\"b\":{\"c\":\"}\\\"{\",\"d\":[1,2]},\"e\":{}},\"r\":[{\"x\":1},{\"x\":2}],\"f\":3}");
+    reader.setLazyReads(true);
+    final FudgeMsg msg = reader.nextMessage();
+    assertTrue(reader.isLazyReads());
+    assertTrue(msg.getMessage("a") instanceof EncodedFudgeMsg);
+    assertEquals("}\"{", msg.getMessage("a").getMessage("b").getString("c"));
+    assertArrayEquals(new int[] {1, 2 }, (int[]) msg.getMessage("a").getMessage("b").getValue("d"));
+    assertTrue(msg.getMessage("a").getMessage("e").isEmpty());
+    final List<FudgeField> repeated = msg.getAllByName("r");
+    assertEquals(2, repeated.size());
+    assertEquals(Integer.valueOf(2), ((FudgeMsg) repeated.get(1).getValue()).getInt("x"));
+    assertEquals(Integer.valueOf(3), msg.getInt("f"));
+    assertFalse(reader.hasNext());
+  }
+
+  @Test
+  public void lazySubMessagesToBinary() {
+    final FudgeMsgReader reader = reader("{\"a\":{\"b\":1},\"f\":3}");
+    reader.setLazyReads(true);
+    final FudgeMsg msg = reader.nextMessage();
+    final FudgeMsg binary = s_fudgeContext.deserialize(s_fudgeContext.toByteArray(msg)).getMessage();
+    assertEquals(Integer.valueOf(1), binary.getMessage("a").getInt("b"));
+    assertEquals(Integer.valueOf(3), binary.getInt("f"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void malformed() {
+    reader("{\"a\":tru}").nextMessage();
+  }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.wire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.wire.json.FudgeJSONStreamWriter;
+import org.junit.Test;
+
+/**
+ * Tests the FudgeJSONStreamWriter implementation.
+ */
+public class FudgeJSONStreamWriterTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static String toJSON(final FudgeMsg msg) {
+    final StringWriter out = new StringWriter();
+    final FudgeMsgWriter writer = new FudgeMsgWriter(new FudgeJSONStreamWriter(s_fudgeContext, out));
+    writer.writeMessage(msg);
+    writer.flush();
+    return out.toString();
+  }
+
+  private static MutableFudgeMsg message(final String name, final Object value) {
+    final MutableFudgeMsg msg = s_fudgeContext.newMessage();
+    msg.add(name, value);
+    return msg;
+  }
+
+  @Test
+  public void escapes() {
+    assertEquals("{\"s\":\"<\\/script>/a\\\"b\\\\c\"}", toJSON(message("s", "</script>/a\"b\\c")));
+    assertEquals("{\"s\":\"\\b\\t\\n\\f\\r\\u0001\\u001f\u007f\"}", toJSON(message("s", "\b\t\n\f\r\u0001\u001f\u007f")));
+    assertEquals("{\"s\":\"\\u0085\\u2028\\u2029\u00e9\u4e2d\"}", toJSON(message("s", "\u0085\u2028\u2029\u00e9\u4e2d")));
+  }
+
+  @Test
+  public void longLimits() {
+    assertEquals("{\"min\":-9223372036854775808}", toJSON(message("min", Long.MIN_VALUE)));
+    assertEquals("{\"max\":9223372036854775807}", toJSON(message("max", Long.MAX_VALUE)));
+    assertEquals("{\"n\":-1000000000000}", toJSON(message("n", -1000000000000L)));
+    assertEquals("{\"n\":0}", toJSON(message("n", 0)));
+  }
+
+  @Test
+  public void floatingPoint() {
+    assertEquals("{\"d\":-0.0}", toJSON(message("d", -0.0d)));
+    assertEquals("{\"f\":-0.0}", toJSON(message("f", -0.0f)));
+    assertEquals("{\"d\":0}", toJSON(message("d", 0.0d)));
+    assertEquals("{\"d\":-3}", toJSON(message("d", -3.0d)));
+    assertEquals("{\"d\":1.0E7}", toJSON(message("d", 1e7d)));
+    assertEquals("{\"d\":0.1}", toJSON(message("d", 0.1d)));
+    assertEquals("{\"f\":0.1}", toJSON(message("f", 0.1f)));
+    assertEquals("{\"d\":1.2345678901234567}", toJSON(message("d", 1.2345678901234567d)));
+    assertEquals("{\"d\":4.9E-324}", toJSON(message("d", Double.MIN_VALUE)));
+  }
+
+  @Test
+  public void nonFiniteRejected() {
+    final Object[] values = {Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY };
+    for (Object value : values) {
+      try {
+        toJSON(message("x", value));
+        fail();
+      } catch (IllegalArgumentException ex) {
+        assertEquals("JSON does not allow non-finite numbers", ex.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void failedMessageNotWritten() {
+    final StringWriter out = new StringWriter();
+    final FudgeMsgWriter writer = new FudgeMsgWriter(new FudgeJSONStreamWriter(s_fudgeContext, out));
+    final MutableFudgeMsg failing = message("a", 1);
+    final MutableFudgeMsg sub = message("b", 2);
+    sub.add("x", Double.NaN);
+    failing.add("n", sub);
+    try {
+      writer.writeMessage(failing);
+      fail();
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+    writer.writeMessage(message("c", 3));
+    writer.flush();
+    assertEquals("{\"c\":3}", out.toString());
+  }
+
+  @Test
+  public void repeatedKeys() {
+    final MutableFudgeMsg msg = message("a", 1);
+    msg.add("a", "x");
+    msg.add("a", message("b", true));
+    assertEquals("{\"a\":1,\"a\":\"x\",\"a\":{\"b\":true}}", toJSON(msg));
+  }
+
+  @Test
+  public void surrogatePairSplitAcrossBuffers() throws UnsupportedEncodingException {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      sb.append('x');
+      if (i % 1000 == 0) {
+        // place pairs at many offsets so some straddle the buffer boundaries
+        for (int j = 0; j < 7; j++) {
+          sb.append("\ud83d\ude00\u00e9");
+        }
+      }
+    }
+    final String str = sb.toString();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final FudgeMsgWriter writer = new FudgeMsgWriter(new FudgeJSONStreamWriter(s_fudgeContext, out));
+    writer.writeMessage(message("s", str));
+    writer.flush();
+    assertEquals("{\"s\":\"" + str + "\"}", out.toString("UTF-8"));
+  }
+
+  @Test
+  public void surrogatePairAtCharBufferBoundary() throws UnsupportedEncodingException {
+    // the opening {"s":" takes 6 characters, so the high surrogate is the last in the 8192 character buffer
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 8192 - 7; i++) {
+      sb.append('x');
+    }
+    sb.append("\ud83d\ude00");
+    final String str = sb.toString();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final FudgeMsgWriter writer = new FudgeMsgWriter(new FudgeJSONStreamWriter(s_fudgeContext, out));
+    writer.writeMessage(message("s", str));
+    writer.flush();
+    assertEquals("{\"s\":\"" + str + "\"}", out.toString("UTF-8"));
+  }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fudgemsg.wire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.StandardFudgeMessages;
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeMsgCache} implementation.
+ */
+public class FudgeMsgCacheTest {
+
+  private static FudgeMsg createMessage(final int value) {
+    final MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("value", value);
+    msg.add("sub", StandardFudgeMessages.createMessageAllNames(FudgeContext.GLOBAL_DEFAULT));
+    return msg;
+  }
+
+  private static int encodedSize(final FudgeMsg msg) {
+    return FudgeContext.GLOBAL_DEFAULT.toByteArray(msg).length;
+  }
+
+  @Test
+  public void testPutGet() {
+    final FudgeMsgCache<String> cache = new FudgeMsgCache<String>(FudgeContext.GLOBAL_DEFAULT, 1 << 20);
+    final FudgeMsg msg = createMessage(1);
+    assertTrue(cache.put("a", msg));
+    final EncodedFudgeMsg cached = cache.get("a");
+    assertNotNull(cached);
+    FudgeUtils.assertAllFieldsMatch(msg, cached);
+    assertNull(cache.get("b"));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getEntryCount());
+    assertEquals(encodedSize(msg), cache.getSize());
+  }
+
+  @Test
+  public void testGetReturnsNewView() {
+    final FudgeMsgCache<String> cache = new FudgeMsgCache<String>(FudgeContext.GLOBAL_DEFAULT, 1 << 20);
+    cache.put("a", createMessage(1));
+    assertFalse(cache.get("a") == cache.get("a"));
+  }
+
+  @Test
+  public void testReplace() {
+    final FudgeMsgCache<String> cache = new FudgeMsgCache<String>(FudgeContext.GLOBAL_DEFAULT, 1 << 20);
+    cache.put("a", createMessage(1));
+    cache.put("a", createMessage(2));
+    assertEquals(1, cache.getEntryCount());
+    assertEquals(encodedSize(createMessage(2)), cache.getSize());
+    assertEquals((Integer) 2, cache.get("a").getInt("value"));
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    final int size = encodedSize(createMessage(0));
+    final FudgeMsgCache<Integer> cache = new FudgeMsgCache<Integer>(FudgeContext.GLOBAL_DEFAULT, size * 3);
+    cache.put(1, createMessage(1));
+    cache.put(2, createMessage(2));
+    cache.put(3, createMessage(3));
+    assertNotNull(cache.get(1));
+    cache.put(4, createMessage(4));
+    assertEquals(3, cache.getEntryCount());
+    assertEquals(1, cache.getEvictionCount());
+    assertNotNull(cache.get(1));
+    assertNull(cache.get(2));
+    assertNotNull(cache.get(3));
+    assertNotNull(cache.get(4));
+    assertTrue(cache.getSize() <= cache.getMaxSize());
+  }
+
+  @Test
+  public void testRejectsOversizedMessage() {
+    final FudgeMsgCache<String> cache = new FudgeMsgCache<String>(FudgeContext.GLOBAL_DEFAULT, 16);
+    assertFalse(cache.put("a", createMessage(1)));
+    assertEquals(0, cache.getEntryCount());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testRemoveAndClear() {
+    final FudgeMsgCache<String> cache = new FudgeMsgCache<String>(FudgeContext.GLOBAL_DEFAULT, 1 << 20);
+    cache.put("a", createMessage(1));
+    cache.put("b", createMessage(2));
+    assertTrue(cache.remove("a"));
+    assertFalse(cache.remove("a"));
+    assertEquals(1, cache.getEntryCount());
+    cache.clear();
+    assertEquals(0, cache.getEntryCount());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testCachesEncodedMessage() {
+    final FudgeMsgCache<String> cache = new FudgeMsgCache<String>(FudgeContext.GLOBAL_DEFAULT, 1 << 20);
+    final FudgeMsg msg = createMessage(1);
+    cache.put("a", msg);
+    cache.put("b", cache.get("a"));
+    FudgeUtils.assertAllFieldsMatch(msg, cache.get("b"));
+  }
+
+}
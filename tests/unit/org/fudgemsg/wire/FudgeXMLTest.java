@@ -18,6 +18,7 @@ package org.fudgemsg.wire;
 import static org.fudgemsg.test.FudgeUtils.assertAllFieldsMatch;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.CharArrayReader;
 import java.io.CharArrayWriter;
@@ -95,6 +96,38 @@ public class FudgeXMLTest {
     }
   }
  
+  @Test
+  public void cycleXMLMessagesLazily() {
+    final FudgeMsg[] messages = createMessages();
+    for (int i = 0; i < messages.length; i++) {
+      final CharArrayWriter caw = new CharArrayWriter();
+      final FudgeMsgWriter fmw = new FudgeMsgWriter(new FudgeXMLStreamWriter(_fudgeContext, caw));
+      fmw.writeMessage(messages[i], 0);
+      final FudgeMsgReader fmr = new FudgeMsgReader(new FudgeXMLStreamReader(_fudgeContext, new CharArrayReader(caw.toCharArray())));
+      fmr.setLazyReads(true);
+      FudgeMsg message = fmr.nextMessage();
+      assertNotNull(message);
+      assertAllFieldsMatch(messages[i], message, false);
+      assertTrue(fmr.isLazyReads());
+      assertNull(fmr.nextMessage());
+    }
+  }
+
+  @Test
+  public void lazyXMLMessagesToBinary() {
+    final FudgeMsg[] messages = createMessages();
+    for (int i = 0; i < messages.length; i++) {
+      final CharArrayWriter caw = new CharArrayWriter();
+      final FudgeMsgWriter fmw = new FudgeMsgWriter(new FudgeXMLStreamWriter(_fudgeContext, caw));
+      fmw.writeMessage(messages[i], 0);
+      final FudgeMsgReader fmr = new FudgeMsgReader(new FudgeXMLStreamReader(_fudgeContext, new CharArrayReader(caw.toCharArray())));
+      fmr.setLazyReads(true);
+      final FudgeMsg message = fmr.nextMessage();
+      final FudgeMsg binary = _fudgeContext.deserialize(_fudgeContext.toByteArray(message)).getMessage();
+      assertAllFieldsMatch(messages[i], binary, false);
+    }
+  }
+
   private FudgeMsg[] createMessages () {
     return new FudgeMsg[] {
         StandardFudgeMessages.createMessageAllNames(_fudgeContext),